@@ -148,6 +148,24 @@ public class JsonArchiveConfiguration extends JsonConfigurationExtension {
         writer.writeNotNull("dcmStorePermissionServiceErrorCodePattern", arcDev.getStorePermissionServiceErrorCodePattern());
         writer.writeNotEmpty("dcmRetrieveAET", arcDev.getRetrieveAETitles());
         writer.writeNotNull("dcmExternalRetrieveAEDestination", arcDev.getExternalRetrieveAEDestination());
+        writer.writeNotNull("dcmStorePermissionServiceConnectTimeout", arcDev.getStorePermissionServiceConnectTimeout());
+        writer.writeNotNull("dcmStorePermissionServiceReadTimeout", arcDev.getStorePermissionServiceReadTimeout());
+        writer.writeNotDef("dcmStoreUpdateDBQueueSize", arcDev.getStoreUpdateDBQueueSize(), 0);
+        writer.writeNotDef("dcmStoreUpdateDBMaxBatchSize", arcDev.getStoreUpdateDBMaxBatchSize(), 1);
+        writer.writeNotNull("dcmStoreUpdateDBMaxBatchLatency", arcDev.getStoreUpdateDBMaxBatchLatency());
+        writer.writeNotNull("dcmQueryAttributesWarmUpDelay", arcDev.getQueryAttributesWarmUpDelay());
+        writer.writeNotDef("dcmAttributesCacheSize", arcDev.getAttributesCacheSize(), 1000);
+        writer.writeNotDef("dcmEncodeAttributesWithTagIndex", arcDev.isEncodeAttributesWithTagIndex(), false);
+        writer.writeNotNull("dcmAttributesBlobMigrationPollingInterval", arcDev.getAttributesBlobMigrationPollingInterval());
+        writer.writeNotDef("dcmAttributesBlobMigrationFetchSize", arcDev.getAttributesBlobMigrationFetchSize(), 100);
+        writer.writeNotDef("dcmFrameIndexCacheSize", arcDev.getFrameIndexCacheSize(), 100);
+        writer.writeNotNull("dcmFrameCacheSize", arcDev.getFrameCacheSize());
+        writer.writeNotDef("dcmWadoPrefetchDepth", arcDev.getWadoPrefetchDepth(), 0);
+        writer.writeNotNull("dcmWadoPrefetchMaxBufferSize", arcDev.getWadoPrefetchMaxBufferSize());
+        writer.writeNotDef("dcmMetadataCacheSize", arcDev.getMetadataCacheSize(), 0);
+        writer.writeNotDef("dcmStgCmtVerificationParallelism", arcDev.getStgCmtVerificationParallelism(), 1);
+        writer.writeNotNull("dcmStgCmtVerificationTrustPeriod", arcDev.getStgCmtVerificationTrustPeriod());
+        writer.writeNotDef("dcmMaxRetrieveAssociations", arcDev.getMaxRetrieveAssociations(), 1);
         writeAttributeFilters(writer, arcDev);
         writeStorageDescriptor(writer, arcDev.getStorageDescriptors());
         writeQueryRetrieve(writer, arcDev.getQueryRetrieveViews());
@@ -666,6 +684,60 @@ public class JsonArchiveConfiguration extends JsonConfigurationExtension {
                 case "dcmExternalRetrieveAEDestination":
                     arcDev.setExternalRetrieveAEDestination(reader.stringValue());
                     break;
+                case "dcmStorePermissionServiceConnectTimeout":
+                    arcDev.setStorePermissionServiceConnectTimeout(Duration.parse(reader.stringValue()));
+                    break;
+                case "dcmStorePermissionServiceReadTimeout":
+                    arcDev.setStorePermissionServiceReadTimeout(Duration.parse(reader.stringValue()));
+                    break;
+                case "dcmStoreUpdateDBQueueSize":
+                    arcDev.setStoreUpdateDBQueueSize(reader.intValue());
+                    break;
+                case "dcmStoreUpdateDBMaxBatchSize":
+                    arcDev.setStoreUpdateDBMaxBatchSize(reader.intValue());
+                    break;
+                case "dcmStoreUpdateDBMaxBatchLatency":
+                    arcDev.setStoreUpdateDBMaxBatchLatency(Duration.parse(reader.stringValue()));
+                    break;
+                case "dcmQueryAttributesWarmUpDelay":
+                    arcDev.setQueryAttributesWarmUpDelay(Duration.parse(reader.stringValue()));
+                    break;
+                case "dcmAttributesCacheSize":
+                    arcDev.setAttributesCacheSize(reader.intValue());
+                    break;
+                case "dcmEncodeAttributesWithTagIndex":
+                    arcDev.setEncodeAttributesWithTagIndex(reader.booleanValue());
+                    break;
+                case "dcmAttributesBlobMigrationPollingInterval":
+                    arcDev.setAttributesBlobMigrationPollingInterval(Duration.parse(reader.stringValue()));
+                    break;
+                case "dcmAttributesBlobMigrationFetchSize":
+                    arcDev.setAttributesBlobMigrationFetchSize(reader.intValue());
+                    break;
+                case "dcmFrameIndexCacheSize":
+                    arcDev.setFrameIndexCacheSize(reader.intValue());
+                    break;
+                case "dcmFrameCacheSize":
+                    arcDev.setFrameCacheSize(reader.stringValue());
+                    break;
+                case "dcmWadoPrefetchDepth":
+                    arcDev.setWadoPrefetchDepth(reader.intValue());
+                    break;
+                case "dcmWadoPrefetchMaxBufferSize":
+                    arcDev.setWadoPrefetchMaxBufferSize(reader.stringValue());
+                    break;
+                case "dcmMetadataCacheSize":
+                    arcDev.setMetadataCacheSize(reader.intValue());
+                    break;
+                case "dcmStgCmtVerificationParallelism":
+                    arcDev.setStgCmtVerificationParallelism(reader.intValue());
+                    break;
+                case "dcmStgCmtVerificationTrustPeriod":
+                    arcDev.setStgCmtVerificationTrustPeriod(Duration.parse(reader.stringValue()));
+                    break;
+                case "dcmMaxRetrieveAssociations":
+                    arcDev.setMaxRetrieveAssociations(reader.intValue());
+                    break;
                 case "dcmAttributeFilter":
                     loadAttributeFilterListFrom(arcDev, reader);
                     break;
@@ -154,6 +154,24 @@ class LdapArchiveConfiguration extends LdapDicomConfigurationExtension {
         LdapUtils.storeNotNull(attrs, "dcmStorePermissionServiceErrorCodePattern", ext.getStorePermissionServiceErrorCodePattern());
         LdapUtils.storeNotNull(attrs, "dcmRetrieveAET", ext.getRetrieveAETitles());
         LdapUtils.storeNotNull(attrs, "dcmExternalRetrieveAEDestination", ext.getExternalRetrieveAEDestination());
+        LdapUtils.storeNotNull(attrs, "dcmStorePermissionServiceConnectTimeout", ext.getStorePermissionServiceConnectTimeout());
+        LdapUtils.storeNotNull(attrs, "dcmStorePermissionServiceReadTimeout", ext.getStorePermissionServiceReadTimeout());
+        LdapUtils.storeNotDef(attrs, "dcmStoreUpdateDBQueueSize", ext.getStoreUpdateDBQueueSize(), 0);
+        LdapUtils.storeNotDef(attrs, "dcmStoreUpdateDBMaxBatchSize", ext.getStoreUpdateDBMaxBatchSize(), 1);
+        LdapUtils.storeNotNull(attrs, "dcmStoreUpdateDBMaxBatchLatency", ext.getStoreUpdateDBMaxBatchLatency());
+        LdapUtils.storeNotNull(attrs, "dcmQueryAttributesWarmUpDelay", ext.getQueryAttributesWarmUpDelay());
+        LdapUtils.storeNotDef(attrs, "dcmAttributesCacheSize", ext.getAttributesCacheSize(), 1000);
+        LdapUtils.storeNotDef(attrs, "dcmEncodeAttributesWithTagIndex", ext.isEncodeAttributesWithTagIndex(), false);
+        LdapUtils.storeNotNull(attrs, "dcmAttributesBlobMigrationPollingInterval", ext.getAttributesBlobMigrationPollingInterval());
+        LdapUtils.storeNotDef(attrs, "dcmAttributesBlobMigrationFetchSize", ext.getAttributesBlobMigrationFetchSize(), 100);
+        LdapUtils.storeNotDef(attrs, "dcmFrameIndexCacheSize", ext.getFrameIndexCacheSize(), 100);
+        LdapUtils.storeNotNull(attrs, "dcmFrameCacheSize", ext.getFrameCacheSize());
+        LdapUtils.storeNotDef(attrs, "dcmWadoPrefetchDepth", ext.getWadoPrefetchDepth(), 0);
+        LdapUtils.storeNotNull(attrs, "dcmWadoPrefetchMaxBufferSize", ext.getWadoPrefetchMaxBufferSize());
+        LdapUtils.storeNotDef(attrs, "dcmMetadataCacheSize", ext.getMetadataCacheSize(), 0);
+        LdapUtils.storeNotDef(attrs, "dcmStgCmtVerificationParallelism", ext.getStgCmtVerificationParallelism(), 1);
+        LdapUtils.storeNotNull(attrs, "dcmStgCmtVerificationTrustPeriod", ext.getStgCmtVerificationTrustPeriod());
+        LdapUtils.storeNotDef(attrs, "dcmMaxRetrieveAssociations", ext.getMaxRetrieveAssociations(), 1);
     }
 
     @Override
@@ -242,6 +260,24 @@ class LdapArchiveConfiguration extends LdapDicomConfigurationExtension {
         ext.setStorePermissionServiceErrorCodePattern(toPattern(attrs.get("dcmStorePermissionServiceErrorCodePattern")));
         ext.setRetrieveAETitles(LdapUtils.stringArray(attrs.get("dcmRetrieveAET")));
         ext.setExternalRetrieveAEDestination(LdapUtils.stringValue(attrs.get("dcmExternalRetrieveAEDestination"), null));
+        ext.setStorePermissionServiceConnectTimeout(toDuration(attrs.get("dcmStorePermissionServiceConnectTimeout")));
+        ext.setStorePermissionServiceReadTimeout(toDuration(attrs.get("dcmStorePermissionServiceReadTimeout")));
+        ext.setStoreUpdateDBQueueSize(LdapUtils.intValue(attrs.get("dcmStoreUpdateDBQueueSize"), 0));
+        ext.setStoreUpdateDBMaxBatchSize(LdapUtils.intValue(attrs.get("dcmStoreUpdateDBMaxBatchSize"), 1));
+        ext.setStoreUpdateDBMaxBatchLatency(toDuration(attrs.get("dcmStoreUpdateDBMaxBatchLatency")));
+        ext.setQueryAttributesWarmUpDelay(toDuration(attrs.get("dcmQueryAttributesWarmUpDelay")));
+        ext.setAttributesCacheSize(LdapUtils.intValue(attrs.get("dcmAttributesCacheSize"), 1000));
+        ext.setEncodeAttributesWithTagIndex(LdapUtils.booleanValue(attrs.get("dcmEncodeAttributesWithTagIndex"), false));
+        ext.setAttributesBlobMigrationPollingInterval(toDuration(attrs.get("dcmAttributesBlobMigrationPollingInterval")));
+        ext.setAttributesBlobMigrationFetchSize(LdapUtils.intValue(attrs.get("dcmAttributesBlobMigrationFetchSize"), 100));
+        ext.setFrameIndexCacheSize(LdapUtils.intValue(attrs.get("dcmFrameIndexCacheSize"), 100));
+        ext.setFrameCacheSize(LdapUtils.stringValue(attrs.get("dcmFrameCacheSize"), null));
+        ext.setWadoPrefetchDepth(LdapUtils.intValue(attrs.get("dcmWadoPrefetchDepth"), 0));
+        ext.setWadoPrefetchMaxBufferSize(LdapUtils.stringValue(attrs.get("dcmWadoPrefetchMaxBufferSize"), null));
+        ext.setMetadataCacheSize(LdapUtils.intValue(attrs.get("dcmMetadataCacheSize"), 0));
+        ext.setStgCmtVerificationParallelism(LdapUtils.intValue(attrs.get("dcmStgCmtVerificationParallelism"), 1));
+        ext.setStgCmtVerificationTrustPeriod(toDuration(attrs.get("dcmStgCmtVerificationTrustPeriod")));
+        ext.setMaxRetrieveAssociations(LdapUtils.intValue(attrs.get("dcmMaxRetrieveAssociations"), 1));
     }
 
     @Override
@@ -377,6 +413,39 @@ class LdapArchiveConfiguration extends LdapDicomConfigurationExtension {
         LdapUtils.storeDiff(mods, "dcmRetrieveAET", aa.getRetrieveAETitles(), bb.getRetrieveAETitles());
         LdapUtils.storeDiff(mods, "dcmExternalRetrieveAEDestination",
                 aa.getExternalRetrieveAEDestination(), bb.getExternalRetrieveAEDestination());
+        LdapUtils.storeDiff(mods, "dcmStorePermissionServiceConnectTimeout",
+                aa.getStorePermissionServiceConnectTimeout(), bb.getStorePermissionServiceConnectTimeout());
+        LdapUtils.storeDiff(mods, "dcmStorePermissionServiceReadTimeout",
+                aa.getStorePermissionServiceReadTimeout(), bb.getStorePermissionServiceReadTimeout());
+        LdapUtils.storeDiff(mods, "dcmStoreUpdateDBQueueSize",
+                aa.getStoreUpdateDBQueueSize(), bb.getStoreUpdateDBQueueSize(), 0);
+        LdapUtils.storeDiff(mods, "dcmStoreUpdateDBMaxBatchSize",
+                aa.getStoreUpdateDBMaxBatchSize(), bb.getStoreUpdateDBMaxBatchSize(), 1);
+        LdapUtils.storeDiff(mods, "dcmStoreUpdateDBMaxBatchLatency",
+                aa.getStoreUpdateDBMaxBatchLatency(), bb.getStoreUpdateDBMaxBatchLatency());
+        LdapUtils.storeDiff(mods, "dcmQueryAttributesWarmUpDelay",
+                aa.getQueryAttributesWarmUpDelay(), bb.getQueryAttributesWarmUpDelay());
+        LdapUtils.storeDiff(mods, "dcmAttributesCacheSize",
+                aa.getAttributesCacheSize(), bb.getAttributesCacheSize(), 1000);
+        LdapUtils.storeDiff(mods, "dcmEncodeAttributesWithTagIndex",
+                aa.isEncodeAttributesWithTagIndex(), bb.isEncodeAttributesWithTagIndex(), false);
+        LdapUtils.storeDiff(mods, "dcmAttributesBlobMigrationPollingInterval",
+                aa.getAttributesBlobMigrationPollingInterval(), bb.getAttributesBlobMigrationPollingInterval());
+        LdapUtils.storeDiff(mods, "dcmAttributesBlobMigrationFetchSize",
+                aa.getAttributesBlobMigrationFetchSize(), bb.getAttributesBlobMigrationFetchSize(), 100);
+        LdapUtils.storeDiff(mods, "dcmFrameIndexCacheSize",
+                aa.getFrameIndexCacheSize(), bb.getFrameIndexCacheSize(), 100);
+        LdapUtils.storeDiff(mods, "dcmFrameCacheSize", aa.getFrameCacheSize(), bb.getFrameCacheSize());
+        LdapUtils.storeDiff(mods, "dcmWadoPrefetchDepth", aa.getWadoPrefetchDepth(), bb.getWadoPrefetchDepth(), 0);
+        LdapUtils.storeDiff(mods, "dcmWadoPrefetchMaxBufferSize",
+                aa.getWadoPrefetchMaxBufferSize(), bb.getWadoPrefetchMaxBufferSize());
+        LdapUtils.storeDiff(mods, "dcmMetadataCacheSize", aa.getMetadataCacheSize(), bb.getMetadataCacheSize(), 0);
+        LdapUtils.storeDiff(mods, "dcmStgCmtVerificationParallelism",
+                aa.getStgCmtVerificationParallelism(), bb.getStgCmtVerificationParallelism(), 1);
+        LdapUtils.storeDiff(mods, "dcmStgCmtVerificationTrustPeriod",
+                aa.getStgCmtVerificationTrustPeriod(), bb.getStgCmtVerificationTrustPeriod());
+        LdapUtils.storeDiff(mods, "dcmMaxRetrieveAssociations",
+                aa.getMaxRetrieveAssociations(), bb.getMaxRetrieveAssociations(), 1);
     }
 
     @Override
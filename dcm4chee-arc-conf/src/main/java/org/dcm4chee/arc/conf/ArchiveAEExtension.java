@@ -41,6 +41,7 @@
 package org.dcm4chee.arc.conf;
 
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
 import org.dcm4che3.net.AEExtension;
 import org.dcm4che3.net.Dimse;
 import org.dcm4che3.net.TransferCapability;
@@ -98,6 +99,8 @@ public class ArchiveAEExtension extends AEExtension {
     private final ArrayList<ArchiveCompressionRule> compressionRules = new ArrayList<>();
     private final ArrayList<ArchiveAttributeCoercion> attributeCoercions = new ArrayList<>();
     private final ArrayList<StudyRetentionPolicy> studyRetentionPolicies = new ArrayList<>();
+    private volatile int rulesVersion;
+    private volatile RuleIndexes ruleIndexes;
 
     public String getDefaultCharacterSet() {
         return defaultCharacterSet;
@@ -597,14 +600,17 @@ public class ArchiveAEExtension extends AEExtension {
 
     public void removeExportRule(ExportRule rule) {
         exportRules.remove(rule);
+        rulesVersion++;
     }
 
     public void clearExportRules() {
         exportRules.clear();
+        rulesVersion++;
     }
 
     public void addExportRule(ExportRule rule) {
         exportRules.add(rule);
+        rulesVersion++;
     }
 
     public Collection<ExportRule> getExportRules() {
@@ -613,14 +619,17 @@ public class ArchiveAEExtension extends AEExtension {
 
     public void removeCompressionRule(ArchiveCompressionRule rule) {
         compressionRules.remove(rule);
+        rulesVersion++;
     }
 
     public void clearCompressionRules() {
         compressionRules.clear();
+        rulesVersion++;
     }
 
     public void addCompressionRule(ArchiveCompressionRule rule) {
         compressionRules.add(rule);
+        rulesVersion++;
     }
 
     public Collection<ArchiveCompressionRule> getCompressionRules() {
@@ -629,14 +638,17 @@ public class ArchiveAEExtension extends AEExtension {
 
     public void removeStudyRetentionPolicies(StudyRetentionPolicy policy) {
         studyRetentionPolicies.remove(policy);
+        rulesVersion++;
     }
 
     public void clearStudyRetentionPolicy() {
         studyRetentionPolicies.clear();
+        rulesVersion++;
     }
 
     public void addStudyRetentionPolicy(StudyRetentionPolicy policy) {
         studyRetentionPolicies.add(policy);
+        rulesVersion++;
     }
 
     public Collection<StudyRetentionPolicy> getStudyRetentionPolicies() {
@@ -645,14 +657,17 @@ public class ArchiveAEExtension extends AEExtension {
 
     public void removeAttributeCoercion(ArchiveAttributeCoercion coercion) {
         attributeCoercions.remove(coercion);
+        rulesVersion++;
     }
 
     public void clearAttributeCoercions() {
         attributeCoercions.clear();
+        rulesVersion++;
     }
 
     public void addCompressionRule(ArchiveAttributeCoercion coercion) {
         attributeCoercions.add(coercion);
+        rulesVersion++;
     }
 
     public Collection<ArchiveAttributeCoercion> getAttributeCoercions() {
@@ -733,6 +748,7 @@ public class ArchiveAEExtension extends AEExtension {
         studyRetentionPolicies.addAll(aeExt.studyRetentionPolicies);
         attributeCoercions.clear();
         attributeCoercions.addAll(aeExt.attributeCoercions);
+        rulesVersion++;
     }
 
     public ArchiveDeviceExtension getArchiveDeviceExtension() {
@@ -751,51 +767,121 @@ public class ArchiveAEExtension extends AEExtension {
     public Map<String, ExportRule> findExportRules(
             String hostName, String sendingAET, String receivingAET, Attributes attrs, Calendar cal) {
         HashMap<String, ExportRule> result = new HashMap<>();
-        for (Collection<ExportRule> rules
-                : new Collection[]{exportRules, getArchiveDeviceExtension().getExportRules() })
-            for (ExportRule rule : rules)
-                if (rule.match(hostName, sendingAET, receivingAET, attrs, cal))
-                    for (String exporterID : rule.getExporterIDs()) {
-                        ExportRule rule1 = result.get(exporterID);
-                        if (rule1 == null || rule1.getEntity().compareTo(rule.getEntity()) > 0)
-                            result.put(exporterID, rule);
-                    }
+        for (ExportRule rule : ruleIndexes().exportRules.candidates(receivingAET, sendingAET, sopClassUID(attrs)))
+            if (rule.match(hostName, sendingAET, receivingAET, attrs, cal))
+                for (String exporterID : rule.getExporterIDs()) {
+                    ExportRule rule1 = result.get(exporterID);
+                    if (rule1 == null || rule1.getEntity().compareTo(rule.getEntity()) > 0)
+                        result.put(exporterID, rule);
+                }
         return result;
     }
 
+    public boolean hasCompressionRules() {
+        return !compressionRules.isEmpty() || !getArchiveDeviceExtension().getCompressionRules().isEmpty();
+    }
+
     public ArchiveCompressionRule findCompressionRule(
             String hostName, String sendingAET, String receivingAET, Attributes attrs) {
         ArchiveCompressionRule rule1 = null;
-        for (Collection<ArchiveCompressionRule> rules
-                : new Collection[]{ compressionRules, getArchiveDeviceExtension().getCompressionRules() })
-            for (ArchiveCompressionRule rule : rules)
-                if (rule.match(hostName, sendingAET, receivingAET, attrs))
-                    if (rule1 == null || rule1.getPriority() < rule.getPriority())
-                        rule1 = rule;
+        for (ArchiveCompressionRule rule
+                : ruleIndexes().compressionRules.candidates(receivingAET, sendingAET, sopClassUID(attrs)))
+            if (rule.match(hostName, sendingAET, receivingAET, attrs))
+                if (rule1 == null || rule1.getPriority() < rule.getPriority())
+                    rule1 = rule;
         return rule1;
     }
 
     public ArchiveAttributeCoercion findAttributeCoercion(
             String hostName, String aet, TransferCapability.Role role, Dimse dimse, String sopClass) {
         ArchiveAttributeCoercion coercion1 = null;
-        for (Collection<ArchiveAttributeCoercion> coercions
-                : new Collection[]{ attributeCoercions, getArchiveDeviceExtension().getAttributeCoercions() })
-            for (ArchiveAttributeCoercion coercion : coercions)
-                if (coercion.match(hostName, aet, role, dimse, sopClass))
-                    if (coercion1 == null || coercion1.getPriority() < coercion.getPriority())
-                        coercion1 = coercion;
+        for (ArchiveAttributeCoercion coercion : ruleIndexes().attributeCoercions.candidates(aet, sopClass))
+            if (coercion.match(hostName, aet, role, dimse, sopClass))
+                if (coercion1 == null || coercion1.getPriority() < coercion.getPriority())
+                    coercion1 = coercion;
         return coercion1;
     }
 
     public StudyRetentionPolicy findStudyRetentionPolicy(
             String hostName, String sendingAET, String receivingAET, Attributes attrs) {
         StudyRetentionPolicy policy1 = null;
-        for (Collection<StudyRetentionPolicy> policies
-                : new Collection[]{ studyRetentionPolicies, getArchiveDeviceExtension().getStudyRetentionPolicies() })
-            for (StudyRetentionPolicy policy : policies)
-                if (policy.match(hostName, sendingAET, receivingAET, attrs))
-                    if (policy1 == null || policy1.getPriority() < policy.getPriority())
-                        policy1 = policy;
+        for (StudyRetentionPolicy policy
+                : ruleIndexes().studyRetentionPolicies.candidates(receivingAET, sendingAET, sopClassUID(attrs)))
+            if (policy.match(hostName, sendingAET, receivingAET, attrs))
+                if (policy1 == null || policy1.getPriority() < policy.getPriority())
+                    policy1 = policy;
         return policy1;
     }
+
+    private static String sopClassUID(Attributes attrs) {
+        return attrs != null ? attrs.getString(Tag.SOPClassUID) : null;
+    }
+
+    private RuleIndexes ruleIndexes() {
+        ArchiveDeviceExtension arcDev = getArchiveDeviceExtension();
+        int aeRulesVersion = rulesVersion;
+        int deviceRulesVersion = arcDev.getRulesVersion();
+        int numberOfRules = numberOfRules(arcDev);
+        RuleIndexes indexes = ruleIndexes;
+        if (indexes == null
+                || indexes.aeRulesVersion != aeRulesVersion
+                || indexes.deviceRulesVersion != deviceRulesVersion
+                || indexes.numberOfRules != numberOfRules)
+            ruleIndexes = indexes = new RuleIndexes(this, arcDev, aeRulesVersion, deviceRulesVersion, numberOfRules);
+        return indexes;
+    }
+
+    private int numberOfRules(ArchiveDeviceExtension arcDev) {
+        return exportRules.size() + arcDev.getExportRules().size()
+                + compressionRules.size() + arcDev.getCompressionRules().size()
+                + attributeCoercions.size() + arcDev.getAttributeCoercions().size()
+                + studyRetentionPolicies.size() + arcDev.getStudyRetentionPolicies().size();
+    }
+
+    /**
+     * Rules of this AE followed by the rules of the device, indexed by the Receiving and Sending AE Title and the
+     * SOP Class UID, which they require. Rebuilt after rules of this AE or of the device were changed.
+     */
+    private static final class RuleIndexes {
+        final int aeRulesVersion;
+        final int deviceRulesVersion;
+        final int numberOfRules;
+        final RuleIndex<ExportRule> exportRules;
+        final RuleIndex<ArchiveCompressionRule> compressionRules;
+        final RuleIndex<ArchiveAttributeCoercion> attributeCoercions;
+        final RuleIndex<StudyRetentionPolicy> studyRetentionPolicies;
+
+        RuleIndexes(ArchiveAEExtension aeExt, ArchiveDeviceExtension arcDev,
+                    int aeRulesVersion, int deviceRulesVersion, int numberOfRules) {
+            this.aeRulesVersion = aeRulesVersion;
+            this.deviceRulesVersion = deviceRulesVersion;
+            this.numberOfRules = numberOfRules;
+            this.exportRules = new RuleIndex<>(
+                    concat(aeExt.exportRules, arcDev.getExportRules()),
+                    rule -> RuleIndex.values(rule.getConditions().requiredReceivingAETitle()),
+                    rule -> RuleIndex.values(rule.getConditions().requiredSendingAETitle()),
+                    rule -> RuleIndex.values(rule.getConditions().requiredSOPClassUID()));
+            this.compressionRules = new RuleIndex<>(
+                    concat(aeExt.compressionRules, arcDev.getCompressionRules()),
+                    rule -> RuleIndex.values(rule.getConditions().requiredReceivingAETitle()),
+                    rule -> RuleIndex.values(rule.getConditions().requiredSendingAETitle()),
+                    rule -> RuleIndex.values(rule.getConditions().requiredSOPClassUID()));
+            this.attributeCoercions = new RuleIndex<>(
+                    concat(aeExt.attributeCoercions, arcDev.getAttributeCoercions()),
+                    ArchiveAttributeCoercion::getAETitles,
+                    ArchiveAttributeCoercion::getSOPClasses);
+            this.studyRetentionPolicies = new RuleIndex<>(
+                    concat(aeExt.studyRetentionPolicies, arcDev.getStudyRetentionPolicies()),
+                    policy -> RuleIndex.values(policy.getConditions().requiredReceivingAETitle()),
+                    policy -> RuleIndex.values(policy.getConditions().requiredSendingAETitle()),
+                    policy -> RuleIndex.values(policy.getConditions().requiredSOPClassUID()));
+        }
+
+        private static <T> List<T> concat(Collection<T> aeRules, Collection<T> deviceRules) {
+            ArrayList<T> list = new ArrayList<>(aeRules.size() + deviceRules.size());
+            list.addAll(aeRules);
+            list.addAll(deviceRules);
+            return list;
+        }
+    }
 }
@@ -129,6 +129,24 @@ public class ArchiveDeviceExtension extends DeviceExtension {
     private AcceptMissingPatientID acceptMissingPatientID;
     private AllowDeleteStudyPermanently allowDeleteStudyPermanently;
     private String[] retrieveAETitles = {};
+    private Duration storePermissionServiceConnectTimeout;
+    private Duration storePermissionServiceReadTimeout;
+    private int storeUpdateDBQueueSize = 0;
+    private int storeUpdateDBMaxBatchSize = 1;
+    private Duration storeUpdateDBMaxBatchLatency;
+    private Duration queryAttributesWarmUpDelay;
+    private int attributesCacheSize = 1000;
+    private boolean encodeAttributesWithTagIndex;
+    private Duration attributesBlobMigrationPollingInterval;
+    private int attributesBlobMigrationFetchSize = 100;
+    private int frameIndexCacheSize = 100;
+    private String frameCacheSize;
+    private int wadoPrefetchDepth;
+    private String wadoPrefetchMaxBufferSize;
+    private int metadataCacheSize;
+    private int stgCmtVerificationParallelism = 1;
+    private Duration stgCmtVerificationTrustPeriod;
+    private int maxRetrieveAssociations = 1;
 
     private final HashSet<String> wadoSupportedSRClasses = new HashSet<>();
     private final EnumMap<Entity,AttributeFilter> attributeFilters = new EnumMap<>(Entity.class);
@@ -144,6 +162,7 @@ public class ArchiveDeviceExtension extends DeviceExtension {
     private final ArrayList<StudyRetentionPolicy> studyRetentionPolicies = new ArrayList<>();
 
     private final ArrayList<ArchiveAttributeCoercion> attributeCoercions = new ArrayList<>();
+    private volatile int rulesVersion;
     private transient FuzzyStr fuzzyStr;
 
     public String getDefaultCharacterSet() {
@@ -924,14 +943,25 @@ public class ArchiveDeviceExtension extends DeviceExtension {
 
     public void removeExportRule(ExportRule rule) {
         exportRules.remove(rule);
+        rulesVersion++;
     }
 
     public void clearExportRules() {
         exportRules.clear();
+        rulesVersion++;
     }
 
     public void addExportRule(ExportRule rule) {
         exportRules.add(rule);
+        rulesVersion++;
+    }
+
+    /**
+     * Returns a counter which is incremented when export, compression, attribute coercion or study retention rules
+     * of the device are changed.
+     */
+    int getRulesVersion() {
+        return rulesVersion;
     }
 
     public Collection<ExportRule> getExportRules() {
@@ -956,14 +986,17 @@ public class ArchiveDeviceExtension extends DeviceExtension {
 
     public void removeCompressionRule(ArchiveCompressionRule rule) {
         compressionRules.remove(rule);
+        rulesVersion++;
     }
 
     public void clearCompressionRules() {
         compressionRules.clear();
+        rulesVersion++;
     }
 
     public void addCompressionRule(ArchiveCompressionRule rule) {
         compressionRules.add(rule);
+        rulesVersion++;
     }
 
     public Collection<ArchiveCompressionRule> getCompressionRules() {
@@ -972,14 +1005,17 @@ public class ArchiveDeviceExtension extends DeviceExtension {
 
     public void removeStudyRetentionPolicy(StudyRetentionPolicy policy) {
         studyRetentionPolicies.remove(policy);
+        rulesVersion++;
     }
 
     public void clearStudyRetentionPolicies() {
         studyRetentionPolicies.clear();
+        rulesVersion++;
     }
 
     public void addStudyRetentionPolicy(StudyRetentionPolicy policy) {
         studyRetentionPolicies.add(policy);
+        rulesVersion++;
     }
 
     public Collection<StudyRetentionPolicy> getStudyRetentionPolicies() {
@@ -988,14 +1024,17 @@ public class ArchiveDeviceExtension extends DeviceExtension {
 
     public void removeAttributeCoercion(ArchiveAttributeCoercion coercion) {
         attributeCoercions.remove(coercion);
+        rulesVersion++;
     }
 
     public void clearAttributeCoercions() {
         attributeCoercions.clear();
+        rulesVersion++;
     }
 
     public void addAttributeCoercion(ArchiveAttributeCoercion coercion) {
         attributeCoercions.add(coercion);
+        rulesVersion++;
     }
 
     public Collection<ArchiveAttributeCoercion> getAttributeCoercions() {
@@ -1051,6 +1090,150 @@ public class ArchiveDeviceExtension extends DeviceExtension {
         this.retrieveAETitles = retrieveAETitles;
     }
 
+    public Duration getStorePermissionServiceConnectTimeout() {
+        return storePermissionServiceConnectTimeout;
+    }
+
+    public void setStorePermissionServiceConnectTimeout(Duration storePermissionServiceConnectTimeout) {
+        this.storePermissionServiceConnectTimeout = storePermissionServiceConnectTimeout;
+    }
+
+    public Duration getStorePermissionServiceReadTimeout() {
+        return storePermissionServiceReadTimeout;
+    }
+
+    public void setStorePermissionServiceReadTimeout(Duration storePermissionServiceReadTimeout) {
+        this.storePermissionServiceReadTimeout = storePermissionServiceReadTimeout;
+    }
+
+    public int getStoreUpdateDBQueueSize() {
+        return storeUpdateDBQueueSize;
+    }
+
+    public void setStoreUpdateDBQueueSize(int storeUpdateDBQueueSize) {
+        this.storeUpdateDBQueueSize = storeUpdateDBQueueSize;
+    }
+
+    public int getStoreUpdateDBMaxBatchSize() {
+        return storeUpdateDBMaxBatchSize;
+    }
+
+    public void setStoreUpdateDBMaxBatchSize(int storeUpdateDBMaxBatchSize) {
+        this.storeUpdateDBMaxBatchSize = storeUpdateDBMaxBatchSize;
+    }
+
+    public Duration getStoreUpdateDBMaxBatchLatency() {
+        return storeUpdateDBMaxBatchLatency;
+    }
+
+    public void setStoreUpdateDBMaxBatchLatency(Duration storeUpdateDBMaxBatchLatency) {
+        this.storeUpdateDBMaxBatchLatency = storeUpdateDBMaxBatchLatency;
+    }
+
+    public Duration getQueryAttributesWarmUpDelay() {
+        return queryAttributesWarmUpDelay;
+    }
+
+    public void setQueryAttributesWarmUpDelay(Duration queryAttributesWarmUpDelay) {
+        this.queryAttributesWarmUpDelay = queryAttributesWarmUpDelay;
+    }
+
+    public int getAttributesCacheSize() {
+        return attributesCacheSize;
+    }
+
+    public void setAttributesCacheSize(int attributesCacheSize) {
+        this.attributesCacheSize = attributesCacheSize;
+    }
+
+    public boolean isEncodeAttributesWithTagIndex() {
+        return encodeAttributesWithTagIndex;
+    }
+
+    public void setEncodeAttributesWithTagIndex(boolean encodeAttributesWithTagIndex) {
+        this.encodeAttributesWithTagIndex = encodeAttributesWithTagIndex;
+    }
+
+    public Duration getAttributesBlobMigrationPollingInterval() {
+        return attributesBlobMigrationPollingInterval;
+    }
+
+    public void setAttributesBlobMigrationPollingInterval(Duration attributesBlobMigrationPollingInterval) {
+        this.attributesBlobMigrationPollingInterval = attributesBlobMigrationPollingInterval;
+    }
+
+    public int getAttributesBlobMigrationFetchSize() {
+        return attributesBlobMigrationFetchSize;
+    }
+
+    public void setAttributesBlobMigrationFetchSize(int attributesBlobMigrationFetchSize) {
+        this.attributesBlobMigrationFetchSize = attributesBlobMigrationFetchSize;
+    }
+
+    public int getFrameIndexCacheSize() {
+        return frameIndexCacheSize;
+    }
+
+    public void setFrameIndexCacheSize(int frameIndexCacheSize) {
+        this.frameIndexCacheSize = frameIndexCacheSize;
+    }
+
+    public String getFrameCacheSize() {
+        return frameCacheSize;
+    }
+
+    public void setFrameCacheSize(String frameCacheSize) {
+        this.frameCacheSize = frameCacheSize;
+    }
+
+    public int getWadoPrefetchDepth() {
+        return wadoPrefetchDepth;
+    }
+
+    public void setWadoPrefetchDepth(int wadoPrefetchDepth) {
+        this.wadoPrefetchDepth = wadoPrefetchDepth;
+    }
+
+    public String getWadoPrefetchMaxBufferSize() {
+        return wadoPrefetchMaxBufferSize;
+    }
+
+    public void setWadoPrefetchMaxBufferSize(String wadoPrefetchMaxBufferSize) {
+        this.wadoPrefetchMaxBufferSize = wadoPrefetchMaxBufferSize;
+    }
+
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    public int getStgCmtVerificationParallelism() {
+        return stgCmtVerificationParallelism;
+    }
+
+    public void setStgCmtVerificationParallelism(int stgCmtVerificationParallelism) {
+        this.stgCmtVerificationParallelism = stgCmtVerificationParallelism;
+    }
+
+    public Duration getStgCmtVerificationTrustPeriod() {
+        return stgCmtVerificationTrustPeriod;
+    }
+
+    public void setStgCmtVerificationTrustPeriod(Duration stgCmtVerificationTrustPeriod) {
+        this.stgCmtVerificationTrustPeriod = stgCmtVerificationTrustPeriod;
+    }
+
+    public int getMaxRetrieveAssociations() {
+        return maxRetrieveAssociations;
+    }
+
+    public void setMaxRetrieveAssociations(int maxRetrieveAssociations) {
+        this.maxRetrieveAssociations = maxRetrieveAssociations;
+    }
+
     @Override
     public void reconfigure(DeviceExtension from) {
         ArchiveDeviceExtension arcdev = (ArchiveDeviceExtension) from;
@@ -1130,6 +1313,24 @@ public class ArchiveDeviceExtension extends DeviceExtension {
         acceptMissingPatientID = arcdev.acceptMissingPatientID;
         allowDeleteStudyPermanently = arcdev.allowDeleteStudyPermanently;
         retrieveAETitles = arcdev.retrieveAETitles;
+        storePermissionServiceConnectTimeout = arcdev.storePermissionServiceConnectTimeout;
+        storePermissionServiceReadTimeout = arcdev.storePermissionServiceReadTimeout;
+        storeUpdateDBQueueSize = arcdev.storeUpdateDBQueueSize;
+        storeUpdateDBMaxBatchSize = arcdev.storeUpdateDBMaxBatchSize;
+        storeUpdateDBMaxBatchLatency = arcdev.storeUpdateDBMaxBatchLatency;
+        queryAttributesWarmUpDelay = arcdev.queryAttributesWarmUpDelay;
+        attributesCacheSize = arcdev.attributesCacheSize;
+        encodeAttributesWithTagIndex = arcdev.encodeAttributesWithTagIndex;
+        attributesBlobMigrationPollingInterval = arcdev.attributesBlobMigrationPollingInterval;
+        attributesBlobMigrationFetchSize = arcdev.attributesBlobMigrationFetchSize;
+        frameIndexCacheSize = arcdev.frameIndexCacheSize;
+        frameCacheSize = arcdev.frameCacheSize;
+        wadoPrefetchDepth = arcdev.wadoPrefetchDepth;
+        wadoPrefetchMaxBufferSize = arcdev.wadoPrefetchMaxBufferSize;
+        metadataCacheSize = arcdev.metadataCacheSize;
+        stgCmtVerificationParallelism = arcdev.stgCmtVerificationParallelism;
+        stgCmtVerificationTrustPeriod = arcdev.stgCmtVerificationTrustPeriod;
+        maxRetrieveAssociations = arcdev.maxRetrieveAssociations;
         attributeFilters.clear();
         attributeFilters.putAll(arcdev.attributeFilters);
         idGenerators.clear();
@@ -1150,6 +1351,7 @@ public class ArchiveDeviceExtension extends DeviceExtension {
         studyRetentionPolicies.addAll(arcdev.studyRetentionPolicies);
         attributeCoercions.clear();
         attributeCoercions.addAll(arcdev.attributeCoercions);
+        rulesVersion++;
         rejectionNoteMap.clear();
         rejectionNoteMap.putAll(arcdev.rejectionNoteMap);
     }
@@ -2,8 +2,11 @@ package org.dcm4chee.arc.conf;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
 import org.dcm4che3.util.TagUtils;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.regex.Pattern;
@@ -19,6 +22,7 @@ public class Conditions {
     public static final String SENDING_HOSTNAME = "SendingHostname";
 
     private final Map<String, Pattern> map = new TreeMap<>();
+    private volatile Condition[] compiled = {};
 
     public Conditions(String... props) {
          for (String s : props) {
@@ -53,71 +57,173 @@ public class Conditions {
         setCondition(SENDING_HOSTNAME + '!', value);
     }
 
-    public void setCondition(String tagPath, String value) {
+    public synchronized void setCondition(String tagPath, String value) {
         Pattern pattern = Pattern.compile(value);
         map.put(tagPath, pattern);
+        compiled = compile(map);
     }
 
     public Map<String,Pattern> getMap() {
-        return map;
+        return Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * Returns the value the Receiving AE Title must be equal to for these conditions to match, or {@code null} if
+     * there is no such condition.
+     */
+    String requiredReceivingAETitle() {
+        return requiredValue(RECEIVING_AET, 0);
+    }
+
+    /**
+     * Returns the value the Sending AE Title must be equal to for these conditions to match, or {@code null} if
+     * there is no such condition.
+     */
+    String requiredSendingAETitle() {
+        return requiredValue(SENDING_AET, 0);
+    }
+
+    /**
+     * Returns the value the SOP Class UID of the dataset must be equal to for these conditions to match, or
+     * {@code null} if there is no such condition.
+     */
+    String requiredSOPClassUID() {
+        return requiredValue(ATTRIBUTE, Tag.SOPClassUID);
+    }
+
+    private String requiredValue(int type, int tag) {
+        for (Condition condition : compiled)
+            if (condition.type == type && !condition.ne && condition.literal != null
+                    && (type != ATTRIBUTE || condition.tagPath.length == 1 && condition.tagPath[0] == tag))
+                return condition.literal;
+        return null;
+    }
+
+    private static Condition[] compile(Map<String, Pattern> map) {
+        Condition[] conditions = new Condition[map.size()];
+        int i = 0;
+        for (Map.Entry<String, Pattern> entry : map.entrySet())
+            conditions[i++] = new Condition(entry.getKey(), entry.getValue());
+        // evaluate conditions on the association before conditions on attributes
+        Arrays.sort(conditions, (a, b) -> Boolean.compare(a.tagPath != null, b.tagPath != null));
+        return conditions;
     }
 
     public boolean match(String hostName, String sendingAET, String receivingAET, Attributes attrs) {
-        for (Map.Entry<String, Pattern> entry : map.entrySet()) {
-            String tagPath = entry.getKey();
-            Pattern pattern = entry.getValue();
-            boolean ne = tagPath.endsWith("!");
-            if (ne)
-                tagPath = tagPath.substring(0, tagPath.length()-1);
-            switch (tagPath) {
-                case RECEIVING_APPLICATION_ENTITY_TITLE:
-                    if (ne ? (receivingAET != null && pattern.matcher(receivingAET).matches())
-                           : (receivingAET == null || !pattern.matcher(receivingAET).matches()))
+        for (Condition condition : compiled) {
+            switch (condition.type) {
+                case RECEIVING_AET:
+                    if (!condition.match(receivingAET))
                         return false;
                     break;
-                case SENDING_APPLICATION_ENTITY_TITLE:
-                    if (ne ? (sendingAET != null && pattern.matcher(sendingAET).matches())
-                           : (sendingAET == null || !pattern.matcher(sendingAET).matches()))
+                case SENDING_AET:
+                    if (!condition.match(sendingAET))
                         return false;
                     break;
-                case SENDING_HOSTNAME:
-                    if (ne ? (hostName != null && pattern.matcher(hostName).matches())
-                           : (hostName == null || !pattern.matcher(hostName).matches()))
+                case HOSTNAME:
+                    if (!condition.match(hostName))
                         return false;
                     break;
                 default:
-                    if (!match(attrs, TagUtils.parseTagPath(tagPath), pattern, 0, ne))
+                    if (!condition.match(attrs, 0, condition.ne))
                         return false;
             }
         }
         return true;
     }
 
-    private boolean match(Attributes attrs, int[] tagPath, Pattern pattern, int level, boolean ne) {
-        if (level < tagPath.length-1) {
-            Sequence seq = attrs.getSequence(tagPath[level]);
-            if (seq != null)
-                for (Attributes item : seq)
-                    if (match(item, tagPath, pattern, level+1, false))
-                        return true;
-        } else {
-            String[] ss = attrs.getStrings(tagPath[level]);
-            if (ss != null)
+    private static final int RECEIVING_AET = 0;
+    private static final int SENDING_AET = 1;
+    private static final int HOSTNAME = 2;
+    private static final int ATTRIBUTE = 3;
+
+    private static final class Condition {
+        final int type;
+        final int[] tagPath;
+        final boolean ne;
+        final Pattern pattern;
+        final String literal;
+
+        Condition(String tagPath, Pattern pattern) {
+            this.ne = tagPath.endsWith("!");
+            if (ne)
+                tagPath = tagPath.substring(0, tagPath.length()-1);
+            switch (tagPath) {
+                case RECEIVING_APPLICATION_ENTITY_TITLE:
+                    this.type = RECEIVING_AET;
+                    this.tagPath = null;
+                    break;
+                case SENDING_APPLICATION_ENTITY_TITLE:
+                    this.type = SENDING_AET;
+                    this.tagPath = null;
+                    break;
+                case SENDING_HOSTNAME:
+                    this.type = HOSTNAME;
+                    this.tagPath = null;
+                    break;
+                default:
+                    this.type = ATTRIBUTE;
+                    this.tagPath = TagUtils.parseTagPath(tagPath);
+            }
+            this.pattern = pattern;
+            this.literal = literal(pattern.pattern());
+        }
+
+        /**
+         * Returns the value the pattern only matches, or {@code null} if it may match different values. A pattern
+         * consisting only of digits and escaped dots - as used for UIDs - is taken literally; an unescaped dot
+         * matches any character.
+         */
+        private static String literal(String regex) {
+            if (isUID(regex))
+                return regex.replace("\\.", ".");
+            for (int i = 0; i < regex.length(); i++)
+                if ("\\[](){}.*+?^$|".indexOf(regex.charAt(i)) >= 0)
+                    return null;
+            return regex;
+        }
+
+        private static boolean isUID(String regex) {
+            if (regex.isEmpty())
+                return false;
+            for (int i = 0; i < regex.length(); i++) {
+                char ch = regex.charAt(i);
+                if (ch == '\\' && i + 1 < regex.length() && regex.charAt(i + 1) == '.')
+                    i++;
+                else if (ch < '0' || ch > '9')
+                    return false;
+            }
+            return true;
+        }
+
+        boolean matches(String s) {
+            return literal != null ? literal.equals(s) : pattern.matcher(s).matches();
+        }
+
+        boolean match(String s) {
+            return ne ? (s == null || !matches(s)) : (s != null && matches(s));
+        }
+
+        boolean match(Attributes attrs, int level, boolean ne) {
+            if (level < tagPath.length-1) {
+                Sequence seq = attrs.getSequence(tagPath[level]);
+                if (seq != null)
+                    for (Attributes item : seq)
+                        if (match(item, level+1, false))
+                            return true;
+            } else {
+                String[] ss = attrs.getStrings(tagPath[level]);
+                if (ss == null)
+                    return ne;
+
                 for (String s : ss)
-                    if (pattern != null && s != null && pattern.matcher(s).matches() && !ne)
-                        return true;
-                    else if (pattern == null || s == null)
+                    if (s == null)
                         return false;
-                    else if (ne && !pattern.matcher(s).matches())
+                    else if (matches(s) != ne)
                         return true;
-//            if (pattern.matcher(s).matches())
-//                        return true;
-            if (ss == null && ne)
-                return true;
-            if (ss == null && !ne)
-                return false;
+            }
+            return false;
         }
-        return false;
     }
 
     @Override
@@ -0,0 +1,111 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.conf;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Index of configured rules by the values one property of the request - e.g. the Sending AE Title - must be equal
+ * to for a rule to match. Each rule is indexed by the first of the passed key functions which returns values for
+ * it; rules without any required value are returned for every request.
+ * <p>
+ * {@link #candidates} only filters out rules which cannot match, so the returned rules still have to be matched
+ * against the request.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+final class RuleIndex<T> {
+
+    private final List<T> rules;
+    private final BitSet unindexed = new BitSet();
+    private final List<Map<String, BitSet>> indexes = new ArrayList<>();
+
+    @SafeVarargs
+    RuleIndex(List<T> rules, Function<T, String[]>... keys) {
+        this.rules = rules;
+        for (int i = 0; i < keys.length; i++)
+            indexes.add(new HashMap<>());
+        for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++)
+            add(ruleIndex, keys);
+    }
+
+    private void add(int ruleIndex, Function<T, String[]>[] keys) {
+        T rule = rules.get(ruleIndex);
+        for (int i = 0; i < keys.length; i++) {
+            String[] values = keys[i].apply(rule);
+            if (values != null && values.length > 0) {
+                for (String value : values)
+                    indexes.get(i).computeIfAbsent(value, v -> new BitSet()).set(ruleIndex);
+                return;
+            }
+        }
+        unindexed.set(ruleIndex);
+    }
+
+    /**
+     * Returns the rules which may match a request with the passed property values, in configured order.
+     *
+     * @param values value of the request property for each key function of the index, may be {@code null}
+     * @return rules which may match
+     */
+    List<T> candidates(String... values) {
+        BitSet bits = (BitSet) unindexed.clone();
+        for (int i = 0; i < values.length; i++) {
+            BitSet indexed = values[i] != null ? indexes.get(i).get(values[i]) : null;
+            if (indexed != null)
+                bits.or(indexed);
+        }
+        List<T> result = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+            result.add(rules.get(i));
+        return result;
+    }
+
+    static String[] values(String value) {
+        return value != null ? new String[]{ value } : null;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.conf;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Device;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class ArchiveAEExtensionTest {
+
+    private final ArchiveDeviceExtension arcDev = new ArchiveDeviceExtension();
+    private final ArchiveAEExtension arcAE = new ArchiveAEExtension();
+
+    @Before
+    public void setUp() throws Exception {
+        Device device = new Device("dcm4chee-arc");
+        device.addDeviceExtension(arcDev);
+        ApplicationEntity ae = new ApplicationEntity("DCM4CHEE");
+        device.addApplicationEntity(ae);
+        ae.addAEExtension(arcAE);
+    }
+
+    @Test
+    public void findCompressionRule() throws Exception {
+        ArchiveCompressionRule ct = compressionRule("ct", 1,
+                "SendingApplicationEntityTitle=MODALITY", "SOPClassUID=" + UID.CTImageStorage);
+        ArchiveCompressionRule any = compressionRule("any", 0, "SendingApplicationEntityTitle=MODALITY");
+        ArchiveCompressionRule other = compressionRule("other", 2, "SendingApplicationEntityTitle=OTHER");
+        arcAE.addCompressionRule(any);
+        arcDev.addCompressionRule(ct);
+        arcDev.addCompressionRule(other);
+        assertSame(ct, arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", sopClass(UID.CTImageStorage)));
+        assertSame(any, arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", sopClass(UID.MRImageStorage)));
+        assertSame(other, arcAE.findCompressionRule(null, "OTHER", "DCM4CHEE", sopClass(UID.CTImageStorage)));
+        assertNull(arcAE.findCompressionRule(null, "STORESCU", "DCM4CHEE", sopClass(UID.CTImageStorage)));
+    }
+
+    @Test
+    public void findCompressionRuleBySOPClassUID() throws Exception {
+        ArchiveCompressionRule ct = compressionRule("ct", 0, "SOPClassUID=" + UID.CTImageStorage);
+        ArchiveCompressionRule mr = compressionRule("mr", 0, "SOPClassUID=" + UID.MRImageStorage.replace(".", "\\."));
+        arcDev.addCompressionRule(ct);
+        arcDev.addCompressionRule(mr);
+        assertSame(ct, arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", sopClass(UID.CTImageStorage)));
+        assertSame(mr, arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", sopClass(UID.MRImageStorage)));
+        assertNull(arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", sopClass(UID.SecondaryCaptureImageStorage)));
+    }
+
+    @Test
+    public void findCompressionRuleAfterChange() throws Exception {
+        Attributes attrs = sopClass(UID.CTImageStorage);
+        assertNull(arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", attrs));
+        ArchiveCompressionRule rule = compressionRule("rule", 0, "ReceivingApplicationEntityTitle=DCM4CHEE");
+        arcDev.getCompressionRules().add(rule);
+        assertSame(rule, arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", attrs));
+        arcDev.clearCompressionRules();
+        assertNull(arcAE.findCompressionRule(null, "MODALITY", "DCM4CHEE", attrs));
+    }
+
+    private static ArchiveCompressionRule compressionRule(String cn, int priority, String... conditions) {
+        ArchiveCompressionRule rule = new ArchiveCompressionRule(cn);
+        rule.setPriority(priority);
+        rule.setConditions(new Conditions(conditions));
+        return rule;
+    }
+
+    private static Attributes sopClass(String cuid) {
+        Attributes attrs = new Attributes(1);
+        attrs.setString(Tag.SOPClassUID, VR.UI, cuid);
+        return attrs;
+    }
+}
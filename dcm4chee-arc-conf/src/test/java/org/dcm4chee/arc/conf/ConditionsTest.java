@@ -41,6 +41,7 @@
 package org.dcm4chee.arc.conf;
 
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
 import org.junit.Test;
@@ -91,6 +92,81 @@ public class ConditionsTest {
         assertTrue(notmodality.match(null, null, null, empty));
     }
 
+    @Test
+    public void matchPattern() throws Exception {
+        Attributes ct = modality("CT");
+        Attributes mr = modality("MR");
+        Conditions modality = new Conditions("Modality=C.");
+        assertTrue(modality.match(null, null, null, ct));
+        assertFalse(modality.match(null, null, null, mr));
+        Conditions notmodality = new Conditions("Modality!=C.");
+        assertFalse(notmodality.match(null, null, null, ct));
+        assertTrue(notmodality.match(null, null, null, mr));
+        Conditions sending = new Conditions("SendingApplicationEntityTitle=STORE.*");
+        assertTrue(sending.match(null, "STORESCU", null, ct));
+        assertFalse(sending.match(null, "DCMQRSCP", null, ct));
+    }
+
+    @Test
+    public void matchUnescapedDot() throws Exception {
+        Conditions unescaped = new Conditions("SOPClassUID=1.2.3");
+        assertTrue(unescaped.match(null, null, null, sopClass("1.2.3")));
+        assertTrue(unescaped.match(null, null, null, sopClass("1x2x3")));
+        Conditions escaped = new Conditions("SOPClassUID=1\\.2\\.3");
+        assertTrue(escaped.match(null, null, null, sopClass("1.2.3")));
+        assertFalse(escaped.match(null, null, null, sopClass("1x2x3")));
+    }
+
+    @Test
+    public void matchSequence() throws Exception {
+        Attributes attrs = new Attributes(1);
+        Sequence seq = attrs.newSequence(Tag.RequestAttributesSequence, 2);
+        seq.add(requestedProcedureID("P1"));
+        seq.add(requestedProcedureID("P2"));
+        Conditions conditions = new Conditions("RequestAttributesSequence.RequestedProcedureID=P2");
+        assertTrue(conditions.match(null, null, null, attrs));
+        assertFalse(conditions.match(null, null, null, new Attributes()));
+        Conditions other = new Conditions("RequestAttributesSequence.RequestedProcedureID=P3");
+        assertFalse(other.match(null, null, null, attrs));
+    }
+
+    @Test
+    public void requiredValues() throws Exception {
+        Conditions conditions = new Conditions(
+                "ReceivingApplicationEntityTitle=DCM4CHEE",
+                "SendingApplicationEntityTitle=STORE.*",
+                "SOPClassUID=1\\.2\\.840\\.10008\\.5\\.1\\.4\\.1\\.1\\.2");
+        assertEquals("DCM4CHEE", conditions.requiredReceivingAETitle());
+        assertNull(conditions.requiredSendingAETitle());
+        assertEquals("1.2.840.10008.5.1.4.1.1.2", conditions.requiredSOPClassUID());
+        Conditions negated = new Conditions(
+                "ReceivingApplicationEntityTitle!=DCM4CHEE",
+                "00080016!=1\\.2\\.840\\.10008\\.5\\.1\\.4\\.1\\.1\\.2");
+        assertNull(negated.requiredReceivingAETitle());
+        assertNull(negated.requiredSOPClassUID());
+        assertNull(new Conditions("00080016=1.2.840.10008.5.1.4.1.1.4").requiredSOPClassUID());
+        assertEquals("1.2.840.10008.5.1.4.1.1.7",
+                new Conditions("SOPClassUID=1\\.2\\.840\\.10008\\.5\\.1\\.4\\.1\\.1\\.7").requiredSOPClassUID());
+        assertNull(new Conditions("SOPClassUID=1.2.840.10008.5.1.4.1.1.*").requiredSOPClassUID());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getMapIsReadOnly() throws Exception {
+        new Conditions("Modality=CT").getMap().clear();
+    }
+
+    private Attributes sopClass(String cuid) {
+        Attributes attrs = new Attributes(1);
+        attrs.setString(Tag.SOPClassUID, VR.UI, cuid);
+        return attrs;
+    }
+
+    private Attributes requestedProcedureID(String value) {
+        Attributes attrs = new Attributes(1);
+        attrs.setString(Tag.RequestedProcedureID, VR.SH, value);
+        return attrs;
+    }
+
     private Attributes modality(String modality) {
         Attributes attrs = new Attributes(1);
         attrs.setString(Tag.Modality, VR.CS, modality);
@@ -0,0 +1,83 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.conf;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class RuleIndexTest {
+
+    private static final String[][] RULES = {
+            { "AE1", null },
+            { null, null },
+            { null, "CT" },
+            { "AE2", "CT" },
+            { "AE1", "MR" },
+    };
+
+    private final RuleIndex<String[]> index = new RuleIndex<>(Arrays.asList(RULES),
+            rule -> RuleIndex.values(rule[0]),
+            rule -> RuleIndex.values(rule[1]));
+
+    @Test
+    public void candidates() throws Exception {
+        assertEquals(Arrays.asList(RULES[0], RULES[1], RULES[2], RULES[4]), index.candidates("AE1", "CT"));
+        assertEquals(Arrays.asList(RULES[1], RULES[2], RULES[3]), index.candidates("AE2", "CT"));
+        assertEquals(Arrays.asList(RULES[1], RULES[2]), index.candidates("AE3", "CT"));
+        assertEquals(Collections.singletonList(RULES[1]), index.candidates(null, "MR"));
+    }
+
+    @Test
+    public void candidatesOfMultipleValues() throws Exception {
+        RuleIndex<String[]> index = new RuleIndex<>(Arrays.asList(
+                new String[]{ "AE1", "AE2" }, new String[0]), rule -> rule);
+        assertEquals(2, index.candidates("AE2").size());
+        assertEquals(1, index.candidates("AE3").size());
+    }
+}
@@ -192,6 +192,7 @@ public class DeletionServiceEJB {
             if (!series.containsKey(ser.getPk())) {
                 series.put(ser.getPk(), ser);
                 deleteSeriesQueryAttributes(ser);
+                storeEjb.deleteSeriesMetadata(ser);
             }
             em.remove(inst);
         }
@@ -241,6 +242,7 @@ public class DeletionServiceEJB {
                 ctx.setStudy(study = ser.getStudy());
                 ctx.setPatient(patient = study.getPatient());
             }
+            storeEjb.deleteSeriesMetadata(ser);
             em.remove(ser);
         }
         em.remove(study);
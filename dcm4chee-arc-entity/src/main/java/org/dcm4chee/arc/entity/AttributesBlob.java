@@ -41,7 +41,11 @@
 package org.dcm4chee.arc.entity;
 
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Fragments;
+import org.dcm4che3.data.Sequence;
+import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
+import org.dcm4che3.io.DicomInputHandler;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomOutputStream;
 
@@ -49,6 +53,10 @@ import javax.persistence.*;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @author Umberto Cappellini <umberto.cappellini@agfa.com>
@@ -58,6 +66,12 @@ import java.io.IOException;
 @Table(name = "dicomattrs")
 public class AttributesBlob {
 
+    /**
+     * Leading bytes of attributes encoded with tag index. Not a valid start of an encoded data set, because
+     * {@code (FFFF,xxxx)} is no valid Data Element Tag.
+     */
+    private static final byte[] TAG_INDEX_MAGIC = { (byte) 0xFF, (byte) 0xFF, 'T', 'I' };
+
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
     @Column(name = "pk")
@@ -66,12 +80,19 @@ public class AttributesBlob {
     @Basic(optional = false)
     @Column(name = "attrs")
     private byte[] encodedAttributes;
+
+    /**
+     * Indicates if the attributes are encoded with tag index; {@code null} for attributes stored before this column
+     * was introduced.
+     */
+    @Column(name = "tag_index")
+    private Boolean tagIndex;
     
     @Transient
     private Attributes cachedAttributes;
 
-    public AttributesBlob(Attributes attrs) {
-        setAttributes(attrs);
+    public AttributesBlob(Attributes attrs, boolean encodeWithTagIndex) {
+        setAttributes(attrs, encodeWithTagIndex);
     }
     
     protected AttributesBlob() {}
@@ -91,17 +112,36 @@ public class AttributesBlob {
         return cachedAttributes;
     }
 
-    public void setAttributes(Attributes attrs) {
+    /**
+     * Sets the attributes, encoded with a leading index of the offsets of the top level attributes, if
+     * {@code encodeWithTagIndex} is {@code true}, which allows to decode selected attributes without parsing the
+     * whole data set.
+     */
+    public void setAttributes(Attributes attrs, boolean encodeWithTagIndex) {
         cachedAttributes = new Attributes(attrs);
         cachedAttributes.removeAllBulkData();
-        encodedAttributes = AttributesBlob.encodeAttributes(cachedAttributes);
+        encodedAttributes = AttributesBlob.encodeAttributes(cachedAttributes, encodeWithTagIndex);
+        tagIndex = encodeWithTagIndex;
     }
 
     public byte[] getEncodedAttributes() {
         return encodedAttributes;
     }
 
-    public static byte[] encodeAttributes(Attributes attrs) {
+    public Boolean getTagIndex() {
+        return tagIndex;
+    }
+
+    public boolean isEncodedWithTagIndex() {
+        return isEncodedWithTagIndex(encodedAttributes);
+    }
+
+    public static byte[] encodeAttributes(Attributes attrs, boolean encodeWithTagIndex) {
+        byte[] b = encodeDataset(attrs);
+        return encodeWithTagIndex ? addTagIndex(b) : b;
+    }
+
+    private static byte[] encodeDataset(Attributes attrs) {
         ByteArrayOutputStream out = new ByteArrayOutputStream(512);
         try {
             DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian);
@@ -112,20 +152,131 @@ public class AttributesBlob {
         return out.toByteArray();
     }
 
+    /**
+     * Prefixes encoded data set with {@link #TAG_INDEX_MAGIC}, the number of top level attributes and the tag and the
+     * end offset of the encoded attribute in the data set for each top level attribute.
+     */
+    private static byte[] addTagIndex(byte[] dataset) {
+        final ArrayList<int[]> index = new ArrayList<>();
+        try (DicomInputStream dis = new DicomInputStream(
+                new ByteArrayInputStream(dataset), UID.ExplicitVRLittleEndian)) {
+            dis.setDicomInputHandler(new DicomInputHandler() {
+                @Override
+                public void readValue(DicomInputStream dis, Attributes attrs) throws IOException {
+                    if (dis.level() == 0)
+                        index.add(new int[]{ dis.tag(), (int) dis.getTagPosition() });
+                    dis.readValue(dis, attrs);
+                }
+
+                @Override
+                public void readValue(DicomInputStream dis, Sequence seq) throws IOException {
+                    dis.readValue(dis, seq);
+                }
+
+                @Override
+                public void readValue(DicomInputStream dis, Fragments frags) throws IOException {
+                    dis.readValue(dis, frags);
+                }
+
+                @Override
+                public void startDataset(DicomInputStream dis) {
+                }
+
+                @Override
+                public void endDataset(DicomInputStream dis) {
+                }
+            });
+            dis.readAttributes(new Attributes(), -1, -1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        int n = index.size();
+        ByteBuffer bb = ByteBuffer.allocate(TAG_INDEX_MAGIC.length + 4 + n * 8 + dataset.length)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        bb.put(TAG_INDEX_MAGIC).putInt(n);
+        for (int i = 0; i < n; i++)
+            bb.putInt(index.get(i)[0]).putInt(i + 1 < n ? index.get(i + 1)[1] : dataset.length);
+        bb.put(dataset);
+        return bb.array();
+    }
+
+    public static boolean isEncodedWithTagIndex(byte[] b) {
+        if (b == null || b.length < TAG_INDEX_MAGIC.length + 4)
+            return false;
+
+        for (int i = 0; i < TAG_INDEX_MAGIC.length; i++)
+            if (b[i] != TAG_INDEX_MAGIC[i])
+                return false;
+
+        return true;
+    }
+
     public static Attributes decodeAttributes(byte[] b, Attributes result) {
         if (b == null || b.length == 0)
             return result != null ? result : new Attributes(0);
 
         if (result == null)
             result = new Attributes();
-        ByteArrayInputStream is = new ByteArrayInputStream(b);
         try {
-            DicomInputStream dis = new DicomInputStream(is);
-            dis.readFileMetaInformation();
-            dis.readAttributes(result, -1, -1);
+            if (isEncodedWithTagIndex(b)) {
+                int offset = datasetOffset(b);
+                new DicomInputStream(new ByteArrayInputStream(b, offset, b.length - offset),
+                        UID.ExplicitVRLittleEndian).readAttributes(result, -1, -1);
+            } else {
+                DicomInputStream dis = new DicomInputStream(new ByteArrayInputStream(b));
+                dis.readFileMetaInformation();
+                dis.readAttributes(result, -1, -1);
+            }
             return result;
         } catch (IOException e) {
             throw new BlobCorruptedException(e);
         }
     }
+
+    /**
+     * Decodes at least the top level attributes with the specified tags, the Specific Character Set and all Private
+     * Creator Data Elements. Only attributes encoded with tag index are decoded selectively, otherwise all attributes
+     * are decoded.
+     *
+     * @param b encoded attributes
+     * @param tags sorted tags of top level attributes to decode or {@code null} to decode all attributes
+     * @return decoded attributes
+     */
+    public static Attributes decodeSelectedAttributes(byte[] b, int[] tags) {
+        if (tags == null || !isEncodedWithTagIndex(b))
+            return decodeAttributes(b, null);
+
+        ByteBuffer bb = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN);
+        int n = bb.getInt(TAG_INDEX_MAGIC.length);
+        int offset = datasetOffset(b);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(b.length - offset);
+        int start = 0;
+        int selected = 0;
+        for (int i = 0, indexPos = TAG_INDEX_MAGIC.length + 4; i < n; i++, indexPos += 8) {
+            int tag = bb.getInt(indexPos);
+            int end = bb.getInt(indexPos + 4);
+            if (tag == Tag.SpecificCharacterSet || isPrivateCreator(tag) || Arrays.binarySearch(tags, tag) >= 0) {
+                out.write(b, offset + start, end - start);
+                selected++;
+            }
+            start = end;
+        }
+        Attributes result = new Attributes(selected);
+        try {
+            new DicomInputStream(new ByteArrayInputStream(out.toByteArray()), UID.ExplicitVRLittleEndian)
+                    .readAttributes(result, -1, -1);
+        } catch (IOException e) {
+            throw new BlobCorruptedException(e);
+        }
+        return result;
+    }
+
+    private static int datasetOffset(byte[] b) {
+        int n = ByteBuffer.wrap(b).order(ByteOrder.LITTLE_ENDIAN).getInt(TAG_INDEX_MAGIC.length);
+        return TAG_INDEX_MAGIC.length + 4 + n * 8;
+    }
+
+    private static boolean isPrivateCreator(int tag) {
+        return (tag & 0x00010000) != 0 && (tag & 0x0000FF00) == 0 && (tag & 0x000000F0) != 0;
+    }
 }
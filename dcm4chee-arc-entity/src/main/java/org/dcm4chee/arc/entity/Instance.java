@@ -120,7 +120,12 @@ import java.util.*;
     name = Instance.IUIDS_OF_SERIES,
     query = "select instance.series.study.studyInstanceUID, instance.series.seriesInstanceUID, instance.sopInstanceUID, instance.numberOfFrames " +
             "from Instance instance " +
-            "where instance.series.study.studyInstanceUID = ?1 and instance.series.seriesInstanceUID = ?2")
+            "where instance.series.study.studyInstanceUID = ?1 and instance.series.seriesInstanceUID = ?2"),
+@NamedQuery(
+    name = Instance.UPDATE_EXTERNAL_RETRIEVE_AET,
+    query = "update Instance i set i.externalRetrieveAET = ?1, " +
+            "i.updatedTime = CURRENT_TIMESTAMP, i.version = i.version + 1 " +
+            "where i.pk in ?2")
 })
 @Entity
 @Table(name = "instance",
@@ -147,6 +152,25 @@ public class Instance {
     public static final String FIND_BY_STUDY_IUID = "Instance.findByStudyIUID";
     public static final String IUIDS_OF_STUDY = "Instance.iuidsOfStudy";
     public static final String IUIDS_OF_SERIES = "Instance.iuidsOfSeries";
+    public static final String UPDATE_EXTERNAL_RETRIEVE_AET = "Instance.updateExternalRetrieveAET";
+
+    /**
+     * Image Pixel Description attributes of images, which are stored with the Instance attributes in addition to the
+     * attributes selected by the configured Attribute Filter, so the length of uncompressed frames can be calculated
+     * without reading the DICOM object.
+     */
+    public static final int[] IMAGE_PIXEL_DESCRIPTION = {
+            Tag.SamplesPerPixel,
+            Tag.PhotometricInterpretation,
+            Tag.PlanarConfiguration,
+            Tag.NumberOfFrames,
+            Tag.Rows,
+            Tag.Columns,
+            Tag.BitsAllocated,
+            Tag.BitsStored,
+            Tag.HighBit,
+            Tag.PixelRepresentation
+    };
 
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -401,7 +425,8 @@ public class Instance {
         return attributesBlob.getAttributes();
     }
 
-    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr) {
+    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr,
+                              boolean encodeWithTagIndex) {
         sopInstanceUID = attrs.getString(Tag.SOPInstanceUID);
         sopClassUID = attrs.getString(Tag.SOPClassUID);
         instanceNumber = getInt(attrs, Tag.InstanceNumber, null);
@@ -427,13 +452,29 @@ public class Instance {
         instanceCustomAttribute3 =
                 AttributeFilter.selectStringValue(attrs, filter.getCustomAttribute3(), "*");
 
+        Attributes blobAttrs = new Attributes(attrs, filter.getSelection());
+        if (numberOfFrames != null && numberOfFrames > 0)
+            blobAttrs.addSelected(attrs, IMAGE_PIXEL_DESCRIPTION);
         if (attributesBlob == null)
-            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()));
+            attributesBlob = new AttributesBlob(blobAttrs, encodeWithTagIndex);
         else
-            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()));
+            attributesBlob.setAttributes(blobAttrs, encodeWithTagIndex);
         updatedTime = new Date();
     }
 
+    /**
+     * Returns {@code true} if {@code attrs} contains the Image Pixel Description attributes required to calculate the
+     * length of uncompressed frames. Attributes of images stored before the Image Pixel Description attributes were
+     * stored independently of the configured Attribute Filter may lack them.
+     */
+    public static boolean containsImagePixelDescription(Attributes attrs) {
+        return attrs.containsValue(Tag.SamplesPerPixel)
+                && attrs.containsValue(Tag.PhotometricInterpretation)
+                && attrs.containsValue(Tag.Rows)
+                && attrs.containsValue(Tag.Columns)
+                && attrs.containsValue(Tag.BitsAllocated);
+    }
+
     private Integer getInt(Attributes attrs, int tag, String defVal) {
         String val = attrs.getString(tag, defVal);
         if (val != null)
@@ -40,6 +40,7 @@
 
 package org.dcm4chee.arc.entity;
 
+import org.dcm4che3.data.UID;
 import org.dcm4che3.util.TagUtils;
 
 import javax.persistence.*;
@@ -78,7 +79,9 @@ import java.util.Date;
         @NamedQuery(name = Location.COUNT_BY_MULTI_REF,
                 query = "select count(l) from Location l where l.multiReference=?1"),
         @NamedQuery(name = Location.COUNT_BY_UIDMAP,
-                query = "select count(l) from Location l where l.uidMap=?1")
+                query = "select count(l) from Location l where l.uidMap=?1"),
+        @NamedQuery(name = Location.UPDATE_VERIFIED_TIME,
+                query = "update Location l set l.verifiedTime=?1 where l.pk in ?2")
 })
 public class Location {
 
@@ -91,6 +94,7 @@ public class Location {
     public static final String FIND_BY_CONCEPT_NAME_CODE_BEFORE = "Location.FindByConceptNameCodeBefore";
     public static final String COUNT_BY_MULTI_REF = "Location.CountByMultiRef";
     public static final String COUNT_BY_UIDMAP = "Location.CountByUIDMap";
+    public static final String UPDATE_VERIFIED_TIME = "Location.UpdateVerifiedTime";
 
     public enum Status { OK, TO_DELETE, FAILED_TO_DELETE }
 
@@ -136,6 +140,15 @@ public class Location {
     @Column(name = "object_type", updatable = false)
     private ObjectType objectType;
 
+    @Basic(optional = true)
+    @Column(name = "pixeldata_offset", updatable = false)
+    private Long pixelDataOffset;
+
+    @Basic(optional = true)
+    @Temporal(TemporalType.TIMESTAMP)
+    @Column(name = "verified_time")
+    private Date verifiedTime;
+
     @Column(name = "multi_ref", updatable = true)
     private Integer multiReference;
 
@@ -156,6 +169,7 @@ public class Location {
         private String digest;
         private Status status = Status.OK;
         private ObjectType objectType = ObjectType.DICOM_FILE;
+        private Long pixelDataOffset;
 
         public Builder pk(long pk) {
             this.pk = pk;
@@ -201,6 +215,11 @@ public class Location {
             return this;
         }
 
+        public Builder pixelDataOffset(Long pixelDataOffset) {
+            this.pixelDataOffset = pixelDataOffset;
+            return this;
+        }
+
         public Location build() {
             return new Location(this);
         }
@@ -217,6 +236,7 @@ public class Location {
         digest = builder.digest;
         status = builder.status;
         objectType = builder.objectType;
+        pixelDataOffset = builder.pixelDataOffset;
     }
 
     public Location(Location other) {
@@ -228,6 +248,8 @@ public class Location {
         this.digest = other.digest;
         this.status = other.status;
         this.objectType = other.objectType;
+        this.pixelDataOffset = other.pixelDataOffset;
+        this.verifiedTime = other.verifiedTime;
         this.multiReference = other.multiReference;
     }
 
@@ -276,6 +298,27 @@ public class Location {
         return objectType;
     }
 
+    public Long getPixelDataOffset() {
+        return pixelDataOffset;
+    }
+
+    /**
+     * Returns the offset of the Pixel Data value in the DICOM file, if it was recorded and the Pixel Data is encoded
+     * uncompressed in little endian byte order, so frames can be read at their offset without decoding; otherwise
+     * {@code null}.
+     */
+    public Long getNativePixelDataOffset() {
+        return objectType == ObjectType.DICOM_FILE
+                && (UID.ExplicitVRLittleEndian.equals(transferSyntaxUID)
+                    || UID.ImplicitVRLittleEndian.equals(transferSyntaxUID))
+                ? pixelDataOffset
+                : null;
+    }
+
+    public Date getVerifiedTime() {
+        return verifiedTime;
+    }
+
     public Integer getMultiReference() {
         return multiReference;
     }
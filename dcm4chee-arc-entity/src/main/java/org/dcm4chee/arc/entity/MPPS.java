@@ -233,7 +233,7 @@ public class MPPS {
         this.patient = patient;
     }
 
-    public void setAttributes(Attributes attrs, AttributeFilter filter) {
+    public void setAttributes(Attributes attrs, AttributeFilter filter, boolean encodeWithTagIndex) {
         Attributes ssa = attrs.getNestedDataset(Tag.ScheduledStepAttributesSequence);
         String cs = attrs.getString(Tag.PerformedProcedureStepStatus);
         status = IN_PROGRESS.equals(cs) ? Status.IN_PROGRESS : Status.valueOf(cs);
@@ -242,8 +242,8 @@ public class MPPS {
         studyInstanceUID = ssa.getString(Tag.StudyInstanceUID);
         accessionNumber = ssa.getString(Tag.AccessionNumber, "*");
         if (attributesBlob == null)
-            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()));
+            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         else
-            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()));
+            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
     }
 }
@@ -272,7 +272,8 @@ public class MWLItem {
         return attributesBlob.getAttributes();
     }
 
-    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr) {
+    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr,
+                              boolean encodeWithTagIndex) {
         Attributes spsItem = attrs
                 .getNestedDataset(Tag.ScheduledProcedureStepSequence);
         if (spsItem == null) {
@@ -300,9 +301,9 @@ public class MWLItem {
         accessionNumber = attrs.getString(Tag.AccessionNumber, "*");
 
         if (attributesBlob == null)
-            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()));
+            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         else
-            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()));
+            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
 
         updatedTime = new Date();
     }
@@ -281,7 +281,8 @@ public class Patient {
         return attributesBlob.getAttributes();
     }
 
-    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr) {
+    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr,
+                              boolean encodeWithTagIndex) {
         patientName = PersonName.valueOf(
                 attrs.getString(Tag.PatientName), fuzzyStr, patientName);
         patientBirthDate = attrs.getString(Tag.PatientBirthDate, "*");
@@ -295,9 +296,9 @@ public class Patient {
             AttributeFilter.selectStringValue(attrs, filter.getCustomAttribute3(), "*");
 
         if (attributesBlob == null)
-            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()));
+            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         else
-            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()));
+            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
 
         responsiblePerson = PersonName.valueOf(
                 attrs.getString(Tag.ResponsiblePerson), fuzzyStr, responsiblePerson);
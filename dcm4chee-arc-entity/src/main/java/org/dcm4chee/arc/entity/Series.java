@@ -132,6 +132,11 @@ import java.util.Date;
         name=Series.SERIES_IUIDS_OF_STUDY,
         query="select se.study.studyInstanceUID, se.seriesInstanceUID from Series se " +
                 "where se.study.studyInstanceUID = ?1"),
+@NamedQuery(
+        name=Series.UPDATE_EXTERNAL_RETRIEVE_AET,
+        query="update Series se set se.externalRetrieveAET = ?1, " +
+                "se.updatedTime = CURRENT_TIMESTAMP, se.version = se.version + 1 " +
+                "where se.pk in ?2"),
 })
 @Entity
 @Table(name = "series",
@@ -170,6 +175,7 @@ public class Series {
     public static final String FIND_SERIES_OF_STUDY = "Series.FindSeriesOfStudy";
     public static final String COUNT_SERIES_OF_STUDY_WITH_OTHER_REJECTION_STATE = "Series.countSeriesOfStudyWithOtherRejectionState";
     public static final String SERIES_IUIDS_OF_STUDY = "Series.seriesIUIDsOfStudy";
+    public static final String UPDATE_EXTERNAL_RETRIEVE_AET = "Series.updateExternalRetrieveAET";
 
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -472,7 +478,8 @@ public class Series {
         return attributesBlob.getAttributes();
     }
 
-    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr) {
+    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr,
+                              boolean encodeWithTagIndex) {
         seriesInstanceUID = attrs.getString(Tag.SeriesInstanceUID);
         seriesNumber = getInt(attrs, Tag.SeriesNumber);
         seriesDescription = attrs.getString(Tag.SeriesDescription, "*");
@@ -512,9 +519,9 @@ public class Series {
             AttributeFilter.selectStringValue(attrs, filter.getCustomAttribute3(), "*");
 
         if (attributesBlob == null)
-            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()));
+            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         else
-            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()));
+            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         updatedTime = new Date();
     }
 
@@ -0,0 +1,108 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.entity;
+
+import javax.persistence.*;
+
+/**
+ * Location of the aggregated metadata of the instances of a series on the metadata storage, built on the first
+ * WADO-RS metadata request for the series and removed on storing, rejecting or deleting instances of the series.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@NamedQueries({
+@NamedQuery(
+    name = SeriesMetadata.FIND_BY_SERIES,
+    query = "select m from SeriesMetadata m where m.series = ?1"),
+@NamedQuery(
+    name = SeriesMetadata.FIND_LOCATION_BY_SERIES_IUID,
+    query = "select m.location from SeriesMetadata m " +
+            "where m.series.study.studyInstanceUID = ?1 " +
+            "and m.series.seriesInstanceUID = ?2")
+})
+@Entity
+@Table(name = "series_metadata")
+public class SeriesMetadata {
+
+    public static final String FIND_BY_SERIES = "SeriesMetadata.findBySeries";
+    public static final String FIND_LOCATION_BY_SERIES_IUID = "SeriesMetadata.findLocationBySeriesIUID";
+
+    @Id
+    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @Column(name = "pk")
+    private long pk;
+
+    @OneToOne(optional = false)
+    @JoinColumn(name = "location_fk", updatable = false)
+    private Location location;
+
+    @OneToOne(optional = false)
+    @JoinColumn(name = "series_fk", updatable = false)
+    private Series series;
+
+    public long getPk() {
+        return pk;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public void setLocation(Location location) {
+        this.location = location;
+    }
+
+    public Series getSeries() {
+        return series;
+    }
+
+    public void setSeries(Series series) {
+        this.series = series;
+    }
+
+    @Override
+    public String toString() {
+        return "SeriesMetadata[pk=" + pk
+                + ", location=" + location
+                + "]";
+    }
+}
@@ -113,7 +113,12 @@ import java.util.*;
 @NamedQuery(
     name = Study.FIND_BY_ACCESS_TIME_AND_ACCESS_CONTROL_ID,
     query = "select st from Study st " +
-            "where st.accessControlID = ?1 and st.accessTime = ?2")
+            "where st.accessControlID = ?1 and st.accessTime = ?2"),
+@NamedQuery(
+    name=Study.UPDATE_EXTERNAL_RETRIEVE_AET,
+    query="update Study st set st.externalRetrieveAET = ?1, " +
+            "st.updatedTime = CURRENT_TIMESTAMP, st.accessTime = CURRENT_TIMESTAMP, st.version = st.version + 1 " +
+            "where st.pk = ?2")
 })
 @Entity
 @Table(name = "study",
@@ -150,6 +155,7 @@ public class Study {
     public static final String COUNT_STUDIES_OF_PATIENT = "Study.CountStudiesOfPatient";
     public static final String GET_EXPIRED_STUDIES = "Study.GetExpiredStudies";
     public static final String FIND_BY_ACCESS_TIME_AND_ACCESS_CONTROL_ID = "Study.FindByAccessTimeAndAccessControlID";
+    public static final String UPDATE_EXTERNAL_RETRIEVE_AET = "Study.UpdateExternalRetrieveAET";
 
     @Id
     @GeneratedValue(strategy=GenerationType.IDENTITY)
@@ -459,7 +465,8 @@ public class Study {
         this.patient = patient;
     }
 
-    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr) {
+    public void setAttributes(Attributes attrs, AttributeFilter filter, FuzzyStr fuzzyStr,
+                              boolean encodeWithTagIndex) {
         studyInstanceUID = attrs.getString(Tag.StudyInstanceUID);
         studyID = attrs.getString(Tag.StudyID, "*");
         studyDescription = attrs.getString(Tag.StudyDescription, "*");
@@ -485,9 +492,9 @@ public class Study {
             AttributeFilter.selectStringValue(attrs, filter.getCustomAttribute3(), "*");
 
         if (attributesBlob == null)
-            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()));
+            attributesBlob = new AttributesBlob(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         else
-            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()));
+            attributesBlob.setAttributes(new Attributes(attrs, filter.getSelection()), encodeWithTagIndex);
         updatedTime = new Date();
     }
 }
@@ -0,0 +1,9 @@
+alter table location add pixeldata_offset bigint;
+alter table location add verified_time datetime;
+alter table dicomattrs add tag_index bit;
+
+create table series_metadata (pk bigint not null auto_increment, location_fk bigint not null, series_fk bigint not null, primary key (pk));
+alter table series_metadata add constraint UK_ch58ikla39r95r4pi7fgf6qm7  unique (location_fk);
+alter table series_metadata add constraint UK_5fx3s8a5uwdhq3ikakqhvr9fp  unique (series_fk);
+alter table series_metadata add constraint FK_ch58ikla39r95r4pi7fgf6qm7 foreign key (location_fk) references location;
+alter table series_metadata add constraint FK_5fx3s8a5uwdhq3ikakqhvr9fp foreign key (series_fk) references series;
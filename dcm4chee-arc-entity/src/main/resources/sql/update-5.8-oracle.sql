@@ -0,0 +1,11 @@
+alter table location add pixeldata_offset number(19,0);
+alter table location add verified_time timestamp;
+alter table dicomattrs add tag_index number(1,0);
+
+create table series_metadata (pk number(19,0) not null, location_fk number(19,0) not null, series_fk number(19,0) not null, primary key (pk));
+alter table series_metadata add constraint UK_ch58ikla39r95r4pi7fgf6qm7  unique (location_fk);
+alter table series_metadata add constraint UK_5fx3s8a5uwdhq3ikakqhvr9fp  unique (series_fk);
+alter table series_metadata add constraint FK_ch58ikla39r95r4pi7fgf6qm7 foreign key (location_fk) references location;
+alter table series_metadata add constraint FK_5fx3s8a5uwdhq3ikakqhvr9fp foreign key (series_fk) references series;
+
+create sequence series_metadata_pk_seq;
@@ -0,0 +1,11 @@
+alter table location add pixeldata_offset int8;
+alter table location add verified_time timestamp;
+alter table dicomattrs add tag_index boolean;
+
+create table series_metadata (pk int8 not null, location_fk int8 not null, series_fk int8 not null, primary key (pk));
+alter table series_metadata add constraint UK_ch58ikla39r95r4pi7fgf6qm7  unique (location_fk);
+alter table series_metadata add constraint UK_5fx3s8a5uwdhq3ikakqhvr9fp  unique (series_fk);
+alter table series_metadata add constraint FK_ch58ikla39r95r4pi7fgf6qm7 foreign key (location_fk) references location;
+alter table series_metadata add constraint FK_5fx3s8a5uwdhq3ikakqhvr9fp foreign key (series_fk) references series;
+
+create sequence series_metadata_pk_seq;
@@ -0,0 +1,140 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2026
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.entity;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class AttributesBlobTest {
+
+    private static final String PRIVATE_CREATOR = "PRIVATE CREATOR";
+    private static final int PRIVATE_TAG = 0x00990001;
+    private static final int PRIVATE_CREATOR_TAG = 0x00990010;
+
+    private static Attributes attrs() {
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SpecificCharacterSet, VR.CS, "ISO_IR 100");
+        attrs.setString(Tag.StudyDate, VR.DA, "20261017");
+        attrs.setString(Tag.AccessionNumber, VR.SH, "A12345");
+        attrs.setString(Tag.Modality, VR.CS, "CT");
+        attrs.setString(Tag.ReferringPhysicianName, VR.PN, "M\u00fcller^Hans");
+        Attributes item = new Attributes();
+        item.setString(Tag.CodeValue, VR.SH, "T-A0100");
+        item.setString(Tag.CodingSchemeDesignator, VR.SH, "SRT");
+        attrs.newSequence(Tag.AnatomicRegionSequence, 1).add(item);
+        attrs.setString(PRIVATE_CREATOR, PRIVATE_TAG, VR.LO, "private value");
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, "1.2.3.4");
+        return attrs;
+    }
+
+    @Test
+    public void encodeWithoutTagIndex() {
+        Attributes attrs = attrs();
+        byte[] b = AttributesBlob.encodeAttributes(attrs, false);
+        assertFalse(AttributesBlob.isEncodedWithTagIndex(b));
+        assertEquals(attrs, AttributesBlob.decodeAttributes(b, null));
+    }
+
+    @Test
+    public void encodeWithTagIndex() {
+        Attributes attrs = attrs();
+        byte[] b = AttributesBlob.encodeAttributes(attrs, true);
+        assertTrue(AttributesBlob.isEncodedWithTagIndex(b));
+        assertEquals(attrs, AttributesBlob.decodeAttributes(b, null));
+    }
+
+    @Test
+    public void setAttributes() {
+        AttributesBlob blob = new AttributesBlob(attrs(), true);
+        assertTrue(blob.isEncodedWithTagIndex());
+        assertEquals(Boolean.TRUE, blob.getTagIndex());
+        blob.setAttributes(blob.getAttributes(), false);
+        assertFalse(blob.isEncodedWithTagIndex());
+        assertEquals(Boolean.FALSE, blob.getTagIndex());
+        assertEquals(attrs(), AttributesBlob.decodeAttributes(blob.getEncodedAttributes(), null));
+    }
+
+    @Test
+    public void decodeSelectedAttributes() {
+        int[] tags = { Tag.AccessionNumber, Tag.ReferringPhysicianName, Tag.AnatomicRegionSequence };
+        Attributes selected = AttributesBlob.decodeSelectedAttributes(
+                AttributesBlob.encodeAttributes(attrs(), true), tags);
+        assertEquals(5, selected.size());
+        assertEquals("ISO_IR 100", selected.getString(Tag.SpecificCharacterSet));
+        assertEquals("A12345", selected.getString(Tag.AccessionNumber));
+        assertEquals("M\u00fcller^Hans", selected.getString(Tag.ReferringPhysicianName));
+        assertEquals("SRT", selected.getNestedDataset(Tag.AnatomicRegionSequence)
+                .getString(Tag.CodingSchemeDesignator));
+        assertEquals(PRIVATE_CREATOR, selected.getString(PRIVATE_CREATOR_TAG));
+        assertNull(selected.getString(Tag.StudyDate));
+        assertNull(selected.getString(Tag.StudyInstanceUID));
+        assertNull(selected.getString(PRIVATE_CREATOR, PRIVATE_TAG));
+    }
+
+    @Test
+    public void decodeSelectedAttributesWithoutTagIndex() {
+        Attributes attrs = attrs();
+        byte[] b = AttributesBlob.encodeAttributes(attrs, false);
+        assertEquals(attrs, AttributesBlob.decodeSelectedAttributes(b, new int[]{ Tag.AccessionNumber }));
+    }
+
+    @Test
+    public void decodeSelectedAllAttributes() {
+        Attributes attrs = attrs();
+        byte[] b = AttributesBlob.encodeAttributes(attrs, true);
+        assertEquals(attrs, AttributesBlob.decodeSelectedAttributes(b, null));
+    }
+
+    @Test
+    public void decodeEmpty() {
+        assertTrue(AttributesBlob.decodeAttributes(null, null).isEmpty());
+        assertTrue(AttributesBlob.decodeAttributes(new byte[0], null).isEmpty());
+        assertFalse(AttributesBlob.isEncodedWithTagIndex(new byte[0]));
+    }
+}
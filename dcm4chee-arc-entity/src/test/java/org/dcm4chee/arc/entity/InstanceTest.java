@@ -0,0 +1,150 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2026
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.entity;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.VR;
+import org.dcm4che3.imageio.codec.ImageDescriptor;
+import org.dcm4chee.arc.conf.AttributeFilter;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class InstanceTest {
+
+    // Instance Attribute Filter of the default configuration
+    private static final AttributeFilter DEFAULT_FILTER = new AttributeFilter(
+            Tag.SpecificCharacterSet,
+            Tag.ImageType,
+            Tag.SOPClassUID,
+            Tag.SOPInstanceUID,
+            Tag.ContentDate,
+            Tag.ContentTime,
+            Tag.ReferencedSeriesSequence,
+            Tag.InstanceNumber,
+            Tag.NumberOfFrames,
+            Tag.Rows,
+            Tag.Columns,
+            Tag.BitsAllocated,
+            Tag.ObservationDateTime,
+            Tag.ConceptNameCodeSequence,
+            Tag.VerifyingObserverSequence,
+            Tag.ReferencedRequestSequence,
+            Tag.CompletionFlag,
+            Tag.VerificationFlag,
+            Tag.ContentTemplateSequence,
+            Tag.DocumentTitle,
+            Tag.MIMETypeOfEncapsulatedDocument,
+            Tag.ContentLabel,
+            Tag.ContentDescription,
+            Tag.PresentationCreationDate,
+            Tag.PresentationCreationTime,
+            Tag.ContentCreatorName,
+            Tag.IdenticalDocumentsSequence,
+            Tag.CurrentRequestedProcedureEvidenceSequence);
+
+    private static Attributes image(String photometric, int frames) {
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.7.4");
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4.5");
+        attrs.setInt(Tag.SamplesPerPixel, VR.US, 3);
+        attrs.setString(Tag.PhotometricInterpretation, VR.CS, photometric);
+        attrs.setInt(Tag.PlanarConfiguration, VR.US, 0);
+        attrs.setInt(Tag.NumberOfFrames, VR.IS, frames);
+        attrs.setInt(Tag.Rows, VR.US, 256);
+        attrs.setInt(Tag.Columns, VR.US, 512);
+        attrs.setInt(Tag.BitsAllocated, VR.US, 8);
+        attrs.setInt(Tag.BitsStored, VR.US, 8);
+        attrs.setInt(Tag.HighBit, VR.US, 7);
+        attrs.setInt(Tag.PixelRepresentation, VR.US, 0);
+        return attrs;
+    }
+
+    private static Attributes store(Attributes attrs) {
+        Instance instance = new Instance();
+        instance.setAttributes(attrs, DEFAULT_FILTER, null, false);
+        return instance.getAttributes();
+    }
+
+    @Test
+    public void storeRGBImageThroughDefaultFilter() {
+        assertTrue(Arrays.binarySearch(DEFAULT_FILTER.getSelection(), Tag.SamplesPerPixel) < 0);
+        assertTrue(Arrays.binarySearch(DEFAULT_FILTER.getSelection(), Tag.PhotometricInterpretation) < 0);
+        Attributes attrs = store(image("RGB", 4));
+        assertTrue(Instance.containsImagePixelDescription(attrs));
+        assertEquals(3, attrs.getInt(Tag.SamplesPerPixel, 0));
+        assertEquals(4, attrs.getInt(Tag.NumberOfFrames, 0));
+        assertEquals(256 * 512 * 3, new ImageDescriptor(attrs).getFrameLength());
+    }
+
+    @Test
+    public void storeYBRFull422ImageThroughDefaultFilter() {
+        Attributes attrs = store(image("YBR_FULL_422", 1));
+        assertTrue(Instance.containsImagePixelDescription(attrs));
+        assertEquals(256 * 512 * 2, new ImageDescriptor(attrs).getFrameLength());
+    }
+
+    @Test
+    public void storeNonImageThroughDefaultFilter() {
+        Attributes attrs = new Attributes();
+        attrs.setString(Tag.SOPClassUID, VR.UI, "1.2.840.10008.5.1.4.1.1.104.1");
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, "1.2.3.4.6");
+        attrs.setInt(Tag.SamplesPerPixel, VR.US, 1);
+        attrs.setString(Tag.PhotometricInterpretation, VR.CS, "MONOCHROME2");
+        Attributes stored = store(attrs);
+        assertFalse(stored.contains(Tag.SamplesPerPixel));
+        assertFalse(Instance.containsImagePixelDescription(stored));
+    }
+
+    @Test
+    public void missingImagePixelDescription() {
+        Attributes attrs = new Attributes(image("RGB", 1), DEFAULT_FILTER.getSelection());
+        assertFalse(Instance.containsImagePixelDescription(attrs));
+        assertEquals(0, new ImageDescriptor(attrs).getFrameLength());
+    }
+}
@@ -48,10 +48,22 @@ package org.dcm4chee.arc.monitor.rs;
 import org.dcm4che3.net.Association;
 import org.dcm4che3.net.Device;
 import org.dcm4che3.net.Dimse;
+import org.dcm4chee.arc.AttributesCache;
+import org.dcm4chee.arc.FrameCache;
+import org.dcm4chee.arc.MetadataCache;
+import org.dcm4chee.arc.FrameIndexCache;
+import org.dcm4chee.arc.Cache;
+import org.dcm4chee.arc.LeadingCFindSCPQueryCache;
+import org.dcm4chee.arc.StorePermissionCache;
+import org.dcm4chee.arc.storage.StorageFactory;
+import org.dcm4chee.arc.storage.StorageMetrics;
+import org.dcm4chee.arc.store.StorePermissionService;
 import org.jboss.resteasy.annotations.cache.NoCache;
 
 import javax.enterprise.context.RequestScoped;
 import javax.inject.Inject;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
@@ -70,6 +82,30 @@ public class ArchiveMonitor {
     @Inject
     private Device device;
 
+    @Inject
+    private StorePermissionCache storePermissionCache;
+
+    @Inject
+    private LeadingCFindSCPQueryCache leadingCFindSCPQueryCache;
+
+    @Inject
+    private AttributesCache attributesCache;
+
+    @Inject
+    private FrameIndexCache frameIndexCache;
+
+    @Inject
+    private FrameCache frameCache;
+
+    @Inject
+    private MetadataCache metadataCache;
+
+    @Inject
+    private StorePermissionService storePermissionService;
+
+    @Inject
+    private StorageFactory storageFactory;
+
     @GET
     @NoCache
     @Path("associations")
@@ -121,6 +157,100 @@ public class ArchiveMonitor {
         throw new WebApplicationException(Response.Status.NOT_FOUND);
     }
 
+    @GET
+    @NoCache
+    @Path("caches")
+    @Produces("application/json")
+    public StreamingOutput listCaches() throws Exception {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                JsonGenerator gen = Json.createGenerator(out);
+                gen.writeStartArray();
+                writeCache(gen, "StorePermissionCache", storePermissionCache);
+                writeCache(gen, "LeadingCFindSCPQueryCache", leadingCFindSCPQueryCache);
+                writeCache(gen, "AttributesCache", attributesCache);
+                writeCache(gen, "FrameIndexCache", frameIndexCache);
+                writeCache(gen, "FrameCache", frameCache);
+                writeCache(gen, "MetadataCache", metadataCache);
+                gen.writeEnd();
+                gen.flush();
+            }
+        };
+    }
+
+    @DELETE
+    @Path("caches")
+    public void resetCacheStatistics() {
+        storePermissionCache.resetStatistics();
+        leadingCFindSCPQueryCache.resetStatistics();
+        attributesCache.resetStatistics();
+        frameIndexCache.resetStatistics();
+        frameCache.resetStatistics();
+        metadataCache.resetStatistics();
+    }
+
+    @GET
+    @NoCache
+    @Path("store-permission-service")
+    @Produces("application/json")
+    public StreamingOutput getStorePermissionServiceLatency() throws Exception {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                JsonGenerator gen = Json.createGenerator(out);
+                storePermissionService.getLatencyHistogram().writeTo(gen);
+                gen.flush();
+            }
+        };
+    }
+
+    @DELETE
+    @Path("store-permission-service")
+    public void resetStorePermissionServiceLatency() {
+        storePermissionService.getLatencyHistogram().reset();
+    }
+
+    @GET
+    @NoCache
+    @Path("storage")
+    @Produces("application/json")
+    public StreamingOutput listStorageMetrics() throws Exception {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                JsonGenerator gen = Json.createGenerator(out);
+                gen.writeStartArray();
+                for (StorageMetrics metrics : storageFactory.getMetrics())
+                    metrics.writeTo(gen);
+                gen.writeEnd();
+                gen.flush();
+            }
+        };
+    }
+
+    @DELETE
+    @Path("storage")
+    public void resetStorageMetrics() {
+        storageFactory.resetMetrics();
+    }
+
+    private static void writeCache(JsonGenerator gen, String name, Cache<?,?> cache) {
+        gen.writeStartObject();
+        gen.write("name", name);
+        gen.write("size", cache.size());
+        gen.write("maxSize", cache.getMaxSize());
+        if (cache.getMaxWeight() > 0) {
+            gen.write("weight", cache.weight());
+            gen.write("maxWeight", cache.getMaxWeight());
+        }
+        gen.write("staleTimeout", cache.getStaleTimeout());
+        gen.write("hits", cache.getHits());
+        gen.write("misses", cache.getMisses());
+        gen.write("evictions", cache.getEvictions());
+        gen.writeEnd();
+    }
+
     private void writeOtherProperties(Writer w, Association as) throws IOException {
         for (String key : as.getPropertyNames()) {
             Object value = as.getProperty(key);
@@ -99,7 +99,7 @@ public class MPPSServiceEJB {
         }
         mpps.setPatient(pat);
         mpps.setDiscontinuationReasonCode(discontinuationReasonCodeOf(attrs));
-        mpps.setAttributes(attrs, filter);
+        mpps.setAttributes(attrs, filter, arcDev.isEncodeAttributesWithTagIndex());
         em.persist(mpps);
         return mpps;
     }
@@ -114,7 +114,7 @@ public class MPPSServiceEJB {
         Attributes attrs = mpps.getAttributes();
         if (attrs.updateSelected(Attributes.UpdatePolicy.OVERWRITE, ctx.getAttributes(), null, filter.getSelection())) {
             mpps.setDiscontinuationReasonCode(discontinuationReasonCodeOf(attrs));
-            mpps.setAttributes(attrs, filter);
+            mpps.setAttributes(attrs, filter, arcDev.isEncodeAttributesWithTagIndex());
         }
         return mpps;
     }
@@ -60,6 +60,8 @@ public interface PatientMgtContext {
 
     FuzzyStr getFuzzyStr();
 
+    boolean isEncodeAttributesWithTagIndex();
+
     Association getAssociation();
 
     HttpServletRequest getHttpRequest();
@@ -65,6 +65,7 @@ public class PatientMgtContextImpl implements PatientMgtContext {
 
     private final AttributeFilter attributeFilter;
     private final FuzzyStr fuzzyStr;
+    private final boolean encodeAttributesWithTagIndex;
     private final HttpServletRequest httpRequest;
     private final ApplicationEntity ae;
     private final Association as;
@@ -84,6 +85,7 @@ public class PatientMgtContextImpl implements PatientMgtContext {
         ArchiveDeviceExtension arcDev = device.getDeviceExtension(ArchiveDeviceExtension.class);
         this.attributeFilter = arcDev.getAttributeFilter(Entity.Patient);
         this.fuzzyStr = arcDev.getFuzzyStr();
+        this.encodeAttributesWithTagIndex = arcDev.isEncodeAttributesWithTagIndex();
         this.httpRequest = httpRequest;
         this.ae = ae;
         this.as = as;
@@ -108,6 +110,11 @@ public class PatientMgtContextImpl implements PatientMgtContext {
         return fuzzyStr;
     }
 
+    @Override
+    public boolean isEncodeAttributesWithTagIndex() {
+        return encodeAttributesWithTagIndex;
+    }
+
     @Override
     public Association getAssociation() {
         return as;
@@ -115,7 +115,8 @@ public class PatientServiceEJB {
 
     private Patient createPatient(PatientMgtContext ctx, IDWithIssuer patientID, Attributes attributes) {
         Patient patient = new Patient();
-        patient.setAttributes(attributes, ctx.getAttributeFilter(), ctx.getFuzzyStr());
+        patient.setAttributes(attributes, ctx.getAttributeFilter(), ctx.getFuzzyStr(),
+                ctx.isEncodeAttributesWithTagIndex());
         patient.setPatientID(createPatientID(patientID));
         em.persist(patient);
         LOG.info("{}: Create {}", ctx, patient);
@@ -163,7 +164,8 @@ public class PatientServiceEJB {
         } else if (!attrs.update(updatePolicy, newAttrs, null)) {
             return false;
         }
-        pat.setAttributes(attrs, filter, ctx.getFuzzyStr());
+        pat.setAttributes(attrs, filter, ctx.getFuzzyStr(),
+                ctx.isEncodeAttributesWithTagIndex());
         return true;
     }
 
@@ -74,6 +74,8 @@ public interface ProcedureContext {
 
     FuzzyStr getFuzzyStr();
 
+    boolean isEncodeAttributesWithTagIndex();
+
     Patient getPatient();
 
     void setPatient(Patient pat);
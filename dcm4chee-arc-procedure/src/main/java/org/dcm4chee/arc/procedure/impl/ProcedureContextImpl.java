@@ -65,6 +65,7 @@ import java.util.List;
 public class ProcedureContextImpl implements ProcedureContext {
     private final AttributeFilter attributeFilter;
     private final FuzzyStr fuzzyStr;
+    private final boolean encodeAttributesWithTagIndex;
     private final HttpServletRequest httpRequest;
     private final ApplicationEntity ae;
     private final Socket socket;
@@ -84,6 +85,7 @@ public class ProcedureContextImpl implements ProcedureContext {
         ArchiveDeviceExtension arcDev = device.getDeviceExtension(ArchiveDeviceExtension.class);
         this.attributeFilter = arcDev.getAttributeFilter(Entity.MWL);
         this.fuzzyStr = arcDev.getFuzzyStr();
+        this.encodeAttributesWithTagIndex = arcDev.isEncodeAttributesWithTagIndex();
         this.httpRequest = httpRequest;
         this.ae = ae;
         this.socket = socket;
@@ -108,6 +110,11 @@ public class ProcedureContextImpl implements ProcedureContext {
         return fuzzyStr;
     }
 
+    @Override
+    public boolean isEncodeAttributesWithTagIndex() {
+        return encodeAttributesWithTagIndex;
+    }
+
     @Override
     public Patient getPatient() {
         return patient;
@@ -103,7 +103,8 @@ public class ProcedureServiceEJB {
                 if (mwlItem.getPatient().getPk() != patient.getPk())
                     throw new PatientMismatchException("" + patient + " does not match " +
                             mwlItem.getPatient() + " in previous " + mwlItem);
-                mwlItem.setAttributes(mwlAttrs, ctx.getAttributeFilter(), ctx.getFuzzyStr());
+                mwlItem.setAttributes(mwlAttrs, ctx.getAttributeFilter(), ctx.getFuzzyStr(),
+                        ctx.isEncodeAttributesWithTagIndex());
                 mwlItem.setIssuerOfAccessionNumber(issuerOfAccessionNumber);
             }
         }
@@ -127,7 +128,8 @@ public class ProcedureServiceEJB {
             MWLItem mwlItem = em.createNamedQuery(MWLItem.FIND_BY_STUDY_UID_AND_SPS_ID, MWLItem.class)
                     .setParameter(1, ctx.getStudyInstanceUID())
                     .setParameter(2, spsID).getSingleResult();
-            mwlItem.setAttributes(attrs, ctx.getAttributeFilter(), ctx.getFuzzyStr());
+            mwlItem.setAttributes(attrs, ctx.getAttributeFilter(), ctx.getFuzzyStr(),
+                ctx.isEncodeAttributesWithTagIndex());
             mwlItem.setIssuerOfAccessionNumber(issuerOfAccessionNumber);
             processScheduledStationAETitles(mwlItem, scheduledStationAETitles);
             ctx.setEventActionCode(AuditMessages.EventActionCode.Update);
@@ -190,7 +192,8 @@ public class ProcedureServiceEJB {
                             IssuerEntity issuerOfAccessionNumber, Set<String> scheduledStationAETitles) {
         MWLItem mwlItem = new MWLItem();
         mwlItem.setPatient(patient);
-        mwlItem.setAttributes(attrs, ctx.getAttributeFilter(), ctx.getFuzzyStr());
+        mwlItem.setAttributes(attrs, ctx.getAttributeFilter(), ctx.getFuzzyStr(),
+                ctx.isEncodeAttributesWithTagIndex());
         mwlItem.setIssuerOfAccessionNumber(issuerOfAccessionNumber);
         if (scheduledStationAETitles != null)
             addAllScheduledStationAETsToMWL(scheduledStationAETitles, mwlItem);
@@ -268,7 +271,8 @@ public class ProcedureServiceEJB {
                 if (studyAttr.updateSelected(Attributes.UpdatePolicy.MERGE, mwlAttr, attr, ctx.getAttributeFilter().getSelection())) {
                     if (study.getIssuerOfAccessionNumber() != null && !study.getIssuerOfAccessionNumber().equals(issuerOfAccessionNumber))
                         study.setIssuerOfAccessionNumber(issuerOfAccessionNumber);
-                    study.setAttributes(studyAttr, ctx.getAttributeFilter(), ctx.getFuzzyStr());
+                    study.setAttributes(studyAttr, ctx.getAttributeFilter(), ctx.getFuzzyStr(),
+                            ctx.isEncodeAttributesWithTagIndex());
                     for (Series series : seriesList) {
                         Attributes seriesAttr = series.getAttributes();
                         Sequence rqAttrsSeq = seriesAttr.newSequence(Tag.RequestAttributesSequence, 1);
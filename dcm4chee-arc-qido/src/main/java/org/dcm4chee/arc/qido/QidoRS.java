@@ -57,7 +57,6 @@ import org.dcm4chee.arc.query.QueryContext;
 import org.dcm4chee.arc.query.QueryService;
 import org.dcm4chee.arc.validation.constraints.ValidUriInfo;
 import org.jboss.resteasy.annotations.cache.NoCache;
-import org.jboss.resteasy.plugins.providers.multipart.MultipartRelatedOutput;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -73,10 +72,8 @@ import javax.ws.rs.core.*;
 import javax.xml.transform.stream.StreamResult;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -205,6 +202,14 @@ public class QidoRS {
     @Pattern(regexp = "[1-9]\\d{0,4}")
     private String limit;
 
+    @QueryParam("after")
+    @Pattern(regexp = "[A-Za-z0-9_-]*")
+    private String after;
+
+    @QueryParam("count")
+    @Pattern(regexp = "true|false")
+    private String count;
+
     @QueryParam("withoutstudies")
     @Pattern(regexp = "true|false")
     private String withoutstudies;
@@ -375,8 +380,16 @@ public class QidoRS {
         QueryAttributes queryAttrs = new QueryAttributes(uriInfo);
         QueryContext ctx = newQueryContext(method, queryAttrs, studyInstanceUID, seriesInstanceUID, includetags, model);
         Query query = model.createQuery(service, ctx);
+        boolean closeQuery = true;
+        Throwable failure = null;
         try {
             query.initQuery();
+            if (after != null) {
+                Response response = searchAfter(method, model, queryAttrs, ctx, query, output);
+                closeQuery = !response.hasEntity();
+                return response;
+            }
+
             Response.Status status = Response.Status.OK;
             int maxResults = ctx.getArchiveAEExtension().qidoMaxNumberOfResults();
             int offsetInt = parseInt(offset);
@@ -403,10 +416,75 @@ public class QidoRS {
             if (!query.hasMoreMatches())
                 return Response.ok().build();
 
-            return Response.status(status).entity(output.entity(this, method, query, model)).build();
+            Response response = output.entity(Response.status(status), this, method, query, model).build();
+            closeQuery = false;
+            return response;
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
         } finally {
+            if (closeQuery)
+                close(query, failure);
+        }
+    }
+
+    private static void close(Query query, Throwable failure) {
+        if (failure == null) {
             query.close();
+            return;
+        }
+        try {
+            query.close();
+        } catch (Throwable e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Returns one page of matches after the position identified by query parameter {@code after}, without
+     * counting all matches or skipping previous pages by SQL offset. If further matches follow, the URL of the next
+     * page is provided by a {@code Link} header with relation type {@code next}. The number of all matches is only
+     * returned by header {@code X-Total-Count} of the first page, if requested by query parameter {@code count=true},
+     * and is not passed on to the URL of the next page. It is approximate, because it is counted by a separate query
+     * and includes rows which are filtered afterwards - like empty studies.
+     */
+    private Response searchAfter(String method, Model model, QueryAttributes queryAttrs, QueryContext ctx,
+                                 Query query, Output output) {
+        if (offset != null)
+            throw new WebApplicationException(
+                    "Query parameters offset and after are mutually exclusive", Response.Status.BAD_REQUEST);
+
+        Response.ResponseBuilder builder = Response.ok();
+        if (after.isEmpty() && Boolean.parseBoolean(count))
+            builder.header("X-Total-Count", query.count());
+
+        int maxResults = ctx.getArchiveAEExtension().qidoMaxNumberOfResults();
+        int limitInt = parseInt(limit);
+        if (maxResults > 0 && (limitInt == 0 || limitInt > maxResults))
+            limitInt = maxResults;
+        if (limitInt > 0)
+            query.limit(limitInt);
+
+        query.orderBy(queryAttrs.getOrderSpecifiers(model));
+        String next;
+        try {
+            if (!after.isEmpty())
+                query.seek(after);
+
+            next = query.continuationToken();
+        } catch (IllegalArgumentException e) {
+            throw new WebApplicationException(e.getMessage(), Response.Status.BAD_REQUEST);
         }
+        query.executeQuery();
+        if (!query.hasMoreMatches())
+            return builder.build();
+
+        if (next != null)
+            builder.link(uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("after", next)
+                    .replaceQueryParam("count")
+                    .build(), "next");
+        return output.entity(builder, this, method, query, model).build();
     }
 
     private QueryContext newQueryContext(String method, QueryAttributes queryAttrs, String studyInstanceUID,
@@ -481,6 +559,8 @@ public class QidoRS {
                         break;
                     case "offset":
                     case "limit":
+                    case "after":
+                    case "count":
                     case "withoutstudies":
                     case "fuzzymatching":
                     case "returnempty":
@@ -619,71 +699,84 @@ public class QidoRS {
     private enum Output {
         DICOM_XML {
             @Override
-            Object entity(QidoRS service, String method, Query query, Model model) {
-                return service.writeXML(method, query, model);
+            Response.ResponseBuilder entity(Response.ResponseBuilder builder, QidoRS service, String method,
+                                            Query query, Model model) {
+                String boundary = UUID.randomUUID().toString();
+                return builder.entity(service.writeXML(method, query, model, boundary))
+                        .type(MediaType.valueOf(
+                                "multipart/related;type=\"application/dicom+xml\";boundary=" + boundary));
             }
         },
         JSON {
             @Override
-            Object entity(QidoRS service, String method, Query query, Model model) {
-                return service.writeJSON(method, query, model);
+            Response.ResponseBuilder entity(Response.ResponseBuilder builder, QidoRS service, String method,
+                                            Query query, Model model) {
+                return builder.entity(service.writeJSON(method, query, model));
             }
         };
 
-        abstract Object entity(QidoRS service, String method, Query query, Model model);
+        abstract Response.ResponseBuilder entity(Response.ResponseBuilder builder, QidoRS service, String method,
+                                                 Query query, Model model);
     }
 
-    private Object writeXML(String method, Query query, Model model) {
-        MultipartRelatedOutput output = new MultipartRelatedOutput();
-        int count = 0;
-        while (query.hasMoreMatches()) {
-            Attributes tmp = query.nextMatch();
-            if (tmp == null)
-                continue;
-
-            final Attributes match = adjust(tmp, model, query);
-            LOG.debug("{}: Match #{}:\n{}", method, ++count, match);
-            output.addPart(
-                    new StreamingOutput() {
-                        @Override
-                        public void write(OutputStream out) throws IOException,
-                                WebApplicationException {
-                            try {
-                                SAXTransformer.getSAXWriter(new StreamResult(out)).write(match);
-                            } catch (Exception e) {
-                                throw new WebApplicationException(e);
-                            }
+    /**
+     * Streams matches from the query result iterator as parts of a multipart/related response, closing the
+     * query after the last part was written.
+     */
+    private StreamingOutput writeXML(final String method, final Query query, final Model model,
+                                     final String boundary) {
+        return new StreamingOutput() {
+            @Override
+            public void write(OutputStream out) throws IOException {
+                byte[] delimiter = ("\r\n--" + boundary + "\r\nContent-Type: "
+                        + MediaTypes.APPLICATION_DICOM_XML + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+                int count = 0;
+                try (Query closeQuery = query) {
+                    while (query.hasMoreMatches()) {
+                        Attributes tmp = query.nextMatch();
+                        if (tmp == null)
+                            continue;
+
+                        Attributes match = adjust(tmp, model, query);
+                        LOG.debug("{}: Match #{}:\n{}", method, ++count, match);
+                        out.write(delimiter);
+                        try {
+                            SAXTransformer.getSAXWriter(new StreamResult(out)).write(match);
+                        } catch (Exception e) {
+                            throw new WebApplicationException(e);
                         }
-                    },
-                    MediaTypes.APPLICATION_DICOM_XML_TYPE);
-        }
-        LOG.info("{}: {} Matches", method, count);
-        return output;
+                    }
+                    out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+                }
+                LOG.info("{}: {} Matches", method, count);
+            }
+        };
     }
 
-    private Object writeJSON(String method, Query query, Model model) {
-        final ArrayList<Attributes> matches = new ArrayList<>();
-        int count = 0;
-        while (query.hasMoreMatches()) {
-            Attributes tmp = query.nextMatch();
-            if (tmp == null)
-                continue;
-            Attributes match = adjust(tmp, model, query);
-            LOG.debug("{}: Match #{}:\n{}", method, ++count, match);
-            matches.add(match);
-        }
-        LOG.info("{}: {} Matches", method, count);
+    /**
+     * Streams matches from the query result iterator to the JSON generator, closing the query after the last match
+     * was written.
+     */
+    private StreamingOutput writeJSON(final String method, final Query query, final Model model) {
         return new StreamingOutput() {
             @Override
             public void write(OutputStream out) throws IOException {
-                try (JsonGenerator gen = Json.createGenerator(out)) {
+                int count = 0;
+                try (Query closeQuery = query; JsonGenerator gen = Json.createGenerator(out)) {
                     JSONWriter writer = new JSONWriter(gen);
                     gen.writeStartArray();
-                    for (Attributes match : matches) {
+                    while (query.hasMoreMatches()) {
+                        Attributes tmp = query.nextMatch();
+                        if (tmp == null)
+                            continue;
+
+                        Attributes match = adjust(tmp, model, query);
+                        LOG.debug("{}: Match #{}:\n{}", method, ++count, match);
                         writer.write(match);
                     }
                     gen.writeEnd();
                 }
+                LOG.info("{}: {} Matches", method, count);
             }
         };
     }
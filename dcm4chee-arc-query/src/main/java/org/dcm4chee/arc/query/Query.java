@@ -47,9 +47,10 @@ import org.dcm4che3.data.Attributes;
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @since Aug 2015
  */
-public interface Query {
+public interface Query extends AutoCloseable {
     boolean isOptionalKeysNotSupported();
 
+    @Override
     void close();
 
     void initQuery();
@@ -64,6 +65,25 @@ public interface Query {
 
     void orderBy(OrderSpecifier<?>... orderSpecifiers);
 
+    /**
+     * Restricts the query to matches sorted after the position identified by {@code continuationToken}.
+     *
+     * @throws IllegalArgumentException if {@code continuationToken} is malformed
+     */
+    void seek(String continuationToken);
+
+    /**
+     * Returns an opaque token identifying the position after the last match of the current page, which may be
+     * passed to {@link #seek} to query the next page. Must be invoked after {@link #limit}, {@link #orderBy} and
+     * {@link #seek} and before {@link #executeQuery}. The page is bounded by the returned position instead of by
+     * {@link #limit} then, so it may contain more or less matches, if rows were inserted or deleted in the meantime.
+     * Matches rejected after fetching - e.g. empty studies - are not compensated by further matches, so the page may
+     * also contain less than {@link #limit} matches.
+     *
+     * @return continuation token or {@code null}, if there are no further matches after the current page
+     */
+    String continuationToken();
+
     boolean hasMoreMatches();
 
     Attributes nextMatch();
@@ -55,6 +55,7 @@ import javax.servlet.http.HttpServletRequest;
 import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -82,10 +83,20 @@ public interface QueryService {
 
     Attributes getSeriesAttributes(Long seriesPk, QueryParam queryParam);
 
+    Map<Long, Attributes> getSeriesAttributes(Collection<Long> seriesPks, QueryParam queryParam);
+
     StudyQueryAttributes calculateStudyQueryAttributes(Long studyPk, QueryParam queryParam);
 
     SeriesQueryAttributes calculateSeriesQueryAttributes(Long seriesPk, QueryParam queryParam);
 
+    Map<Long, StudyQueryAttributes> calculateStudyQueryAttributes(
+            Collection<Long> studyPks, QueryParam queryParam);
+
+    Map<Long, SeriesQueryAttributes> calculateSeriesQueryAttributes(
+            Collection<Long> seriesPks, QueryParam queryParam);
+
+    void calculateMissingQueryAttributes(Long studyPk, ApplicationEntity ae);
+
     Attributes getStudyAttributesWithSOPInstanceRefs(
             String studyUID, ApplicationEntity ae, Collection<Attributes> seriesAttrs);
 
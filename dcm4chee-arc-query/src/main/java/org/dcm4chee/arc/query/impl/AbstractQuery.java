@@ -40,15 +40,18 @@
 
 package org.dcm4chee.arc.query.impl;
 
+import com.mysema.commons.lang.CloseableIterator;
+import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
-import com.querydsl.core.types.OrderSpecifier;
+import com.querydsl.core.types.*;
+import com.querydsl.core.types.dsl.*;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
 import org.dcm4chee.arc.query.Query;
 import org.dcm4chee.arc.query.QueryContext;
 import org.hibernate.StatelessSession;
 
-import java.util.Iterator;
+import java.util.*;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -56,14 +59,24 @@ import java.util.Iterator;
  */
 abstract class AbstractQuery implements Query {
 
+    private static final OrderSpecifier<?>[] EMPTY_ORDER_SPECIFIERS = {};
+    private static final int PREFETCH_SIZE = 100;
+
     protected final QueryContext context;
     protected final StatelessSession session;
     private HibernateQuery<Tuple> query;
     private Iterator<Tuple> results;
+    private final ArrayList<Tuple> prefetched = new ArrayList<>(PREFETCH_SIZE);
+    private final ArrayList<Attributes> matches = new ArrayList<>(PREFETCH_SIZE);
+    private int matchIndex;
     private long offset;
     private long limit;
-    private int rejected;
-    private int matches;
+    private OrderSpecifier<?>[] orderSpecifiers = EMPTY_ORDER_SPECIFIERS;
+    private boolean prepared;
+    private ComparableExpressionBase<?>[] keyExprs;
+    private Order[] keyOrders;
+    private Object[] seekKey;
+    private Object[] pageEndKey;
 
     public AbstractQuery(QueryContext context, StatelessSession session) {
         this.context = context;
@@ -78,6 +91,18 @@ abstract class AbstractQuery implements Query {
 
     protected abstract Attributes toAttributes(Tuple results);
 
+    /**
+     * Invoked with the next (up to 100) fetched results before they are passed to {@link #toAttributes}, so
+     * data needed for all of them can be loaded at once.
+     */
+    protected void prefetched(List<Tuple> results) {
+    }
+
+    /**
+     * Returns primary key of the entity of the query level, used as last sort key for keyset pagination.
+     */
+    protected abstract NumberPath<Long> pk();
+
     private void checkQuery() {
         if (query == null)
             throw new IllegalStateException("query not initalized");
@@ -86,11 +111,58 @@ abstract class AbstractQuery implements Query {
     @Override
     public void executeQuery() {
         checkQuery();
-        rejected = 0;
-        matches = 0;
+        closeResults();
+        prepare();
+        if (seekKey != null) {
+            query.where(after(seekKey));
+            seekKey = null;
+        }
+        if (pageEndKey != null) {
+            query.where(new BooleanBuilder(after(pageEndKey)).not());
+            query.getMetadata().setLimit(null);
+            pageEndKey = null;
+        }
         results = offset > 0 ? query.fetch().iterator() : query.iterate();
     }
 
+    /**
+     * Applies the order specifiers. For paged queries the primary key is appended as last sort key and the sort keys
+     * are added to the projection, so the position after each match can be identified by the values of its sort keys.
+     */
+    private void prepare() {
+        if (prepared)
+            return;
+
+        prepared = true;
+        if (limit == 0 && seekKey == null) {
+            query.orderBy(orderSpecifiers);
+            return;
+        }
+
+        int n = orderSpecifiers.length;
+        keyExprs = new ComparableExpressionBase<?>[n + 1];
+        keyOrders = new Order[n + 1];
+        for (int i = 0; i < n; i++) {
+            OrderSpecifier<?> os = orderSpecifiers[i];
+            keyExprs[i] = (ComparableExpressionBase<?>) os.getTarget();
+            keyOrders[i] = os.getOrder();
+            query.orderBy(os.nullsLast());
+        }
+        keyExprs[n] = pk();
+        keyOrders[n] = Order.ASC;
+        query.orderBy(pk().asc());
+
+        List<Expression<?>> projection = new ArrayList<>(
+                ((FactoryExpression<?>) query.getMetadata().getProjection()).getArgs());
+        for (Expression<?> keyExpr : keyExprs)
+            if (!projection.contains(keyExpr))
+                projection.add(keyExpr);
+        query = query.select(projection.toArray(new Expression<?>[projection.size()]));
+
+        if (seekKey != null)
+            ContinuationToken.check(seekKey, keyExprs);
+    }
+
     @Override
     public long count() {
         checkQuery();
@@ -114,28 +186,111 @@ abstract class AbstractQuery implements Query {
     @Override
     public void orderBy(OrderSpecifier<?>... orderSpecifiers) {
         checkQuery();
-        query.orderBy(orderSpecifiers);
+        this.orderSpecifiers = orderSpecifiers;
+    }
+
+    @Override
+    public void seek(String continuationToken) {
+        checkQuery();
+        seekKey = ContinuationToken.decode(continuationToken);
     }
 
+    /**
+     * Probes the sort key values of the last row of the current page and bounds the page query by them, so the page
+     * ends exactly at the position identified by the returned token, even if rows are inserted or deleted before
+     * the page query is executed.
+     */
+    @Override
+    public String continuationToken() {
+        checkQuery();
+        prepare();
+        if (keyExprs == null || limit == 0)
+            return null;
+
+        HibernateQuery<Tuple> probe = query.clone(session).select(keyExprs).offset(offset + limit - 1).limit(2);
+        if (seekKey != null)
+            probe.where(after(seekKey));
+        List<Tuple> keys = probe.fetch();
+        if (keys.size() < 2)
+            return null;
+
+        pageEndKey = keyOf(keys.get(0));
+        return ContinuationToken.encode(pageEndKey);
+    }
+
+    /**
+     * Fetches the next (up to 100) rows and converts them to matches, skipping rows rejected by
+     * {@link #toAttributes}. Rejected rows are not compensated by re-executing the query, so a page bounded by
+     * {@link #limit} or by a continuation token may contain less matches.
+     */
     @Override
     public boolean hasMoreMatches() {
-        boolean hasNext = results.hasNext();
-        if (hasNext || rejected == 0 || limit != matches)
-            return hasNext;
+        while (matchIndex >= matches.size()) {
+            matches.clear();
+            matchIndex = 0;
+            while (prefetched.size() < PREFETCH_SIZE && results.hasNext())
+                prefetched.add(results.next());
+            if (prefetched.isEmpty())
+                return false;
 
-        offset(offset + matches);
-        limit(rejected);
-        executeQuery();
-        return results.hasNext();
+            prefetched(prefetched);
+            for (Tuple tuple : prefetched) {
+                Attributes attrs = toAttributes(tuple);
+                if (attrs != null)
+                    matches.add(attrs);
+            }
+            prefetched.clear();
+        }
+        return true;
     }
 
     @Override
     public Attributes nextMatch() {
-        Attributes attrs = toAttributes(results.next());
-        matches++;
-        if (attrs == null)
-            rejected++;
-        return attrs;
+        if (!hasMoreMatches())
+            throw new NoSuchElementException();
+
+        return matches.get(matchIndex++);
+    }
+
+    private Object[] keyOf(Tuple tuple) {
+        Object[] key = new Object[keyExprs.length];
+        for (int i = 0; i < key.length; i++)
+            key[i] = tuple.get(keyExprs[i]);
+        return key;
+    }
+
+    /**
+     * Returns predicate selecting rows sorted after the row with the specified sort key values, considering
+     * {@code NULL} values sorted last.
+     */
+    private Predicate after(Object[] key) {
+        BooleanBuilder after = new BooleanBuilder();
+        Predicate equal = null;
+        for (int i = 0; i < key.length; i++) {
+            ComparableExpressionBase<?> keyExpr = keyExprs[i];
+            if (key[i] != null)
+                after.or(ExpressionUtils.allOf(equal, after(keyExpr, keyOrders[i], key[i], i < key.length - 1)));
+            equal = ExpressionUtils.allOf(equal, key[i] == null ? keyExpr.isNull() : eq(keyExpr, key[i]));
+        }
+        return after;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate after(ComparableExpressionBase<?> keyExpr, Order order, Object value, boolean nullable) {
+        BooleanExpression after;
+        if (keyExpr instanceof ComparableExpression) {
+            ComparableExpression expr = (ComparableExpression) keyExpr;
+            after = order == Order.ASC ? expr.gt((Comparable) value) : expr.lt((Comparable) value);
+        } else {
+            NumberExpression expr = (NumberExpression) keyExpr;
+            after = order == Order.ASC ? expr.gt((Number) value) : expr.lt((Number) value);
+        }
+        return nullable ? after.or(keyExpr.isNull()) : after;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Predicate eq(ComparableExpressionBase<?> keyExpr, Object value) {
+        return ((SimpleExpression) keyExpr).eq(value);
     }
 
     @Override
@@ -154,6 +309,16 @@ abstract class AbstractQuery implements Query {
 
     @Override
     public void close() {
+        closeResults();
         session.close();
     }
+
+    private void closeResults() {
+        if (results instanceof CloseableIterator)
+            ((CloseableIterator<Tuple>) results).close();
+        results = null;
+        prefetched.clear();
+        matches.clear();
+        matchIndex = 0;
+    }
 }
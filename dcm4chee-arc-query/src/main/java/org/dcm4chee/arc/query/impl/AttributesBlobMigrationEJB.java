@@ -0,0 +1,91 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2015
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.query.impl;
+
+import com.querydsl.jpa.hibernate.HibernateQuery;
+import org.dcm4chee.arc.entity.AttributesBlob;
+import org.dcm4chee.arc.entity.QAttributesBlob;
+import org.hibernate.Session;
+
+import javax.ejb.Stateless;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import java.util.List;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@Stateless
+public class AttributesBlobMigrationEJB {
+
+    @PersistenceContext(unitName = "dcm4chee-arc")
+    private EntityManager em;
+
+    /**
+     * Re-encodes stored attributes with primary key greater than {@code afterPk}, which are not recorded as encoded
+     * with tag index, in ascending order of their primary keys. Attributes are locked before they are re-encoded and
+     * skipped, if they were re-encoded meanwhile - e.g. by another archive node.
+     *
+     * @return primary key of the last checked attributes or {@code -1}, if there were no further attributes
+     */
+    public long migrate(long afterPk, int fetchSize) {
+        QAttributesBlob attributesBlob = QAttributesBlob.attributesBlob;
+        List<Long> pks = new HibernateQuery<Void>(em.unwrap(Session.class))
+                .select(attributesBlob.pk)
+                .from(attributesBlob)
+                .where(attributesBlob.pk.gt(afterPk),
+                        attributesBlob.tagIndex.isNull().or(attributesBlob.tagIndex.isFalse()))
+                .orderBy(attributesBlob.pk.asc())
+                .limit(fetchSize)
+                .fetch();
+        if (pks.isEmpty())
+            return -1L;
+
+        for (Long pk : pks) {
+            AttributesBlob blob = em.find(AttributesBlob.class, pk, LockModeType.PESSIMISTIC_WRITE);
+            if (blob != null && !Boolean.TRUE.equals(blob.getTagIndex()))
+                blob.setAttributes(blob.getAttributes(), true);
+        }
+        return pks.get(pks.size() - 1);
+    }
+}
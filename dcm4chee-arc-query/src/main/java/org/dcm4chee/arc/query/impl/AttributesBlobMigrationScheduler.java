@@ -0,0 +1,113 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2015
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.query.impl;
+
+import org.dcm4che3.net.Device;
+import org.dcm4chee.arc.Scheduler;
+import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
+import org.dcm4chee.arc.conf.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+/**
+ * Re-encodes stored attributes, which are not encoded with tag index, if encoding with tag index is enabled.
+ * Proceeds with the next attributes in order of their primary keys on each run, until all attributes were checked.
+ * The progress is persisted by column {@code tag_index} of the attributes, so the migration resumes after restart and
+ * archive nodes skip attributes already migrated by other nodes. The position reached is only kept in memory to
+ * avoid re-scanning migrated attributes; it is reset when encoding with tag index gets disabled, so the migration is
+ * restarted when it gets enabled again.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class AttributesBlobMigrationScheduler extends Scheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AttributesBlobMigrationScheduler.class);
+
+    @Inject
+    private Device device;
+
+    @Inject
+    private AttributesBlobMigrationEJB ejb;
+
+    private volatile long lastPk;
+    private volatile boolean completed;
+
+    protected AttributesBlobMigrationScheduler() {
+        super(Mode.scheduleWithFixedDelay);
+    }
+
+    @Override
+    protected Logger log() {
+        return LOG;
+    }
+
+    @Override
+    protected Duration getPollingInterval() {
+        ArchiveDeviceExtension arcDev = device.getDeviceExtension(ArchiveDeviceExtension.class);
+        if (arcDev.isEncodeAttributesWithTagIndex())
+            return arcDev.getAttributesBlobMigrationPollingInterval();
+
+        lastPk = 0L;
+        completed = false;
+        return null;
+    }
+
+    @Override
+    protected void execute() {
+        ArchiveDeviceExtension arcDev = device.getDeviceExtension(ArchiveDeviceExtension.class);
+        if (completed || !arcDev.isEncodeAttributesWithTagIndex())
+            return;
+
+        long pk = ejb.migrate(lastPk, arcDev.getAttributesBlobMigrationFetchSize());
+        if (pk < 0) {
+            completed = true;
+            LOG.info("Completed encoding of stored attributes with Tag Index");
+        } else {
+            LOG.debug("Encoded stored attributes with Tag Index up to pk={}", pk);
+            lastPk = pk;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.query.impl;
+
+import com.querydsl.core.types.Expression;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Base64;
+
+/**
+ * Encodes the sort key values of the last match of a page as URL safe continuation token.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+final class ContinuationToken {
+
+    private ContinuationToken() {}
+
+    static String encode(Object[] key) {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bout)) {
+            for (Object value : key) {
+                if (value == null) {
+                    out.writeByte(0);
+                } else if (value instanceof String) {
+                    out.writeByte(1);
+                    out.writeUTF((String) value);
+                } else if (value instanceof Integer) {
+                    out.writeByte(2);
+                    out.writeInt((Integer) value);
+                } else {
+                    out.writeByte(3);
+                    out.writeLong(((Number) value).longValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bout.toByteArray());
+    }
+
+    static Object[] decode(String token) {
+        ArrayList<Object> key = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)))) {
+            int type;
+            while ((type = in.read()) >= 0) {
+                switch (type) {
+                    case 0:
+                        key.add(null);
+                        break;
+                    case 1:
+                        key.add(in.readUTF());
+                        break;
+                    case 2:
+                        key.add(in.readInt());
+                        break;
+                    case 3:
+                        key.add(in.readLong());
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Invalid continuation token: " + token);
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token: " + token);
+        }
+        return key.toArray();
+    }
+
+    /**
+     * Checks if the decoded sort key values match number and types of the sort keys of the query.
+     *
+     * @throws IllegalArgumentException if the values do not match the sort keys
+     */
+    static void check(Object[] key, Expression<?>[] keyExprs) {
+        if (key.length != keyExprs.length)
+            throw new IllegalArgumentException("Invalid continuation token");
+
+        for (int i = 0; i < key.length; i++)
+            if (key[i] != null && !keyExprs[i].getType().isInstance(key[i]))
+                throw new IllegalArgumentException("Invalid continuation token");
+    }
+}
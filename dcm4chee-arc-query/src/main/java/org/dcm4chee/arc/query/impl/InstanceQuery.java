@@ -43,6 +43,7 @@ package org.dcm4chee.arc.query.impl;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Sequence;
@@ -50,12 +51,15 @@ import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
 import org.dcm4che3.dict.archive.ArchiveTag;
 import org.dcm4che3.net.service.QueryRetrieveLevel2;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.entity.*;
 import org.dcm4chee.arc.query.util.QueryBuilder;
 import org.dcm4chee.arc.query.QueryContext;
 import org.hibernate.StatelessSession;
 
+import java.util.*;
+
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @author Vrinda Nayak <vrinda.nayak@j4care.com>
@@ -76,8 +80,8 @@ class InstanceQuery extends AbstractQuery {
             QInstance.instance.attributesBlob.encodedAttributes
     };
 
-    private Long seriesPk;
-    private Attributes seriesAttrs;
+    private Map<Long, Attributes> seriesAttrs = Collections.emptyMap();
+    private int[] returnTags;
 
     public InstanceQuery(QueryContext context, StatelessSession session) {
         super(context, session);
@@ -117,22 +121,38 @@ class InstanceQuery extends AbstractQuery {
         return q.where(predicates);
     }
 
+    @Override
+    protected void prefetched(List<Tuple> results) {
+        Map<Long, Attributes> map = new HashMap<>();
+        Set<Long> seriesPks = new HashSet<>();
+        for (Tuple tuple : results) {
+            Long seriesPk = tuple.get(QSeries.series.pk);
+            Attributes attrs = seriesAttrs.get(seriesPk);
+            if (attrs != null)
+                map.put(seriesPk, attrs);
+            else
+                seriesPks.add(seriesPk);
+        }
+        if (!seriesPks.isEmpty())
+            map.putAll(context.getQueryService().getSeriesAttributes(seriesPks, context.getQueryParam()));
+        seriesAttrs = map;
+    }
+
     @Override
     protected Attributes toAttributes(Tuple results) {
         Long seriesPk = results.get(QSeries.series.pk);
         String retrieveAETs = results.get(QInstance.instance.retrieveAETs);
         Availability availability = results.get(QInstance.instance.availability);
-        if (!seriesPk.equals(this.seriesPk)) {
-            this.seriesAttrs = context.getQueryService()
-                    .getSeriesAttributes(seriesPk, context.getQueryParam());
-            this.seriesPk = seriesPk;
-        }
-        Attributes instAtts = AttributesBlob.decodeAttributes(
-                results.get(QInstance.instance.attributesBlob.encodedAttributes), null);
-        Attributes.unifyCharacterSets(seriesAttrs, instAtts);
-        Attributes attrs = new Attributes(seriesAttrs.size() + instAtts.size() + 2);
-        attrs.addAll(seriesAttrs);
-        attrs.addAll(instAtts);
+        Attributes seriesAttrs = this.seriesAttrs.get(seriesPk);
+        if (seriesAttrs == null)
+            seriesAttrs = context.getQueryService().getSeriesAttributes(seriesPk, context.getQueryParam());
+        Attributes instAtts = AttributesBlob.decodeSelectedAttributes(
+                results.get(QInstance.instance.attributesBlob.encodedAttributes), returnTags());
+        Attributes[] seriesInstAttrs = { seriesAttrs, instAtts };
+        AttributesCache.unifyCharacterSets(seriesInstAttrs);
+        Attributes attrs = new Attributes(seriesInstAttrs[0].size() + seriesInstAttrs[1].size() + 2);
+        attrs.addAll(seriesInstAttrs[0]);
+        attrs.addAll(seriesInstAttrs[1]);
         String externalRetrieveAET = results.get(QInstance.instance.externalRetrieveAET);
         if (externalRetrieveAET != null)
             attrs.setString(Tag.RetrieveAETitle, VR.AE, retrieveAETs, externalRetrieveAET);
@@ -154,6 +174,26 @@ class InstanceQuery extends AbstractQuery {
         return attrs;
     }
 
+    /**
+     * Returns tags of return keys, so only attributes, which will be returned, are decoded from attributes encoded
+     * with tag index, or {@code null} if all attributes shall be returned.
+     */
+    private int[] returnTags() {
+        if (returnTags == null) {
+            Attributes returnKeys = context.getReturnKeys();
+            if (returnKeys == null)
+                return null;
+
+            returnTags = returnKeys.tags();
+        }
+        return returnTags;
+    }
+
+    @Override
+    protected NumberPath<Long> pk() {
+        return QInstance.instance.pk;
+    }
+
     @Override
     public boolean isOptionalKeysNotSupported() {
         //TODO
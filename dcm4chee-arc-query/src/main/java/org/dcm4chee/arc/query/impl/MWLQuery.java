@@ -43,6 +43,7 @@ package org.dcm4chee.arc.query.impl;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
@@ -106,6 +107,11 @@ public class MWLQuery extends AbstractQuery {
         return attrs;
     }
 
+    @Override
+    protected NumberPath<Long> pk() {
+        return QMWLItem.mWLItem.pk;
+    }
+
     @Override
     public boolean isOptionalKeysNotSupported() {
         //TODO
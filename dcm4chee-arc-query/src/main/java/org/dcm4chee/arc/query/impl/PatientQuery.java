@@ -43,12 +43,13 @@ package org.dcm4chee.arc.query.impl;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.VR;
 import org.dcm4che3.dict.archive.ArchiveTag;
-import org.dcm4chee.arc.entity.AttributesBlob;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.entity.QPatient;
 import org.dcm4chee.arc.query.QueryContext;
 import org.dcm4chee.arc.query.util.QueryBuilder;
@@ -65,11 +66,15 @@ class PatientQuery extends AbstractQuery {
             QPatient.patient.numberOfStudies,
             QPatient.patient.createdTime,
             QPatient.patient.updatedTime,
+            QPatient.patient.version,
             QueryBuilder.patientAttributesBlob.encodedAttributes
     };
 
-    public PatientQuery(QueryContext context, StatelessSession session) {
+    private final AttributesCache attributesCache;
+
+    public PatientQuery(QueryContext context, StatelessSession session, AttributesCache attributesCache) {
         super(context, session);
+        this.attributesCache = attributesCache;
     }
 
     @Override
@@ -91,8 +96,12 @@ class PatientQuery extends AbstractQuery {
 
     @Override
     protected Attributes toAttributes(Tuple results) {
-        Attributes patAttrs = AttributesBlob.decodeAttributes(
-                results.get(QueryBuilder.patientAttributesBlob.encodedAttributes), null);
+        Attributes cachedPatAttrs = attributesCache.getAttributes(AttributesCache.Entity.Patient,
+                results.get(QPatient.patient.pk),
+                results.get(QPatient.patient.version),
+                results.get(QueryBuilder.patientAttributesBlob.encodedAttributes));
+        Attributes patAttrs = new Attributes(cachedPatAttrs.size() + 3);
+        patAttrs.addAll(cachedPatAttrs);
         patAttrs.setInt(Tag.NumberOfPatientRelatedStudies, VR.IS, results.get(QPatient.patient.numberOfStudies));
         patAttrs.setDate(ArchiveTag.PrivateCreator, ArchiveTag.PatientCreateDateTime, VR.DT,
                 results.get(QPatient.patient.createdTime));
@@ -101,6 +110,11 @@ class PatientQuery extends AbstractQuery {
         return patAttrs;
     }
 
+    @Override
+    protected NumberPath<Long> pk() {
+        return QPatient.patient.pk;
+    }
+
     @Override
     public boolean isOptionalKeysNotSupported() {
         //TODO
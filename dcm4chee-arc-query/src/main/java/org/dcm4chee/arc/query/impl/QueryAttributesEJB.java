@@ -0,0 +1,88 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2015
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.query.impl;
+
+import org.dcm4chee.arc.entity.Series;
+import org.dcm4chee.arc.entity.SeriesQueryAttributes;
+import org.dcm4chee.arc.entity.Study;
+import org.dcm4chee.arc.entity.StudyQueryAttributes;
+
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Map;
+
+/**
+ * Persists calculated Study and Series Query Attributes in a new transaction, which is committed independently of
+ * the transaction of the query. A batch of Query Attributes records is persisted in one transaction; if it fails
+ * because a record for the same Study or Series and Query/Retrieve View was inserted concurrently - e.g. by the
+ * Query Attributes warm up - the records of the batch may be persisted again each in its own transaction.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+public class QueryAttributesEJB {
+
+    @PersistenceContext(unitName = "dcm4chee-arc")
+    private EntityManager em;
+
+    public void persistStudyQueryAttributes(Map<Long, StudyQueryAttributes> queryAttrsMap) {
+        for (Map.Entry<Long, StudyQueryAttributes> entry : queryAttrsMap.entrySet()) {
+            StudyQueryAttributes queryAttrs = entry.getValue();
+            queryAttrs.setStudy(em.getReference(Study.class, entry.getKey()));
+            em.persist(queryAttrs);
+        }
+        em.flush();
+    }
+
+    public void persistSeriesQueryAttributes(Map<Long, SeriesQueryAttributes> queryAttrsMap) {
+        for (Map.Entry<Long, SeriesQueryAttributes> entry : queryAttrsMap.entrySet()) {
+            SeriesQueryAttributes queryAttrs = entry.getValue();
+            queryAttrs.setSeries(em.getReference(Series.class, entry.getKey()));
+            em.persist(queryAttrs);
+        }
+        em.flush();
+    }
+}
@@ -54,13 +54,19 @@ import org.dcm4che3.data.VR;
 import org.dcm4che3.dict.archive.ArchiveTag;
 import org.dcm4che3.util.StringUtils;
 import org.dcm4che3.util.UIDUtils;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.entity.*;
 import org.dcm4chee.arc.query.util.QueryBuilder;
 import org.dcm4chee.arc.query.util.QueryParam;
 import org.hibernate.Session;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.ejb.EJBException;
 import javax.ejb.Stateless;
+import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.util.*;
@@ -73,13 +79,19 @@ import java.util.*;
 @Stateless
 public class QueryServiceEJB {
 
+    private static final Logger LOG = LoggerFactory.getLogger(QueryServiceEJB.class);
+
     static final Expression<?>[] PATIENT_STUDY_SERIES_ATTRS = {
+        QSeries.series.pk,
         QStudy.study.pk,
+        QPatient.patient.pk,
         QPatient.patient.numberOfStudies,
         QPatient.patient.createdTime,
         QPatient.patient.updatedTime,
+        QPatient.patient.version,
         QStudy.study.createdTime,
         QStudy.study.updatedTime,
+        QStudy.study.version,
         QStudy.study.accessTime,
         QStudy.study.expirationDate,
         QStudy.study.rejectionState,
@@ -89,6 +101,7 @@ public class QueryServiceEJB {
         QStudy.study.storageIDs,
         QSeries.series.createdTime,
         QSeries.series.updatedTime,
+        QSeries.series.version,
         QSeries.series.expirationDate,
         QSeries.series.rejectionState,
         QSeries.series.failedSOPInstanceUIDList,
@@ -104,7 +117,10 @@ public class QueryServiceEJB {
         QueryBuilder.patientAttributesBlob.encodedAttributes
     };
 
+    static final int CALC_QUERY_ATTRS_BATCH_SIZE = 100;
+
     static final Expression<?>[] CALC_STUDY_QUERY_ATTRS = {
+        QSeries.series.study.pk,
         QSeries.series.pk,
         QSeries.series.modality,
         QInstance.instance.sopClassUID,
@@ -113,6 +129,7 @@ public class QueryServiceEJB {
     };
 
     static final Expression<?>[] CALC_SERIES_QUERY_ATTRS = {
+        QInstance.instance.series.pk,
         QInstance.instance.retrieveAETs,
         QInstance.instance.availability
     };
@@ -135,9 +152,19 @@ public class QueryServiceEJB {
     @PersistenceContext(unitName = "dcm4chee-arc")
     EntityManager em;
 
+    @Inject
+    AttributesCache attributesCache;
+
+    @Inject
+    QueryAttributesEJB queryAttributesEJB;
+
     public Attributes getSeriesAttributes(Long seriesPk, QueryParam queryParam) {
+        return getSeriesAttributes(Collections.singleton(seriesPk), queryParam).get(seriesPk);
+    }
+
+    public Map<Long, Attributes> getSeriesAttributes(Collection<Long> seriesPks, QueryParam queryParam) {
         String viewID = queryParam.getViewID();
-        Tuple result = new HibernateQuery<Void>(em.unwrap(Session.class))
+        List<Tuple> results = new HibernateQuery<Void>(em.unwrap(Session.class))
                 .select(PATIENT_STUDY_SERIES_ATTRS)
                 .from(QSeries.series)
                 .join(QSeries.series.attributesBlob, QueryBuilder.seriesAttributesBlob)
@@ -149,16 +176,38 @@ public class QueryServiceEJB {
                 .on(QStudyQueryAttributes.studyQueryAttributes.viewID.eq(viewID))
                 .join(QStudy.study.patient, QPatient.patient)
                 .join(QPatient.patient.attributesBlob, QueryBuilder.patientAttributesBlob)
-                .where(QSeries.series.pk.eq(seriesPk))
-                .fetchOne();
+                .where(QSeries.series.pk.in(seriesPks))
+                .fetch();
 
+        Set<Long> missingSeriesQueryAttrs = new HashSet<>();
+        Set<Long> missingStudyQueryAttrs = new HashSet<>();
+        for (Tuple result : results) {
+            if (result.get(QSeriesQueryAttributes.seriesQueryAttributes.numberOfInstances) == null)
+                missingSeriesQueryAttrs.add(result.get(QSeries.series.pk));
+            if (result.get(QStudyQueryAttributes.studyQueryAttributes.numberOfInstances) == null)
+                missingStudyQueryAttrs.add(result.get(QStudy.study.pk));
+        }
+        Map<Long, SeriesQueryAttributes> seriesQueryAttrs = missingSeriesQueryAttrs.isEmpty()
+                ? Collections.<Long, SeriesQueryAttributes>emptyMap()
+                : calculateSeriesQueryAttributes(missingSeriesQueryAttrs, queryParam);
+        Map<Long, StudyQueryAttributes> studyQueryAttrs = missingStudyQueryAttrs.isEmpty()
+                ? Collections.<Long, StudyQueryAttributes>emptyMap()
+                : calculateStudyQueryAttributes(missingStudyQueryAttrs, queryParam);
+        Map<Long, Attributes> attrsMap = new HashMap<>();
+        for (Tuple result : results) {
+            Long seriesPk = result.get(QSeries.series.pk);
+            attrsMap.put(seriesPk, toSeriesAttributes(seriesPk, result,
+                    seriesQueryAttrs.get(seriesPk), studyQueryAttrs.get(result.get(QStudy.study.pk))));
+        }
+        return attrsMap;
+    }
+
+    private Attributes toSeriesAttributes(Long seriesPk, Tuple result,
+            SeriesQueryAttributes seriesQueryAttributes, StudyQueryAttributes studyQueryAttributes) {
         Integer numberOfSeriesRelatedInstances =
                 result.get(QSeriesQueryAttributes.seriesQueryAttributes.numberOfInstances);
-        if (numberOfSeriesRelatedInstances == null) {
-            SeriesQueryAttributes seriesQueryAttributes =
-                    calculateSeriesQueryAttributes(seriesPk, queryParam);
+        if (numberOfSeriesRelatedInstances == null)
             numberOfSeriesRelatedInstances = seriesQueryAttributes.getNumberOfInstances();
-        }
 
         int numberOfStudyRelatedSeries;
         String modalitiesInStudy;
@@ -166,8 +215,6 @@ public class QueryServiceEJB {
         Integer numberOfStudyRelatedInstances =
                 result.get(QStudyQueryAttributes.studyQueryAttributes.numberOfInstances);
         if (numberOfStudyRelatedInstances == null) {
-            StudyQueryAttributes studyQueryAttributes =
-                    calculateStudyQueryAttributes(result.get(QStudy.study.pk), queryParam);
             numberOfStudyRelatedInstances = studyQueryAttributes.getNumberOfInstances();
             numberOfStudyRelatedSeries = studyQueryAttributes.getNumberOfSeries();
             modalitiesInStudy = studyQueryAttributes.getRawModalitiesInStudy();
@@ -180,17 +227,26 @@ public class QueryServiceEJB {
             sopClassesInStudy = 
                     result.get(QStudyQueryAttributes.studyQueryAttributes.sopClassesInStudy);
         }
-        Attributes patAttrs = AttributesBlob.decodeAttributes(
-                result.get(QueryBuilder.patientAttributesBlob.encodedAttributes), null);
-        Attributes studyAttrs = AttributesBlob.decodeAttributes(
-                result.get(QueryBuilder.studyAttributesBlob.encodedAttributes), null);
-        Attributes seriesAttrs = AttributesBlob.decodeAttributes(
-                result.get(QueryBuilder.seriesAttributesBlob.encodedAttributes), null);
-        Attributes.unifyCharacterSets(patAttrs, studyAttrs, seriesAttrs);
-        Attributes attrs = new Attributes(patAttrs.size() + studyAttrs.size() + seriesAttrs.size() + 5);
-        attrs.addAll(patAttrs);
-        attrs.addAll(studyAttrs);
-        attrs.addAll(seriesAttrs);
+        Attributes[] patStudySeriesAttrs = {
+                attributesCache.getAttributes(AttributesCache.Entity.Patient,
+                        result.get(QPatient.patient.pk),
+                        result.get(QPatient.patient.version),
+                        result.get(QueryBuilder.patientAttributesBlob.encodedAttributes)),
+                attributesCache.getAttributes(AttributesCache.Entity.Study,
+                        result.get(QStudy.study.pk),
+                        result.get(QStudy.study.version),
+                        result.get(QueryBuilder.studyAttributesBlob.encodedAttributes)),
+                attributesCache.getAttributes(AttributesCache.Entity.Series,
+                        seriesPk,
+                        result.get(QSeries.series.version),
+                        result.get(QueryBuilder.seriesAttributesBlob.encodedAttributes))
+        };
+        AttributesCache.unifyCharacterSets(patStudySeriesAttrs);
+        Attributes attrs = new Attributes(patStudySeriesAttrs[0].size() + patStudySeriesAttrs[1].size()
+                + patStudySeriesAttrs[2].size() + 5);
+        attrs.addAll(patStudySeriesAttrs[0]);
+        attrs.addAll(patStudySeriesAttrs[1]);
+        attrs.addAll(patStudySeriesAttrs[2]);
         attrs.setString(Tag.ModalitiesInStudy, VR.CS, modalitiesInStudy);
         attrs.setString(Tag.SOPClassesInStudy, VR.UI, sopClassesInStudy);
         attrs.setInt(Tag.NumberOfPatientRelatedStudies, VR.IS, result.get(QPatient.patient.numberOfStudies));
@@ -353,8 +409,15 @@ public class QueryServiceEJB {
 
 
     public StudyQueryAttributes calculateStudyQueryAttributes(Long studyPk, QueryParam queryParam) {
-        StudyQueryAttributesBuilder builder = new StudyQueryAttributesBuilder();
-        BooleanBuilder predicate = new BooleanBuilder(QSeries.series.study.pk.eq(studyPk));
+        return calculateStudyQueryAttributes(Collections.singleton(studyPk), queryParam).get(studyPk);
+    }
+
+    public Map<Long, StudyQueryAttributes> calculateStudyQueryAttributes(
+            Collection<Long> studyPks, QueryParam queryParam) {
+        Map<Long, StudyQueryAttributesBuilder> builders = new HashMap<>();
+        for (Long studyPk : studyPks)
+            builders.put(studyPk, new StudyQueryAttributesBuilder());
+        BooleanBuilder predicate = new BooleanBuilder(QSeries.series.study.pk.in(studyPks));
         predicate.and(QueryBuilder.hideRejectedInstance(queryParam));
         predicate.and(QueryBuilder.hideRejectionNote(queryParam));
         try (
@@ -366,19 +429,56 @@ public class QueryServiceEJB {
                     .iterate()) {
 
             while (results.hasNext()) {
-                builder.addInstance(results.next());
+                Tuple result = results.next();
+                builders.get(result.get(QSeries.series.study.pk)).addInstance(result);
             }
         }
-        StudyQueryAttributes queryAttrs = builder.build();
-        queryAttrs.setViewID(queryParam.getViewID());
-        queryAttrs.setStudy(em.getReference(Study.class, studyPk));
-        em.persist(queryAttrs);
-        return queryAttrs;
+        Map<Long, StudyQueryAttributes> queryAttrsMap = buildStudyQueryAttributes(builders, queryParam);
+        try {
+            queryAttributesEJB.persistStudyQueryAttributes(queryAttrsMap);
+        } catch (EJBException e) {
+            if (!isConstraintViolation(e)) {
+                LOG.warn("Failed to persist Query Attributes of Studies{}:\n", builders.keySet(), e);
+                return queryAttrsMap;
+            }
+            LOG.info("Failed to persist Query Attributes of Studies{} - calculated concurrently? " +
+                    "Persist them one by one", builders.keySet());
+            // the records of the rolled back transaction already got primary keys assigned
+            queryAttrsMap = buildStudyQueryAttributes(builders, queryParam);
+            for (Map.Entry<Long, StudyQueryAttributes> entry : queryAttrsMap.entrySet()) {
+                try {
+                    queryAttributesEJB.persistStudyQueryAttributes(
+                            Collections.singletonMap(entry.getKey(), entry.getValue()));
+                } catch (EJBException e1) {
+                    LOG.info("Failed to persist Query Attributes of Study[pk={}] - calculated concurrently?:\n",
+                            entry.getKey(), e1);
+                }
+            }
+        }
+        return queryAttrsMap;
+    }
+
+    private static Map<Long, StudyQueryAttributes> buildStudyQueryAttributes(
+            Map<Long, StudyQueryAttributesBuilder> builders, QueryParam queryParam) {
+        Map<Long, StudyQueryAttributes> queryAttrsMap = new HashMap<>();
+        for (Map.Entry<Long, StudyQueryAttributesBuilder> entry : builders.entrySet()) {
+            StudyQueryAttributes queryAttrs = entry.getValue().build();
+            queryAttrs.setViewID(queryParam.getViewID());
+            queryAttrsMap.put(entry.getKey(), queryAttrs);
+        }
+        return queryAttrsMap;
     }
 
     public SeriesQueryAttributes calculateSeriesQueryAttributes(Long seriesPk, QueryParam queryParam) {
-        SeriesQueryAttributesBuilder builder = new SeriesQueryAttributesBuilder();
-        BooleanBuilder predicate = new BooleanBuilder(QInstance.instance.series.pk.eq(seriesPk));
+        return calculateSeriesQueryAttributes(Collections.singleton(seriesPk), queryParam).get(seriesPk);
+    }
+
+    public Map<Long, SeriesQueryAttributes> calculateSeriesQueryAttributes(
+            Collection<Long> seriesPks, QueryParam queryParam) {
+        Map<Long, SeriesQueryAttributesBuilder> builders = new HashMap<>();
+        for (Long seriesPk : seriesPks)
+            builders.put(seriesPk, new SeriesQueryAttributesBuilder());
+        BooleanBuilder predicate = new BooleanBuilder(QInstance.instance.series.pk.in(seriesPks));
         predicate.and(QueryBuilder.hideRejectedInstance(queryParam));
         predicate.and(QueryBuilder.hideRejectionNote(queryParam));
         try (
@@ -389,14 +489,79 @@ public class QueryServiceEJB {
                     .iterate()) {
 
             while (results.hasNext()) {
-                builder.addInstance(results.next());
+                Tuple result = results.next();
+                builders.get(result.get(QInstance.instance.series.pk)).addInstance(result);
+            }
+        }
+        Map<Long, SeriesQueryAttributes> queryAttrsMap = buildSeriesQueryAttributes(builders, queryParam);
+        try {
+            queryAttributesEJB.persistSeriesQueryAttributes(queryAttrsMap);
+        } catch (EJBException e) {
+            if (!isConstraintViolation(e)) {
+                LOG.warn("Failed to persist Query Attributes of Series{}:\n", builders.keySet(), e);
+                return queryAttrsMap;
             }
+            LOG.info("Failed to persist Query Attributes of Series{} - calculated concurrently? " +
+                    "Persist them one by one", builders.keySet());
+            // the records of the rolled back transaction already got primary keys assigned
+            queryAttrsMap = buildSeriesQueryAttributes(builders, queryParam);
+            for (Map.Entry<Long, SeriesQueryAttributes> entry : queryAttrsMap.entrySet()) {
+                try {
+                    queryAttributesEJB.persistSeriesQueryAttributes(
+                            Collections.singletonMap(entry.getKey(), entry.getValue()));
+                } catch (EJBException e1) {
+                    LOG.info("Failed to persist Query Attributes of Series[pk={}] - calculated concurrently?:\n",
+                            entry.getKey(), e1);
+                }
+            }
+        }
+        return queryAttrsMap;
+    }
+
+    private static Map<Long, SeriesQueryAttributes> buildSeriesQueryAttributes(
+            Map<Long, SeriesQueryAttributesBuilder> builders, QueryParam queryParam) {
+        Map<Long, SeriesQueryAttributes> queryAttrsMap = new HashMap<>();
+        for (Map.Entry<Long, SeriesQueryAttributesBuilder> entry : builders.entrySet()) {
+            SeriesQueryAttributes queryAttrs = entry.getValue().build();
+            queryAttrs.setViewID(queryParam.getViewID());
+            queryAttrsMap.put(entry.getKey(), queryAttrs);
         }
-        SeriesQueryAttributes queryAttrs = builder.build();
-        queryAttrs.setViewID(queryParam.getViewID());
-        queryAttrs.setSeries(em.getReference(Series.class, seriesPk));
-        em.persist(queryAttrs);
-        return queryAttrs;
+        return queryAttrsMap;
+    }
+
+    /**
+     * Returns {@code true} if the persisting of Query Attributes failed by a violated constraint - e.g. the unique
+     * constraint on Study or Series and Query/Retrieve View by a concurrently inserted record.
+     */
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause())
+            if (cause instanceof ConstraintViolationException)
+                return true;
+        return false;
+    }
+
+    public void calculateMissingQueryAttributes(Long studyPk, QueryParam queryParam) {
+        String viewID = queryParam.getViewID();
+        Session session = em.unwrap(Session.class);
+        List<Long> seriesPks = new HibernateQuery<Void>(session)
+                .select(QSeries.series.pk)
+                .from(QSeries.series)
+                .leftJoin(QSeries.series.queryAttributes, QSeriesQueryAttributes.seriesQueryAttributes)
+                .on(QSeriesQueryAttributes.seriesQueryAttributes.viewID.eq(viewID))
+                .where(QSeries.series.study.pk.eq(studyPk),
+                        QSeriesQueryAttributes.seriesQueryAttributes.pk.isNull())
+                .fetch();
+        for (int i = 0; i < seriesPks.size(); i += CALC_QUERY_ATTRS_BATCH_SIZE)
+            calculateSeriesQueryAttributes(
+                    seriesPks.subList(i, Math.min(i + CALC_QUERY_ATTRS_BATCH_SIZE, seriesPks.size())), queryParam);
+
+        if (new HibernateQuery<Void>(session)
+                .select(QStudyQueryAttributes.studyQueryAttributes.pk)
+                .from(QStudyQueryAttributes.studyQueryAttributes)
+                .where(QStudyQueryAttributes.studyQueryAttributes.study.pk.eq(studyPk),
+                        QStudyQueryAttributes.studyQueryAttributes.viewID.eq(viewID))
+                .fetchFirst() == null)
+            calculateStudyQueryAttributes(studyPk, queryParam);
     }
 
     private static class CommonStudySeriesQueryAttributesBuilder {
@@ -48,6 +48,7 @@ import org.dcm4che3.net.QueryOption;
 import org.dcm4che3.net.service.QueryRetrieveLevel2;
 import org.dcm4che3.util.StringUtils;
 import org.dcm4che3.util.UIDUtils;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.conf.RejectionNote;
 import org.dcm4chee.arc.entity.*;
@@ -71,6 +72,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -89,6 +91,9 @@ class QueryServiceImpl implements QueryService {
     @Inject
     private CodeCache codeCache;
 
+    @Inject
+    private AttributesCache attributesCache;
+
     @Inject
     private Event<QueryContext> queryEvent;
 
@@ -137,17 +142,17 @@ class QueryServiceImpl implements QueryService {
 
     @Override
     public Query createPatientQuery(QueryContext ctx) {
-        return new PatientQuery(ctx, openStatelessSession());
+        return new PatientQuery(ctx, openStatelessSession(), attributesCache);
     }
 
     @Override
     public Query createStudyQuery(QueryContext ctx) {
-        return new StudyQuery(ctx, openStatelessSession());
+        return new StudyQuery(ctx, openStatelessSession(), attributesCache);
     }
 
     @Override
     public Query createSeriesQuery(QueryContext ctx) {
-        return new SeriesQuery(ctx, openStatelessSession());
+        return new SeriesQuery(ctx, openStatelessSession(), attributesCache);
     }
 
     @Override
@@ -166,6 +171,11 @@ class QueryServiceImpl implements QueryService {
         return ejb.getSeriesAttributes(seriesPk, queryParam);
     }
 
+    @Override
+    public Map<Long, Attributes> getSeriesAttributes(Collection<Long> seriesPks, QueryParam queryParam) {
+        return ejb.getSeriesAttributes(seriesPks, queryParam);
+    }
+
     @Override
     public StudyQueryAttributes calculateStudyQueryAttributes(Long studyPk, QueryParam queryParam) {
         return ejb.calculateStudyQueryAttributes(studyPk, queryParam);
@@ -176,6 +186,23 @@ class QueryServiceImpl implements QueryService {
         return ejb.calculateSeriesQueryAttributes(seriesPk, queryParam);
     }
 
+    @Override
+    public Map<Long, StudyQueryAttributes> calculateStudyQueryAttributes(
+            Collection<Long> studyPks, QueryParam queryParam) {
+        return ejb.calculateStudyQueryAttributes(studyPks, queryParam);
+    }
+
+    @Override
+    public Map<Long, SeriesQueryAttributes> calculateSeriesQueryAttributes(
+            Collection<Long> seriesPks, QueryParam queryParam) {
+        return ejb.calculateSeriesQueryAttributes(seriesPks, queryParam);
+    }
+
+    @Override
+    public void calculateMissingQueryAttributes(Long studyPk, ApplicationEntity ae) {
+        ejb.calculateMissingQueryAttributes(studyPk, initCodeEntities(new QueryParam(ae)));
+    }
+
     @Override
     public Attributes getStudyAttributesWithSOPInstanceRefs(
             String studyUID, ApplicationEntity ae, Collection<Attributes> seriesAttrs) {
@@ -43,6 +43,7 @@ package org.dcm4chee.arc.query.impl;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
@@ -50,13 +51,17 @@ import org.dcm4che3.data.VR;
 import org.dcm4che3.dict.archive.ArchiveTag;
 import org.dcm4che3.net.service.QueryRetrieveLevel2;
 import org.dcm4che3.util.StringUtils;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.entity.*;
 import org.dcm4chee.arc.query.util.QueryBuilder;
 import org.dcm4chee.arc.query.QueryContext;
+import org.dcm4chee.arc.query.QueryService;
 import org.dcm4chee.arc.query.util.QueryParam;
 import org.hibernate.StatelessSession;
 
+import java.util.*;
+
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @author Vrinda Nayak <vrinda.nayak@j4care.com>
@@ -67,11 +72,14 @@ class SeriesQuery extends AbstractQuery {
     private static final Expression<?>[] SELECT = {
             QStudy.study.pk,
             QSeries.series.pk,
+            QPatient.patient.pk,
             QPatient.patient.numberOfStudies,
             QPatient.patient.createdTime,
             QPatient.patient.updatedTime,
+            QPatient.patient.version,
             QStudy.study.createdTime,
             QStudy.study.updatedTime,
+            QStudy.study.version,
             QStudy.study.accessTime,
             QStudy.study.expirationDate,
             QStudy.study.rejectionState,
@@ -81,6 +89,7 @@ class SeriesQuery extends AbstractQuery {
             QStudy.study.storageIDs,
             QSeries.series.createdTime,
             QSeries.series.updatedTime,
+            QSeries.series.version,
             QSeries.series.expirationDate,
             QSeries.series.rejectionState,
             QSeries.series.failedSOPInstanceUIDList,
@@ -101,9 +110,14 @@ class SeriesQuery extends AbstractQuery {
 
     private Long studyPk;
     private Attributes studyAttrs;
+    private Map<Long, SeriesQueryAttributes> seriesQueryAttributes = Collections.emptyMap();
+    private Map<Long, StudyQueryAttributes> studyQueryAttributes = Collections.emptyMap();
+
+    private final AttributesCache attributesCache;
 
-    public SeriesQuery(QueryContext context, StatelessSession session) {
+    public SeriesQuery(QueryContext context, StatelessSession session, AttributesCache attributesCache) {
         super(context, session);
+        this.attributesCache = attributesCache;
     }
 
     @Override
@@ -134,6 +148,29 @@ class SeriesQuery extends AbstractQuery {
         return q.where(predicates);
     }
 
+    @Override
+    protected void prefetched(List<Tuple> results) {
+        Set<Long> seriesPks = new HashSet<>();
+        Set<Long> studyPks = new HashSet<>();
+        for (Tuple tuple : results) {
+            if (tuple.get(QSeriesQueryAttributes.seriesQueryAttributes.numberOfInstances) == null)
+                seriesPks.add(tuple.get(QSeries.series.pk));
+            if (tuple.get(QStudyQueryAttributes.studyQueryAttributes.numberOfInstances) == null)
+                studyPks.add(tuple.get(QStudy.study.pk));
+        }
+        QueryService queryService = context.getQueryService();
+        QueryParam queryParam = context.getQueryParam();
+        seriesQueryAttributes = seriesPks.isEmpty()
+                ? Collections.<Long, SeriesQueryAttributes>emptyMap()
+                : queryService.calculateSeriesQueryAttributes(seriesPks, queryParam);
+        studyPks.removeAll(studyQueryAttributes.keySet());
+        if (!studyPks.isEmpty()) {
+            Map<Long, StudyQueryAttributes> map = new HashMap<>(studyQueryAttributes);
+            map.putAll(queryService.calculateStudyQueryAttributes(studyPks, queryParam));
+            studyQueryAttributes = map;
+        }
+    }
+
     @Override
     protected Attributes toAttributes(Tuple results) {
         Long studyPk = results.get(QStudy.study.pk);
@@ -151,8 +188,9 @@ class SeriesQuery extends AbstractQuery {
             retrieveAETs = results.get(QSeriesQueryAttributes.seriesQueryAttributes.retrieveAETs);
             availability = results.get(QSeriesQueryAttributes.seriesQueryAttributes.availability);
         } else {
-            SeriesQueryAttributes seriesView = context.getQueryService()
-                    .calculateSeriesQueryAttributes(seriesPk, queryParam);
+            SeriesQueryAttributes seriesView = seriesQueryAttributes.get(seriesPk);
+            if (seriesView == null)
+                seriesView = context.getQueryService().calculateSeriesQueryAttributes(seriesPk, queryParam);
             numberOfSeriesRelatedInstances = seriesView.getNumberOfInstances();
             if (numberOfSeriesRelatedInstances == 0 && !queryParam.isReturnEmpty()) {
                 return null;
@@ -165,12 +203,17 @@ class SeriesQuery extends AbstractQuery {
             this.studyAttrs = toStudyAttributes(studyPk, results);
             this.studyPk = studyPk;
         }
-        Attributes seriesAttrs = AttributesBlob.decodeAttributes(
-                results.get(QueryBuilder.seriesAttributesBlob.encodedAttributes), null);
-        Attributes.unifyCharacterSets(studyAttrs, seriesAttrs);
-        Attributes attrs = new Attributes(studyAttrs.size() + seriesAttrs.size() + 3);
-        attrs.addAll(studyAttrs);
-        attrs.addAll(seriesAttrs);
+        Attributes[] studySeriesAttrs = {
+                studyAttrs,
+                attributesCache.getAttributes(AttributesCache.Entity.Series,
+                        seriesPk,
+                        results.get(QSeries.series.version),
+                        results.get(QueryBuilder.seriesAttributesBlob.encodedAttributes))
+        };
+        AttributesCache.unifyCharacterSets(studySeriesAttrs);
+        Attributes attrs = new Attributes(studySeriesAttrs[0].size() + studySeriesAttrs[1].size() + 3);
+        attrs.addAll(studySeriesAttrs[0]);
+        attrs.addAll(studySeriesAttrs[1]);
         String externalRetrieveAET = results.get(QSeries.series.externalRetrieveAET);
         if (externalRetrieveAET != null)
             attrs.setString(Tag.RetrieveAETitle, VR.AE, retrieveAETs, externalRetrieveAET);
@@ -211,22 +254,30 @@ class SeriesQuery extends AbstractQuery {
             modalitiesInStudy = results.get(QStudyQueryAttributes.studyQueryAttributes.modalitiesInStudy);
             sopClassesInStudy = results.get(QStudyQueryAttributes.studyQueryAttributes.sopClassesInStudy);
         } else {
-            StudyQueryAttributes studyView = context.getQueryService()
-                    .calculateStudyQueryAttributes(studyPk, context.getQueryParam());
+            StudyQueryAttributes studyView = studyQueryAttributes.get(studyPk);
+            if (studyView == null)
+                studyView = context.getQueryService()
+                        .calculateStudyQueryAttributes(studyPk, context.getQueryParam());
             numberOfStudyRelatedInstances = studyView.getNumberOfInstances();
             numberOfStudyRelatedSeries = studyView.getNumberOfSeries();
             modalitiesInStudy = studyView.getRawModalitiesInStudy();
             sopClassesInStudy = studyView.getRawSOPClassesInStudy();
         }
 
-        Attributes patAttrs = AttributesBlob.decodeAttributes(
-                results.get(QueryBuilder.patientAttributesBlob.encodedAttributes), null);
-        Attributes studyAttrs = AttributesBlob.decodeAttributes(
-                results.get(QueryBuilder.studyAttributesBlob.encodedAttributes), null);
-        Attributes.unifyCharacterSets(patAttrs, studyAttrs);
-        Attributes attrs = new Attributes(patAttrs.size() + studyAttrs.size() + 4);
-        attrs.addAll(patAttrs);
-        attrs.addAll(studyAttrs);
+        Attributes[] patStudyAttrs = {
+                attributesCache.getAttributes(AttributesCache.Entity.Patient,
+                        results.get(QPatient.patient.pk),
+                        results.get(QPatient.patient.version),
+                        results.get(QueryBuilder.patientAttributesBlob.encodedAttributes)),
+                attributesCache.getAttributes(AttributesCache.Entity.Study,
+                        studyPk,
+                        results.get(QStudy.study.version),
+                        results.get(QueryBuilder.studyAttributesBlob.encodedAttributes))
+        };
+        AttributesCache.unifyCharacterSets(patStudyAttrs);
+        Attributes attrs = new Attributes(patStudyAttrs[0].size() + patStudyAttrs[1].size() + 4);
+        attrs.addAll(patStudyAttrs[0]);
+        attrs.addAll(patStudyAttrs[1]);
         attrs.setString(Tag.ModalitiesInStudy, VR.CS, modalitiesInStudy);
         attrs.setString(Tag.SOPClassesInStudy, VR.UI, sopClassesInStudy);
         attrs.setInt(Tag.NumberOfPatientRelatedStudies, VR.IS, results.get(QPatient.patient.numberOfStudies));
@@ -260,6 +311,11 @@ class SeriesQuery extends AbstractQuery {
         return attrs;
     }
 
+    @Override
+    protected NumberPath<Long> pk() {
+        return QSeries.series.pk;
+    }
+
     @Override
     public boolean isOptionalKeysNotSupported() {
         //TODO
@@ -43,6 +43,7 @@ package org.dcm4chee.arc.query.impl;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.NumberPath;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
@@ -50,6 +51,7 @@ import org.dcm4che3.data.VR;
 import org.dcm4che3.dict.archive.ArchiveTag;
 import org.dcm4che3.net.service.QueryRetrieveLevel2;
 import org.dcm4che3.util.StringUtils;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.entity.*;
 import org.dcm4chee.arc.query.QueryContext;
@@ -57,6 +59,8 @@ import org.dcm4chee.arc.query.util.QueryBuilder;
 import org.dcm4chee.arc.query.util.QueryParam;
 import org.hibernate.StatelessSession;
 
+import java.util.*;
+
 
 
 /**
@@ -68,11 +72,14 @@ class StudyQuery extends AbstractQuery {
 
     static final Expression<?>[] SELECT = {
             QStudy.study.pk,
+            QPatient.patient.pk,
             QPatient.patient.numberOfStudies,
             QPatient.patient.createdTime,
             QPatient.patient.updatedTime,
+            QPatient.patient.version,
             QStudy.study.createdTime,
             QStudy.study.updatedTime,
+            QStudy.study.version,
             QStudy.study.accessTime,
             QStudy.study.expirationDate,
             QStudy.study.rejectionState,
@@ -91,8 +98,13 @@ class StudyQuery extends AbstractQuery {
             QueryBuilder.patientAttributesBlob.encodedAttributes
     };
 
-    public StudyQuery(QueryContext context, StatelessSession session) {
+    private Map<Long, StudyQueryAttributes> studyQueryAttributes = Collections.emptyMap();
+
+    private final AttributesCache attributesCache;
+
+    public StudyQuery(QueryContext context, StatelessSession session, AttributesCache attributesCache) {
         super(context, session);
+        this.attributesCache = attributesCache;
     }
 
     @Override
@@ -117,6 +129,17 @@ class StudyQuery extends AbstractQuery {
         return q.where(predicates);
     }
 
+    @Override
+    protected void prefetched(List<Tuple> results) {
+        Set<Long> studyPks = new HashSet<>();
+        for (Tuple tuple : results)
+            if (tuple.get(QStudyQueryAttributes.studyQueryAttributes.numberOfInstances) == null)
+                studyPks.add(tuple.get(QStudy.study.pk));
+        studyQueryAttributes = studyPks.isEmpty()
+                ? Collections.<Long, StudyQueryAttributes>emptyMap()
+                : context.getQueryService().calculateStudyQueryAttributes(studyPks, context.getQueryParam());
+    }
+
     @Override
     protected Attributes toAttributes(Tuple results) {
         Long studyPk = results.get(QStudy.study.pk);
@@ -139,8 +162,9 @@ class StudyQuery extends AbstractQuery {
             retrieveAETs = results.get(QStudyQueryAttributes.studyQueryAttributes.retrieveAETs);
             availability = results.get(QStudyQueryAttributes.studyQueryAttributes.availability);
         } else {
-            StudyQueryAttributes studyView = context.getQueryService()
-                    .calculateStudyQueryAttributes(studyPk, queryParam);
+            StudyQueryAttributes studyView = studyQueryAttributes.get(studyPk);
+            if (studyView == null)
+                studyView = context.getQueryService().calculateStudyQueryAttributes(studyPk, queryParam);
             numberOfStudyRelatedInstances = studyView.getNumberOfInstances();
             if (numberOfStudyRelatedInstances == 0 && !queryParam.isReturnEmpty()) {
                 return null;
@@ -151,14 +175,20 @@ class StudyQuery extends AbstractQuery {
             retrieveAETs = studyView.getRawRetrieveAETs();
             availability = studyView.getAvailability();
         }
-        Attributes studyAttrs = AttributesBlob.decodeAttributes(
-                results.get(QueryBuilder.studyAttributesBlob.encodedAttributes), null);
-        Attributes patAttrs = AttributesBlob.decodeAttributes(
-                results.get(QueryBuilder.patientAttributesBlob.encodedAttributes), null);
-        Attributes.unifyCharacterSets(patAttrs, studyAttrs);
-        Attributes attrs = new Attributes(patAttrs.size() + studyAttrs.size() + 6);
-        attrs.addAll(patAttrs);
-        attrs.addAll(studyAttrs);
+        Attributes[] patStudyAttrs = {
+                attributesCache.getAttributes(AttributesCache.Entity.Patient,
+                        results.get(QPatient.patient.pk),
+                        results.get(QPatient.patient.version),
+                        results.get(QueryBuilder.patientAttributesBlob.encodedAttributes)),
+                attributesCache.getAttributes(AttributesCache.Entity.Study,
+                        studyPk,
+                        results.get(QStudy.study.version),
+                        results.get(QueryBuilder.studyAttributesBlob.encodedAttributes))
+        };
+        AttributesCache.unifyCharacterSets(patStudyAttrs);
+        Attributes attrs = new Attributes(patStudyAttrs[0].size() + patStudyAttrs[1].size() + 6);
+        attrs.addAll(patStudyAttrs[0]);
+        attrs.addAll(patStudyAttrs[1]);
         String externalRetrieveAET = results.get(QStudy.study.externalRetrieveAET);
         if (externalRetrieveAET != null)
             attrs.setString(Tag.RetrieveAETitle, VR.AE, retrieveAETs, externalRetrieveAET);
@@ -199,6 +229,11 @@ class StudyQuery extends AbstractQuery {
         return attrs;
     }
 
+    @Override
+    protected NumberPath<Long> pk() {
+        return QStudy.study.pk;
+    }
+
     @Override
     public boolean isOptionalKeysNotSupported() {
         //TODO
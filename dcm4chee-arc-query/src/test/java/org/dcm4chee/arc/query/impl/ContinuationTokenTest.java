@@ -0,0 +1,107 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.query.impl;
+
+import com.querydsl.core.types.Expression;
+import org.dcm4chee.arc.entity.QStudy;
+import org.junit.Test;
+
+import java.util.Base64;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class ContinuationTokenTest {
+
+    private static final Expression<?>[] KEY_EXPRS = {
+            QStudy.study.studyDate, QStudy.study.failedRetrieves, QStudy.study.pk };
+
+    @Test
+    public void encodeDecode() throws Exception {
+        Object[] key = { "20261017", 42, 4711L };
+        String token = ContinuationToken.encode(key);
+        assertArrayEquals(key, ContinuationToken.decode(token));
+        ContinuationToken.check(ContinuationToken.decode(token), KEY_EXPRS);
+    }
+
+    @Test
+    public void encodeDecodeNull() throws Exception {
+        Object[] key = { null, null, 4711L };
+        Object[] decoded = ContinuationToken.decode(ContinuationToken.encode(key));
+        assertArrayEquals(key, decoded);
+        ContinuationToken.check(decoded, KEY_EXPRS);
+    }
+
+    @Test
+    public void urlSafe() throws Exception {
+        String token = ContinuationToken.encode(new Object[]{ "ÿþý?/+=", -1L });
+        assertTrue(token, token.matches("[A-Za-z0-9_-]*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeInvalidBase64() throws Exception {
+        ContinuationToken.decode("not a token!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeInvalidType() throws Exception {
+        ContinuationToken.decode(Base64.getUrlEncoder().encodeToString(new byte[]{ 9 }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decodeTruncated() throws Exception {
+        String token = ContinuationToken.encode(new Object[]{ 4711L });
+        ContinuationToken.decode(token.substring(0, token.length() - 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkNumberOfKeys() throws Exception {
+        ContinuationToken.check(new Object[]{ 4711L }, KEY_EXPRS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void checkTypeOfKeys() throws Exception {
+        ContinuationToken.check(new Object[]{ "20261017", "42", 4711L }, KEY_EXPRS);
+    }
+}
@@ -61,6 +61,8 @@ public interface InstanceLocations {
 
     Attributes getAttributes();
 
+    int getNumberOfFrames();
+
     String getRetrieveAETs();
 
     String getExternalRetrieveAET();
@@ -0,0 +1,141 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.retrieve;
+
+import java.io.*;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * JSON encoded metadata of the instances of one series by SOP Instance UID, versioned by the update time of each
+ * instance, stored deflated as one object on the metadata storage.
+ * <p>
+ * Bundled metadata is not coerced and contains Bulk Data URIs relative to the instance URL. Entries of instances
+ * which were replaced or rejected after the bundle was written are never returned, because their version or SOP
+ * Instance UID no longer matches a retrieved instance.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class MetadataBundle {
+
+    private final String studyInstanceUID;
+    private final String seriesInstanceUID;
+    private final HashMap<String, Versioned> entries = new HashMap<>();
+    private boolean modified;
+
+    public MetadataBundle(String studyInstanceUID, String seriesInstanceUID) {
+        this.studyInstanceUID = studyInstanceUID;
+        this.seriesInstanceUID = seriesInstanceUID;
+    }
+
+    public String getStudyInstanceUID() {
+        return studyInstanceUID;
+    }
+
+    public String getSeriesInstanceUID() {
+        return seriesInstanceUID;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return {@code true} if metadata was added or replaced since the bundle was read from the metadata storage
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    public byte[] getMetadata(String iuid, Date updatedTime) {
+        Versioned versioned = entries.get(iuid);
+        return versioned != null && versioned.version == versionOf(updatedTime) ? versioned.metadata : null;
+    }
+
+    public void putMetadata(String iuid, Date updatedTime, byte[] metadata) {
+        entries.put(iuid, new Versioned(versionOf(updatedTime), metadata));
+        modified = true;
+    }
+
+    public void readFrom(InputStream in) throws IOException {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in)));
+        for (int n = din.readInt(); n > 0; n--) {
+            String iuid = din.readUTF();
+            long version = din.readLong();
+            byte[] metadata = new byte[din.readInt()];
+            din.readFully(metadata);
+            entries.put(iuid, new Versioned(version, metadata));
+        }
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(deflater));
+        dout.writeInt(entries.size());
+        for (Map.Entry<String, Versioned> e : entries.entrySet()) {
+            Versioned versioned = e.getValue();
+            dout.writeUTF(e.getKey());
+            dout.writeLong(versioned.version);
+            dout.writeInt(versioned.metadata.length);
+            dout.write(versioned.metadata);
+        }
+        dout.flush();
+        deflater.finish();
+    }
+
+    private static long versionOf(Date updatedTime) {
+        return updatedTime != null ? updatedTime.getTime() : 0L;
+    }
+
+    private static final class Versioned {
+        final long version;
+        final byte[] metadata;
+
+        Versioned(long version, byte[] metadata) {
+            this.version = version;
+            this.metadata = metadata;
+        }
+    }
+}
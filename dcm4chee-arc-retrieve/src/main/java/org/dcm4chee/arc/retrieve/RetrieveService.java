@@ -52,6 +52,7 @@ import org.dcm4chee.arc.retrieve.impl.InstanceLocationsImpl;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
@@ -90,8 +91,20 @@ public interface RetrieveService {
 
     DicomInputStream openDicomInputStream(RetrieveContext ctx, InstanceLocations inst) throws IOException;
 
+    InputStream openPixelDataInputStream(RetrieveContext ctx, InstanceLocations inst, long offset, long length)
+            throws IOException;
+
+    InputStream openCompressedFrameInputStream(RetrieveContext ctx, InstanceLocations inst, int frame)
+            throws IOException;
+
     Attributes loadMetadata(RetrieveContext ctx, InstanceLocations inst) throws IOException;
 
+    boolean isMetadataBundleEnabled(RetrieveContext ctx);
+
+    MetadataBundle loadMetadataBundle(RetrieveContext ctx, String studyIUID, String seriesIUID) throws IOException;
+
+    void storeMetadataBundle(RetrieveContext ctx, MetadataBundle bundle) throws IOException;
+
     Map<String,Collection<InstanceLocations>> removeNotAccessableMatches(RetrieveContext ctx);
 
     AttributesCoercion getAttributesCoercion(RetrieveContext ctx, InstanceLocations inst);
@@ -0,0 +1,118 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2015
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.retrieve.impl;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.jpa.hibernate.HibernateQuery;
+import org.dcm4chee.arc.entity.QInstance;
+import org.dcm4chee.arc.query.util.QueryBuilder;
+import org.hibernate.StatelessSession;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Loads the encoded attributes of matched instances on demand in chunks of {@link #FETCH_SIZE} instances in the
+ * order of the matches, so only the attributes of instances about to be sent are held in memory. Fetched attributes
+ * are kept until they are loaded, and a chunk only contains instances which attributes are not already fetched or
+ * loaded, so instances accessed out of order do not cause the same attributes to be fetched again.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+class InstanceAttributesLoader {
+
+    private static final int FETCH_SIZE = 100;
+
+    private final RetrieveServiceImpl service;
+    private final List<Long> instancePks = new ArrayList<>();
+    private final HashMap<Long, byte[]> fetched = new HashMap<>();
+    private final BitSet loaded = new BitSet();
+
+    InstanceAttributesLoader(RetrieveServiceImpl service) {
+        this.service = service;
+    }
+
+    int add(Long instancePk) {
+        instancePks.add(instancePk);
+        return instancePks.size() - 1;
+    }
+
+    synchronized byte[] load(int index) {
+        Long instancePk = instancePks.get(index);
+        byte[] encodedAttributes = fetched.remove(instancePk);
+        if (encodedAttributes == null) {
+            fetch(pksToFetch(index));
+            encodedAttributes = fetched.remove(instancePk);
+        }
+        loaded.set(index);
+        return encodedAttributes;
+    }
+
+    private List<Long> pksToFetch(int index) {
+        List<Long> pks = new ArrayList<>(FETCH_SIZE);
+        pks.add(instancePks.get(index));
+        for (int i = index + 1, n = instancePks.size(); i < n && pks.size() < FETCH_SIZE; i++) {
+            Long instancePk = instancePks.get(i);
+            if (!loaded.get(i) && !fetched.containsKey(instancePk))
+                pks.add(instancePk);
+        }
+        return pks;
+    }
+
+    private void fetch(List<Long> pks) {
+        StatelessSession session = service.openStatelessSession();
+        try {
+            for (Tuple tuple : new HibernateQuery<Void>(session)
+                    .select(QInstance.instance.pk, QueryBuilder.instanceAttributesBlob.encodedAttributes)
+                    .from(QInstance.instance)
+                    .join(QInstance.instance.attributesBlob, QueryBuilder.instanceAttributesBlob)
+                    .where(QInstance.instance.pk.in(pks))
+                    .fetch())
+                fetched.put(tuple.get(QInstance.instance.pk),
+                        tuple.get(QueryBuilder.instanceAttributesBlob.encodedAttributes));
+        } finally {
+            session.close();
+        }
+    }
+}
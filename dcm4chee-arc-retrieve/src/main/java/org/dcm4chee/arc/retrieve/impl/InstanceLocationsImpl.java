@@ -41,10 +41,14 @@
 package org.dcm4chee.arc.retrieve.impl;
 
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Tag;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.conf.Availability;
+import org.dcm4chee.arc.entity.AttributesBlob;
 import org.dcm4chee.arc.entity.Location;
 import org.dcm4chee.arc.retrieve.InstanceLocations;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -58,10 +62,15 @@ public class InstanceLocationsImpl implements InstanceLocations {
     private final String sopClassUID;
     private final String sopInstanceUID;
     private final Attributes attributes;
+    private final InstanceAttributesLoader loader;
+    private final int loaderIndex;
+    private final Attributes seriesAttributes;
+    private volatile SoftReference<Attributes> decodedAttributes;
     private final String retrieveAETs;
     private final String extRetrieveAET;
     private final Availability availability;
     private final Date updatedTime;
+    private final Integer numberOfFrames;
     private final ArrayList<Location> locations = new ArrayList<>(1);
 
     public InstanceLocationsImpl(String sopClassUID, String sopInstanceUID, String retrieveAETs, String extRetrieveAET,
@@ -73,6 +82,33 @@ public class InstanceLocationsImpl implements InstanceLocations {
         this.availability = availability;
         this.updatedTime = updatedTime;
         this.attributes = attributes;
+        this.numberOfFrames = null;
+        this.loader = null;
+        this.loaderIndex = -1;
+        this.seriesAttributes = null;
+    }
+
+    /**
+     * Creates Instance Locations which load the instance attributes by {@code loader} and merge them with the
+     * {@code seriesAttributes} shared with other instances of the Series not before they are accessed. The merged
+     * attributes are only softly referenced and may be loaded again. The {@code numberOfFrames} of the instance -
+     * 0 for non-images - as stored in the database is returned by {@link #getNumberOfFrames()} without loading the
+     * instance attributes.
+     */
+    InstanceLocationsImpl(String sopClassUID, String sopInstanceUID, String retrieveAETs, String extRetrieveAET,
+            Availability availability, Date updatedTime, Integer numberOfFrames, InstanceAttributesLoader loader,
+            int loaderIndex, Attributes seriesAttributes) {
+        this.sopClassUID = sopClassUID;
+        this.sopInstanceUID = sopInstanceUID;
+        this.retrieveAETs = retrieveAETs;
+        this.extRetrieveAET = extRetrieveAET;
+        this.availability = availability;
+        this.updatedTime = updatedTime;
+        this.attributes = null;
+        this.numberOfFrames = numberOfFrames;
+        this.loader = loader;
+        this.loaderIndex = loaderIndex;
+        this.seriesAttributes = seriesAttributes;
     }
 
     @Override
@@ -97,7 +133,29 @@ public class InstanceLocationsImpl implements InstanceLocations {
 
     @Override
     public Attributes getAttributes() {
-        return attributes;
+        if (attributes != null)
+            return attributes;
+
+        SoftReference<Attributes> ref = decodedAttributes;
+        Attributes attrs = ref != null ? ref.get() : null;
+        if (attrs == null) {
+            attrs = AttributesBlob.decodeAttributes(loader.load(loaderIndex), null);
+            Attributes[] seriesAndInstanceAttrs = { seriesAttributes, attrs };
+            AttributesCache.unifyCharacterSets(seriesAndInstanceAttrs);
+            attrs = seriesAndInstanceAttrs[1];
+            attrs.addAll(seriesAndInstanceAttrs[0]);
+            decodedAttributes = new SoftReference<>(attrs);
+        }
+        return attrs;
+    }
+
+    @Override
+    public int getNumberOfFrames() {
+        if (numberOfFrames != null)
+            return numberOfFrames;
+
+        Attributes attrs = getAttributes();
+        return attrs.contains(Tag.Rows) ? attrs.getInt(Tag.NumberOfFrames, 1) : 0;
     }
 
     @Override
@@ -40,13 +40,18 @@
 
 package org.dcm4chee.arc.retrieve.impl;
 
+import org.dcm4chee.arc.entity.Location;
 import org.dcm4chee.arc.entity.Series;
+import org.dcm4chee.arc.entity.SeriesMetadata;
 import org.dcm4chee.arc.entity.Study;
 import org.dcm4chee.arc.retrieve.RetrieveContext;
 
 import javax.ejb.Stateless;
 import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import java.util.List;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -64,6 +69,47 @@ public class RetrieveServiceEJB {
                 .executeUpdate();
     }
 
+    public Location findSeriesMetadata(String studyIUID, String seriesIUID) {
+        List<Location> locations = em.createNamedQuery(SeriesMetadata.FIND_LOCATION_BY_SERIES_IUID, Location.class)
+                .setParameter(1, studyIUID)
+                .setParameter(2, seriesIUID)
+                .getResultList();
+        return locations.isEmpty() ? null : locations.get(0);
+    }
+
+    /**
+     * Replaces the metadata bundle of the series. The Series row is locked, so concurrent replacements of the
+     * bundle of the same series are serialized.
+     */
+    public boolean updateSeriesMetadata(String studyIUID, String seriesIUID, Location location) {
+        Series series;
+        try {
+            series = em.createNamedQuery(Series.FIND_BY_SERIES_IUID, Series.class)
+                    .setParameter(1, studyIUID)
+                    .setParameter(2, seriesIUID)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getSingleResult();
+        } catch (NoResultException e) {
+            return false;
+        }
+        List<SeriesMetadata> prevs = em.createNamedQuery(SeriesMetadata.FIND_BY_SERIES, SeriesMetadata.class)
+                .setParameter(1, series)
+                .getResultList();
+        if (!prevs.isEmpty()) {
+            for (SeriesMetadata prev : prevs) {
+                prev.getLocation().setStatus(Location.Status.TO_DELETE);
+                em.remove(prev);
+            }
+            em.flush();
+        }
+        em.persist(location);
+        SeriesMetadata metadata = new SeriesMetadata();
+        metadata.setLocation(location);
+        metadata.setSeries(series);
+        em.persist(metadata);
+        return true;
+    }
+
     public void updateFailedSOPInstanceUIDList(RetrieveContext ctx, String failedIUIDList) {
         String[] studyIUIDs = ctx.getStudyInstanceUIDs();
         String[] seriesIUIDs = ctx.getSeriesInstanceUIDs();
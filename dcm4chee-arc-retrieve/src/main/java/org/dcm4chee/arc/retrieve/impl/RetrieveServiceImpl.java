@@ -40,6 +40,7 @@
 
 package org.dcm4chee.arc.retrieve.impl;
 
+import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.BooleanBuilder;
 import com.querydsl.core.Tuple;
 import com.querydsl.core.types.Expression;
@@ -58,6 +59,9 @@ import org.dcm4che3.net.*;
 import org.dcm4che3.net.service.QueryRetrieveLevel2;
 import org.dcm4che3.util.SafeClose;
 import org.dcm4che3.util.StringUtils;
+import org.dcm4che3.util.UIDUtils;
+import org.dcm4chee.arc.AttributesCache;
+import org.dcm4chee.arc.FrameIndexCache;
 import org.dcm4chee.arc.LeadingCFindSCPQueryCache;
 import org.dcm4chee.arc.conf.*;
 import org.dcm4chee.arc.entity.*;
@@ -69,6 +73,7 @@ import org.dcm4chee.arc.query.util.QueryBuilder;
 import org.dcm4chee.arc.storage.ReadContext;
 import org.dcm4chee.arc.storage.Storage;
 import org.dcm4chee.arc.storage.StorageFactory;
+import org.dcm4chee.arc.storage.WriteContext;
 import org.hibernate.Session;
 import org.hibernate.StatelessSession;
 import org.slf4j.Logger;
@@ -86,6 +91,8 @@ import javax.xml.transform.TransformerConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.util.*;
 
 /**
@@ -109,6 +116,7 @@ public class RetrieveServiceImpl implements RetrieveService {
             QLocation.location.digest,
             QLocation.location.size,
             QLocation.location.status,
+            QLocation.location.pixelDataOffset,
             QSeries.series.pk,
             QInstance.instance.pk,
             QInstance.instance.sopClassUID,
@@ -117,23 +125,27 @@ public class RetrieveServiceImpl implements RetrieveService {
             QInstance.instance.externalRetrieveAET,
             QInstance.instance.availability,
             QInstance.instance.updatedTime,
+            QInstance.instance.numberOfFrames,
             QUIDMap.uIDMap.pk,
-            QUIDMap.uIDMap.encodedMap,
-            QueryBuilder.instanceAttributesBlob.encodedAttributes
+            QUIDMap.uIDMap.encodedMap
     };
 
     static final Expression<?>[] PATIENT_STUDY_SERIES_ATTRS = {
+            QPatient.patient.pk,
             QPatient.patient.updatedTime,
+            QPatient.patient.version,
             QStudy.study.pk,
             QStudy.study.studyInstanceUID,
             QStudy.study.accessTime,
             QStudy.study.failedRetrieves,
             QStudy.study.failedSOPInstanceUIDList,
             QStudy.study.updatedTime,
+            QStudy.study.version,
             QSeries.series.seriesInstanceUID,
             QSeries.series.failedRetrieves,
             QSeries.series.failedSOPInstanceUIDList,
             QSeries.series.updatedTime,
+            QSeries.series.version,
             QueryBuilder.seriesAttributesBlob.encodedAttributes,
             QueryBuilder.studyAttributesBlob.encodedAttributes,
             QueryBuilder.patientAttributesBlob.encodedAttributes
@@ -151,6 +163,12 @@ public class RetrieveServiceImpl implements RetrieveService {
     @Inject
     private CodeCache codeCache;
 
+    @Inject
+    private AttributesCache attributesCache;
+
+    @Inject
+    private FrameIndexCache frameIndexCache;
+
     @Inject
     private RetrieveServiceEJB ejb;
 
@@ -280,35 +298,10 @@ public class RetrieveServiceImpl implements RetrieveService {
             HashMap<Long,InstanceLocations> instMap = new HashMap<>();
             HashMap<Long,Attributes> seriesAttrsMap = new HashMap<>();
             HashMap<Long,StudyInfo> studyInfoMap = new HashMap<>();
-            for (Tuple tuple : createQuery(ctx, session).fetch()) {
-                Long instPk = tuple.get(QInstance.instance.pk);
-                InstanceLocations match = instMap.get(instPk);
-                if (match == null) {
-                    Long seriesPk = tuple.get(QSeries.series.pk);
-                    Attributes seriesAttrs = seriesAttrsMap.get(seriesPk);
-                    if (seriesAttrs == null) {
-                        SeriesAttributes seriesAttributes = getSeriesAttributes(session, seriesPk);
-                        studyInfoMap.put(seriesAttributes.studyInfo.getStudyPk(), seriesAttributes.studyInfo);
-                        ctx.getSeriesInfos().add(seriesAttributes.seriesInfo);
-                        seriesAttrsMap.put(seriesPk, seriesAttrs = seriesAttributes.attrs);
-                        ctx.setPatientUpdatedTime(seriesAttributes.patientUpdatedTime);
-                    }
-                    Attributes instAttrs = AttributesBlob.decodeAttributes(
-                            tuple.get(QueryBuilder.instanceAttributesBlob.encodedAttributes), null);
-                    Attributes.unifyCharacterSets(seriesAttrs, instAttrs);
-                    instAttrs.addAll(seriesAttrs);
-                    match = newInstanceLocations(
-                            tuple.get(QInstance.instance.sopClassUID),
-                            tuple.get(QInstance.instance.sopInstanceUID),
-                            tuple.get(QInstance.instance.retrieveAETs),
-                            tuple.get(QInstance.instance.externalRetrieveAET),
-                            tuple.get(QInstance.instance.availability),
-                            tuple.get(QInstance.instance.updatedTime),
-                            instAttrs);
-                    matches.add(match);
-                    instMap.put(instPk, match);
-                }
-                addLocation(match, tuple);
+            InstanceAttributesLoader loader = new InstanceAttributesLoader(this);
+            try (CloseableIterator<Tuple> tuples = createQuery(ctx, session).iterate()) {
+                while (tuples.hasNext())
+                    addMatch(ctx, session, tuples.next(), instMap, seriesAttrsMap, studyInfoMap, loader);
             }
             ctx.setNumberOfMatches(matches.size());
             ctx.getStudyInfos().addAll(studyInfoMap.values());
@@ -319,6 +312,38 @@ public class RetrieveServiceImpl implements RetrieveService {
         }
     }
 
+    private void addMatch(RetrieveContext ctx, StatelessSession session, Tuple tuple,
+                          HashMap<Long, InstanceLocations> instMap, HashMap<Long, Attributes> seriesAttrsMap,
+                          HashMap<Long, StudyInfo> studyInfoMap, InstanceAttributesLoader loader) {
+        Long instPk = tuple.get(QInstance.instance.pk);
+        InstanceLocations match = instMap.get(instPk);
+        if (match == null) {
+            Long seriesPk = tuple.get(QSeries.series.pk);
+            Attributes seriesAttrs = seriesAttrsMap.get(seriesPk);
+            if (seriesAttrs == null) {
+                SeriesAttributes seriesAttributes = getSeriesAttributes(session, seriesPk);
+                studyInfoMap.put(seriesAttributes.studyInfo.getStudyPk(), seriesAttributes.studyInfo);
+                ctx.getSeriesInfos().add(seriesAttributes.seriesInfo);
+                seriesAttrsMap.put(seriesPk, seriesAttrs = seriesAttributes.attrs);
+                ctx.setPatientUpdatedTime(seriesAttributes.patientUpdatedTime);
+            }
+            match = new InstanceLocationsImpl(
+                    tuple.get(QInstance.instance.sopClassUID),
+                    tuple.get(QInstance.instance.sopInstanceUID),
+                    tuple.get(QInstance.instance.retrieveAETs),
+                    tuple.get(QInstance.instance.externalRetrieveAET),
+                    tuple.get(QInstance.instance.availability),
+                    tuple.get(QInstance.instance.updatedTime),
+                    tuple.get(QInstance.instance.numberOfFrames),
+                    loader,
+                    loader.add(instPk),
+                    seriesAttrs);
+            ctx.getMatches().add(match);
+            instMap.put(instPk, match);
+        }
+        addLocation(match, tuple);
+    }
+
     private void addLocation(InstanceLocations match, Tuple tuple) {
         Long pk = tuple.get(QLocation.location.pk);
         if (pk == null)
@@ -333,6 +358,7 @@ public class RetrieveServiceImpl implements RetrieveService {
                 .digest(tuple.get(QLocation.location.digest))
                 .size(tuple.get(QLocation.location.size))
                 .status(tuple.get(QLocation.location.status))
+                .pixelDataOffset(tuple.get(QLocation.location.pixelDataOffset))
                 .build();
         Long uidMapPk = tuple.get(QUIDMap.uIDMap.pk);
         if (uidMapPk != null) {
@@ -401,24 +427,32 @@ public class RetrieveServiceImpl implements RetrieveService {
                 tuple.get(QSeries.series.failedSOPInstanceUIDList),
                 tuple.get(QSeries.series.updatedTime));
         Date patientUpdatedTime = tuple.get(QPatient.patient.updatedTime);
-        Attributes patAttrs = AttributesBlob.decodeAttributes(
-                tuple.get(QueryBuilder.patientAttributesBlob.encodedAttributes), null);
-        Attributes studyAttrs = AttributesBlob.decodeAttributes(
-                tuple.get(QueryBuilder.studyAttributesBlob.encodedAttributes), null);
-        Attributes seriesAttrs = AttributesBlob.decodeAttributes(
-                tuple.get(QueryBuilder.seriesAttributesBlob.encodedAttributes), null);
-        Attributes.unifyCharacterSets(patAttrs, studyAttrs, seriesAttrs);
-        Attributes attrs = new Attributes(patAttrs.size() + studyAttrs.size() + seriesAttrs.size() + 5);
-        attrs.addAll(patAttrs);
-        attrs.addAll(studyAttrs);
-        attrs.addAll(seriesAttrs);
+        Attributes[] patStudySeriesAttrs = {
+                attributesCache.getAttributes(AttributesCache.Entity.Patient,
+                        tuple.get(QPatient.patient.pk),
+                        tuple.get(QPatient.patient.version),
+                        tuple.get(QueryBuilder.patientAttributesBlob.encodedAttributes)),
+                attributesCache.getAttributes(AttributesCache.Entity.Study,
+                        studyInfo.getStudyPk(),
+                        tuple.get(QStudy.study.version),
+                        tuple.get(QueryBuilder.studyAttributesBlob.encodedAttributes)),
+                attributesCache.getAttributes(AttributesCache.Entity.Series,
+                        seriesPk,
+                        tuple.get(QSeries.series.version),
+                        tuple.get(QueryBuilder.seriesAttributesBlob.encodedAttributes))
+        };
+        AttributesCache.unifyCharacterSets(patStudySeriesAttrs);
+        Attributes attrs = new Attributes(patStudySeriesAttrs[0].size() + patStudySeriesAttrs[1].size()
+                + patStudySeriesAttrs[2].size() + 5);
+        attrs.addAll(patStudySeriesAttrs[0]);
+        attrs.addAll(patStudySeriesAttrs[1]);
+        attrs.addAll(patStudySeriesAttrs[2]);
         return new SeriesAttributes(attrs, studyInfo, seriesInfo, patientUpdatedTime);
 }
 
     private HibernateQuery<Tuple> createQuery(RetrieveContext ctx, StatelessSession session) {
         HibernateQuery<Tuple> query = new HibernateQuery<Void>(session).select(SELECT)
                 .from(QInstance.instance)
-                .join(QInstance.instance.attributesBlob, QueryBuilder.instanceAttributesBlob)
                 .join(QInstance.instance.series, QSeries.series)
                 .join(QSeries.series.study, QStudy.study)
                 .leftJoin(QInstance.instance.locations, QLocation.location);
@@ -474,6 +508,45 @@ public class RetrieveServiceImpl implements RetrieveService {
         return openLocationInputStream(ctx, inst).getDicomInputStream();
     }
 
+    @Override
+    public InputStream openPixelDataInputStream(RetrieveContext ctx, InstanceLocations inst, long offset, long length)
+            throws IOException {
+        IOException ex = null;
+        String studyInstanceUID = inst.getAttributes().getString(Tag.StudyInstanceUID);
+        for (Location location : inst.getLocations()) {
+            Long pixelDataOffset = location.getNativePixelDataOffset();
+            if (pixelDataOffset != null)
+                try {
+                    return openInputStream(ctx, location, studyInstanceUID, pixelDataOffset + offset, length);
+                } catch (IOException e) {
+                    ex = e;
+                }
+        }
+        if (ex != null) throw ex;
+        return null;
+    }
+
+    @Override
+    public InputStream openCompressedFrameInputStream(RetrieveContext ctx, InstanceLocations inst, int frame)
+            throws IOException {
+        IOException ex = null;
+        String studyInstanceUID = inst.getAttributes().getString(Tag.StudyInstanceUID);
+        for (Location location : inst.getLocations()) {
+            if (location.getObjectType() == Location.ObjectType.DICOM_FILE)
+                try {
+                    FrameIndexCache.FrameIndex frameIndex = frameIndex(ctx, inst, location, studyInstanceUID);
+                    if (frameIndex == null || frame > frameIndex.getNumberOfFrames())
+                        return null;
+
+                    return openCompressedFrameInputStream(ctx, location, studyInstanceUID, frameIndex, frame);
+                } catch (IOException e) {
+                    ex = e;
+                }
+        }
+        if (ex != null) throw ex;
+        return null;
+    }
+
     @Override
     public Attributes loadMetadata(RetrieveContext ctx, InstanceLocations inst) throws IOException {
         IOException ex = null;
@@ -491,6 +564,58 @@ public class RetrieveServiceImpl implements RetrieveService {
         return null;
     }
 
+    @Override
+    public boolean isMetadataBundleEnabled(RetrieveContext ctx) {
+        return ctx.getSopInstanceUIDs().length == 0
+                && ctx.getArchiveAEExtension().metadataStorageID() != null;
+    }
+
+    @Override
+    public MetadataBundle loadMetadataBundle(RetrieveContext ctx, String studyIUID, String seriesIUID)
+            throws IOException {
+        MetadataBundle bundle = new MetadataBundle(studyIUID, seriesIUID);
+        Location location = ejb.findSeriesMetadata(studyIUID, seriesIUID);
+        if (location != null)
+            try (InputStream in = openInputStream(ctx, location, studyIUID)) {
+                bundle.readFrom(in);
+            }
+        return bundle;
+    }
+
+    @Override
+    public void storeMetadataBundle(RetrieveContext ctx, MetadataBundle bundle) throws IOException {
+        StorageDescriptor descriptor = ctx.getArchiveAEExtension().getMetadataStorageDescriptor();
+        Storage storage = getStorage(ctx, descriptor.getStorageID());
+        WriteContext writeCtx = storage.createWriteContext();
+        Attributes attrs = new Attributes(3);
+        attrs.setString(Tag.StudyInstanceUID, VR.UI, bundle.getStudyInstanceUID());
+        attrs.setString(Tag.SeriesInstanceUID, VR.UI, bundle.getSeriesInstanceUID());
+        attrs.setString(Tag.SOPInstanceUID, VR.UI, UIDUtils.createUID());
+        writeCtx.setAttributes(attrs);
+        writeCtx.setStudyInstanceUID(bundle.getStudyInstanceUID());
+        boolean stored = false;
+        try {
+            try (OutputStream out = storage.openOutputStream(writeCtx)) {
+                bundle.writeTo(out);
+            }
+            storage.commitStorage(writeCtx);
+            stored = ejb.updateSeriesMetadata(bundle.getStudyInstanceUID(), bundle.getSeriesInstanceUID(),
+                    new Location.Builder()
+                            .storageID(descriptor.getStorageID())
+                            .storagePath(writeCtx.getStoragePath())
+                            .size(writeCtx.getSize())
+                            .objectType(Location.ObjectType.METADATA)
+                            .build());
+        } finally {
+            if (!stored && writeCtx.getStoragePath() != null)
+                try {
+                    storage.revokeStorage(writeCtx);
+                } catch (IOException e) {
+                    LOG.warn("Failed to revoke storage", e);
+                }
+        }
+    }
+
     @Override
     public Map<String,Collection<InstanceLocations>> removeNotAccessableMatches(RetrieveContext ctx) {
         ArchiveAEExtension arcAE = ctx.getArchiveAEExtension();
@@ -722,13 +847,74 @@ public class RetrieveServiceImpl implements RetrieveService {
         return storage.openInputStream(readContext);
     }
 
+    private FrameIndexCache.FrameIndex frameIndex(
+            RetrieveContext ctx, InstanceLocations inst, Location location, String studyInstanceUID)
+            throws IOException {
+        FrameIndexCache.FrameIndex frameIndex = frameIndexCache.get(location.getPk());
+        if (frameIndex != null)
+            return frameIndex;
+
+        int numFrames = inst.getAttributes().getInt(Tag.NumberOfFrames, 1);
+        Long pixelDataOffset = location.getPixelDataOffset();
+        if (pixelDataOffset != null) {
+            try (InputStream in = openInputStream(ctx, location, studyInstanceUID, pixelDataOffset, -1)) {
+                frameIndex = FrameIndexCache.FrameIndex.parse(in, pixelDataOffset, numFrames);
+            }
+        } else {
+            try (DicomInputStream dis = openLocationInputStream(ctx, location, studyInstanceUID)
+                    .getDicomInputStream()) {
+                dis.readDataset(-1, Tag.PixelData);
+                if (dis.tag() != Tag.PixelData || dis.length() != -1)
+                    return null;
+
+                frameIndex = FrameIndexCache.FrameIndex.parse(dis, dis.getPosition(), numFrames);
+            }
+        }
+        if (frameIndex != null && frameIndexCache.getMaxSize() > 0)
+            frameIndexCache.put(location.getPk(), frameIndex);
+        return frameIndex;
+    }
+
+    private InputStream openCompressedFrameInputStream(RetrieveContext ctx, Location location,
+            String studyInstanceUID, FrameIndexCache.FrameIndex frameIndex, int frame) throws IOException {
+        int fragment = frameIndex.firstFragment(frame);
+        int endFragment = frameIndex.endFragment(frame);
+        if (endFragment - fragment == 1)
+            return openInputStream(ctx, location, studyInstanceUID,
+                    frameIndex.fragmentOffset(fragment), frameIndex.fragmentLength(fragment));
+
+        ArrayList<InputStream> fragments = new ArrayList<>(endFragment - fragment);
+        try {
+            for (; fragment < endFragment; fragment++)
+                fragments.add(openInputStream(ctx, location, studyInstanceUID,
+                        frameIndex.fragmentOffset(fragment), frameIndex.fragmentLength(fragment)));
+        } catch (IOException e) {
+            fragments.forEach(SafeClose::close);
+            throw e;
+        }
+        return new SequenceInputStream(Collections.enumeration(fragments));
+    }
+
+    private InputStream openInputStream(RetrieveContext ctx, Location location, String studyInstanceUID,
+                                        long offset, long length) throws IOException {
+        Storage storage = getStorage(ctx, location.getStorageID());
+        ReadContext readContext = storage.createReadContext();
+        readContext.setStoragePath(location.getStoragePath());
+        readContext.setStudyInstanceUID(studyInstanceUID);
+        readContext.setOffset(offset);
+        readContext.setLength(length);
+        return storage.openInputStream(readContext);
+    }
+
     private Storage getStorage(RetrieveContext ctx, String storageID) {
-        Storage storage = ctx.getStorage(storageID);
-        if (storage == null) {
-            ArchiveDeviceExtension arcDev = ctx.getArchiveAEExtension().getArchiveDeviceExtension();
-            storage = storageFactory.getStorage(arcDev.getStorageDescriptorNotNull(storageID));
-            ctx.putStorage(storageID, storage);
+        synchronized (ctx) {
+            Storage storage = ctx.getStorage(storageID);
+            if (storage == null) {
+                ArchiveDeviceExtension arcDev = ctx.getArchiveAEExtension().getArchiveDeviceExtension();
+                storage = storageFactory.getStorage(arcDev.getStorageDescriptorNotNull(storageID));
+                ctx.putStorage(storageID, storage);
+            }
+            return storage;
         }
-        return storage;
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc;
+
+import org.dcm4che3.data.Attributes;
+import org.dcm4chee.arc.entity.AttributesBlob;
+
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * Cache of decoded Patient, Study and Series attributes by entity pk, versioned by the {@code version} column of
+ * the entity, which is also incremented by bulk updates bypassing the entity manager.
+ * <p>
+ * Cached attributes are shared between threads and must not be modified; use {@link #unifyCharacterSets} instead of
+ * {@link Attributes#unifyCharacterSets}.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class AttributesCache extends Cache<AttributesCache.Key,AttributesCache.Versioned> {
+
+    public AttributesCache() {
+        setStaleTimeout(NEVER_EXPIRE);
+    }
+
+    public enum Entity { Patient, Study, Series }
+
+    public Attributes getAttributes(Entity entity, Long pk, long version, byte[] encodedAttributes) {
+        if (getMaxSize() <= 0)
+            return AttributesBlob.decodeAttributes(encodedAttributes, null);
+
+        Key key = new Key(entity, pk);
+        Entry<Versioned> entry = getEntry(key, versioned -> versioned.version == version);
+        if (entry != null)
+            return entry.value().attrs;
+
+        Attributes attrs = AttributesBlob.decodeAttributes(encodedAttributes, null);
+        put(key, new Versioned(version, attrs));
+        return attrs;
+    }
+
+    public void invalidate(Entity entity, Long pk) {
+        remove(new Key(entity, pk));
+    }
+
+    /**
+     * Unifies the Specific Character Sets of the specified attributes like {@link Attributes#unifyCharacterSets},
+     * but replaces attributes which would be modified by copies, so cached attributes are left unchanged.
+     */
+    public static void unifyCharacterSets(Attributes... attrsList) {
+        for (int i = 1; i < attrsList.length; i++) {
+            if (!attrsList[i].getSpecificCharacterSet().equals(attrsList[0].getSpecificCharacterSet())) {
+                for (int j = 0; j < attrsList.length; j++)
+                    attrsList[j] = new Attributes(attrsList[j]);
+                Attributes.unifyCharacterSets(attrsList);
+                return;
+            }
+        }
+    }
+
+    public static final class Key {
+        private final Entity entity;
+        private final Long pk;
+
+        Key(Entity entity, Long pk) {
+            this.entity = entity;
+            this.pk = pk;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return entity == other.entity && pk.equals(other.pk);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * entity.hashCode() + pk.hashCode();
+        }
+    }
+
+    public static final class Versioned {
+        private final long version;
+        private final Attributes attrs;
+
+        Versioned(long version, Attributes attrs) {
+            this.version = version;
+            this.attrs = attrs;
+        }
+    }
+}
@@ -43,51 +43,90 @@ package org.dcm4chee.arc;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
+ * Thread-safe, size bounded cache with stale timeout.
+ * <p>
+ * Entries are distributed over {@link #SEGMENTS} lock-striped segments, each maintaining its entries in access order.
+ * Stale entries are evicted lazily on access of the entry and when an entry is added to its segment, so lookups
+ * never walk over the cache. If the number of entries exceeds {@link #getMaxSize()} or the sum of the weights of the
+ * entries - as returned by {@link #weigh} - exceeds {@link #getMaxWeight()}, the least recently accessed entries of the
+ * segment, into which the new entry was added, and then of the other segments are evicted.
+ * <p>
+ * A stale timeout of {@code 0} - the default - disables caching, a negative stale timeout - e.g.
+ * {@link #NEVER_EXPIRE} - let entries never get stale.
+ *
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @since May 2016
  */
 public class Cache<K,V> {
 
+    private static final int SEGMENTS = 16;
+
+    public static final long NEVER_EXPIRE = -1L;
+
     public static final class Entry<V> {
         final V value;
         final long fetchTime;
-        Entry(V value, long fetchTime) {
+        final long weight;
+        Entry(V value, long fetchTime, long weight) {
             this.value = value;
             this.fetchTime = fetchTime;
+            this.weight = weight;
         }
         public V value() {
             return value;
         }
     }
 
-    private int maxSize;
-    private long staleTimeout;
+    private volatile int maxSize;
+    private volatile long maxWeight;
+    private volatile long staleTimeout;
+    private final Segment<K,V>[] segments;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
 
-    private final LinkedHashMap<K,Entry<V>> cache = new LinkedHashMap<K,Entry<V>>(){
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, Cache.Entry<V>> eldest) {
-            return maxSize > 0 && size() > maxSize;
-        }
-    };
+    @SuppressWarnings("unchecked")
+    public Cache() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < segments.length; i++)
+            segments[i] = new Segment<>();
+    }
 
     public int getMaxSize() {
         return maxSize;
     }
 
     public void setMaxSize(int maxSize) {
-        if (maxSize > 0) {
-            int remove = cache.size() - maxSize;
-            if (remove > 0) {
-                Iterator<Map.Entry<K, Entry<V>>> iter = cache.entrySet().iterator();
-                do {
-                    iter.next();
-                    iter.remove();
-                } while (--remove > 0);
-            }
-        }
         this.maxSize = maxSize;
+        if (maxSize > 0)
+            evictEldest(null);
+    }
+
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Bounds the sum of the weights of the entries. A value {@code <= 0} - the default - does not bound the weight.
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        if (maxWeight > 0)
+            evictEldest(null);
+    }
+
+    /**
+     * Returns the weight of the value, used to bound the cache by {@link #setMaxWeight}. Returns {@code 1} by default.
+     */
+    protected long weigh(V value) {
+        return 1L;
     }
 
     public long getStaleTimeout() {
@@ -98,12 +137,55 @@ public class Cache<K,V> {
         this.staleTimeout = staleTimeout;
     }
 
+    public int size() {
+        return size.get();
+    }
+
+    public long weight() {
+        return weight.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public void resetStatistics() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
     public Entry<V> getEntry(K key) {
-        long minFetchTime = System.currentTimeMillis() - staleTimeout;
-        for (Iterator<Entry<V>> iter = cache.values().iterator(); iter.hasNext(); iter.remove())
-            if (iter.next().fetchTime > minFetchTime)
-                return cache.get(key);
-        return null;
+        return getEntry(key, null);
+    }
+
+    /**
+     * Returns the entry for the specified key, if its value is accepted by {@code isValid}. Entries with not accepted
+     * values are evicted like stale entries.
+     */
+    public Entry<V> getEntry(K key, Predicate<? super V> isValid) {
+        Segment<K,V> segment = segmentFor(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && (isStale(entry, minFetchTime())
+                    || isValid != null && !isValid.test(entry.value))) {
+                segment.remove(key);
+                removed(entry);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+        }
+        (entry != null ? hits : misses).incrementAndGet();
+        return entry;
     }
 
     public V get(K key) {
@@ -112,16 +194,106 @@ public class Cache<K,V> {
     }
 
     public V put(K key, V value) {
-        Entry<V> entry = cache.put(key, new Entry<V>(value, System.currentTimeMillis()));
-        return entry != null ? entry.value : null;
+        Segment<K,V> segment = segmentFor(key);
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis(), weigh(value));
+        Entry<V> prev;
+        synchronized (segment) {
+            prev = segment.put(key, entry);
+            if (prev == null)
+                size.incrementAndGet();
+            weight.addAndGet(prev == null ? entry.weight : entry.weight - prev.weight);
+            evictStale(segment);
+        }
+        while (exceedsLimits() && evictEldest(segment, key));
+        if (exceedsLimits())
+            evictEldest(key);
+        return prev != null ? prev.value : null;
     }
 
     public V remove(K key) {
-        Entry<V> entry = cache.remove(key);
+        Segment<K,V> segment = segmentFor(key);
+        Entry<V> entry;
+        synchronized (segment) {
+            entry = segment.remove(key);
+            if (entry != null)
+                removed(entry);
+        }
         return entry != null ? entry.value : null;
     }
 
     public void clear() {
-        cache.clear();
+        for (Segment<K,V> segment : segments) {
+            synchronized (segment) {
+                for (Entry<V> entry : segment.values())
+                    removed(entry);
+                segment.clear();
+            }
+        }
+    }
+
+    private void removed(Entry<V> entry) {
+        size.decrementAndGet();
+        weight.addAndGet(-entry.weight);
+    }
+
+    private boolean exceedsLimits() {
+        int maxSize = this.maxSize;
+        long maxWeight = this.maxWeight;
+        return maxSize > 0 && size.get() > maxSize || maxWeight > 0 && weight.get() > maxWeight;
+    }
+
+    private Segment<K,V> segmentFor(K key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private long minFetchTime() {
+        long staleTimeout = this.staleTimeout;
+        return staleTimeout >= 0 ? System.currentTimeMillis() - staleTimeout : Long.MIN_VALUE;
+    }
+
+    private static boolean isStale(Entry<?> entry, long minFetchTime) {
+        return entry.fetchTime <= minFetchTime;
+    }
+
+    private void evictStale(Segment<K,V> segment) {
+        long minFetchTime = minFetchTime();
+        Iterator<Entry<V>> iter = segment.values().iterator();
+        Entry<V> entry;
+        while (iter.hasNext() && isStale(entry = iter.next(), minFetchTime)) {
+            iter.remove();
+            removed(entry);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void evictEldest(K exclude) {
+        boolean evicted = true;
+        while (evicted && exceedsLimits()) {
+            evicted = false;
+            for (int i = 0; exceedsLimits() && i < segments.length; i++)
+                evicted |= evictEldest(segments[i], exclude);
+        }
+    }
+
+    private boolean evictEldest(Segment<K,V> segment, K exclude) {
+        synchronized (segment) {
+            Iterator<Map.Entry<K,Entry<V>>> iter = segment.entrySet().iterator();
+            if (!iter.hasNext())
+                return false;
+            Map.Entry<K,Entry<V>> eldest = iter.next();
+            if (eldest.getKey().equals(exclude))
+                return false;
+            iter.remove();
+            removed(eldest.getValue());
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+
+    private static final class Segment<K,V> extends LinkedHashMap<K,Entry<V>> {
+        Segment() {
+            super(16, 0.75f, true);
+        }
     }
 }
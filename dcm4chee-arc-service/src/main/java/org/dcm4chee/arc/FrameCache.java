@@ -0,0 +1,119 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Date;
+
+/**
+ * Cache of decompressed or transcoded frames by SOP Instance UID, frame number and Transfer Syntax UID, versioned by
+ * the update time of the instance, bounded by the total size of the cached frames in bytes.
+ * <p>
+ * Cached frames are shared between threads and must not be modified.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class FrameCache extends Cache<FrameCache.Key,FrameCache.Versioned> {
+
+    public FrameCache() {
+        setStaleTimeout(NEVER_EXPIRE);
+    }
+
+    public boolean isEnabled() {
+        return getMaxWeight() > 0;
+    }
+
+    @Override
+    protected long weigh(Versioned versioned) {
+        return versioned.data.length;
+    }
+
+    public byte[] getFrame(String iuid, int frame, String tsuid, Date updatedTime) {
+        if (!isEnabled())
+            return null;
+
+        long version = updatedTime != null ? updatedTime.getTime() : 0L;
+        Entry<Versioned> entry = getEntry(new Key(iuid, frame, tsuid), versioned -> versioned.version == version);
+        return entry != null ? entry.value().data : null;
+    }
+
+    public void putFrame(String iuid, int frame, String tsuid, Date updatedTime, byte[] data) {
+        if (isEnabled())
+            put(new Key(iuid, frame, tsuid), new Versioned(updatedTime != null ? updatedTime.getTime() : 0L, data));
+    }
+
+    public static final class Key {
+        private final String iuid;
+        private final int frame;
+        private final String tsuid;
+
+        Key(String iuid, int frame, String tsuid) {
+            this.iuid = iuid;
+            this.frame = frame;
+            this.tsuid = tsuid;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return frame == other.frame && iuid.equals(other.iuid) && tsuid.equals(other.tsuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * iuid.hashCode() + frame) + tsuid.hashCode();
+        }
+    }
+
+    public static final class Versioned {
+        private final long version;
+        private final byte[] data;
+
+        Versioned(long version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+}
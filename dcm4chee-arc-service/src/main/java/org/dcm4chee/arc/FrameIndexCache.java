@@ -0,0 +1,159 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc;
+
+import org.dcm4che3.data.Tag;
+import org.dcm4che3.util.ByteUtils;
+import org.dcm4che3.util.StreamUtils;
+import org.dcm4che3.util.TagUtils;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cache of fragment offset indexes of encapsulated Pixel Data by location pk.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class FrameIndexCache extends Cache<Long,FrameIndexCache.FrameIndex> {
+
+    public FrameIndexCache() {
+        setStaleTimeout(NEVER_EXPIRE);
+    }
+
+    public static final class FrameIndex {
+        private final long[] fragmentOffsets;
+        private final int[] fragmentLengths;
+        private final int[] firstFragmentOfFrame;
+
+        private FrameIndex(long[] fragmentOffsets, int[] fragmentLengths, int[] firstFragmentOfFrame) {
+            this.fragmentOffsets = fragmentOffsets;
+            this.fragmentLengths = fragmentLengths;
+            this.firstFragmentOfFrame = firstFragmentOfFrame;
+        }
+
+        public int getNumberOfFrames() {
+            return firstFragmentOfFrame.length - 1;
+        }
+
+        public int firstFragment(int frame) {
+            return firstFragmentOfFrame[frame - 1];
+        }
+
+        public int endFragment(int frame) {
+            return firstFragmentOfFrame[frame];
+        }
+
+        public long fragmentOffset(int fragment) {
+            return fragmentOffsets[fragment];
+        }
+
+        public int fragmentLength(int fragment) {
+            return fragmentLengths[fragment];
+        }
+
+        /**
+         * Parses Item headers of encapsulated Pixel Data, skipping fragment values.
+         *
+         * @param in        stream positioned at the value of encapsulated Pixel Data
+         * @param position  position of {@code in} in the stored object
+         * @param numFrames Number of Frames
+         * @return index of fragments of each frame or {@code null}, if Pixel Data is not encapsulated or if fragments
+         * cannot be assigned to frames without Basic Offset Table
+         */
+        public static FrameIndex parse(InputStream in, long position, int numFrames) throws IOException {
+            byte[] header = new byte[8];
+            StreamUtils.readFully(in, header, 0, 8);
+            if (ByteUtils.bytesToTagLE(header, 0) != Tag.Item)
+                return null;
+
+            byte[] bot = new byte[ByteUtils.bytesToIntLE(header, 4)];
+            StreamUtils.readFully(in, bot, 0, bot.length);
+            position += 8 + bot.length;
+            long firstFragmentPosition = position;
+            long[] offsets = new long[Math.max(numFrames, 16)];
+            int[] lengths = new int[offsets.length];
+            int numFragments = 0;
+            for (;;) {
+                StreamUtils.readFully(in, header, 0, 8);
+                int tag = ByteUtils.bytesToTagLE(header, 0);
+                if (tag == Tag.SequenceDelimitationItem)
+                    break;
+                if (tag != Tag.Item)
+                    throw new IOException("Unexpected " + TagUtils.toString(tag) + " in encapsulated Pixel Data");
+                int length = ByteUtils.bytesToIntLE(header, 4);
+                if (numFragments == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, numFragments << 1);
+                    lengths = Arrays.copyOf(lengths, numFragments << 1);
+                }
+                offsets[numFragments] = position + 8;
+                lengths[numFragments++] = length;
+                StreamUtils.skipFully(in, length);
+                position += 8 + length;
+            }
+            int[] firstFragmentOfFrame = new int[numFrames + 1];
+            firstFragmentOfFrame[numFrames] = numFragments;
+            if (bot.length == numFrames * 4) {
+                for (int frame = 0, fragment = 0; frame < numFrames; frame++) {
+                    long itemOffset = firstFragmentPosition + (ByteUtils.bytesToIntLE(bot, frame * 4) & 0xFFFFFFFFL);
+                    while (fragment < numFragments && offsets[fragment] - 8 < itemOffset)
+                        fragment++;
+                    if (fragment == numFragments || offsets[fragment] - 8 != itemOffset)
+                        return null;
+                    firstFragmentOfFrame[frame] = fragment;
+                }
+            } else if (numFragments == numFrames) {
+                for (int frame = 0; frame < numFrames; frame++)
+                    firstFragmentOfFrame[frame] = frame;
+            } else if (numFrames != 1 || numFragments == 0) {
+                return null;
+            }
+            return new FrameIndex(
+                    Arrays.copyOf(offsets, numFragments),
+                    Arrays.copyOf(lengths, numFragments),
+                    firstFragmentOfFrame);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc;
+
+import javax.json.stream.JsonGenerator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of operation latencies with fixed, exponentially increasing bucket bounds.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class LatencyHistogram {
+
+    private static final long[] BOUNDS_MS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000, 30000 };
+
+    private final AtomicLongArray counts = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    public void record(long startNanos) {
+        recordMillis((System.nanoTime() - startNanos) / 1000000L);
+    }
+
+    public void recordMillis(long ms) {
+        int i = 0;
+        while (i < BOUNDS_MS.length && ms > BOUNDS_MS[i])
+            i++;
+        counts.incrementAndGet(i);
+        count.incrementAndGet();
+        totalMillis.addAndGet(ms);
+        long max;
+        while (ms > (max = maxMillis.get()) && !maxMillis.compareAndSet(max, ms));
+    }
+
+    public void recordError() {
+        errors.incrementAndGet();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    public long getAvgMillis() {
+        long n = count.get();
+        return n > 0 ? totalMillis.get() / n : 0L;
+    }
+
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++)
+            counts.set(i, 0L);
+        count.set(0L);
+        errors.set(0L);
+        totalMillis.set(0L);
+        maxMillis.set(0L);
+    }
+
+    /**
+     * Writes the histogram as JSON object, with the bucket counts keyed by the upper bound of each bucket in ms.
+     */
+    public void writeTo(JsonGenerator gen) {
+        gen.writeStartObject();
+        writeMembersTo(gen);
+        gen.writeEnd();
+    }
+
+    /**
+     * Writes the histogram as JSON object member with the specified name.
+     */
+    public void writeTo(String name, JsonGenerator gen) {
+        gen.writeStartObject(name);
+        writeMembersTo(gen);
+        gen.writeEnd();
+    }
+
+    private void writeMembersTo(JsonGenerator gen) {
+        gen.write("count", count.get());
+        gen.write("errors", errors.get());
+        gen.write("avgMillis", getAvgMillis());
+        gen.write("maxMillis", maxMillis.get());
+        gen.writeStartObject("buckets");
+        for (int i = 0; i < BOUNDS_MS.length; i++)
+            gen.write(String.valueOf(BOUNDS_MS[i]), counts.get(i));
+        gen.write("+Inf", counts.get(BOUNDS_MS.length));
+        gen.writeEnd();
+    }
+}
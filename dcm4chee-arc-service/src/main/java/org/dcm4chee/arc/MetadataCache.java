@@ -0,0 +1,94 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.Date;
+
+/**
+ * Cache of deflated JSON encoded instance metadata by SOP Instance UID, versioned by the update time of the instance.
+ * <p>
+ * Cached metadata is not coerced and contains Bulk Data URIs relative to the instance URL.
+ * <p>
+ * The cache is held in memory per instance and is disabled by default ({@code dcmMetadataCacheSize = 0}). It is only
+ * used for retrieving the metadata of single instances, or if no metadata storage is configured: otherwise the
+ * metadata of series and studies is read from the metadata bundle of each series on the metadata storage. Requests
+ * from clients which already hold the current metadata are answered by the entity tag and last modification time of
+ * the response, without accessing this cache or any storage.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class MetadataCache extends Cache<String,MetadataCache.Versioned> {
+
+    public MetadataCache() {
+        setStaleTimeout(NEVER_EXPIRE);
+    }
+
+    public boolean isEnabled() {
+        return getMaxSize() > 0;
+    }
+
+    public byte[] getMetadata(String iuid, Date updatedTime) {
+        if (!isEnabled())
+            return null;
+
+        long version = updatedTime != null ? updatedTime.getTime() : 0L;
+        Entry<Versioned> entry = getEntry(iuid, versioned -> versioned.version == version);
+        return entry != null ? entry.value().data : null;
+    }
+
+    public void putMetadata(String iuid, Date updatedTime, byte[] data) {
+        if (isEnabled())
+            put(iuid, new Versioned(updatedTime != null ? updatedTime.getTime() : 0L, data));
+    }
+
+    public static final class Versioned {
+        private final long version;
+        private final byte[] data;
+
+        Versioned(long version, byte[] data) {
+            this.version = version;
+            this.data = data;
+        }
+    }
+}
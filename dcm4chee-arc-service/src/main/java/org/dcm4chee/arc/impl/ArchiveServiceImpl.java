@@ -51,6 +51,7 @@ import org.dcm4che3.net.service.DicomService;
 import org.dcm4che3.net.service.DicomServiceRegistry;
 import org.dcm4chee.arc.*;
 import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
+import org.dcm4chee.arc.conf.BinaryPrefix;
 import org.dcm4chee.arc.entity.Patient;
 
 import javax.annotation.PostConstruct;
@@ -97,6 +98,18 @@ public class ArchiveServiceImpl implements ArchiveService {
     @Inject
     private StorePermissionCache storePermissionCache;
 
+    @Inject
+    private AttributesCache attributesCache;
+
+    @Inject
+    private FrameIndexCache frameIndexCache;
+
+    @Inject
+    private FrameCache frameCache;
+
+    @Inject
+    private MetadataCache metadataCache;
+
     @Inject
     private Device device;
 
@@ -204,6 +217,19 @@ public class ArchiveServiceImpl implements ArchiveService {
         storePermissionCache.setStaleTimeout(
                 arcdev.getStorePermissionCacheStaleTimeoutSeconds() * 1000L);
         storePermissionCache.setMaxSize(arcdev.getStorePermissionCacheSize());
+        attributesCache.setMaxSize(arcdev.getAttributesCacheSize());
+        if (arcdev.getAttributesCacheSize() <= 0)
+            attributesCache.clear();
+        frameIndexCache.setMaxSize(arcdev.getFrameIndexCacheSize());
+        if (arcdev.getFrameIndexCacheSize() <= 0)
+            frameIndexCache.clear();
+        String frameCacheSize = arcdev.getFrameCacheSize();
+        frameCache.setMaxWeight(frameCacheSize != null ? BinaryPrefix.parse(frameCacheSize) : 0L);
+        if (!frameCache.isEnabled())
+            frameCache.clear();
+        metadataCache.setMaxSize(arcdev.getMetadataCacheSize());
+        if (arcdev.getMetadataCacheSize() <= 0)
+            metadataCache.clear();
         Patient.setShowPatientInfo(arcdev.showPatientInfoInSystemLog());
     }
 
@@ -0,0 +1,187 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class CacheTest {
+
+    @Test
+    public void staleTimeoutZeroDisablesCaching() throws Exception {
+        Cache<String,String> cache = new Cache<>();
+        cache.put("a", "A");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void neverExpire() throws Exception {
+        Cache<String,String> cache = new Cache<>();
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        cache.put("a", "A");
+        Thread.sleep(5);
+        assertEquals("A", cache.get("a"));
+    }
+
+    @Test
+    public void staleTimeout() throws Exception {
+        Cache<String,String> cache = new Cache<>();
+        cache.setStaleTimeout(60000L);
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        cache.setStaleTimeout(1L);
+        Thread.sleep(5);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void evictStaleOnPut() throws Exception {
+        Cache<String,String> cache = new Cache<>();
+        cache.setStaleTimeout(1L);
+        cache.put("a", "A");
+        Thread.sleep(5);
+        cache.setStaleTimeout(60000L);
+        cache.put("a", "A2");
+        assertEquals("A2", cache.get("a"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void invalidValue() throws Exception {
+        Cache<String,String> cache = new Cache<>();
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        cache.put("a", "A");
+        assertNull(cache.getEntry("a", "B"::equals));
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws Exception {
+        Cache<Integer,String> cache = new Cache<>();
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        cache.setMaxSize(2);
+        // keys 0, 16, 32 map to the same segment
+        cache.put(0, "0");
+        cache.put(16, "16");
+        assertEquals("0", cache.get(0));
+        cache.put(32, "32");
+        assertEquals(2, cache.size());
+        assertNull(cache.get(16));
+        assertEquals("0", cache.get(0));
+        assertEquals("32", cache.get(32));
+    }
+
+    @Test
+    public void evictFromOtherSegment() throws Exception {
+        Cache<Integer,String> cache = new Cache<>();
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        cache.setMaxSize(1);
+        cache.put(0, "0");
+        cache.put(1, "1");
+        assertEquals(1, cache.size());
+        assertEquals("1", cache.get(1));
+    }
+
+    @Test
+    public void reduceMaxSize() throws Exception {
+        Cache<Integer,String> cache = new Cache<>();
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        for (int i = 0; i < 10; i++)
+            cache.put(i, Integer.toString(i));
+        cache.setMaxSize(3);
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void evictByWeight() throws Exception {
+        Cache<Integer,String> cache = new Cache<Integer,String>() {
+            @Override
+            protected long weigh(String value) {
+                return value.length();
+            }
+        };
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        cache.setMaxWeight(5);
+        cache.put(0, "aa");
+        cache.put(16, "bb");
+        assertEquals(4, cache.weight());
+        cache.put(32, "cc");
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.weight());
+        assertNull(cache.get(0));
+        cache.remove(16);
+        assertEquals(2, cache.weight());
+        cache.clear();
+        assertEquals(0, cache.weight());
+    }
+
+    @Test
+    public void evictSeveralByWeight() throws Exception {
+        Cache<Integer,String> cache = new Cache<Integer,String>() {
+            @Override
+            protected long weigh(String value) {
+                return value.length();
+            }
+        };
+        cache.setStaleTimeout(Cache.NEVER_EXPIRE);
+        cache.setMaxWeight(10);
+        // keys 0, 16, 32, 48 map to the same segment, key 1 to another one
+        cache.put(0, "aa");
+        cache.put(16, "bb");
+        cache.put(1, "cc");
+        cache.put(32, "dd");
+        assertEquals(8, cache.weight());
+        cache.put(48, "eeeeeeee");
+        assertTrue(cache.weight() <= 10);
+        assertEquals("eeeeeeee", cache.get(48));
+        assertNull(cache.get(0));
+        assertNull(cache.get(16));
+    }
+}
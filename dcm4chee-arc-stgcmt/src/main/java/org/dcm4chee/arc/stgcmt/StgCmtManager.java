@@ -62,4 +62,6 @@ public interface StgCmtManager {
     boolean deleteStgCmt(String transactionUID);
 
     int deleteStgCmts(StgCmtResult.Status status, Date updatedBefore);
+
+    int updateLocationVerifiedTime(List<Long> locationPks, Date verifiedTime);
 }
@@ -40,12 +40,15 @@
 
 package org.dcm4chee.arc.stgcmt.impl;
 
+import com.querydsl.core.Tuple;
 import com.querydsl.jpa.hibernate.HibernateQuery;
 import org.dcm4che3.data.Attributes;
+import org.dcm4che3.data.Code;
 import org.dcm4che3.data.Sequence;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.net.Device;
+import org.dcm4che3.util.StringUtils;
 import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
 import org.dcm4chee.arc.conf.ExporterDescriptor;
 import org.dcm4chee.arc.conf.RejectionNote;
@@ -76,6 +79,10 @@ public class StgCmtEJB implements StgCmtManager {
 
     private final Logger LOG = LoggerFactory.getLogger(StgCmtEJB.class);
 
+    private static final QCodeEntity REJECTION_NOTE_CODE = new QCodeEntity("rejectionNoteCode");
+    private static final QCodeEntity CONCEPT_NAME_CODE = new QCodeEntity("conceptNameCode");
+    private static final int MAX_PKS_PER_UPDATE = 1000;
+
     @PersistenceContext(unitName="dcm4chee-arc")
     private EntityManager em;
 
@@ -113,67 +120,122 @@ public class StgCmtEJB implements StgCmtManager {
         String configRetrieveAET = ed.getRetrieveAETitles().length > 0 ? ed.getRetrieveAETitles()[0] : null;
         String defRetrieveAET = eventInfo.getString(Tag.RetrieveAETitle, ed.getStgCmtSCPAETitle());
         Sequence sopSeq = eventInfo.getSequence(Tag.ReferencedSOPSequence);
-        List<Instance> instances = em.createNamedQuery(Instance.FIND_BY_STUDY_IUID, Instance.class)
-                                .setParameter(1, suid).getResultList();
+        Map<String,String> retrieveAETs = new HashMap<>(sopSeq.size() * 4 / 3 + 1);
+        for (Attributes sopRef : sopSeq)
+            retrieveAETs.put(sopRef.getString(Tag.ReferencedSOPInstanceUID),
+                    configRetrieveAET != null
+                            ? configRetrieveAET
+                            : sopRef.getString(Tag.RetrieveAETitle, defRetrieveAET));
+        List<Tuple> instances = queryInstancesOfStudy(suid);
+        if (instances.isEmpty())
+            return;
+
+        Map<String,List<Long>> instancePksByAET = new HashMap<>();
         Set<String> studyExternalAETs = new HashSet<>(4);
-        Map<Series,Set<String>> seriesExternalAETsMap = new IdentityHashMap<>();
-        for (Instance inst : instances) {
-            Attributes sopRef = sopRefOf(inst.getSopInstanceUID(), sopSeq);
-            if (sopRef != null) {
-                inst.setExternalRetrieveAET(
-                        configRetrieveAET != null
-                                ? configRetrieveAET
-                                : sopRef.getString(Tag.RetrieveAETitle, defRetrieveAET));
+        Map<Long,Set<String>> seriesExternalAETsMap = new HashMap<>();
+        Map<Long,String> prevSeriesExternalAETs = new HashMap<>();
+        for (Tuple inst : instances) {
+            String iuid = inst.get(QInstance.instance.sopInstanceUID);
+            String externalRetrieveAET = inst.get(QInstance.instance.externalRetrieveAET);
+            if (retrieveAETs.containsKey(iuid)) {
+                String retrieveAET = retrieveAETs.get(iuid);
+                if (!Objects.equals(externalRetrieveAET, retrieveAET)) {
+                    List<Long> pks = instancePksByAET.get(retrieveAET);
+                    if (pks == null)
+                        instancePksByAET.put(retrieveAET, pks = new ArrayList<>());
+                    pks.add(inst.get(QInstance.instance.pk));
+                }
+                externalRetrieveAET = retrieveAET;
             }
             if (!isRejectedOrRejectionNoteDataRetentionPolicyExpired(inst)) {
-                String externalRetrieveAET = inst.getExternalRetrieveAET();
-                Series series = inst.getSeries();
-                Set<String> seriesExternalAETs = seriesExternalAETsMap.get(series);
-                if (seriesExternalAETs == null)
-                    seriesExternalAETsMap.put(series, seriesExternalAETs = new HashSet<String>(4));
+                Long seriesPk = inst.get(QSeries.series.pk);
+                Set<String> seriesExternalAETs = seriesExternalAETsMap.get(seriesPk);
+                if (seriesExternalAETs == null) {
+                    seriesExternalAETsMap.put(seriesPk, seriesExternalAETs = new HashSet<>(4));
+                    prevSeriesExternalAETs.put(seriesPk, inst.get(QSeries.series.externalRetrieveAET));
+                }
                 seriesExternalAETs.add(externalRetrieveAET);
                 studyExternalAETs.add(externalRetrieveAET);
             }
         }
-        for (Map.Entry<Series, Set<String>> entry : seriesExternalAETsMap.entrySet()) {
+        for (Map.Entry<String, List<Long>> entry : instancePksByAET.entrySet())
+            updateExternalRetrieveAET(Instance.UPDATE_EXTERNAL_RETRIEVE_AET, entry.getKey(), entry.getValue());
+
+        Map<String,List<Long>> seriesPksByAET = new HashMap<>();
+        for (Map.Entry<Long, Set<String>> entry : seriesExternalAETsMap.entrySet()) {
             Set<String> seriesExternalAETs = entry.getValue();
-            if (seriesExternalAETs.size() == 1 && !seriesExternalAETs.contains(null))
-                entry.getKey().setExternalRetrieveAET(seriesExternalAETs.iterator().next());
+            if (seriesExternalAETs.size() == 1 && !seriesExternalAETs.contains(null)) {
+                String retrieveAET = seriesExternalAETs.iterator().next();
+                if (!retrieveAET.equals(prevSeriesExternalAETs.get(entry.getKey()))) {
+                    List<Long> pks = seriesPksByAET.get(retrieveAET);
+                    if (pks == null)
+                        seriesPksByAET.put(retrieveAET, pks = new ArrayList<>());
+                    pks.add(entry.getKey());
+                }
+            }
         }
-        if (studyExternalAETs.size() == 1 && !studyExternalAETs.contains(null))
-            instances.get(0).getSeries().getStudy().setExternalRetrieveAET(studyExternalAETs.iterator().next());
-    }
+        for (Map.Entry<String, List<Long>> entry : seriesPksByAET.entrySet())
+            updateExternalRetrieveAET(Series.UPDATE_EXTERNAL_RETRIEVE_AET, entry.getKey(), entry.getValue());
 
-    private Instance nextNotRejected(Iterator<Instance> iter) {
-        while (iter.hasNext()) {
-            Instance next = iter.next();
-            if (!isRejectedOrRejectionNoteDataRetentionPolicyExpired(next))
-                return next;
+        if (studyExternalAETs.size() == 1 && !studyExternalAETs.contains(null)) {
+            String retrieveAET = studyExternalAETs.iterator().next();
+            Tuple inst = instances.get(0);
+            if (!retrieveAET.equals(inst.get(QStudy.study.externalRetrieveAET)))
+                em.createNamedQuery(Study.UPDATE_EXTERNAL_RETRIEVE_AET)
+                        .setParameter(1, retrieveAET)
+                        .setParameter(2, inst.get(QStudy.study.pk))
+                        .executeUpdate();
         }
-        return null;
     }
 
-    private boolean isRejectedOrRejectionNoteDataRetentionPolicyExpired(Instance inst) {
-        if (inst.getRejectionNoteCode() != null)
+    private List<Tuple> queryInstancesOfStudy(String suid) {
+        return new HibernateQuery<Void>(em.unwrap(Session.class))
+                .select(QInstance.instance.pk,
+                        QInstance.instance.sopInstanceUID,
+                        QInstance.instance.sopClassUID,
+                        QInstance.instance.externalRetrieveAET,
+                        REJECTION_NOTE_CODE.pk,
+                        CONCEPT_NAME_CODE.codeValue,
+                        CONCEPT_NAME_CODE.codingSchemeDesignator,
+                        CONCEPT_NAME_CODE.codingSchemeVersion,
+                        QSeries.series.pk,
+                        QSeries.series.externalRetrieveAET,
+                        QStudy.study.pk,
+                        QStudy.study.externalRetrieveAET)
+                .from(QInstance.instance)
+                .join(QInstance.instance.series, QSeries.series)
+                .join(QSeries.series.study, QStudy.study)
+                .leftJoin(QInstance.instance.rejectionNoteCode, REJECTION_NOTE_CODE)
+                .leftJoin(QInstance.instance.conceptNameCode, CONCEPT_NAME_CODE)
+                .where(QStudy.study.studyInstanceUID.eq(suid))
+                .fetch();
+    }
+
+    private void updateExternalRetrieveAET(String queryName, String retrieveAET, List<Long> pks) {
+        for (int i = 0; i < pks.size(); i += MAX_PKS_PER_UPDATE)
+            em.createNamedQuery(queryName)
+                    .setParameter(1, retrieveAET)
+                    .setParameter(2, pks.subList(i, Math.min(i + MAX_PKS_PER_UPDATE, pks.size())))
+                    .executeUpdate();
+    }
+
+    private boolean isRejectedOrRejectionNoteDataRetentionPolicyExpired(Tuple inst) {
+        if (inst.get(REJECTION_NOTE_CODE.pk) != null)
             return true;
 
-        if (!inst.getSopClassUID().equals(UID.KeyObjectSelectionDocumentStorage)
-                || inst.getConceptNameCode() == null)
+        String codeValue = inst.get(CONCEPT_NAME_CODE.codeValue);
+        if (!UID.KeyObjectSelectionDocumentStorage.equals(inst.get(QInstance.instance.sopClassUID))
+                || codeValue == null)
             return false;
 
         ArchiveDeviceExtension arcdev = device.getDeviceExtension(ArchiveDeviceExtension.class);
-        RejectionNote rjnote = arcdev.getRejectionNote(inst.getConceptNameCode().getCode());
+        RejectionNote rjnote = arcdev.getRejectionNote(new Code(codeValue,
+                inst.get(CONCEPT_NAME_CODE.codingSchemeDesignator),
+                StringUtils.nullify(inst.get(CONCEPT_NAME_CODE.codingSchemeVersion), "*"),
+                null));
         return rjnote != null && rjnote.getRejectionNoteType() == RejectionNote.Type.DATA_RETENTION_POLICY_EXPIRED;
     }
 
-    private Attributes sopRefOf(String iuid, Sequence seq) {
-        for (Attributes item : seq) {
-            if (iuid.equals(item.getString(Tag.ReferencedSOPInstanceUID)))
-                return item;
-        }
-        return null;
-    }
-
     @Override
     public void persistStgCmtResult(StgCmtResult result) {
         em.persist(result);
@@ -223,6 +285,14 @@ public class StgCmtEJB implements StgCmtManager {
         return results.size();
     }
 
+    @Override
+    public int updateLocationVerifiedTime(List<Long> locationPks, Date verifiedTime) {
+        return em.createNamedQuery(Location.UPDATE_VERIFIED_TIME)
+                .setParameter(1, verifiedTime)
+                .setParameter(2, locationPks)
+                .executeUpdate();
+    }
+
     private HibernateQuery<StgCmtResult> getStgCmtResults(
             StatelessSession session, StgCmtResult.Status status, String studyUID, String exporterId) {
         Predicate predicate = getPredicates(status, studyUID, exporterId);
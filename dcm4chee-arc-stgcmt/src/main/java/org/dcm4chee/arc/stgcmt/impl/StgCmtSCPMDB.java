@@ -54,9 +54,11 @@ import org.dcm4che3.util.SafeClose;
 import org.dcm4che3.util.StreamUtils;
 import org.dcm4che3.util.TagUtils;
 import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
+import org.dcm4chee.arc.conf.Duration;
 import org.dcm4chee.arc.entity.*;
 import org.dcm4chee.arc.qmgt.Outcome;
 import org.dcm4chee.arc.qmgt.QueueManager;
+import org.dcm4chee.arc.stgcmt.StgCmtManager;
 import org.dcm4chee.arc.stgcmt.StgCmtSCP;
 import org.dcm4chee.arc.storage.ReadContext;
 import org.dcm4chee.arc.storage.Storage;
@@ -78,9 +80,12 @@ import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -102,12 +107,14 @@ public class StgCmtSCPMDB implements MessageListener {
             QLocation.location.storagePath,
             QLocation.location.digest,
             QLocation.location.status,
+            QLocation.location.verifiedTime,
             QInstance.instance.sopClassUID,
             QInstance.instance.sopInstanceUID,
             QInstance.instance.retrieveAETs,
             QStudy.study.studyInstanceUID
     };
     private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_LOCATIONS_PER_UPDATE = 1000;
 
     @Inject
     private Device device;
@@ -121,6 +128,12 @@ public class StgCmtSCPMDB implements MessageListener {
     @Inject
     private StgCmtSCP stgCmtSCP;
 
+    @Inject
+    private StgCmtManager ejb;
+
+    @Inject
+    private StgCmtVerificationPermits verificationPermits;
+
     @PersistenceContext(unitName="dcm4chee-arc")
     private EntityManager em;
 
@@ -148,7 +161,7 @@ public class StgCmtSCPMDB implements MessageListener {
         }
     }
 
-    private Attributes calculateResult(Attributes actionInfo) {
+    private Attributes calculateResult(Attributes actionInfo) throws InterruptedException, ExecutionException {
         Sequence requestSeq = actionInfo.getSequence(Tag.ReferencedSOPSequence);
         int size = requestSeq.size();
         HashMap<String,List<Tuple>> instances = new HashMap<>(size * 4 / 3);
@@ -172,35 +185,148 @@ public class StgCmtSCPMDB implements MessageListener {
         eventInfo.setString(Tag.TransactionUID, VR.UI, actionInfo.getString(Tag.TransactionUID));
         Sequence successSeq = eventInfo.newSequence(Tag.ReferencedSOPSequence, size);
         Sequence failedSeq = eventInfo.newSequence(Tag.FailedSOPSequence, size);
+        ArchiveDeviceExtension arcDev = device.getDeviceExtension(ArchiveDeviceExtension.class);
+        Duration trustPeriod = arcDev.getStgCmtVerificationTrustPeriod();
+        Date trustedSince = trustPeriod != null
+                ? new Date(System.currentTimeMillis() - trustPeriod.toMillis())
+                : null;
+        Verification[] verifications = new Verification[size];
+        HashMap<String,List<Verification>> verificationsByStorage = new HashMap<>();
         HashMap<String,Storage> storageMap = new HashMap<>();
+        ConcurrentLinkedQueue<Long> verifiedLocationPks = new ConcurrentLinkedQueue<>();
+        int parallelism = arcDev.getStgCmtVerificationParallelism();
         try {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            for (Attributes refSOP : requestSeq) {
-                String iuid = refSOP.getString(Tag.ReferencedSOPInstanceUID);
-                String cuid = refSOP.getString(Tag.ReferencedSOPClassUID);
-                List<Tuple> tuples = instances.get(iuid);
-                if (tuples == null)
-                    failedSeq.add(refSOP(iuid, cuid, Status.NoSuchObjectInstance));
-                else {
-                    Tuple tuple = tuples.get(0);
-                    if (!cuid.equals(tuple.get(QInstance.instance.sopClassUID)))
-                        failedSeq.add(refSOP(iuid, cuid, Status.ClassInstanceConflict));
-                    else if (validateLocations(tuples, storageMap, buffer))
-                        successSeq.add(refSOP(cuid, iuid,
-                                    commonRetrieveAETs == null ? tuple.get(QInstance.instance.retrieveAETs) : null));
-                    else
-                        failedSeq.add(refSOP(iuid, cuid, Status.ProcessingFailure));
+            for (int i = 0; i < size; i++) {
+                Attributes refSOP = requestSeq.get(i);
+                List<Tuple> tuples = instances.get(refSOP.getString(Tag.ReferencedSOPInstanceUID));
+                if (tuples != null && refSOP.getString(Tag.ReferencedSOPClassUID)
+                        .equals(tuples.get(0).get(QInstance.instance.sopClassUID))) {
+                    for (Tuple tuple : tuples)
+                        getStorage(storageMap, tuple.get(QLocation.location.storageID));
+                    verifications[i] = new Verification(
+                            tuples, storageMap, trustedSince, verifiedLocationPks, parallelism);
+                    String storageID = tuples.get(0).get(QLocation.location.storageID);
+                    List<Verification> list = verificationsByStorage.get(storageID);
+                    if (list == null)
+                        verificationsByStorage.put(storageID, list = new ArrayList<>());
+                    list.add(verifications[i]);
                 }
-           }
+            }
+            verify(verificationsByStorage, parallelism);
         } finally {
             for (Storage storage : storageMap.values())
                 SafeClose.close(storage);
         }
+        for (int i = 0; i < size; i++) {
+            Attributes refSOP = requestSeq.get(i);
+            String iuid = refSOP.getString(Tag.ReferencedSOPInstanceUID);
+            String cuid = refSOP.getString(Tag.ReferencedSOPClassUID);
+            List<Tuple> tuples = instances.get(iuid);
+            if (tuples == null)
+                failedSeq.add(refSOP(iuid, cuid, Status.NoSuchObjectInstance));
+            else if (verifications[i] == null)
+                failedSeq.add(refSOP(iuid, cuid, Status.ClassInstanceConflict));
+            else if (verifications[i].valid)
+                successSeq.add(refSOP(cuid, iuid,
+                        commonRetrieveAETs == null ? tuples.get(0).get(QInstance.instance.retrieveAETs) : null));
+            else
+                failedSeq.add(refSOP(iuid, cuid, Status.ProcessingFailure));
+        }
         if (failedSeq.isEmpty())
             eventInfo.remove(Tag.FailedSOPSequence);
+        updateVerifiedTime(new ArrayList<>(verifiedLocationPks));
         return eventInfo;
     }
 
+    /**
+     * Verifies the objects by at most {@code parallelism} workers per Storage of their first location. The number of
+     * objects read concurrently from one Storage is limited to {@code parallelism} over all concurrently processed
+     * requests by {@link Verification#validateLocation}, also for objects read from further locations.
+     */
+    private void verify(Map<String, List<Verification>> verificationsByStorage, int parallelism)
+            throws InterruptedException, ExecutionException {
+        List<ConcurrentLinkedQueue<Verification>> queues = new ArrayList<>();
+        List<Runnable> workers = new ArrayList<>();
+        for (Map.Entry<String, List<Verification>> entry : verificationsByStorage.entrySet()) {
+            List<Verification> verifications = entry.getValue();
+            final ConcurrentLinkedQueue<Verification> queue = new ConcurrentLinkedQueue<>(verifications);
+            queues.add(queue);
+            for (int i = Math.min(Math.max(parallelism, 1), verifications.size()); i > 0; i--)
+                workers.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        byte[] buffer = new byte[BUFFER_SIZE];
+                        Verification verification;
+                        while (!Thread.currentThread().isInterrupted() && (verification = queue.poll()) != null)
+                            verification.run(buffer);
+                    }
+                });
+        }
+        if (workers.isEmpty())
+            return;
+
+        final CountDownLatch completed = new CountDownLatch(workers.size() - 1);
+        List<FutureTask<Void>> tasks = new ArrayList<>(workers.size() - 1);
+        try {
+            for (Runnable worker : workers.subList(1, workers.size())) {
+                FutureTask<Void> task = new FutureTask<Void>(worker, null) {
+                    @Override
+                    protected void done() {
+                        completed.countDown();
+                    }
+                };
+                tasks.add(task);
+                try {
+                    device.execute(task);
+                } catch (RuntimeException e) {
+                    LOG.warn("Failed to start verification worker - remaining workers will verify its objects", e);
+                    task.cancel(false);
+                }
+            }
+            workers.get(0).run();
+        } finally {
+            awaitWorkers(completed, queues);
+        }
+        for (FutureTask<Void> task : tasks)
+            if (!task.isCancelled())
+                task.get();
+    }
+
+    /**
+     * Waits until all workers have finished, before the caller closes the storages the workers read from. If the
+     * calling thread is interrupted, pending verifications are dropped - and reported as failed - but workers which
+     * are reading an object are still waited for.
+     */
+    private static void awaitWorkers(CountDownLatch completed, List<ConcurrentLinkedQueue<Verification>> queues) {
+        boolean interrupted = false;
+        for (;;) {
+            try {
+                completed.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+                for (ConcurrentLinkedQueue<Verification> queue : queues)
+                    queue.clear();
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void updateVerifiedTime(List<Long> locationPks) {
+        if (locationPks.isEmpty())
+            return;
+
+        Date now = new Date();
+        try {
+            for (int i = 0; i < locationPks.size(); i += MAX_LOCATIONS_PER_UPDATE)
+                ejb.updateLocationVerifiedTime(
+                        locationPks.subList(i, Math.min(i + MAX_LOCATIONS_PER_UPDATE, locationPks.size())), now);
+        } catch (Exception e) {
+            LOG.warn("Failed to update verified time of {} locations", locationPks.size(), e);
+        }
+    }
+
     private List<Tuple> queryLocations(Attributes actionInfo) {
         HibernateQuery<Tuple> query = new HibernateQuery<Void>(em.unwrap(Session.class))
                 .select(SELECT)
@@ -219,37 +345,77 @@ public class StgCmtSCPMDB implements MessageListener {
         return query.where(builder).fetch();
     }
 
-    private boolean validateLocations(List<Tuple> tuples, HashMap<String, Storage> storageMap, byte[] buffer) {
-        for (Tuple tuple : tuples)
-            if (validateLocation(tuple, storageMap, buffer))
-                return true;
-        return false;
-    }
+    private final class Verification {
+        final List<Tuple> tuples;
+        final HashMap<String, Storage> storageMap;
+        final Date trustedSince;
+        final ConcurrentLinkedQueue<Long> verifiedLocationPks;
+        final int parallelism;
+        volatile boolean valid;
 
-    private boolean validateLocation(Tuple tuple, HashMap<String, Storage> storageMap, byte[] buffer) {
-        if (tuple.get(QLocation.location.status) != Location.Status.OK)
-            return false;
+        Verification(List<Tuple> tuples, HashMap<String, Storage> storageMap, Date trustedSince,
+                     ConcurrentLinkedQueue<Long> verifiedLocationPks, int parallelism) {
+            this.tuples = tuples;
+            this.storageMap = storageMap;
+            this.trustedSince = trustedSince;
+            this.verifiedLocationPks = verifiedLocationPks;
+            this.parallelism = parallelism;
+        }
 
-        String digest = tuple.get(QLocation.location.digest);
-        if (digest == null)
-            return true;
+        void run(byte[] buffer) {
+            for (Tuple tuple : tuples)
+                try {
+                    if (validateLocation(tuple, buffer)) {
+                        valid = true;
+                        return;
+                    }
+                } catch (Exception e) {
+                    LOG.warn("Failed to verify {} on Storage {}",
+                            tuple.get(QLocation.location.storagePath), tuple.get(QLocation.location.storageID), e);
+                }
+        }
 
-        Storage storage = getStorage(storageMap, tuple.get(QLocation.location.storageID));
-        ReadContext readContext = storage.createReadContext();
-        readContext.setStoragePath(tuple.get(QLocation.location.storagePath));
-        readContext.setStudyInstanceUID(tuple.get(QStudy.study.studyInstanceUID));
-        readContext.setMessageDigest(storage.getStorageDescriptor().getMessageDigest());
-        try {
-            try (InputStream stream = storage.openInputStream(readContext)) {
-               StreamUtils.copy(stream, null, buffer);
+        private boolean validateLocation(Tuple tuple, byte[] buffer) {
+            if (tuple.get(QLocation.location.status) != Location.Status.OK)
+                return false;
+
+            String digest = tuple.get(QLocation.location.digest);
+            if (digest == null || isTrusted(tuple))
+                return true;
+
+            String storageID = tuple.get(QLocation.location.storageID);
+            Storage storage = storageMap.get(storageID);
+            ReadContext readContext = storage.createReadContext();
+            readContext.setStoragePath(tuple.get(QLocation.location.storagePath));
+            readContext.setStudyInstanceUID(tuple.get(QStudy.study.studyInstanceUID));
+            readContext.setMessageDigest(storage.getStorageDescriptor().getMessageDigest());
+            Semaphore permits = verificationPermits.forStorage(storageID, parallelism);
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
-        } catch (IOException e) {
-            return false;
-        }
-        if (TagUtils.toHexString(readContext.getDigest()).equals(digest))
+            try {
+                try (InputStream stream = storage.openInputStream(readContext)) {
+                   StreamUtils.copy(stream, null, buffer);
+                }
+            } catch (IOException e) {
+                return false;
+            } finally {
+                permits.release();
+            }
+            if (!TagUtils.toHexString(readContext.getDigest()).equals(digest))
+                return false;
+
+            verifiedLocationPks.add(tuple.get(QLocation.location.pk));
             return true;
+        }
 
-        return false;
+        private boolean isTrusted(Tuple tuple) {
+            Date verifiedTime = tuple.get(QLocation.location.verifiedTime);
+            return trustedSince != null && verifiedTime != null && trustedSince.before(verifiedTime);
+        }
     }
 
     private Storage getStorage(HashMap<String, Storage> storageMap, String storageID) {
@@ -0,0 +1,78 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.stgcmt.impl;
+
+import javax.enterprise.context.ApplicationScoped;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the number of objects read concurrently from one Storage to verify their digest, shared by all concurrently
+ * processed Storage Commitment requests.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class StgCmtVerificationPermits {
+
+    private final ConcurrentHashMap<String, Permits> permitsByStorage = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the semaphore limiting the verifications on the Storage with the specified ID. A new semaphore is
+     * created, if the configured {@code parallelism} changed.
+     */
+    public Semaphore forStorage(String storageID, int parallelism) {
+        int permits = Math.max(parallelism, 1);
+        return permitsByStorage.compute(storageID,
+                (id, prev) -> prev != null && prev.parallelism == permits ? prev : new Permits(permits)).semaphore;
+    }
+
+    private static final class Permits {
+        final int parallelism;
+        final Semaphore semaphore;
+
+        Permits(int parallelism) {
+            this.parallelism = parallelism;
+            this.semaphore = new Semaphore(parallelism);
+        }
+    }
+}
@@ -40,6 +40,7 @@
 
 package org.dcm4chee.arc.storage.cloud;
 
+import org.dcm4che3.data.Attributes;
 import org.dcm4che3.net.Device;
 import org.dcm4che3.util.AttributesFormat;
 import org.dcm4chee.arc.conf.StorageDescriptor;
@@ -51,11 +52,18 @@ import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.blobstore.ContainerNotFoundException;
 import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.options.GetOptions;
 import org.jclouds.io.Payload;
 import org.jclouds.io.payloads.InputStreamPayload;
 import org.jclouds.logging.slf4j.config.SLF4JLoggingModule;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Properties;
@@ -72,6 +80,7 @@ import java.util.concurrent.ThreadLocalRandom;
 public class CloudStorage extends AbstractStorage {
 
     private static final String DEFAULT_CONTAINER = "org.dcm4chee.arc";
+    private static final int PIPE_SIZE = 65536;
     private static final Uploader DEFAULT_UPLOADER = new Uploader() {
         @Override
         public void upload(BlobStoreContext context, InputStream in, BlobStore blobStore, String container,
@@ -87,15 +96,17 @@ public class CloudStorage extends AbstractStorage {
     private final BlobStoreContext context;
 
     private final Uploader uploader;
+    private final WriteBehindCache writeBehindCache;
 
     @Override
     public WriteContext createWriteContext() {
         return new CloudWriteContext(this);
     }
 
-    protected CloudStorage(StorageDescriptor descriptor, Device device) {
+    protected CloudStorage(StorageDescriptor descriptor, Device device, WriteBehindCache writeBehindCache) {
         super(descriptor);
         this.device = device;
+        this.writeBehindCache = writeBehindCache;
         pathFormat = new AttributesFormat(descriptor.getProperty("pathFormat", DEFAULT_PATH_FORMAT));
         container = descriptor.getProperty("container", DEFAULT_CONTAINER);
 
@@ -106,7 +117,7 @@ public class CloudStorage extends AbstractStorage {
             endpoint = api.substring(endApi + 1);
             api = api.substring(0, endApi);
         }
-        this.uploader = api.endsWith("s3") ? new S3Uploader() : DEFAULT_UPLOADER;
+        this.uploader = api.endsWith("s3") ? new S3Uploader(descriptor, device::execute) : DEFAULT_UPLOADER;
         ContextBuilder ctxBuilder = ContextBuilder.newBuilder(api);
         String identity = descriptor.getProperty("identity", null);
         if (identity != null)
@@ -126,7 +137,10 @@ public class CloudStorage extends AbstractStorage {
 
     @Override
     protected OutputStream openOutputStreamA(final WriteContext ctx) throws IOException {
-        final PipedInputStream in = new PipedInputStream();
+        if (writeBehindCache != null)
+            return openStagingOutputStream(ctx);
+
+        final PipedInputStream in = new PipedInputStream(PIPE_SIZE);
         FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
             @Override
             public Void call() throws Exception {
@@ -143,9 +157,46 @@ public class CloudStorage extends AbstractStorage {
         return new PipedOutputStream(in);
     }
 
+    private OutputStream openStagingOutputStream(WriteContext ctx) throws IOException {
+        BlobStore blobStore = context.getBlobStore();
+        String storagePath = formatStoragePath(ctx.getAttributes());
+        OutputStream stream = null;
+        while (stream == null) {
+            try {
+                if (!writeBehindCache.contains(storagePath) && !blobExists(blobStore, storagePath))
+                    stream = writeBehindCache.openOutputStream(storagePath);
+            } catch (FileAlreadyExistsException ignore) {
+            }
+            if (stream == null)
+                storagePath = storagePath.substring(0, storagePath.lastIndexOf('/') + 1)
+                        .concat(String.format("%08X", ThreadLocalRandom.current().nextInt()));
+        }
+        ctx.setStoragePath(storagePath);
+        return stream;
+    }
+
+    private boolean blobExists(BlobStore blobStore, String storagePath) {
+        try {
+            return blobStore.blobExists(container, storagePath);
+        } catch (RuntimeException e) {
+            if (!(e instanceof ContainerNotFoundException || e.getCause() instanceof ContainerNotFoundException))
+                throw e;
+            return false;
+        }
+    }
+
+    private String formatStoragePath(Attributes attrs) {
+        synchronized (pathFormat) { // AttributesFormat is not thread-safe
+            return pathFormat.format(attrs);
+        }
+    }
+
     @Override
     protected void afterOutputStreamClosed(WriteContext ctx) throws IOException {
         FutureTask<Void> task = ((CloudWriteContext) ctx).getUploadTask();
+        if (task == null)
+            return;
+
         try {
             task.get();
         } catch (InterruptedException e) {
@@ -158,13 +209,25 @@ public class CloudStorage extends AbstractStorage {
         }
     }
 
+    @Override
+    protected void commitStorageA(WriteContext ctx) throws IOException {
+        if (writeBehindCache != null)
+            writeBehindCache.migrate(ctx.getStoragePath());
+    }
+
     private void upload(WriteContext ctx, InputStream in) throws IOException {
         BlobStore blobStore = context.getBlobStore();
-        String storagePath = pathFormat.format(ctx.getAttributes());
+        String storagePath = formatStoragePath(ctx.getAttributes());
+        while (blobExists(blobStore, storagePath))
+            storagePath = storagePath.substring(0, storagePath.lastIndexOf('/') + 1)
+                    .concat(String.format("%08X", ThreadLocalRandom.current().nextInt()));
+        upload(storagePath, in);
+        ctx.setStoragePath(storagePath);
+    }
+
+    void upload(String storagePath, InputStream in) throws IOException {
+        BlobStore blobStore = context.getBlobStore();
         try {
-            while (blobStore.blobExists(container, storagePath))
-                storagePath = storagePath.substring(0, storagePath.lastIndexOf('/') + 1)
-                        .concat(String.format("%08X", ThreadLocalRandom.current().nextInt()));
             uploader.upload(context, in, blobStore, container, storagePath);
         } catch (RuntimeException e) {
             if (!(e instanceof ContainerNotFoundException || e.getCause() instanceof ContainerNotFoundException))
@@ -172,23 +235,70 @@ public class CloudStorage extends AbstractStorage {
             blobStore.createContainerInLocation(null, container);
             uploader.upload(context, in, blobStore, container, storagePath);
         }
-        ctx.setStoragePath(storagePath);
     }
 
     @Override
     protected InputStream openInputStreamA(ReadContext ctx) throws IOException {
+        if (ctx.getLength() == 0)
+            return new ByteArrayInputStream(new byte[0]);
+
+        if (writeBehindCache != null) {
+            InputStream in = openLocalInputStream(ctx);
+            if (in != null)
+                return in;
+        }
         BlobStore blobStore = context.getBlobStore();
-        Blob blob = blobStore.getBlob(container, ctx.getStoragePath());
+        long offset = ctx.getOffset();
+        long length = ctx.getLength();
+        Blob blob = offset == 0 && length < 0
+                ? blobStore.getBlob(container, ctx.getStoragePath())
+                : blobStore.getBlob(container, ctx.getStoragePath(), length < 0
+                    ? GetOptions.Builder.startAt(offset)
+                    : GetOptions.Builder.range(offset, offset + length - 1));
         if (blob == null)
             throw objectNotFound(ctx.getStoragePath());
         return blob.getPayload().openStream();
     }
 
+    private InputStream openLocalInputStream(ReadContext ctx) throws IOException {
+        String storagePath = ctx.getStoragePath();
+        Path path = writeBehindCache.getLocalFile(storagePath);
+        if (path != null)
+            try {
+                return openFile(path, ctx);
+            } catch (NoSuchFileException ignore) {
+                // migrated or evicted from read cache concurrently
+            }
+        if (ctx.getOffset() != 0 || ctx.getLength() >= 0)
+            return null;
+
+        path = writeBehindCache.fetch(storagePath);
+        return path != null ? openFile(path, ctx) : null;
+    }
+
+    private static InputStream openFile(Path path, ReadContext ctx) throws IOException {
+        if (ctx.getOffset() == 0)
+            return limit(Files.newInputStream(path), ctx.getLength());
+
+        FileChannel channel = FileChannel.open(path);
+        try {
+            channel.position(ctx.getOffset());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return limit(Channels.newInputStream(channel), ctx.getLength());
+    }
+
     @Override
-    public void deleteObject(String storagePath) throws IOException {
+    protected void deleteObjectA(String storagePath) throws IOException {
+        if (writeBehindCache != null && writeBehindCache.delete(storagePath))
+            return;
+
         BlobStore blobStore = context.getBlobStore();
         if (!blobStore.blobExists(container, storagePath))
             throw objectNotFound(storagePath);
+
         blobStore.removeBlob(container, storagePath);
     }
 
@@ -201,6 +311,12 @@ public class CloudStorage extends AbstractStorage {
 
     @Override
     public void close() throws IOException {
-        context.close();
+        try {
+            uploader.close();
+            context.close();
+        } finally {
+            if (writeBehindCache != null)
+                writeBehindCache.close();
+        }
     }
 }
@@ -45,9 +45,15 @@ import org.dcm4chee.arc.conf.StorageDescriptor;
 import org.dcm4chee.arc.storage.Storage;
 import org.dcm4chee.arc.storage.StorageProvider;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -57,11 +63,48 @@ import javax.inject.Named;
 @Named("jclouds")
 public class CloudStorageProvider implements StorageProvider {
 
+    private static final Logger LOG = LoggerFactory.getLogger(CloudStorageProvider.class);
+
     @Inject
     private Device device;
 
+    private final Map<String, WriteBehindCache> writeBehindCaches = new HashMap<>();
+
+    /**
+     * Opens a new {@link CloudStorage}. If Storage Descriptor property {@code stagingDirectory} is configured, the
+     * returned storage owns a new {@link WriteBehindCache}, which is closed with the storage.
+     */
     @Override
     public Storage openStorage(StorageDescriptor descriptor) {
-        return new CloudStorage(descriptor, device);
+        if (descriptor.getProperty("stagingDirectory", null) == null)
+            return new CloudStorage(descriptor, device, null);
+
+        WriteBehindCache cache = new WriteBehindCache(descriptor, device, this::handOver);
+        try {
+            Storage storage = new CloudStorage(descriptor, device, cache);
+            synchronized (this) {
+                writeBehindCaches.put(descriptor.getStorageID(), cache);
+            }
+            return storage;
+        } catch (RuntimeException e) {
+            cache.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Passes objects, which were not migrated by a closed write-behind cache, to the cache of the current Storage
+     * Descriptor with the same Storage ID. Also invoked without objects on close of the cache.
+     */
+    private synchronized void handOver(WriteBehindCache closed, List<String> storagePaths) {
+        String storageID = closed.getStorageDescriptor().getStorageID();
+        writeBehindCaches.remove(storageID, closed);
+        if (storagePaths.isEmpty())
+            return;
+
+        WriteBehindCache cache = writeBehindCaches.get(storageID);
+        if (cache == null || !cache.resume(storagePaths))
+            LOG.info("Write-behind cache closed - resume migration of {} objects to {} on restart",
+                    storagePaths.size(), closed.getStorageDescriptor().getStorageURI());
     }
 }
@@ -40,7 +40,7 @@
 
 package org.dcm4chee.arc.storage.cloud;
 
-import org.jclouds.aws.s3.AWSS3Client;
+import org.dcm4chee.arc.conf.StorageDescriptor;
 import org.jclouds.blobstore.BlobStore;
 import org.jclouds.blobstore.BlobStoreContext;
 import org.jclouds.blobstore.domain.Blob;
@@ -48,120 +48,277 @@ import org.jclouds.io.Payload;
 import org.jclouds.io.payloads.InputStreamPayload;
 import org.jclouds.s3.S3Client;
 import org.jclouds.s3.domain.ObjectMetadataBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Uploads objects by S3 Multipart Upload, with up to {@code concurrentPartUploads} parts of {@code partSize} bytes
+ * in flight per object. Parts are uploaded by the device executor. At most {@code maxPartBuffers} part buffers are
+ * allocated at the same time; uploads wait for a free buffer beyond that. Part buffers are reused; at most
+ * {@code partBuffers} idle buffers are retained.
+ *
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @since Oct 2015
  */
-class S3Uploader extends InputStream implements Uploader {
+class S3Uploader implements Uploader {
 
-    private static int BUFFER_SIZE  = 5120;
-    private static int MAX_BUFFERS  = 1024;
+    private static final Logger LOG = LoggerFactory.getLogger(S3Uploader.class);
 
-    private final ArrayList<byte[]> buffers = new ArrayList<>();
-    private int pos;
-    private int count;
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final long RETRY_DELAY_MS = 200;
 
-    @Override
-    public void upload(BlobStoreContext context, InputStream in, BlobStore blobStore,
-                       String container, String storagePath) throws IOException {
-        if (fillBuffers(in))
-            uploadMultipleParts(context, in, blobStore, container, storagePath);
-        else
-            uploadSinglePart(blobStore, container, storagePath);
+    private final int partSize;
+    private final int concurrentPartUploads;
+    private final int maxPartUploadRetries;
+    private final boolean directPartBuffers;
+    private final BlockingQueue<ByteBuffer> partBuffers;
+    private final Semaphore partBufferPermits;
+    private final Executor executor;
+
+    S3Uploader(StorageDescriptor descriptor, Executor executor) {
+        this.executor = executor;
+        partSize = Math.max(MIN_PART_SIZE,
+                Integer.parseInt(descriptor.getProperty("partSize", Integer.toString(MIN_PART_SIZE))));
+        concurrentPartUploads = Math.max(1,
+                Integer.parseInt(descriptor.getProperty("concurrentPartUploads", "4")));
+        maxPartUploadRetries = Integer.parseInt(descriptor.getProperty("maxPartUploadRetries", "3"));
+        directPartBuffers = Boolean.parseBoolean(descriptor.getProperty("directPartBuffers", "false"));
+        partBuffers = new ArrayBlockingQueue<>(Math.max(1,
+                Integer.parseInt(descriptor.getProperty("partBuffers",
+                        Integer.toString(concurrentPartUploads + 1)))));
+        partBufferPermits = new Semaphore(Math.max(1,
+                Integer.parseInt(descriptor.getProperty("maxPartBuffers",
+                        Integer.toString(concurrentPartUploads * 4)))));
     }
 
     @Override
-    public int read() throws IOException {
-        if (pos >= count) {
-            return -1;
+    public void upload(BlobStoreContext context, InputStream in, BlobStore blobStore,
+                       String container, String storagePath) throws IOException {
+        ReadableByteChannel ch = Channels.newChannel(in);
+        ByteBuffer buf = takePartBuffer();
+        boolean multipart = false;
+        try {
+            multipart = fill(in, ch, buf);
+            if (!multipart)
+                uploadSinglePart(blobStore, container, storagePath, buf);
+        } finally {
+            if (!multipart)
+                releasePartBuffer(buf);
         }
-        int index = pos++;
-        return buffers.get(index / BUFFER_SIZE)[index % BUFFER_SIZE];
+        if (multipart)
+            uploadMultipleParts(context, in, ch, container, storagePath, buf);
     }
 
     @Override
-    public int read(byte[] b, int off, int len) throws IOException {
-        if (b == null) {
-            throw new NullPointerException();
-        } else if (off < 0 || len < 0 || len > b.length - off) {
-            throw new IndexOutOfBoundsException();
-        }
+    public void close() {
+        partBuffers.clear();
+    }
 
-        if (pos >= count) {
-            return -1;
+    private ByteBuffer takePartBuffer() throws InterruptedIOException {
+        try {
+            partBufferPermits.acquire();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException();
         }
+        ByteBuffer buf = partBuffers.poll();
+        if (buf == null)
+            buf = directPartBuffers ? ByteBuffer.allocateDirect(partSize) : ByteBuffer.allocate(partSize);
+        buf.clear();
+        return buf;
+    }
 
-        int srcOff = pos % BUFFER_SIZE;
-        int avail = Math.min(count - pos, BUFFER_SIZE - srcOff);
-        if (len > avail)
-            len = avail;
-
-        byte[] src = buffers.get(pos / BUFFER_SIZE);
-        System.arraycopy(src, srcOff, b, 0, len);
-        pos += len;
-        return len;
+    private void releasePartBuffer(ByteBuffer buf) {
+        partBuffers.offer(buf);
+        partBufferPermits.release();
     }
 
-    private boolean fillBuffers(InputStream in) throws IOException {
-        pos = 0;
-        count = 0;
-        for (int i = 0; i < MAX_BUFFERS; i++) {
-            byte[] b = getOrCreateBuffer(i);
+    private static boolean fill(InputStream in, ReadableByteChannel ch, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
             int r;
-            int off = 0;
-            int len = BUFFER_SIZE;
-            do {
-                r = in.read(b, off, len);
-                if (r < 0)
-                    return false;
-                off += r;
-                count += r;
-            } while ((len -= r) > 0);
+            if (buf.hasArray()) {
+                r = in.read(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                if (r > 0)
+                    buf.position(buf.position() + r);
+            } else {
+                r = ch.read(buf);
+            }
+            if (r < 0) {
+                buf.flip();
+                return false;
+            }
         }
+        buf.flip();
         return true;
     }
 
-    private byte[] getOrCreateBuffer(int i) {
-        if (buffers.size() > i)
-            return buffers.get(i);
-
-        byte[] b = new byte[BUFFER_SIZE];
-        buffers.add(b);
-        return b;
+    private static Payload createPayload(ByteBuffer buf) {
+        Payload payload = new InputStreamPayload(new ByteBufferInputStream(buf.duplicate()));
+        payload.getContentMetadata().setContentLength(Long.valueOf(buf.remaining()));
+        return payload;
     }
 
-    private void uploadSinglePart(BlobStore blobStore, String container, String storagePath) {
-        Blob blob = blobStore.blobBuilder(storagePath).payload(createPayload()).build();
+    private void uploadSinglePart(BlobStore blobStore, String container, String storagePath, ByteBuffer buf) {
+        Blob blob = blobStore.blobBuilder(storagePath).payload(createPayload(buf)).build();
         blobStore.putBlob(container, blob);
     }
 
-    private Payload createPayload() {
-        Payload payload = new InputStreamPayload(this);
-        payload.getContentMetadata().setContentLength(Long.valueOf(count));
-        return payload;
+    private void uploadMultipleParts(BlobStoreContext context, InputStream in, ReadableByteChannel ch,
+                                     String container, String storagePath, ByteBuffer firstPart)
+            throws IOException {
+        S3Client client = context.unwrapApi(S3Client.class);
+        String uploadId;
+        try {
+            uploadId = client.initiateMultipartUpload(container,
+                    ObjectMetadataBuilder.create().key(storagePath).build());
+        } catch (RuntimeException e) {
+            releasePartBuffer(firstPart);
+            throw e;
+        }
+        Semaphore inFlight = new Semaphore(concurrentPartUploads);
+        List<Future<String>> eTags = new ArrayList<>();
+        try {
+            ByteBuffer part = firstPart;
+            boolean full = true;
+            for (int partNumber = 1; ; partNumber++) {
+                eTags.add(submitPart(client, container, storagePath, uploadId, partNumber, part, inFlight));
+                if (!full)
+                    break;
+
+                checkCompletedParts(eTags);
+                part = takePartBuffer();
+                try {
+                    full = fill(in, ch, part);
+                } catch (IOException e) {
+                    releasePartBuffer(part);
+                    throw e;
+                }
+                if (!part.hasRemaining()) {
+                    releasePartBuffer(part);
+                    break;
+                }
+            }
+            Map<Integer, String> parts = new TreeMap<>();
+            for (int i = 0; i < eTags.size(); i++)
+                parts.put(i + 1, eTags.get(i).get());
+            client.completeMultipartUpload(container, storagePath, uploadId, parts);
+        } catch (Exception e) {
+            for (Future<String> eTag : eTags)
+                eTag.cancel(true);
+            try {
+                client.abortMultipartUpload(container, storagePath, uploadId);
+            } catch (RuntimeException e2) {
+                LOG.warn("Failed to abort Multipart Upload[id={}] of {}:\n", uploadId, storagePath, e2);
+            }
+            if (e instanceof IOException)
+                throw (IOException) e;
+            if (e instanceof InterruptedException)
+                throw new InterruptedIOException();
+            throw new IOException("Multipart Upload of " + storagePath + " failed",
+                    e instanceof ExecutionException ? e.getCause() : e);
+        }
     }
 
-    private void uploadMultipleParts(BlobStoreContext context, InputStream in, BlobStore blobStore,
-                                     String container, String storagePath) throws IOException {
-        S3Client client = context.unwrapApi(S3Client.class);
-        String uploadId = client.initiateMultipartUpload(container,
-                ObjectMetadataBuilder.create().key(storagePath).build());
-        Map<Integer, String> parts = new HashMap<>();
-        int partNumber = 1;
-        do {
-            parts.put(partNumber, client.uploadPart(container, storagePath, partNumber, uploadId, createPayload()));
-            partNumber++;
-        } while (fillBuffers(in));
-        if (count > 0)
-            parts.put(partNumber, client.uploadPart(container, storagePath, partNumber, uploadId, createPayload()));
-        client.completeMultipartUpload(container, storagePath, uploadId, parts);
+    private static void checkCompletedParts(List<Future<String>> eTags)
+            throws ExecutionException, InterruptedException {
+        for (Future<String> eTag : eTags)
+            if (eTag.isDone())
+                eTag.get();
     }
 
+    private Future<String> submitPart(final S3Client client, final String container, final String storagePath,
+                                      final String uploadId, final int partNumber, final ByteBuffer part,
+                                      final Semaphore inFlight) throws InterruptedException {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            releasePartBuffer(part);
+            throw e;
+        }
+        final AtomicBoolean claimed = new AtomicBoolean();
+        FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                if (!claimed.compareAndSet(false, true))
+                    return null;
+                try {
+                    return uploadPart(client, container, storagePath, uploadId, partNumber, part);
+                } finally {
+                    releasePartBuffer(part);
+                    inFlight.release();
+                }
+            }
+        }) {
+            @Override
+            protected void done() {
+                // release the part buffer of a task cancelled before it was started
+                if (claimed.compareAndSet(false, true)) {
+                    releasePartBuffer(part);
+                    inFlight.release();
+                }
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.cancel(false);
+            throw e;
+        }
+        return task;
+    }
+
+    private String uploadPart(S3Client client, String container, String storagePath, String uploadId,
+                              int partNumber, ByteBuffer part) throws InterruptedException {
+        for (int retry = 0; ; retry++) {
+            try {
+                return client.uploadPart(container, storagePath, partNumber, uploadId, createPayload(part));
+            } catch (RuntimeException e) {
+                if (retry >= maxPartUploadRetries)
+                    throw e;
+
+                LOG.info("Failed to upload part #{} of {} - retry:\n", partNumber, storagePath, e);
+                Thread.sleep(RETRY_DELAY_MS << retry);
+            }
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining())
+                return -1;
+
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
 }
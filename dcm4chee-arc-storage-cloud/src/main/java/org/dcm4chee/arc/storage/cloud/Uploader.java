@@ -53,4 +53,6 @@ import java.io.InputStream;
 interface Uploader {
     void upload(BlobStoreContext context, InputStream in, BlobStore blobStore, String container, String storagePath)
             throws IOException;
+
+    default void close() {}
 }
@@ -0,0 +1,546 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2015
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.storage.cloud;
+
+import org.dcm4che3.net.Device;
+import org.dcm4chee.arc.conf.StorageDescriptor;
+import org.dcm4chee.arc.storage.ReadContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Local write-behind tier of a {@link CloudStorage}, configured by Storage Descriptor property
+ * {@code stagingDirectory}. Objects are written to {@code <stagingDirectory>/staging} and uploaded to the Cloud
+ * asynchronously after {@link CloudStorage#commitStorage}, keeping their storage path. Uploaded objects are moved
+ * to {@code <stagingDirectory>/cache}, which is used as LRU read cache bounded by {@code readCacheSize} bytes.
+ * Objects are written to {@code <storagePath>.part} and atomically renamed to {@code <storagePath>} after they were
+ * synced to disk. On {@link CloudStorage#commitStorage}, an empty {@code <storagePath>.committed} marker is created, so
+ * on creation of the cache - e.g. on restart - only committed objects left in the staging directory are uploaded,
+ * partially written ones are deleted and objects, which storage was not committed - e.g. revoked objects -, are kept
+ * in the staging directory without upload. Uploads are performed by at most {@code migrationThreads} tasks of the
+ * device executor.
+ * <p>
+ * On reload of the configuration, the cache of a {@link CloudStorage} still in use may coexist with the cache of its
+ * successor on the same staging directory. Therefore objects, which are written or migrated by any cache, are
+ * skipped on recovery, and objects, which were not migrated when the cache was closed, are handed over to the
+ * successor.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+class WriteBehindCache implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindCache.class);
+
+    private static final String PART_SUFFIX = ".part";
+    private static final String COMMITTED_SUFFIX = ".committed";
+
+    // files written or staged objects migrated by any cache, shared by caches of the same staging directory
+    private static final Set<Path> OPEN_FILES = ConcurrentHashMap.newKeySet();
+    private static final Set<Path> MIGRATING = ConcurrentHashMap.newKeySet();
+
+    private final StorageDescriptor descriptor;
+    private final Device device;
+    private final CloudStorage target;
+    private final Path stagingDir;
+    private final Path cacheDir;
+    private final long readCacheSize;
+    private final long migrationRetryInterval;
+    private final int migrationThreads;
+    private final Queue<String> migrationQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger migrationTasks = new AtomicInteger();
+    private final AtomicBoolean targetClosed = new AtomicBoolean();
+    private final BiConsumer<WriteBehindCache, List<String>> handOver;
+    private final LinkedHashMap<String, Long> cached = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedSize;
+    private volatile boolean closed;
+
+    /**
+     * Creates the cache and resumes migration of committed objects left in the staging directory.
+     *
+     * @param handOver invoked with objects, which were not migrated when the cache was closed
+     */
+    WriteBehindCache(StorageDescriptor descriptor, Device device,
+                     BiConsumer<WriteBehindCache, List<String>> handOver) {
+        this.descriptor = descriptor;
+        this.device = device;
+        this.handOver = handOver;
+        this.target = new CloudStorage(descriptor, device, null);
+        Path dir = Paths.get(URI.create(descriptor.getProperty("stagingDirectory", null)));
+        this.stagingDir = dir.resolve("staging");
+        this.cacheDir = dir.resolve("cache");
+        this.readCacheSize = Long.parseLong(descriptor.getProperty("readCacheSize", "0"));
+        this.migrationRetryInterval = Long.parseLong(descriptor.getProperty("migrationRetryInterval", "60"));
+        this.migrationThreads = Math.max(1, Integer.parseInt(descriptor.getProperty("migrationThreads", "2")));
+        recover();
+    }
+
+    StorageDescriptor getStorageDescriptor() {
+        return descriptor;
+    }
+
+    boolean contains(String storagePath) {
+        return Files.exists(stagingDir.resolve(storagePath))
+                || Files.exists(stagingDir.resolve(storagePath + PART_SUFFIX))
+                || isCached(storagePath);
+    }
+
+    private synchronized boolean isCached(String storagePath) {
+        return cached.containsKey(storagePath);
+    }
+
+    OutputStream openOutputStream(String storagePath) throws IOException {
+        Path path = stagingDir.resolve(storagePath);
+        Files.createDirectories(path.getParent());
+        Path part = stagingDir.resolve(storagePath + PART_SUFFIX);
+        if (!OPEN_FILES.add(part))
+            throw new FileAlreadyExistsException(part.toString());
+        try {
+            return new StagingOutputStream(
+                    FileChannel.open(part, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), part, path);
+        } catch (IOException | RuntimeException e) {
+            OPEN_FILES.remove(part);
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the staged object as committed and schedules its upload to the Cloud.
+     *
+     * @throws IllegalStateException if the cache was already closed
+     */
+    void migrate(String storagePath) throws IOException {
+        if (closed)
+            throw new IllegalStateException("Write-behind cache of " + descriptor.getStorageURI() + " closed");
+
+        try {
+            Files.createFile(stagingDir.resolve(storagePath + COMMITTED_SUFFIX));
+        } catch (FileAlreadyExistsException ignore) {
+        }
+        enqueue(storagePath);
+        startMigrationTasks();
+    }
+
+    /**
+     * Resumes migration of objects handed over by the closed cache of a previous Storage Descriptor.
+     *
+     * @return {@code false} if this cache was already closed
+     */
+    boolean resume(List<String> storagePaths) {
+        synchronized (migrationQueue) {
+            if (closed)
+                return false;
+
+            for (String storagePath : storagePaths)
+                enqueue(storagePath);
+        }
+        startMigrationTasks();
+        return true;
+    }
+
+    private void enqueue(String storagePath) {
+        if (MIGRATING.add(stagingDir.resolve(storagePath)))
+            migrationQueue.add(storagePath);
+    }
+
+    private void startMigrationTasks() {
+        int n;
+        while (!closed && !migrationQueue.isEmpty() && (n = migrationTasks.get()) < migrationThreads) {
+            if (migrationTasks.compareAndSet(n, n + 1)) {
+                try {
+                    device.execute(this::migrateQueued);
+                } catch (RuntimeException e) {
+                    migrationTasks.decrementAndGet();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void migrateQueued() {
+        try {
+            String storagePath;
+            while (!closed && (storagePath = migrationQueue.poll()) != null)
+                if (migrate0(storagePath))
+                    MIGRATING.remove(stagingDir.resolve(storagePath));
+        } finally {
+            migrationTasks.decrementAndGet();
+        }
+        if (closed)
+            closeTargetIfIdle();
+        else
+            startMigrationTasks();
+    }
+
+    private void retryMigrate(String storagePath) {
+        if (closed) {
+            MIGRATING.remove(stagingDir.resolve(storagePath));
+            handOver.accept(this, Collections.singletonList(storagePath));
+            return;
+        }
+        migrationQueue.add(storagePath);
+        startMigrationTasks();
+    }
+
+    /**
+     * Uploads the staged object to the Cloud.
+     *
+     * @return {@code false} if the upload failed and was scheduled for retry
+     */
+    private boolean migrate0(String storagePath) {
+        Path staged = stagingDir.resolve(storagePath);
+        if (Files.notExists(staged))
+            return true;
+
+        try {
+            try (InputStream in = Files.newInputStream(staged)) {
+                target.upload(storagePath, in);
+            }
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (Exception e) {
+            if (closed) {
+                MIGRATING.remove(staged);
+                handOver.accept(this, Collections.singletonList(storagePath));
+                return false;
+            }
+            LOG.warn("Failed to migrate {} to {} - retry in {} s",
+                    storagePath, descriptor.getStorageURI(), migrationRetryInterval, e);
+            device.schedule(() -> retryMigrate(storagePath), migrationRetryInterval, TimeUnit.SECONDS);
+            return false;
+        }
+        if (!migrated(storagePath, staged)) {
+            LOG.info("{} was deleted during migration to {}", storagePath, descriptor.getStorageURI());
+            try {
+                target.deleteObject(storagePath);
+            } catch (Exception e) {
+                LOG.warn("Failed to delete {} from {}", storagePath, descriptor.getStorageURI(), e);
+            }
+        }
+        return true;
+    }
+
+    private synchronized boolean migrated(String storagePath, Path staged) {
+        try {
+            if (Files.notExists(staged))
+                return false;
+
+            if (readCacheSize <= 0) {
+                Files.delete(staged);
+            } else {
+                Path path = cacheDir.resolve(storagePath);
+                Files.createDirectories(path.getParent());
+                Files.move(staged, path, StandardCopyOption.REPLACE_EXISTING);
+                add(storagePath, Files.size(path));
+            }
+            Files.deleteIfExists(stagingDir.resolve(storagePath + COMMITTED_SUFFIX));
+            deleteEmptyDirectories(stagingDir, staged);
+        } catch (IOException e) {
+            LOG.warn("Failed to move migrated {} from staging directory", storagePath, e);
+        }
+        return true;
+    }
+
+    /**
+     * Returns path of local copy of the object or {@code null}, if the object is only available from the Cloud.
+     */
+    Path getLocalFile(String storagePath) {
+        Path path = stagingDir.resolve(storagePath);
+        if (Files.exists(path))
+            return path;
+
+        return isCached(storagePath) ? cacheDir.resolve(storagePath) : null;
+    }
+
+    /**
+     * Downloads the object into the read cache, if {@code readCacheSize} is configured.
+     *
+     * @return path of the cached object or {@code null}, if there is no read cache
+     */
+    Path fetch(String storagePath) throws IOException {
+        if (readCacheSize <= 0)
+            return null;
+
+        Files.createDirectories(cacheDir);
+        Path tmp = Files.createTempFile(cacheDir, null, PART_SUFFIX);
+        OPEN_FILES.add(tmp);
+        try {
+            ReadContext readContext = target.createReadContext();
+            readContext.setStoragePath(storagePath);
+            try (InputStream in = target.openInputStream(readContext)) {
+                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Path path = cacheDir.resolve(storagePath);
+            synchronized (this) {
+                Files.createDirectories(path.getParent());
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+                add(storagePath, Files.size(path));
+            }
+            return path;
+        } finally {
+            Files.deleteIfExists(tmp);
+            OPEN_FILES.remove(tmp);
+        }
+    }
+
+    /**
+     * Deletes local copies of the object.
+     *
+     * @return {@code true} if the object was not yet migrated to the Cloud
+     */
+    synchronized boolean delete(String storagePath) throws IOException {
+        Path staged = stagingDir.resolve(storagePath);
+        boolean notMigrated = Files.deleteIfExists(staged);
+        if (notMigrated) {
+            Files.deleteIfExists(stagingDir.resolve(storagePath + COMMITTED_SUFFIX));
+            deleteEmptyDirectories(stagingDir, staged);
+        }
+        Long size = cached.remove(storagePath);
+        if (size != null) {
+            cachedSize -= size;
+            deleteCached(storagePath);
+        }
+        return notMigrated;
+    }
+
+    private void add(String storagePath, long size) {
+        Long prev = cached.put(storagePath, size);
+        cachedSize += size - (prev != null ? prev : 0L);
+        Iterator<Map.Entry<String, Long>> iter = cached.entrySet().iterator();
+        while (cachedSize > readCacheSize && cached.size() > 1) {
+            Map.Entry<String, Long> eldest = iter.next();
+            iter.remove();
+            cachedSize -= eldest.getValue();
+            deleteCached(eldest.getKey());
+        }
+    }
+
+    private void deleteCached(String storagePath) {
+        Path path = cacheDir.resolve(storagePath);
+        try {
+            Files.deleteIfExists(path);
+            deleteEmptyDirectories(cacheDir, path);
+        } catch (IOException e) {
+            LOG.warn("Failed to delete cached {}", path, e);
+        }
+    }
+
+    private static void deleteEmptyDirectories(Path rootPath, Path path) {
+        Path dirPath = path.getParent();
+        while (!dirPath.equals(rootPath)) {
+            try {
+                Files.deleteIfExists(dirPath);
+            } catch (DirectoryNotEmptyException ignore) {
+                break;
+            } catch (IOException e) {
+                LOG.warn("Failed to delete directory {}", dirPath, e);
+                break;
+            }
+            dirPath = dirPath.getParent();
+        }
+    }
+
+    private void recover() {
+        try {
+            if (Files.isDirectory(cacheDir))
+                recoverReadCache();
+            if (Files.isDirectory(stagingDir))
+                recoverStaged();
+        } catch (IOException e) {
+            LOG.warn("Failed to scan {}", stagingDir.getParent(), e);
+        }
+    }
+
+    private void recoverReadCache() throws IOException {
+        final List<Map.Entry<Path, BasicFileAttributes>> files = new ArrayList<>();
+        Files.walkFileTree(cacheDir, new RecoveryFileVisitor() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!file.getFileName().toString().endsWith(PART_SUFFIX))
+                    files.add(new AbstractMap.SimpleEntry<>(file, attrs));
+                else if (!OPEN_FILES.contains(file))
+                    Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        files.sort(Comparator.comparing(e -> e.getValue().lastAccessTime()));
+        synchronized (this) {
+            for (Map.Entry<Path, BasicFileAttributes> e : files)
+                add(toStoragePath(cacheDir, e.getKey()), e.getValue().size());
+        }
+    }
+
+    private void recoverStaged() throws IOException {
+        final List<String> storagePaths = new ArrayList<>();
+        final List<Path> markers = new ArrayList<>();
+        Files.walkFileTree(stagingDir, new RecoveryFileVisitor() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                String fileName = file.getFileName().toString();
+                if (fileName.endsWith(PART_SUFFIX)) {
+                    if (!OPEN_FILES.contains(file)) {
+                        LOG.info("Delete partially written {}", file);
+                        Files.deleteIfExists(file);
+                        deleteEmptyDirectories(stagingDir, file);
+                    }
+                } else if (fileName.endsWith(COMMITTED_SUFFIX)) {
+                    markers.add(file);
+                } else if (Files.exists(file.resolveSibling(fileName + COMMITTED_SUFFIX))) {
+                    storagePaths.add(toStoragePath(stagingDir, file));
+                } else {
+                    LOG.warn("Storage of {} was not committed - do not migrate it to {}",
+                            file, descriptor.getStorageURI());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        for (Path marker : markers) {
+            String fileName = marker.getFileName().toString();
+            if (Files.notExists(marker.resolveSibling(
+                    fileName.substring(0, fileName.length() - COMMITTED_SUFFIX.length())))) {
+                Files.deleteIfExists(marker);
+                deleteEmptyDirectories(stagingDir, marker);
+            }
+        }
+        if (!storagePaths.isEmpty())
+            LOG.info("Resume migration of {} objects to {}", storagePaths.size(), descriptor.getStorageURI());
+        resume(storagePaths);
+    }
+
+    private static String toStoragePath(Path dir, Path file) {
+        return dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * Stops migration and hands over objects, which were not yet migrated. Uploads in progress are completed before
+     * the connection to the Cloud is closed.
+     */
+    @Override
+    public void close() {
+        List<String> pending = new ArrayList<>();
+        synchronized (migrationQueue) {
+            closed = true;
+            String storagePath;
+            while ((storagePath = migrationQueue.poll()) != null) {
+                MIGRATING.remove(stagingDir.resolve(storagePath));
+                pending.add(storagePath);
+            }
+        }
+        handOver.accept(this, pending);
+        closeTargetIfIdle();
+    }
+
+    private void closeTargetIfIdle() {
+        if (migrationTasks.get() == 0 && targetClosed.compareAndSet(false, true))
+            try {
+                target.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close connection to {}", descriptor.getStorageURI(), e);
+            }
+    }
+
+    /**
+     * Ignores files deleted or renamed by other caches concurrently.
+     */
+    private static class RecoveryFileVisitor extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+            if (e instanceof NoSuchFileException)
+                return FileVisitResult.CONTINUE;
+            throw e;
+        }
+    }
+
+    private static class StagingOutputStream extends FilterOutputStream {
+        private final FileChannel channel;
+        private final Path part;
+        private final Path path;
+        private boolean closed;
+
+        StagingOutputStream(FileChannel channel, Path part, Path path) {
+            super(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            this.channel = channel;
+            this.part = part;
+            this.path = path;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            try {
+                try {
+                    out.flush();
+                    channel.force(true);
+                } finally {
+                    out.close();
+                }
+                Files.move(part, path, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.deleteIfExists(part);
+                throw e;
+            } finally {
+                OPEN_FILES.remove(part);
+            }
+        }
+    }
+}
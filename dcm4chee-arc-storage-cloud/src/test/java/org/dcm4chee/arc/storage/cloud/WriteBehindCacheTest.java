@@ -0,0 +1,183 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.storage.cloud;
+
+import org.dcm4che3.net.Device;
+import org.dcm4chee.arc.conf.StorageDescriptor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class WriteBehindCacheTest {
+
+    private static final byte[] DATA = { 1, 2, 3, 4 };
+
+    private Path dir;
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduledExecutor;
+    private Device device;
+    private StorageDescriptor descriptor;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("WriteBehindCacheTest");
+        executor = Executors.newCachedThreadPool();
+        scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
+        device = new Device("test");
+        device.setExecutor(executor);
+        device.setScheduledExecutor(scheduledExecutor);
+        descriptor = new StorageDescriptor("test");
+        descriptor.setStorageURIStr("jclouds:transient");
+        descriptor.setProperty("stagingDirectory", dir.toUri().toString());
+        descriptor.setProperty("readCacheSize", "1000000");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void recoverCommittedObjects() throws Exception {
+        Path committed = createFile("staging/2026/10/17/committed");
+        Path marker = createFile("staging/2026/10/17/committed.committed");
+        Path uncommitted = createFile("staging/2026/10/17/uncommitted");
+        Path partial = createFile("staging/2026/10/17/partial.part");
+        try (WriteBehindCache cache = newWriteBehindCache()) {
+            awaitNotExists(committed);
+            assertFalse(Files.exists(marker));
+            assertFalse(Files.exists(partial));
+            assertTrue(Files.exists(dir.resolve("cache/2026/10/17/committed")));
+            assertFalse(Files.exists(dir.resolve("cache/2026/10/17/partial")));
+            assertFalse(cache.contains("2026/10/17/partial"));
+            assertTrue(Files.exists(uncommitted));
+            assertFalse(Files.exists(dir.resolve("cache/2026/10/17/uncommitted")));
+        }
+    }
+
+    @Test
+    public void publishOnClose() throws Exception {
+        String storagePath = "2026/10/17/object";
+        try (WriteBehindCache cache = newWriteBehindCache()) {
+            try (OutputStream out = cache.openOutputStream(storagePath)) {
+                out.write(DATA);
+                assertTrue(Files.exists(dir.resolve("staging/" + storagePath + ".part")));
+                assertFalse(Files.exists(dir.resolve("staging/" + storagePath)));
+                assertTrue(cache.contains(storagePath));
+            }
+            assertFalse(Files.exists(dir.resolve("staging/" + storagePath + ".part")));
+            assertArrayEquals(DATA, Files.readAllBytes(cache.getLocalFile(storagePath)));
+            cache.migrate(storagePath);
+            awaitNotExists(dir.resolve("staging/" + storagePath));
+            assertFalse(Files.exists(dir.resolve("staging/" + storagePath + ".committed")));
+            assertEquals(dir.resolve("cache/" + storagePath), cache.getLocalFile(storagePath));
+        }
+    }
+
+    @Test
+    public void keepOpenPartOnRecovery() throws Exception {
+        String storagePath = "2026/10/17/object";
+        try (WriteBehindCache cache = newWriteBehindCache()) {
+            try (OutputStream out = cache.openOutputStream(storagePath)) {
+                out.write(DATA);
+                newWriteBehindCache().close();
+                assertTrue(Files.exists(dir.resolve("staging/" + storagePath + ".part")));
+            }
+            assertArrayEquals(DATA, Files.readAllBytes(cache.getLocalFile(storagePath)));
+        }
+    }
+
+    @Test
+    public void handOverOnClose() throws Exception {
+        List<String> handedOver = new ArrayList<>();
+        WriteBehindCache cache = new WriteBehindCache(descriptor, device,
+                (closed, storagePaths) -> handedOver.addAll(storagePaths));
+        cache.close();
+        assertTrue(handedOver.isEmpty());
+        assertFalse(cache.resume(Collections.singletonList("2026/10/17/object")));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void migrateAfterClose() throws Exception {
+        WriteBehindCache cache = newWriteBehindCache();
+        cache.close();
+        cache.migrate("2026/10/17/object");
+    }
+
+    private WriteBehindCache newWriteBehindCache() {
+        return new WriteBehindCache(descriptor, device, (closed, storagePaths) -> {});
+    }
+
+    private Path createFile(String path) throws IOException {
+        Path file = dir.resolve(path);
+        Files.createDirectories(file.getParent());
+        return Files.write(file, DATA);
+    }
+
+    private static void awaitNotExists(Path path) throws InterruptedException {
+        for (int i = 0; i < 100 && Files.exists(path); i++)
+            Thread.sleep(100);
+        assertFalse(path + " still exists", Files.exists(path));
+    }
+}
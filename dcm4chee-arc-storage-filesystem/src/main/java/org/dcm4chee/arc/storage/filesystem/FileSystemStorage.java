@@ -40,6 +40,7 @@
 
 package org.dcm4chee.arc.storage.filesystem;
 
+import org.dcm4che3.data.Attributes;
 import org.dcm4che3.util.AttributesFormat;
 import org.dcm4chee.arc.conf.StorageDescriptor;
 import org.dcm4chee.arc.storage.AbstractStorage;
@@ -48,10 +49,13 @@ import org.dcm4chee.arc.storage.WriteContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.concurrent.ThreadLocalRandom;
 
@@ -80,6 +84,12 @@ public class FileSystemStorage extends AbstractStorage {
         return (s.charAt(s.length()-1) == '/') ? uri : URI.create(s + '/');
     }
 
+    private String formatStoragePath(Attributes attrs) {
+        synchronized (pathFormat) { // AttributesFormat is not thread-safe
+            return pathFormat.format(attrs);
+        }
+    }
+
     @Override
     public boolean isAccessable() {
         return checkMountFilePath == null || Files.notExists(checkMountFilePath);
@@ -92,13 +102,13 @@ public class FileSystemStorage extends AbstractStorage {
 
     @Override
     protected OutputStream openOutputStreamA(WriteContext ctx) throws IOException {
-        Path path = Paths.get(rootURI.resolve(pathFormat.format(ctx.getAttributes())));
+        Path path = Paths.get(rootURI.resolve(formatStoragePath(ctx.getAttributes())));
         Path dir = path.getParent();
         Files.createDirectories(dir);
         OutputStream stream = null;
         while (stream == null)
             try {
-                stream = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW);
+                stream = new FileOutputStream(Files.createFile(path).toFile());
             } catch (FileAlreadyExistsException e) {
                 path = dir.resolve(String.format("%08X", ThreadLocalRandom.current().nextInt()));
             }
@@ -109,11 +119,21 @@ public class FileSystemStorage extends AbstractStorage {
     @Override
     protected InputStream openInputStreamA(ReadContext ctx) throws IOException {
         Path path = Paths.get(rootURI.resolve(ctx.getStoragePath()));
-        return Files.newInputStream(path);
+        if (ctx.getOffset() == 0)
+            return limit(Files.newInputStream(path), ctx.getLength());
+
+        FileChannel channel = FileChannel.open(path);
+        try {
+            channel.position(ctx.getOffset());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return limit(Channels.newInputStream(channel), ctx.getLength());
     }
 
     @Override
-    public void deleteObject(String storagePath) throws IOException {
+    protected void deleteObjectA(String storagePath) throws IOException {
         Path path = Paths.get(rootURI.resolve(storagePath));
         Files.delete(path);
         deleteEmptyDirectories(path);
@@ -43,6 +43,9 @@ package org.dcm4chee.arc.storage;
 import org.dcm4chee.arc.conf.StorageDescriptor;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.security.DigestInputStream;
 import java.security.DigestOutputStream;
 
@@ -56,9 +59,19 @@ public abstract class AbstractStorage implements Storage {
             "{now,date,yyyy/MM/dd}/{0020000D,hash}/{0020000E,hash}/{00080018,hash}";
 
     protected final StorageDescriptor descriptor;
+    private StorageMetrics metrics;
 
     protected AbstractStorage(StorageDescriptor descriptor) {
         this.descriptor = descriptor;
+        this.metrics = new StorageMetrics(descriptor.getStorageID());
+    }
+
+    public StorageMetrics getMetrics() {
+        return metrics;
+    }
+
+    void setMetrics(StorageMetrics metrics) {
+        this.metrics = metrics;
     }
 
     @Override
@@ -88,46 +101,118 @@ public abstract class AbstractStorage implements Storage {
     @Override
     public OutputStream openOutputStream(final WriteContext ctx) throws IOException {
         checkAccessable();
-        OutputStream stream = openOutputStreamA(ctx);
+        final StorageMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        OutputStream stream;
+        try {
+            stream = openOutputStreamA(ctx);
+        } catch (IOException | RuntimeException e) {
+            metrics.getOpenOutputStream().recordError();
+            throw e;
+        }
+        metrics.getOpenOutputStream().record(start);
+        metrics.outputStreamOpened();
         if (ctx.getMessageDigest() != null) {
             stream = new DigestOutputStream(stream, ctx.getMessageDigest());
         }
-        return new FilterOutputStream(stream) {
-            @Override
-            public void write(int b) throws IOException {
-                try {
-                    out.write(b);
-                } catch (IOException e) {
-                    throw new StorageException(e);
-                }
-                ctx.incrementSize(1);
+        return new StorageOutputStream(stream, ctx, metrics);
+    }
+
+    private final class StorageOutputStream extends FilterOutputStream implements TransferTarget {
+        private final WriteContext ctx;
+        private final StorageMetrics metrics;
+        private final FileChannel channel;
+        private boolean closed;
+
+        StorageOutputStream(OutputStream out, WriteContext ctx, StorageMetrics metrics) {
+            super(out);
+            this.ctx = ctx;
+            this.metrics = metrics;
+            this.channel = out instanceof FileOutputStream ? ((FileOutputStream) out).getChannel() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                metrics.writeFailed();
+                throw new StorageException(e);
             }
+            ctx.incrementSize(1);
+            metrics.written(1);
+        }
 
-            @Override
-            public void write(byte[] b, int off, int len) throws IOException {
-                try {
-                    out.write(b, off, len);
-                } catch (IOException e) {
-                    throw new StorageException(e);
-                }
-                ctx.incrementSize(len);
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                metrics.writeFailed();
+                throw new StorageException(e);
             }
+            ctx.incrementSize(len);
+            metrics.written(len);
+        }
 
-            @Override
-            public void close() throws IOException {
+        @Override
+        public long transferFrom(InputStream in) throws IOException {
+            if (channel == null)
+                return copyFrom(in);
+
+            ReadableByteChannel src = Channels.newChannel(in);
+            long position = channel.position();
+            long count = 0L;
+            long n;
+            while ((n = channel.transferFrom(src, position + count, Long.MAX_VALUE)) > 0) {
+                count += n;
+                ctx.incrementSize(n);
+                metrics.written(n);
+            }
+            channel.position(position + count);
+            return count;
+        }
+
+        private long copyFrom(InputStream in) throws IOException {
+            byte[] buf = new byte[8192];
+            long count = 0L;
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                write(buf, 0, n);
+                count += n;
+            }
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+
+            closed = true;
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                beforeOutputStreamClosed(ctx, this);
+            } finally {
                 try {
-                    beforeOutputStreamClosed(ctx, this);
+                    super.close();
+                } catch (IOException e) {
+                    throw new StorageException(e);
                 } finally {
                     try {
-                        super.close();
-                    } catch (IOException e) {
-                        throw new StorageException(e);
-                    } finally {
                         afterOutputStreamClosed(ctx);
+                        success = true;
+                    } finally {
+                        metrics.outputStreamClosed();
+                        if (success)
+                            metrics.getCloseOutputStream().record(start);
+                        else
+                            metrics.getCloseOutputStream().recordError();
                     }
                 }
             }
-        };
+        }
     }
 
     private void checkAccessable() throws IOException {
@@ -148,31 +233,82 @@ public abstract class AbstractStorage implements Storage {
 
     @Override
     public void commitStorage(WriteContext ctx) throws IOException {
+        long start = System.nanoTime();
+        try {
+            commitStorageA(ctx);
+        } catch (IOException | RuntimeException e) {
+            metrics.getCommitStorage().recordError();
+            throw e;
+        }
+        metrics.getCommitStorage().record(start);
+    }
+
+    protected void commitStorageA(WriteContext ctx) throws IOException {
     }
 
     @Override
     public void revokeStorage(WriteContext ctx) throws IOException {
-        deleteObject(ctx.getStoragePath());
+        long start = System.nanoTime();
+        try {
+            revokeStorageA(ctx);
+        } catch (IOException | RuntimeException e) {
+            metrics.getRevokeStorage().recordError();
+            throw e;
+        }
+        metrics.getRevokeStorage().record(start);
+    }
+
+    protected void revokeStorageA(WriteContext ctx) throws IOException {
+        deleteObjectA(ctx.getStoragePath());
     }
 
+    @Override
+    public void deleteObject(String storagePath) throws IOException {
+        long start = System.nanoTime();
+        try {
+            deleteObjectA(storagePath);
+        } catch (IOException | RuntimeException e) {
+            metrics.getDeleteObject().recordError();
+            throw e;
+        }
+        metrics.getDeleteObject().record(start);
+    }
+
+    protected abstract void deleteObjectA(String storagePath) throws IOException;
+
     @Override
     public InputStream openInputStream(final ReadContext ctx) throws IOException {
         checkAccessable();
-        InputStream stream = openInputStreamA(ctx);
+        final StorageMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        InputStream stream;
+        try {
+            stream = openInputStreamA(ctx);
+        } catch (IOException | RuntimeException e) {
+            metrics.getOpenInputStream().recordError();
+            throw e;
+        }
+        metrics.getOpenInputStream().record(start);
+        metrics.inputStreamOpened();
         if (ctx.getMessageDigest() != null) {
             stream = new DigestInputStream(stream, ctx.getMessageDigest());
         }
         return new FilterInputStream(stream) {
+            private boolean closed;
+
             @Override
             public int read() throws IOException {
                 int read = 0;
                 try {
                     read = in.read();
                 } catch (IOException e) {
+                    metrics.readFailed();
                     throw new StorageException(e);
                 }
-                if (read >= 0)
+                if (read >= 0) {
                     ctx.incrementSize(1);
+                    metrics.read(1);
+                }
                 return read;
             }
 
@@ -182,10 +318,13 @@ public abstract class AbstractStorage implements Storage {
                 try {
                     read = in.read(b, off, len);
                 } catch (IOException e) {
+                    metrics.readFailed();
                     throw new StorageException(e);
                 }
-                if (read > 0)
+                if (read > 0) {
                     ctx.incrementSize(read);
+                    metrics.read(read);
+                }
                 return read;
             }
 
@@ -195,6 +334,7 @@ public abstract class AbstractStorage implements Storage {
                 try {
                     skip = in.skip(n);
                 } catch (IOException e) {
+                    metrics.readFailed();
                     throw new StorageException(e);
                 }
                 ctx.incrementSize(skip);
@@ -208,6 +348,10 @@ public abstract class AbstractStorage implements Storage {
 
             @Override
             public void close() throws IOException {
+                if (closed)
+                    return;
+
+                closed = true;
                 try {
                     beforeInputStreamClosed(ctx, this);
                 } finally {
@@ -216,15 +360,63 @@ public abstract class AbstractStorage implements Storage {
                     } catch (IOException e) {
                         throw new StorageException(e);
                     } finally {
-                        afterInputStreamClosed(ctx);
+                        try {
+                            afterInputStreamClosed(ctx);
+                        } finally {
+                            metrics.inputStreamClosed();
+                        }
                     }
                 }
             }
         };
     }
 
+    /**
+     * Returns stream of the object starting at {@link ReadContext#getOffset()} and limited to
+     * {@link ReadContext#getLength()} bytes, if not -1.
+     */
     protected abstract InputStream openInputStreamA(ReadContext ctx) throws IOException;
 
+    protected static InputStream limit(InputStream in, final long length) {
+        return length < 0 ? in : new FilterInputStream(in) {
+            private long remaining = length;
+
+            @Override
+            public int read() throws IOException {
+                if (remaining <= 0)
+                    return -1;
+
+                int read = in.read();
+                if (read >= 0)
+                    remaining--;
+                return read;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (remaining <= 0)
+                    return -1;
+
+                int read = in.read(b, off, (int) Math.min(len, remaining));
+                if (read > 0)
+                    remaining -= read;
+                return read;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skip = in.skip(Math.min(n, remaining));
+                remaining -= skip;
+                return skip;
+            }
+
+            @Override
+            public int available() throws IOException {
+                return (int) Math.min(in.available(), remaining);
+            }
+        };
+    }
+
     protected void beforeInputStreamClosed(ReadContext ctx, InputStream stream)  throws IOException {}
 
     protected void afterInputStreamClosed(ReadContext ctx)  throws IOException {}
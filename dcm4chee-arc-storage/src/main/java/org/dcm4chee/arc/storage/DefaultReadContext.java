@@ -50,6 +50,8 @@ public class DefaultReadContext implements ReadContext {
 
     private final Storage storage;
     private String storagePath;
+    private long offset;
+    private long length = -1;
     private long size;
     private String studyInstanceUID;
     private MessageDigest messageDigest;
@@ -74,6 +76,26 @@ public class DefaultReadContext implements ReadContext {
         this.storagePath = storagePath;
     }
 
+    @Override
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public void setLength(long length) {
+        this.length = length;
+    }
+
     @Override
     public long getSize() {
         return size;
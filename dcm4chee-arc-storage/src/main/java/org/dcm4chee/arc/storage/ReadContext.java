@@ -53,6 +53,20 @@ public interface ReadContext {
 
     void setStoragePath(String storagePath);
 
+    /**
+     * @return position of the first byte to read, 0 by default
+     */
+    long getOffset();
+
+    void setOffset(long offset);
+
+    /**
+     * @return number of bytes to read from the offset or -1 to read until the end of the object, -1 by default
+     */
+    long getLength();
+
+    void setLength(long length);
+
     long getSize();
 
     void setSize(long size);
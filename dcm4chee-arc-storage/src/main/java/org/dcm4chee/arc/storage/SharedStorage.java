@@ -0,0 +1,85 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Storage} instance shared by all users of one Storage Descriptor, closed after it was retired by
+ * {@link StorageFactory} and the last {@link StorageLease} on it was closed.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+class SharedStorage {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedStorage.class);
+
+    private final Storage storage;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    SharedStorage(Storage storage) {
+        this.storage = storage;
+    }
+
+    Storage getStorage() {
+        return storage;
+    }
+
+    void retain() {
+        refCount.incrementAndGet();
+    }
+
+    void release() {
+        if (refCount.decrementAndGet() > 0)
+            return;
+
+        try {
+            storage.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close {}", storage.getStorageDescriptor().getStorageURI(), e);
+        }
+    }
+}
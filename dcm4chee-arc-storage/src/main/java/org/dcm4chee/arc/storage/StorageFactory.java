@@ -3,11 +3,21 @@ package org.dcm4chee.arc.storage;
 import org.dcm4chee.arc.conf.NamedQualifier;
 import org.dcm4chee.arc.conf.StorageDescriptor;
 
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.inject.Inject;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Provides leases on one shared {@link Storage} instance per Storage Descriptor. The shared instance is replaced
+ * if a different Storage Descriptor object - e.g. after a configuration reload - is passed for the same Storage ID,
+ * and closed when the last lease on it is closed. Storage instances are opened outside of the lock guarding the
+ * shared instances, so opening one Storage - e.g. connecting to a cloud provider - does not block leases on others.
+ *
  * @author Gunter Zeilinger <gunterze@gmail.com>
  * @since Jul 2015
  */
@@ -16,9 +26,78 @@ public class StorageFactory {
     @Inject
     private Instance<StorageProvider> providers;
 
+    private final ConcurrentHashMap<String, StorageMetrics> metrics = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Object> openLocks = new ConcurrentHashMap<>();
+
+    private final Map<String, SharedStorage> storages = new HashMap<>();
+
+    private boolean closed;
+
     public Storage getStorage(StorageDescriptor descriptor) {
+        StorageMetrics m = metrics.computeIfAbsent(descriptor.getStorageID(), StorageMetrics::new);
+        return new StorageLease(sharedStorage(descriptor, m), m);
+    }
+
+    private SharedStorage sharedStorage(StorageDescriptor descriptor, StorageMetrics m) {
+        SharedStorage shared = retainSharedStorage(descriptor);
+        if (shared != null)
+            return shared;
+
+        synchronized (openLocks.computeIfAbsent(descriptor.getStorageID(), storageID -> new Object())) {
+            shared = retainSharedStorage(descriptor);
+            if (shared == null) {
+                shared = new SharedStorage(openStorage(descriptor, m));
+                shared.retain();
+                putSharedStorage(descriptor.getStorageID(), shared);
+            }
+            return shared;
+        }
+    }
+
+    private synchronized SharedStorage retainSharedStorage(StorageDescriptor descriptor) {
+        SharedStorage shared = storages.get(descriptor.getStorageID());
+        if (shared == null || shared.getStorage().getStorageDescriptor() != descriptor)
+            return null;
+
+        shared.retain();
+        return shared;
+    }
+
+    private synchronized void putSharedStorage(String storageID, SharedStorage shared) {
+        if (closed) {
+            shared.release();
+            return;
+        }
+        SharedStorage prev = storages.put(storageID, shared);
+        if (prev != null)
+            prev.release();
+    }
+
+    private Storage openStorage(StorageDescriptor descriptor, StorageMetrics m) {
         String scheme = descriptor.getStorageURI().getScheme();
         StorageProvider provider = providers.select(new NamedQualifier(scheme)).get();
-        return provider.openStorage(descriptor);
+        Storage storage = provider.openStorage(descriptor);
+        if (storage instanceof AbstractStorage)
+            ((AbstractStorage) storage).setMetrics(m);
+        m.storageOpened();
+        return storage;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        closed = true;
+        for (SharedStorage shared : storages.values())
+            shared.release();
+        storages.clear();
+    }
+
+    public Collection<StorageMetrics> getMetrics() {
+        return metrics.values();
+    }
+
+    public void resetMetrics() {
+        for (StorageMetrics m : metrics.values())
+            m.reset();
     }
 }
@@ -0,0 +1,225 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.storage;
+
+import org.dcm4chee.arc.LatencyHistogram;
+
+import javax.json.stream.JsonGenerator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * I/O statistics of one Storage, aggregated over all {@link Storage} instances opened for the same
+ * Storage Descriptor by {@link StorageFactory}.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+public class StorageMetrics {
+
+    private final String storageID;
+    private final LatencyHistogram openOutputStream = new LatencyHistogram();
+    private final LatencyHistogram closeOutputStream = new LatencyHistogram();
+    private final LatencyHistogram openInputStream = new LatencyHistogram();
+    private final LatencyHistogram commitStorage = new LatencyHistogram();
+    private final LatencyHistogram revokeStorage = new LatencyHistogram();
+    private final LatencyHistogram deleteObject = new LatencyHistogram();
+    private final AtomicInteger outputStreams = new AtomicInteger();
+    private final AtomicInteger inputStreams = new AtomicInteger();
+    private final AtomicInteger leases = new AtomicInteger();
+    private final AtomicLong openedStorages = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong writeErrors = new AtomicLong();
+    private final AtomicLong readErrors = new AtomicLong();
+    private volatile long resetTime = System.currentTimeMillis();
+
+    public StorageMetrics(String storageID) {
+        this.storageID = storageID;
+    }
+
+    public String getStorageID() {
+        return storageID;
+    }
+
+    public LatencyHistogram getOpenOutputStream() {
+        return openOutputStream;
+    }
+
+    public LatencyHistogram getCloseOutputStream() {
+        return closeOutputStream;
+    }
+
+    public LatencyHistogram getOpenInputStream() {
+        return openInputStream;
+    }
+
+    public LatencyHistogram getCommitStorage() {
+        return commitStorage;
+    }
+
+    public LatencyHistogram getRevokeStorage() {
+        return revokeStorage;
+    }
+
+    public LatencyHistogram getDeleteObject() {
+        return deleteObject;
+    }
+
+    public int getOutputStreams() {
+        return outputStreams.get();
+    }
+
+    public int getInputStreams() {
+        return inputStreams.get();
+    }
+
+    public int getLeases() {
+        return leases.get();
+    }
+
+    public long getOpenedStorages() {
+        return openedStorages.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getWriteErrors() {
+        return writeErrors.get();
+    }
+
+    public long getReadErrors() {
+        return readErrors.get();
+    }
+
+    void outputStreamOpened() {
+        outputStreams.incrementAndGet();
+    }
+
+    void outputStreamClosed() {
+        outputStreams.decrementAndGet();
+    }
+
+    void inputStreamOpened() {
+        inputStreams.incrementAndGet();
+    }
+
+    void inputStreamClosed() {
+        inputStreams.decrementAndGet();
+    }
+
+    void leaseAcquired() {
+        leases.incrementAndGet();
+    }
+
+    void leaseReleased() {
+        leases.decrementAndGet();
+    }
+
+    void storageOpened() {
+        openedStorages.incrementAndGet();
+    }
+
+    void written(long n) {
+        bytesWritten.addAndGet(n);
+    }
+
+    void read(long n) {
+        bytesRead.addAndGet(n);
+    }
+
+    void writeFailed() {
+        writeErrors.incrementAndGet();
+    }
+
+    void readFailed() {
+        readErrors.incrementAndGet();
+    }
+
+    public void reset() {
+        openOutputStream.reset();
+        closeOutputStream.reset();
+        openInputStream.reset();
+        commitStorage.reset();
+        revokeStorage.reset();
+        deleteObject.reset();
+        openedStorages.set(0L);
+        bytesWritten.set(0L);
+        bytesRead.set(0L);
+        writeErrors.set(0L);
+        readErrors.set(0L);
+        resetTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Writes the statistics as JSON object. Throughput in bytes/s is averaged over the time since the last
+     * {@link #reset()}.
+     */
+    public void writeTo(JsonGenerator gen) {
+        long seconds = Math.max(1L, (System.currentTimeMillis() - resetTime) / 1000L);
+        gen.writeStartObject();
+        gen.write("storageID", storageID);
+        gen.write("seconds", seconds);
+        gen.write("outputStreams", outputStreams.get());
+        gen.write("inputStreams", inputStreams.get());
+        gen.write("leases", leases.get());
+        gen.write("openedStorages", openedStorages.get());
+        gen.write("bytesWritten", bytesWritten.get());
+        gen.write("bytesRead", bytesRead.get());
+        gen.write("writeBytesPerSecond", bytesWritten.get() / seconds);
+        gen.write("readBytesPerSecond", bytesRead.get() / seconds);
+        gen.write("writeErrors", writeErrors.get());
+        gen.write("readErrors", readErrors.get());
+        openOutputStream.writeTo("openOutputStream", gen);
+        closeOutputStream.writeTo("closeOutputStream", gen);
+        openInputStream.writeTo("openInputStream", gen);
+        commitStorage.writeTo("commitStorage", gen);
+        revokeStorage.writeTo("revokeStorage", gen);
+        deleteObject.writeTo("deleteObject", gen);
+        gen.writeEnd();
+    }
+}
@@ -3,10 +3,14 @@ package org.dcm4chee.arc.store.scp;
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.net.Association;
+import org.dcm4che3.net.Commands;
+import org.dcm4che3.net.Dimse;
 import org.dcm4che3.net.PDVInputStream;
+import org.dcm4che3.net.Status;
 import org.dcm4che3.net.pdu.PresentationContext;
 import org.dcm4che3.net.service.BasicCStoreSCP;
 import org.dcm4che3.net.service.DicomService;
+import org.dcm4che3.net.service.DicomServiceException;
 import org.dcm4che3.util.SafeClose;
 import org.dcm4chee.arc.store.StoreContext;
 import org.dcm4chee.arc.store.StoreService;
@@ -36,6 +40,28 @@ class CStoreSCP extends BasicCStoreSCP {
         storeService.store(ctx, data);
     }
 
+    @Override
+    public void onDimseRQ(Association as, PresentationContext pc, Dimse dimse, Attributes rq, PDVInputStream data)
+            throws IOException {
+        StoreSession session = getStoreSession(as);
+        if (dimse != Dimse.C_STORE_RQ
+                || session.getArchiveAEExtension().getArchiveDeviceExtension().getStoreUpdateDBQueueSize() <= 0) {
+            super.onDimseRQ(as, pc, dimse, rq, data);
+            return;
+        }
+        StoreContext ctx = newStoreContext(session, pc, rq);
+        storeService.storeAsync(ctx, data).whenComplete((result, e) ->
+                as.tryWriteDimseRSP(pc, e == null
+                        ? Commands.mkCStoreRSP(rq, Status.Success)
+                        : toDicomServiceException(e).mkRSP(dimse.commandFieldOfRSP(), rq.getInt(Tag.MessageID, 0))));
+    }
+
+    private static DicomServiceException toDicomServiceException(Throwable e) {
+        return e instanceof DicomServiceException
+                ? (DicomServiceException) e
+                : new DicomServiceException(Status.ProcessingFailure, e);
+    }
+
     private StoreContext newStoreContext(StoreSession session,  PresentationContext pc, Attributes rq) {
         StoreContext ctx = storeService.newStoreContext(session);
         ctx.setSopClassUID(rq.getString(Tag.AffectedSOPClassUID));
@@ -44,6 +44,7 @@ import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.imageio.codec.Transcoder;
 import org.dcm4che3.net.*;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.entity.*;
 import org.dcm4chee.arc.retrieve.InstanceLocations;
 import org.dcm4chee.arc.retrieve.RetrieveContext;
@@ -143,14 +144,19 @@ class CStoreForwardTask implements Runnable {
         Series series = inst.getSeries();
         Study study = series.getStudy();
         Patient patient = study.getPatient();
-        Attributes instAttrs = inst.getAttributes();
-        Attributes seriesAttrs = series.getAttributes();
-        Attributes studyAttrs = study.getAttributes();
-        Attributes patAttrs = patient.getAttributes();
-        Attributes.unifyCharacterSets(patAttrs, studyAttrs, seriesAttrs, instAttrs);
-        instAttrs.addAll(seriesAttrs);
-        instAttrs.addAll(studyAttrs);
-        instAttrs.addAll(patAttrs);
+        Attributes[] patStudySeriesInstAttrs = {
+                patient.getAttributes(),
+                study.getAttributes(),
+                series.getAttributes(),
+                inst.getAttributes()
+        };
+        AttributesCache.unifyCharacterSets(patStudySeriesInstAttrs);
+        Attributes instAttrs = new Attributes(patStudySeriesInstAttrs[0].size() + patStudySeriesInstAttrs[1].size()
+                + patStudySeriesInstAttrs[2].size() + patStudySeriesInstAttrs[3].size());
+        instAttrs.addAll(patStudySeriesInstAttrs[3]);
+        instAttrs.addAll(patStudySeriesInstAttrs[2]);
+        instAttrs.addAll(patStudySeriesInstAttrs[1]);
+        instAttrs.addAll(patStudySeriesInstAttrs[0]);
         RetrieveService service = ctx.getRetrieveService();
         InstanceLocations instanceLocations = service.newInstanceLocations(
                 storeCtx.getSopClassUID(), storeCtx.getSopInstanceUID(), null, null, null, null, instAttrs);
@@ -56,10 +56,15 @@ import org.dcm4chee.arc.retrieve.RetrieveContext;
 import org.dcm4chee.arc.retrieve.RetrieveEnd;
 import org.dcm4chee.arc.retrieve.RetrieveStart;
 import org.dcm4chee.arc.store.scu.CStoreSCU;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.event.Event;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -68,6 +73,8 @@ import javax.inject.Inject;
 @ApplicationScoped
 public class CStoreSCUImpl implements CStoreSCU {
 
+    private static final Logger LOG = LoggerFactory.getLogger(CStoreSCUImpl.class);
+
     @Inject @RetrieveStart
     private Event<RetrieveContext> retrieveStart;
 
@@ -90,6 +97,24 @@ public class CStoreSCUImpl implements CStoreSCU {
         }
     }
 
+    private List<Association> openAdditionalAssociations(RetrieveContext ctx) {
+        int n = Math.min(ctx.getArchiveAEExtension().getArchiveDeviceExtension().getMaxRetrieveAssociations(),
+                ctx.getMatches().size()) - 1;
+        if (n <= 0)
+            return Collections.emptyList();
+
+        List<Association> list = new ArrayList<>(n);
+        ApplicationEntity localAE = ctx.getLocalApplicationEntity();
+        try {
+            while (list.size() < n)
+                list.add(localAE.connect(ctx.getDestinationAE(), createAARQ(ctx)));
+        } catch (Exception e) {
+            LOG.info("Failed to open additional association to {} - continue with {} association(s)",
+                    ctx.getDestinationAETitle(), list.size() + 1, e);
+        }
+        return list;
+    }
+
     private AAssociateRQ createAARQ(RetrieveContext ctx) {
         AAssociateRQ aarq = new AAssociateRQ();
         ApplicationEntity localAE = ctx.getLocalApplicationEntity();
@@ -115,7 +140,9 @@ public class CStoreSCUImpl implements CStoreSCU {
     public RetrieveTask newRetrieveTaskSTORE(RetrieveContext ctx) throws DicomServiceException {
         Association storeas = openAssociation(ctx);
         ctx.setStoreAssociation(storeas);
-        return new RetrieveTaskImpl(ctx, storeas, retrieveStart, retrieveEnd);
+        RetrieveTaskImpl retrieveTask = new RetrieveTaskImpl(ctx, storeas, retrieveStart, retrieveEnd);
+        retrieveTask.setAdditionalStoreAssociations(openAdditionalAssociations(ctx));
+        return retrieveTask;
     }
 
     @Override
@@ -126,6 +153,7 @@ public class CStoreSCUImpl implements CStoreSCU {
         ctx.setStoreAssociation(storeas);
         RetrieveTaskImpl retrieveTask = new RetrieveTaskImpl(ctx, storeas, retrieveStart, retrieveEnd);
         retrieveTask.setRequestAssociation(Dimse.C_MOVE_RQ, as, pc, rq);
+        retrieveTask.setAdditionalStoreAssociations(openAdditionalAssociations(ctx));
         return retrieveTask;
     }
 
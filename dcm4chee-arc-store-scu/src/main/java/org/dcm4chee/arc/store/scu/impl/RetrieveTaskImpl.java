@@ -59,6 +59,9 @@ import org.slf4j.LoggerFactory;
 import javax.enterprise.event.Event;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -73,6 +76,7 @@ final class RetrieveTaskImpl implements RetrieveTask {
     private final Event<RetrieveContext> retrieveEnd;
     private final RetrieveContext ctx;
     private final Association storeas;
+    private List<Association> additionalStoreas = Collections.emptyList();
     private final ArchiveAEExtension aeExt;
     private final String hostName;
     private Dimse dimserq;
@@ -106,6 +110,10 @@ final class RetrieveTaskImpl implements RetrieveTask {
         this.pendingRSPInterval = dimserq == Dimse.C_MOVE_RQ ? aeExt.sendPendingCMoveInterval() : null;
     }
 
+    void setAdditionalStoreAssociations(List<Association> additionalStoreas) {
+        this.additionalStoreas = additionalStoreas;
+    }
+
     @Override
     public void onCancelRQ(Association association) {
         canceled = true;
@@ -120,10 +128,14 @@ final class RetrieveTaskImpl implements RetrieveTask {
         try {
             if (ctx.getFallbackAssociation() == null)
                 startWritePendingRSP();
-            for (InstanceLocations match : ctx.getMatches()) {
-                if (canceled)
-                    break;
-                store(match);
+            if (additionalStoreas.isEmpty()) {
+                for (InstanceLocations match : ctx.getMatches()) {
+                    if (canceled)
+                        break;
+                    store(storeas, match, null);
+                }
+            } else {
+                storeConcurrently();
             }
             waitForOutstandingCStoreRSP();
         } finally {
@@ -141,8 +153,58 @@ final class RetrieveTaskImpl implements RetrieveTask {
         retrieveEnd.fire(ctx);
     }
 
-    private void store(InstanceLocations inst) {
-        CStoreRSPHandler rspHandler = new CStoreRSPHandler(inst);
+    private void storeConcurrently() {
+        final ConcurrentLinkedQueue<InstanceLocations> queue = new ConcurrentLinkedQueue<>(ctx.getMatches());
+        Device device = ctx.getLocalApplicationEntity().getDevice();
+        List<FutureTask<Void>> tasks = new ArrayList<>(additionalStoreas.size());
+        for (final Association as : additionalStoreas) {
+            FutureTask<Void> task = new FutureTask<>(new Runnable() {
+                @Override
+                public void run() {
+                    storeFrom(queue, as);
+                }
+            }, null);
+            device.execute(task);
+            tasks.add(task);
+        }
+        storeFrom(queue, storeas);
+        for (FutureTask<Void> task : tasks)
+            try {
+                task.get();
+            } catch (InterruptedException | ExecutionException e) {
+                LOG.warn("{}: failed to wait for concurrent sending of objects to {}:",
+                        rqas, ctx.getDestinationAETitle(), e);
+            }
+        // objects given back by a worker, after the other workers had already finished
+        storeFrom(queue, storeas);
+        for (Association as : additionalStoreas)
+            storeFrom(queue, as);
+        InstanceLocations match;
+        while (!canceled && (match = queue.poll()) != null) {
+            ctx.incrementFailed();
+            ctx.addFailedSOPInstanceUID(match.getSopInstanceUID());
+            LOG.info("{}: failed to send {} to {}: no association ready for data transfer",
+                    rqas, match, ctx.getDestinationAETitle());
+        }
+    }
+
+    /**
+     * Sends objects from the queue shared by all workers, until the queue is empty or the association is no longer
+     * ready for data transfer. Objects not yet sent then remain in the queue for the workers on other associations.
+     */
+    private void storeFrom(ConcurrentLinkedQueue<InstanceLocations> queue, Association as) {
+        InstanceLocations match;
+        while (!canceled && as.isReadyForDataTransfer() && (match = queue.poll()) != null)
+            store(as, match, queue);
+    }
+
+    /**
+     * Sends one object. If sending fails because the association is no longer ready for data transfer and
+     * {@code queue} is not {@code null}, the object is given back to {@code queue}, for sending on another
+     * association, instead of counting it as failed.
+     */
+    private void store(Association storeas, InstanceLocations inst, Queue<InstanceLocations> queue) {
+        CStoreRSPHandler rspHandler = new CStoreRSPHandler(storeas, inst);
         String iuid = inst.getSopInstanceUID();
         String cuid = inst.getSopClassUID();
         int priority = ctx.getPriority();
@@ -168,6 +230,12 @@ final class RetrieveTaskImpl implements RetrieveTask {
             }
         } catch (Exception e) {
             outstandingRSP.remove(inst);
+            if (queue != null && !storeas.isReadyForDataTransfer()) {
+                LOG.info("{}: failed to send {} to {} - retry on another association:",
+                        rqas, inst, ctx.getDestinationAETitle(), e);
+                queue.offer(inst);
+                return;
+            }
             ctx.incrementFailed();
             ctx.addFailedSOPInstanceUID(iuid);
             LOG.info("{}: failed to send {} to {}:", rqas, inst, ctx.getDestinationAETitle(), e);
@@ -276,18 +344,24 @@ final class RetrieveTaskImpl implements RetrieveTask {
 
     protected void releaseStoreAssociation() {
         if (dimserq != Dimse.C_GET_RQ)
-            try {
-                storeas.release();
-            } catch (IOException e) {
-                LOG.warn("{}: failed to release association to {}", rqas, storeas.getRemoteAET(), e);
-            }
+            releaseStoreAssociation(storeas);
+        for (Association as : additionalStoreas)
+            releaseStoreAssociation(as);
+    }
+
+    private void releaseStoreAssociation(Association storeas) {
+        try {
+            storeas.release();
+        } catch (IOException e) {
+            LOG.warn("{}: failed to release association to {}", rqas, storeas.getRemoteAET(), e);
+        }
     }
 
     private final class CStoreRSPHandler extends DimseRSPHandler {
 
         private final InstanceLocations inst;
 
-        public CStoreRSPHandler(InstanceLocations inst) {
+        public CStoreRSPHandler(Association storeas, InstanceLocations inst) {
             super(storeas.nextMessageID());
             this.inst = inst;
         }
@@ -1,6 +1,7 @@
 package org.dcm4chee.arc.store;
 
 import org.dcm4che3.data.Attributes;
+import org.dcm4chee.arc.StorePermission;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.conf.RejectionNote;
 import org.dcm4chee.arc.entity.Instance;
@@ -38,6 +39,10 @@ public interface StoreContext {
 
     void setStoreTranferSyntax(String storeTranferSyntaxUID);
 
+    Long getPixelDataOffset();
+
+    void setPixelDataOffset(Long pixelDataOffset);
+
     String getAcceptedStudyInstanceUID();
 
     void setAcceptedStudyInstanceUID(String acceptedStudyInstanceUID);
@@ -95,4 +100,8 @@ public interface StoreContext {
     LocalDate getExpirationDate();
 
     void setExpirationDate(LocalDate expirationDate);
+
+    StorePermission getStorePermission();
+
+    void setStorePermission(StorePermission storePermission);
 }
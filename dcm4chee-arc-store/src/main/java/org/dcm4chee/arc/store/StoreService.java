@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.net.Socket;
 import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -52,6 +53,15 @@ public interface StoreService {
 
     void store(StoreContext ctx, InputStream data) throws IOException;
 
+    /**
+     * Receives the object and writes it to the storage on the calling thread, but queues the update of the DB for
+     * being performed by a worker of the device executor. Blocks while the number of queued DB updates of the
+     * association reaches the configured Store Update DB Queue Size.
+     *
+     * @return future completed after the object was recorded in the DB
+     */
+    CompletableFuture<Void> storeAsync(StoreContext ctx, InputStream data) throws IOException;
+
     void store(StoreContext ctx, Attributes attrs) throws IOException;
 
     Attributes copyInstances(
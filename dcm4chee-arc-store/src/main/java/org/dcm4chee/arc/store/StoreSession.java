@@ -88,6 +88,8 @@ public interface StoreSession extends Closeable {
 
     void cacheSeries(Series series);
 
+    void clearCachedSeries();
+
     Map<Long, UIDMap> getUIDMapCache();
 
     Map<String, String> getUIDMap();
@@ -0,0 +1,145 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.store.impl;
+
+import org.dcm4che3.net.ApplicationEntity;
+import org.dcm4che3.net.Device;
+import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
+import org.dcm4chee.arc.conf.Duration;
+import org.dcm4chee.arc.entity.Instance;
+import org.dcm4chee.arc.query.QueryService;
+import org.dcm4chee.arc.store.StoreContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.event.Observes;
+import javax.inject.Inject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Calculates missing Study and Series Query Attributes of Studies in the background, after no further objects of
+ * the Study were received for the configured Query Attributes Warm Up Delay, so subsequent queries do not have to
+ * calculate them.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+public class QueryAttributesWarmer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryAttributesWarmer.class);
+
+    @Inject
+    private Device device;
+
+    @Inject
+    private QueryService queryService;
+
+    private final Map<Long, WarmUp> pending = new ConcurrentHashMap<>();
+
+    public void onStore(@Observes StoreContext ctx) {
+        Instance inst = ctx.getStoredInstance();
+        if (ctx.getException() != null || inst == null)
+            return;
+
+        Duration delay = device.getDeviceExtension(ArchiveDeviceExtension.class).getQueryAttributesWarmUpDelay();
+        if (delay == null)
+            return;
+
+        Long studyPk = inst.getSeries().getStudy().getPk();
+        ApplicationEntity ae = ctx.getStoreSession().getLocalApplicationEntity();
+        long now = System.currentTimeMillis();
+        // a WarmUp is removed when it is started, so objects received afterwards create a new one
+        WarmUp warmUp = pending.compute(studyPk, (pk, prev) -> {
+            WarmUp w = prev != null ? prev : new WarmUp(pk, ae);
+            w.lastReceived = now;
+            return w;
+        });
+        if (warmUp.scheduled.compareAndSet(false, true))
+            device.schedule(warmUp, delay.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private class WarmUp implements Runnable {
+        final Long studyPk;
+        final ApplicationEntity ae;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        volatile long lastReceived;
+        private boolean started;
+
+        WarmUp(Long studyPk, ApplicationEntity ae) {
+            this.studyPk = studyPk;
+            this.ae = ae;
+        }
+
+        @Override
+        public void run() {
+            Duration delay = device.getDeviceExtension(ArchiveDeviceExtension.class).getQueryAttributesWarmUpDelay();
+            long delayMillis = delay != null ? delay.toMillis() : 0L;
+            pending.computeIfPresent(studyPk, (pk, warmUp) -> {
+                if (warmUp != this)
+                    return warmUp;
+
+                started = lastReceived + delayMillis <= System.currentTimeMillis();
+                return started ? null : this;
+            });
+            if (!started) {
+                if (pending.get(studyPk) == this)
+                    device.schedule(this,
+                            Math.max(0L, lastReceived + delayMillis - System.currentTimeMillis()),
+                            TimeUnit.MILLISECONDS);
+                return;
+            }
+            if (delay == null)
+                return;
+
+            try {
+                queryService.calculateMissingQueryAttributes(studyPk, ae);
+                LOG.debug("Calculated missing Query Attributes of Study[pk={}] for {}", studyPk, ae);
+            } catch (Exception e) {
+                LOG.info("Failed to calculate missing Query Attributes of Study[pk={}] for {}:\n", studyPk, ae, e);
+            }
+        }
+    }
+}
@@ -44,6 +44,7 @@ import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.util.StringUtils;
+import org.dcm4chee.arc.StorePermission;
 import org.dcm4chee.arc.conf.Availability;
 import org.dcm4chee.arc.conf.RejectionNote;
 import org.dcm4chee.arc.entity.Instance;
@@ -70,6 +71,7 @@ class StoreContextImpl implements StoreContext {
     private String sopInstanceUID;
     private String receiveTranferSyntaxUID;
     private String storeTranferSyntaxUID;
+    private Long pixelDataOffset;
     private String acceptedStudyInstanceUID;
     private int moveOriginatorMessageID;
     private String moveOriginatorAETitle;
@@ -88,6 +90,7 @@ class StoreContextImpl implements StoreContext {
     private String[] retrieveAETs;
     private Availability availability;
     private LocalDate expirationDate;
+    private StorePermission storePermission;
 
     public StoreContextImpl(StoreSession storeSession) {
         this.storeSession = storeSession;
@@ -154,6 +157,16 @@ class StoreContextImpl implements StoreContext {
         this.storeTranferSyntaxUID = storeTranferSyntaxUID;
     }
 
+    @Override
+    public Long getPixelDataOffset() {
+        return pixelDataOffset;
+    }
+
+    @Override
+    public void setPixelDataOffset(Long pixelDataOffset) {
+        this.pixelDataOffset = pixelDataOffset;
+    }
+
     @Override
     public String getAcceptedStudyInstanceUID() {
         return acceptedStudyInstanceUID;
@@ -310,4 +323,14 @@ class StoreContextImpl implements StoreContext {
     public void setExpirationDate(LocalDate expirationDate) {
         this.expirationDate = expirationDate;
     }
+
+    @Override
+    public StorePermission getStorePermission() {
+        return storePermission;
+    }
+
+    @Override
+    public void setStorePermission(StorePermission storePermission) {
+        this.storePermission = storePermission;
+    }
 }
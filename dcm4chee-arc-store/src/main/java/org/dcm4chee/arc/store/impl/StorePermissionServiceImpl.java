@@ -0,0 +1,264 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.store.impl;
+
+import org.dcm4che3.net.Status;
+import org.dcm4che3.util.AttributesFormat;
+import org.dcm4che3.util.StreamUtils;
+import org.dcm4chee.arc.LatencyHistogram;
+import org.dcm4chee.arc.StorePermission;
+import org.dcm4chee.arc.StorePermissionCache;
+import org.dcm4chee.arc.conf.ArchiveAEExtension;
+import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
+import org.dcm4chee.arc.conf.Duration;
+import org.dcm4chee.arc.store.StoreContext;
+import org.dcm4chee.arc.store.StorePermissionService;
+import org.dcm4chee.arc.store.StoreService;
+import org.dcm4chee.arc.store.StoreSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * @author Gunter Zeilinger <gunterze@gmail.com>
+ * @author Vrinda Nayak <vrinda.nayak@j4care.com>
+ * @since Oct 2026
+ */
+@ApplicationScoped
+class StorePermissionServiceImpl implements StorePermissionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StorePermissionServiceImpl.class);
+
+    @Inject
+    private StorePermissionCache storePermissionCache;
+
+    private final ConcurrentHashMap<String, CompletableFuture<StorePermission>> pendingQueries =
+            new ConcurrentHashMap<>();
+
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+    @Override
+    public StorePermission query(StoreContext ctx) {
+        StoreSession session = ctx.getStoreSession();
+        String serviceURL = session.getArchiveAEExtension().storePermissionServiceURL();
+        return serviceURL != null
+                ? query(session, new AttributesFormat(serviceURL).format(ctx.getAttributes()))
+                : null;
+    }
+
+    @Override
+    public StorePermission query(StoreSession session, String urlspec) {
+        StorePermission storePermission = storePermissionCache.get(urlspec);
+        if (storePermission != null) {
+            LOG.debug("{}: Use cached result of Query Store Permission Service {} - {}",
+                    session, urlspec, storePermission);
+            return storePermission;
+        }
+        CompletableFuture<StorePermission> future = new CompletableFuture<>();
+        CompletableFuture<StorePermission> pending = pendingQueries.putIfAbsent(urlspec, future);
+        if (pending != null) {
+            LOG.debug("{}: Wait for result of pending Query Store Permission Service {}", session, urlspec);
+            return pending.join();
+        }
+        try {
+            storePermission = storePermissionCache.get(urlspec);
+            if (storePermission == null) {
+                storePermission = doQuery(session, urlspec);
+                storePermissionCache.put(urlspec, storePermission);
+            }
+            future.complete(storePermission);
+            return storePermission;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            pendingQueries.remove(urlspec, future);
+        }
+    }
+
+    @Override
+    public LatencyHistogram getLatencyHistogram() {
+        return latencyHistogram;
+    }
+
+    private StorePermission doQuery(StoreSession session, String urlspec) {
+        ArchiveAEExtension arcAE = session.getArchiveAEExtension();
+        ArchiveDeviceExtension arcDev = arcAE.getArchiveDeviceExtension();
+        LOG.info("{}: Query Store Permission Service {}", session, urlspec);
+        boolean granted = false;
+        LocalDate expirationDate = null;
+        HashMap<Integer, String> errorCodeComment = new HashMap<>();
+        long startTime = System.nanoTime();
+        try {
+            URL url = new URL(urlspec);
+            HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
+            httpConn.setConnectTimeout(toMillis(arcDev.getStorePermissionServiceConnectTimeout()));
+            httpConn.setReadTimeout(toMillis(arcDev.getStorePermissionServiceReadTimeout()));
+            int responseCode = httpConn.getResponseCode();
+            String responseContent = null;
+            Pattern responsePattern = arcAE.storePermissionServiceResponsePattern();
+            Pattern expirationDatePattern = arcAE.storePermissionServiceExpirationDatePattern();
+            Pattern errorCodePattern = arcAE.storePermissionServiceErrorCodePattern();
+            Pattern errorCommentPattern = arcAE.storePermissionServiceErrorCommentPattern();
+            switch (responseCode) {
+                case HttpURLConnection.HTTP_OK:
+                    responseContent = readContent(httpConn);
+                    granted = responsePattern == null || responsePattern.matcher(responseContent).find();
+                    expirationDate = granted && expirationDatePattern != null
+                                    ? selectExpirationDate(session, urlspec, responseContent, expirationDatePattern) : null;
+                    errorCodeComment = !granted
+                                       ? selectErrorCodeComment(session, urlspec, responseContent, errorCodePattern, errorCommentPattern)
+                                       : new HashMap<>();
+                    break;
+                case HttpURLConnection.HTTP_NO_CONTENT:
+                    granted = responsePattern == null;
+                    break;
+                default:
+                    discardErrorContent(httpConn);
+            }
+            latencyHistogram.record(startTime);
+            if (!granted) {
+                if (responseContent == null || responsePattern == null)
+                    LOG.info("{}: Store Permission Service {} returns HTTP Status: {}",
+                            session, urlspec, responseCode);
+                else
+                    LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not match {}",
+                            session, urlspec, responseContent, responsePattern);
+            }
+        } catch (Exception e) {
+            latencyHistogram.recordError();
+            LOG.warn("{}: Failed to query Store Permission Service {}:\n", session, urlspec, e);
+        }
+        return new StorePermission(expirationDate, errorCodeComment);
+    }
+
+    private static int toMillis(Duration timeout) {
+        return timeout != null ? (int) Math.min(timeout.toMillis(), Integer.MAX_VALUE) : 0;
+    }
+
+    private LocalDate selectExpirationDate(StoreSession session, String url, String response, Pattern pattern) {
+        Matcher matcher = pattern.matcher(response);
+        if (matcher.find()) {
+            String s = matcher.group(1);
+            try {
+                return LocalDate.parse(s, DateTimeFormatter.BASIC_ISO_DATE);
+            } catch (DateTimeParseException e) {
+                LOG.warn("{}: Store Permission Service {} returns invalid Expiration Date: {} - ignored",
+                        session, url, s);
+            }
+        } else {
+            LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not contains expiration date {}",
+                    session, url, response, pattern);
+        }
+        return null;
+    }
+
+    private String selectErrorComment(StoreSession session, String url, String response, Pattern pattern) {
+        Matcher matcher = pattern.matcher(response);
+        if (matcher.find())
+            return matcher.group(1);
+        else
+            LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not contain error comment {}",
+                    session, url, response, pattern);
+        return StoreService.NOT_AUTHORIZED;
+    }
+
+    private int selectErrorCode(StoreSession session, String url, String response, Pattern pattern) {
+        Matcher matcher = pattern.matcher(response);
+        if (matcher.find())
+            return Integer.parseInt(matcher.group(1), 16);
+        else
+            LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not contain error code {}",
+                    session, url, response, pattern);
+        return Status.NotAuthorized;
+    }
+
+    private HashMap<Integer, String> selectErrorCodeComment(StoreSession session, String url, String response,
+                Pattern errorCodePattern, Pattern errorCommentPattern) {
+        HashMap<Integer, String> errorCodeComment = new HashMap<>();
+        int errorCode = Status.NotAuthorized;
+        String errorComment = StoreService.NOT_AUTHORIZED;
+        if (errorCodePattern != null)
+            errorCode = selectErrorCode(session, url, response, errorCodePattern);
+        if (errorCommentPattern != null)
+            errorComment = selectErrorComment(session, url, response, errorCommentPattern);
+        errorCodeComment.put(errorCode, errorComment);
+        return errorCodeComment;
+    }
+
+    private String readContent(HttpURLConnection httpConn) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
+        try (InputStream in = httpConn.getInputStream()) {
+            StreamUtils.copy(in, out);
+        }
+        return new String(out.toByteArray(), charsetOf(httpConn));
+    }
+
+    private String charsetOf(HttpURLConnection httpConn) {
+        String contentType = httpConn.getContentType().toUpperCase();
+        int index = contentType.lastIndexOf("CHARSET=");
+        return index >= 0 ? contentType.substring(index + 8) : "UTF-8";
+    }
+
+    private void discardErrorContent(HttpURLConnection httpConn) throws IOException {
+        try (InputStream in = httpConn.getErrorStream()) {
+            if (in != null) {
+                byte[] buf = new byte[512];
+                while (in.read(buf) > 0);
+            }
+        }
+    }
+}
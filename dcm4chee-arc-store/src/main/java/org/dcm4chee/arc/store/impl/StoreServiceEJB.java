@@ -42,14 +42,11 @@ package org.dcm4chee.arc.store.impl;
 
 import org.dcm4che3.data.*;
 import org.dcm4che3.net.Association;
-import org.dcm4che3.net.Status;
 import org.dcm4che3.net.service.DicomServiceException;
 import org.dcm4che3.soundex.FuzzyStr;
-import org.dcm4che3.util.AttributesFormat;
-import org.dcm4che3.util.StreamUtils;
 import org.dcm4che3.util.TagUtils;
+import org.dcm4chee.arc.AttributesCache;
 import org.dcm4chee.arc.StorePermission;
-import org.dcm4chee.arc.StorePermissionCache;
 import org.dcm4chee.arc.code.CodeCache;
 import org.dcm4chee.arc.conf.*;
 import org.dcm4chee.arc.entity.*;
@@ -66,23 +63,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.text.MessageFormat;
 
+import javax.ejb.EJBException;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.servlet.http.HttpServletRequest;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -107,13 +96,13 @@ public class StoreServiceEJB {
     private CodeCache codeCache;
 
     @Inject
-    private IssuerService issuerService;
+    private AttributesCache attributesCache;
 
     @Inject
-    private PatientService patientService;
+    private IssuerService issuerService;
 
     @Inject
-    private StorePermissionCache storePermissionCache;
+    private PatientService patientService;
 
     @Inject
     private IDService idService;
@@ -217,6 +206,23 @@ public class StoreServiceEJB {
         return result;
     }
 
+    public void updateDB(List<StoreContext> ctxs, List<UpdateDBResult> results) {
+        for (int i = 0; i < ctxs.size(); i++) {
+            StoreContext ctx = ctxs.get(i);
+            UpdateDBResult result = results.get(i);
+            try {
+                updateDB(ctx, result);
+            } catch (DicomServiceException e) {
+                // roll back the whole batch - the caller retries each object in its own transaction
+                throw new EJBException(e);
+            }
+            // resolve Patient, Study and Series of following objects of the batch from the session cache
+            Instance instance = result.getCreatedInstance();
+            if (instance != null)
+                ctx.getStoreSession().cacheSeries(instance.getSeries());
+        }
+    }
+
     private void rejectInstances(StoreContext ctx, RejectionNote rjNote, CodeEntity rejectionCode,
                                  AllowRejectionForDataRetentionPolicyExpired policy)
             throws DicomServiceException {
@@ -243,6 +249,7 @@ public class StoreServiceEJB {
                     if (rejectionState == RejectionState.COMPLETE)
                         series.setExpirationDate(null);
                     deleteSeriesQueryAttributes(series);
+                    deleteSeriesMetadata(series);
                 }
             }
             if (series != null) {
@@ -455,9 +462,19 @@ public class StoreServiceEJB {
         Series series = instance.getSeries();
         Study study = series.getStudy();
         deleteSeriesQueryAttributes(series);
+        deleteSeriesMetadata(series);
         deleteStudyQueryAttributes(study);
     }
 
+    public void deleteSeriesMetadata(Series series) {
+        for (SeriesMetadata metadata : em.createNamedQuery(SeriesMetadata.FIND_BY_SERIES, SeriesMetadata.class)
+                .setParameter(1, series)
+                .getResultList()) {
+            metadata.getLocation().setStatus(Location.Status.TO_DELETE);
+            em.remove(metadata);
+        }
+    }
+
     private int deleteStudyQueryAttributes(Study study) {
         return em.createNamedQuery(StudyQueryAttributes.DELETE_FOR_STUDY).setParameter(1, study).executeUpdate();
     }
@@ -556,7 +573,9 @@ public class StoreServiceEJB {
             else
                 issuerEntity.getIssuer().merge(issuer);
         }
-        pat.setAttributes(attrs, filter, arcDev.getFuzzyStr());
+        pat.setAttributes(attrs, filter, arcDev.getFuzzyStr(),
+                arcDev.isEncodeAttributesWithTagIndex());
+        attributesCache.invalidate(AttributesCache.Entity.Patient, pat.getPk());
         return pat;
     }
 
@@ -576,9 +595,11 @@ public class StoreServiceEJB {
 
         updateInfo.log(session, study, attrs);
         study = em.find(Study.class, study.getPk());
-        study.setAttributes(attrs, filter, arcDev.getFuzzyStr());
+        study.setAttributes(attrs, filter, arcDev.getFuzzyStr(),
+                arcDev.isEncodeAttributesWithTagIndex());
         study.setIssuerOfAccessionNumber(findOrCreateIssuer(attrs, Tag.IssuerOfAccessionNumberSequence));
         setCodes(study.getProcedureCodes(), attrs, Tag.ProcedureCodeSequence);
+        attributesCache.invalidate(AttributesCache.Entity.Study, study.getPk());
         return study;
     }
 
@@ -599,9 +620,11 @@ public class StoreServiceEJB {
         updateInfo.log(session, series, attrs);
         series = em.find(Series.class, series.getPk());
         FuzzyStr fuzzyStr = arcDev.getFuzzyStr();
-        series.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Series), fuzzyStr);
+        series.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Series), fuzzyStr,
+                arcDev.isEncodeAttributesWithTagIndex());
         series.setInstitutionCode(findOrCreateCode(attrs, Tag.InstitutionCodeSequence));
         setRequestAttributes(series, attrs, fuzzyStr);
+        attributesCache.invalidate(AttributesCache.Entity.Series, series.getPk());
         return series;
     }
 
@@ -743,135 +766,22 @@ public class StoreServiceEJB {
     }
 
     private HashMap<Integer, String> checkStorePermission(StoreContext ctx, Patient pat) {
-        StoreSession session = ctx.getStoreSession();
-        ArchiveAEExtension arcAE = session.getArchiveAEExtension();
-        String serviceURL = arcAE.storePermissionServiceURL();
-        if (serviceURL == null)
+        StorePermission storePermission = ctx.getStorePermission();
+        if (storePermission == null)
             return new HashMap<>();
 
-        Attributes attrs = ctx.getAttributes();
         if (pat != null)
-            attrs.addAll(pat.getAttributes());
-        String urlspec = new AttributesFormat(serviceURL).format(attrs);
-        StorePermission storePermission = storePermissionCache.get(urlspec);
-        if (storePermission != null) {
-            LOG.debug("{}: Use cached result of Query Store Permission Service {} - {}", session, urlspec, storePermission);
-            ctx.setExpirationDate(storePermission.expirationDate);
-            return storePermission.errorCodeComment;
-        }
-
-        LOG.info("{}: Query Store Permission Service {}", session, urlspec);
-        boolean granted = false;
-        LocalDate expirationDate = null;
-        HashMap<Integer, String> errorCodeComment = new HashMap<>();
-        try {
-            URL url = new URL(urlspec);
-            HttpURLConnection httpConn = (HttpURLConnection) url.openConnection();
-            int responseCode = httpConn.getResponseCode();
-            String responseContent = null;
-            Pattern responsePattern = arcAE.storePermissionServiceResponsePattern();
-            Pattern expirationDatePattern = arcAE.storePermissionServiceExpirationDatePattern();
-            Pattern errorCodePattern = arcAE.storePermissionServiceErrorCodePattern();
-            Pattern errorCommentPattern = arcAE.storePermissionServiceErrorCommentPattern();
-            switch (responseCode) {
-                case HttpURLConnection.HTTP_OK:
-                    responseContent = readContent(httpConn);
-                    granted = responsePattern == null || responsePattern.matcher(responseContent).find();
-                    expirationDate = granted && expirationDatePattern != null
-                                    ? selectExpirationDate(session, urlspec, responseContent, expirationDatePattern) : null;
-                    errorCodeComment = !granted
-                                       ? selectErrorCodeComment(session, urlspec, responseContent, errorCodePattern, errorCommentPattern)
-                                       : new HashMap<>();
-                    break;
-                case HttpURLConnection.HTTP_NO_CONTENT:
-                    granted = responsePattern == null;
-                    break;
-            }
-            if (!granted) {
-                if (responseContent == null || responsePattern == null)
-                    LOG.info("{}: Store Permission Service {} returns HTTP Status: {}",
-                            session, urlspec, responseCode);
-                else
-                    LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not match {}",
-                            session, urlspec, responseContent, responsePattern);
-            }
-        } catch (Exception e) {
-            LOG.warn("{}: Failed to query Store Permission Service {}:\n", session, urlspec, e);
-        }
-        storePermissionCache.put(urlspec, new StorePermission(expirationDate, errorCodeComment));
-        ctx.setExpirationDate(expirationDate);
-        return errorCodeComment;
-    }
-
-    private LocalDate selectExpirationDate(StoreSession session, String url, String response, Pattern pattern) {
-        Matcher matcher = pattern.matcher(response);
-        if (matcher.find()) {
-            String s = matcher.group(1);
-            try {
-                return LocalDate.parse(s, DateTimeFormatter.BASIC_ISO_DATE);
-            } catch (DateTimeParseException e) {
-                LOG.warn("{}: Store Permission Service {} returns invalid Expiration Date: {} - ignored",
-                        session, url, s);
-            }
-        } else {
-            LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not contains expiration date {}",
-                    session, url, response, pattern);
-        }
-        return null;
-    }
-
-    private String selectErrorComment(StoreSession session, String url, String response, Pattern pattern) {
-        Matcher matcher = pattern.matcher(response);
-        if (matcher.find())
-            return matcher.group(1);
-        else
-            LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not contain error comment {}",
-                    session, url, response, pattern);
-        return StoreService.NOT_AUTHORIZED;
-    }
-
-    private int selectErrorCode(StoreSession session, String url, String response, Pattern pattern) {
-        Matcher matcher = pattern.matcher(response);
-        if (matcher.find())
-            return Integer.parseInt(matcher.group(1), 16);
-        else
-            LOG.info("{}: Store Permission Service {} response:\n{}\ndoes not contain error code {}",
-                    session, url, response, pattern);
-        return Status.NotAuthorized;
-    }
-
-    private HashMap<Integer, String> selectErrorCodeComment(StoreSession session, String url, String response,
-                Pattern errorCodePattern, Pattern errorCommentPattern) {
-        HashMap<Integer, String> errorCodeComment = new HashMap<>();
-        int errorCode = Status.NotAuthorized;
-        String errorComment = StoreService.NOT_AUTHORIZED;
-        if (errorCodePattern != null)
-            errorCode = selectErrorCode(session, url, response, errorCodePattern);
-        if (errorCommentPattern != null)
-            errorComment = selectErrorComment(session, url, response, errorCommentPattern);
-        errorCodeComment.put(errorCode, errorComment);
-        return errorCodeComment;
-    }
-
-    private String readContent(HttpURLConnection httpConn) throws IOException {
-        ByteArrayOutputStream out = new ByteArrayOutputStream(512);
-        try (InputStream in = httpConn.getInputStream()) {
-            StreamUtils.copy(in, out);
-        }
-        return new String(out.toByteArray(), charsetOf(httpConn));
-    }
-
-    private String charsetOf(HttpURLConnection httpConn) {
-        String contentType = httpConn.getContentType().toUpperCase();
-        int index = contentType.lastIndexOf("CHARSET=");
-        return index >= 0 ? contentType.substring(index + 8) : "UTF-8";
+            ctx.getAttributes().addAll(pat.getAttributes());
+        ctx.setExpirationDate(storePermission.expirationDate);
+        return storePermission.errorCodeComment;
     }
 
     private void setStudyAttributes(StoreContext ctx, Study study) {
         ArchiveAEExtension arcAE = ctx.getStoreSession().getArchiveAEExtension();
         ArchiveDeviceExtension arcDev = arcAE.getArchiveDeviceExtension();
         Attributes attrs = ctx.getAttributes();
-        study.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Study), arcDev.getFuzzyStr());
+        study.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Study), arcDev.getFuzzyStr(),
+                arcDev.isEncodeAttributesWithTagIndex());
         study.setIssuerOfAccessionNumber(findOrCreateIssuer(attrs, Tag.IssuerOfAccessionNumberSequence));
         setCodes(study.getProcedureCodes(), attrs, Tag.ProcedureCodeSequence);
     }
@@ -928,7 +838,8 @@ public class StoreServiceEJB {
         ArchiveDeviceExtension arcDev = session.getArchiveAEExtension().getArchiveDeviceExtension();
         FuzzyStr fuzzyStr = arcDev.getFuzzyStr();
         Attributes attrs = ctx.getAttributes();
-        series.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Series), fuzzyStr);
+        series.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Series), fuzzyStr,
+                arcDev.isEncodeAttributesWithTagIndex());
         series.setInstitutionCode(findOrCreateCode(attrs, Tag.InstitutionCodeSequence));
         setRequestAttributes(series, attrs, fuzzyStr);
         series.setSourceAET(session.getCallingAET());
@@ -940,7 +851,8 @@ public class StoreServiceEJB {
         FuzzyStr fuzzyStr = arcDev.getFuzzyStr();
         Attributes attrs = ctx.getAttributes();
         Instance instance = new Instance();
-        instance.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Instance), fuzzyStr);
+        instance.setAttributes(attrs, arcDev.getAttributeFilter(Entity.Instance), fuzzyStr,
+                arcDev.isEncodeAttributesWithTagIndex());
         setVerifyingObservers(instance, attrs, fuzzyStr);
         instance.setConceptNameCode(conceptNameCode);
         setContentItems(instance, attrs);
@@ -972,6 +884,7 @@ public class StoreServiceEJB {
                 .objectType(objectType)
                 .size(writeContext.getSize())
                 .digest(writeContext.getDigest())
+                .pixelDataOffset(objectType == Location.ObjectType.DICOM_FILE ? ctx.getPixelDataOffset() : null)
                 .build();
         location.setInstance(instance);
         em.persist(location);
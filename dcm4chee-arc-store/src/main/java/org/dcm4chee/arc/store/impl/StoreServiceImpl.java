@@ -46,6 +46,7 @@ import org.dcm4che3.hl7.HL7Segment;
 import org.dcm4che3.imageio.codec.ImageDescriptor;
 import org.dcm4che3.imageio.codec.Transcoder;
 import org.dcm4che3.imageio.codec.TransferSyntaxType;
+import org.dcm4che3.io.DicomInputHandler;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.io.DicomOutputStream;
 import org.dcm4che3.io.TemplatesCache;
@@ -53,6 +54,7 @@ import org.dcm4che3.io.XSLTAttributesCoercion;
 import org.dcm4che3.json.JSONWriter;
 import org.dcm4che3.net.*;
 import org.dcm4che3.net.service.DicomServiceException;
+import org.dcm4che3.util.StreamUtils;
 import org.dcm4che3.util.StringUtils;
 import org.dcm4che3.util.UIDUtils;
 import org.dcm4chee.arc.conf.*;
@@ -63,8 +65,10 @@ import org.dcm4chee.arc.retrieve.RetrieveService;
 import org.dcm4chee.arc.storage.Storage;
 import org.dcm4chee.arc.storage.StorageException;
 import org.dcm4chee.arc.storage.StorageFactory;
+import org.dcm4chee.arc.storage.TransferTarget;
 import org.dcm4chee.arc.storage.WriteContext;
 import org.dcm4chee.arc.store.StoreContext;
+import org.dcm4chee.arc.store.StorePermissionService;
 import org.dcm4chee.arc.store.StoreService;
 import org.dcm4chee.arc.store.StoreSession;
 import org.slf4j.Logger;
@@ -78,12 +82,19 @@ import javax.json.Json;
 import javax.json.stream.JsonGenerator;
 import javax.servlet.http.HttpServletRequest;
 import javax.xml.transform.Templates;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.net.Socket;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -96,6 +107,7 @@ class StoreServiceImpl implements StoreService {
 
     static final Logger LOG = LoggerFactory.getLogger(StoreServiceImpl.class);
     static final int DIFF_STUDY_INSTANCE_UID = 0xC409;
+    static final int MAX_PASS_THROUGH_HEADER_LENGTH = 1024 * 1024;
 
     @Inject
     private StorageFactory storageFactory;
@@ -109,6 +121,12 @@ class StoreServiceImpl implements StoreService {
     @Inject
     private RetrieveService retrieveService;
 
+    @Inject
+    private StorePermissionService storePermissionService;
+
+    @Inject
+    private Device device;
+
     @Override
     public StoreSession newStoreSession(Association as) {
         return new StoreSessionImpl(null, null, as, as.getApplicationEntity(), as.getSocket(), null);
@@ -139,59 +157,330 @@ class StoreServiceImpl implements StoreService {
         UpdateDBResult result = null;
         List<File> bulkDataFiles = Collections.emptyList();
         try {
-            String receiveTranferSyntax = ctx.getReceiveTranferSyntax();
-            try (Transcoder transcoder = receiveTranferSyntax != null
-                    ? new Transcoder(data, receiveTranferSyntax)
-                    : new Transcoder(data)) {
-                ctx.setReceiveTransferSyntax(transcoder.getSourceTransferSyntax());
-                transcoder.setIncludeBulkData(DicomInputStream.IncludeBulkData.URI);
-                transcoder.setPixelDataBulkDataURI("");
-                transcoder.setConcatenateBulkDataFiles(true);
-                transcoder.setBulkDataDirectory(
-                        ctx.getStoreSession().getArchiveAEExtension().getBulkDataSpoolDirectoryFile());
-                transcoder.setIncludeFileMetaInformation(true);
-                transcoder.setDeleteBulkDataFiles(false);
-                transcoder.transcode(new TranscoderHandler(ctx));
-                bulkDataFiles = transcoder.getBulkDataFiles();
-            } catch (StorageException e) {
-                LOG.warn("{}: Failed to store received object:", ctx.getStoreSession(), e);
-                throw new DicomServiceException(Status.OutOfResources, e);
-            } catch (Exception e) {
-                LOG.warn("{}: Failed to parse received object:", ctx.getStoreSession(), e);
-                throw new DicomServiceException(Status.ProcessingFailure, e);
-            }
-            if (ctx.getAcceptedStudyInstanceUID() != null
-                    && !ctx.getAcceptedStudyInstanceUID().equals(ctx.getStudyInstanceUID())) {
-                LOG.info("{}: Received Instance[studyUID={},seriesUID={},objectUID={}]" +
-                        " does not match requested studyUID={}", ctx.getStoreSession(), ctx.getStudyInstanceUID(),
-                        ctx.getSeriesInstanceUID(), ctx.getSopInstanceUID(), ctx.getAcceptedStudyInstanceUID());
-                throw new DicomServiceException(DIFF_STUDY_INSTANCE_UID);
-            }
-            checkCharacterSet(ctx);
-            storeMetadata(ctx);
-            coerceAttributes(ctx);
+            bulkDataFiles = transcode(ctx, data);
+            prepareUpdateDB(ctx);
             result = updateDB(ctx);
             postUpdateDB(ctx, result);
-        } catch (DicomServiceException e) {
-            ctx.setException(e);
-            throw e;
         } catch (Exception e) {
-            DicomServiceException dse = new DicomServiceException(Status.ProcessingFailure, e);
-            ctx.setException(dse);
-            throw dse;
+            throw storeFailed(ctx, e);
         } finally {
-            for (File tmpFile : bulkDataFiles)
-                tmpFile.delete();
-            revokeStorage(ctx, result);
-            storeEvent.fire(ctx);
+            storeCompleted(ctx, result, bulkDataFiles);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> storeAsync(StoreContext ctx, InputStream data) throws IOException {
+        List<File> bulkDataFiles = Collections.emptyList();
+        try {
+            bulkDataFiles = transcode(ctx, data);
+            prepareUpdateDB(ctx);
+            UpdateDBQueue.Task task = new UpdateDBQueue.Task(ctx, bulkDataFiles);
+            updateDBQueue(ctx.getStoreSession()).put(task);
+            return task.future;
+        } catch (Exception e) {
+            DicomServiceException dse = storeFailed(ctx, e);
+            storeCompleted(ctx, null, bulkDataFiles);
+            throw dse;
+        }
+    }
+
+    private void updateDB(List<UpdateDBQueue.Task> batch) {
+        List<UpdateDBResult> results = batch.size() > 1 ? updateDBBatch(batch) : null;
+        for (int i = 0; i < batch.size(); i++) {
+            UpdateDBQueue.Task task = batch.get(i);
+            try {
+                updateDB(task, results != null ? results.get(i) : null);
+            } catch (Throwable e) {
+                LOG.warn("{}: Failed to complete storage of received object:\n", task.ctx.getStoreSession(), e);
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void updateDB(UpdateDBQueue.Task task, UpdateDBResult batchResult) {
+        StoreContext ctx = task.ctx;
+        UpdateDBResult result = batchResult;
+        try {
+            if (result == null)
+                result = updateDB(ctx);
+            postUpdateDB(ctx, result);
+        } catch (Exception e) {
+            storeFailed(ctx, e);
+        }
+        storeCompleted(ctx, result, task.bulkDataFiles);
+        if (ctx.getException() == null)
+            task.future.complete(null);
+        else
+            task.future.completeExceptionally(ctx.getException());
+    }
+
+    private List<UpdateDBResult> updateDBBatch(List<UpdateDBQueue.Task> batch) {
+        StoreSession session = batch.get(0).ctx.getStoreSession();
+        List<StoreContext> ctxs = new ArrayList<>(batch.size());
+        List<UpdateDBResult> results = new ArrayList<>(batch.size());
+        for (UpdateDBQueue.Task task : batch) {
+            ctxs.add(task.ctx);
+            results.add(new UpdateDBResult());
+        }
+        try {
+            for (StoreContext ctx : ctxs)
+                ctx.setStorePermission(storePermissionService.query(ctx));
+            ejb.updateDB(ctxs, results);
+            return results;
+        } catch (Exception e) {
+            LOG.info("{}: Failed to update DB for batch of {} objects - update DB for each object:\n",
+                    session, batch.size(), e);
+            // Series cached by the rolled back transaction do not exist in the DB
+            session.clearCachedSeries();
+            return null;
+        }
+    }
+
+    private List<File> transcode(StoreContext ctx, InputStream data) throws DicomServiceException {
+        return isPassThrough(ctx) ? passThrough(ctx, data) : transcodeDataset(ctx, data);
+    }
+
+    private List<File> transcodeDataset(StoreContext ctx, InputStream data) throws DicomServiceException {
+        String receiveTranferSyntax = ctx.getReceiveTranferSyntax();
+        try (Transcoder transcoder = receiveTranferSyntax != null
+                ? new Transcoder(data, receiveTranferSyntax)
+                : new Transcoder(data)) {
+            ctx.setReceiveTransferSyntax(transcoder.getSourceTransferSyntax());
+            transcoder.setIncludeBulkData(DicomInputStream.IncludeBulkData.URI);
+            transcoder.setPixelDataBulkDataURI("");
+            transcoder.setConcatenateBulkDataFiles(true);
+            transcoder.setBulkDataDirectory(
+                    ctx.getStoreSession().getArchiveAEExtension().getBulkDataSpoolDirectoryFile());
+            transcoder.setIncludeFileMetaInformation(true);
+            transcoder.setDeleteBulkDataFiles(false);
+            transcoder.transcode(new TranscoderHandler(ctx));
+            return transcoder.getBulkDataFiles();
+        } catch (StorageException e) {
+            LOG.warn("{}: Failed to store received object:", ctx.getStoreSession(), e);
+            throw new DicomServiceException(Status.OutOfResources, e);
+        } catch (Exception e) {
+            LOG.warn("{}: Failed to parse received object:", ctx.getStoreSession(), e);
+            throw new DicomServiceException(Status.ProcessingFailure, e);
+        }
+    }
+
+    private static boolean isPassThrough(StoreContext ctx) {
+        String tsuid = ctx.getReceiveTranferSyntax();
+        return tsuid != null
+                && !tsuid.equals(UID.DeflatedExplicitVRLittleEndian)
+                && !tsuid.equals(UID.JPIPReferencedDeflate)
+                && (TransferSyntaxType.forUID(tsuid) != TransferSyntaxType.NATIVE
+                    || !ctx.getStoreSession().getArchiveAEExtension().hasCompressionRules());
+    }
+
+    /**
+     * Parses only the attributes preceding the Pixel Data - or all attributes, if there is no Pixel Data - from the
+     * received data set, without reading the values of Bulk Data. The received bytes of the parsed attributes are
+     * written unchanged after the File Meta Information to the storage, followed by all remaining bytes of
+     * {@code data} - transferred directly into the file by a {@link TransferTarget} storage. If the parsed attributes
+     * exceed {@link #MAX_PASS_THROUGH_HEADER_LENGTH} bytes, the received object is stored by the {@link Transcoder}
+     * instead.
+     */
+    private List<File> passThrough(StoreContext ctx, InputStream data) throws DicomServiceException {
+        String tsuid = ctx.getReceiveTranferSyntax();
+        RecordingInputStream recording = new RecordingInputStream(data, MAX_PASS_THROUGH_HEADER_LENGTH);
+        try {
+            DicomInputStream dis = new DicomInputStream(recording, tsuid);
+            dis.setDicomInputHandler(new SkipBulkData());
+            Attributes attrs = dis.readDataset(-1, Tag.PixelData);
+            boolean pixelData = dis.tag() == Tag.PixelData;
+            ctx.setAttributes(attrs);
+            OutputStream stream = openOutputStream(ctx, Location.ObjectType.DICOM_FILE);
+            CountingOutputStream out = new CountingOutputStream(stream);
+            try (DicomOutputStream dos = new DicomOutputStream(out, UID.ExplicitVRLittleEndian)) {
+                dos.writeFileMetaInformation(attrs.createFileMetaInformation(tsuid));
+                recording.writeRecordedTo(out);
+                if (pixelData)
+                    ctx.setPixelDataOffset(out.getCount());
+                if (stream instanceof TransferTarget)
+                    ((TransferTarget) stream).transferFrom(data);
+                else
+                    StreamUtils.copy(data, out);
+            }
+            if (pixelData)
+                attrs.setValue(Tag.PixelData, dis.vr(), new BulkData(null, "", dis.bigEndian()));
+            return Collections.emptyList();
+        } catch (RecordingLimitExceededException e) {
+            LOG.debug("{}: Attributes preceding the Pixel Data exceed {} bytes - store received object by Transcoder",
+                    ctx.getStoreSession(), MAX_PASS_THROUGH_HEADER_LENGTH);
+            return transcodeDataset(ctx,
+                    new SequenceInputStream(new ByteArrayInputStream(recording.removeRecorded()), data));
+        } catch (StorageException e) {
+            LOG.warn("{}: Failed to store received object:", ctx.getStoreSession(), e);
+            throw new DicomServiceException(Status.OutOfResources, e);
+        } catch (Exception e) {
+            LOG.warn("{}: Failed to parse received object:", ctx.getStoreSession(), e);
+            throw new DicomServiceException(Status.ProcessingFailure, e);
+        }
+    }
+
+    /**
+     * Records the bytes read from the wrapped stream, until they are written by {@link #writeRecordedTo}. Throws
+     * {@link RecordingLimitExceededException} after more than {@code limit} bytes were recorded.
+     */
+    private static final class RecordingInputStream extends FilterInputStream {
+        private final int limit;
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream(8192);
+
+        RecordingInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                recorded.write(b);
+                checkLimit();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                recorded.write(b, off, read);
+                checkLimit();
+            }
+            return read;
+        }
+
+        private void checkLimit() throws RecordingLimitExceededException {
+            if (recorded.size() > limit)
+                throw new RecordingLimitExceededException();
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] b = new byte[(int) Math.min(n, 8192)];
+            return Math.max(read(b, 0, b.length), 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void writeRecordedTo(OutputStream out) throws IOException {
+            recorded.writeTo(out);
+            recorded = null;
+        }
+
+        byte[] removeRecorded() {
+            byte[] b = recorded.toByteArray();
+            recorded = null;
+            return b;
+        }
+    }
+
+    private static final class RecordingLimitExceededException extends IOException {
+    }
+
+    /**
+     * Skips the values of Bulk Data, which are referenced by an empty Bulk Data
+     * URI in the parsed attributes.
+     */
+    private static final class SkipBulkData implements DicomInputHandler {
+
+        @Override
+        public void readValue(DicomInputStream dis, Attributes attrs) throws IOException {
+            if (isBulkData(dis.vr(), dis.length())) {
+                dis.skipFully(dis.length());
+                attrs.setValue(dis.tag(), dis.vr(), new BulkData(null, "", dis.bigEndian()));
+            } else {
+                dis.readValue(dis, attrs);
+            }
+        }
+
+        @Override
+        public void readValue(DicomInputStream dis, Sequence seq) throws IOException {
+            dis.readValue(dis, seq);
+        }
+
+        @Override
+        public void readValue(DicomInputStream dis, Fragments frags) throws IOException {
+            dis.readValue(dis, frags);
+        }
+
+        @Override
+        public void startDataset(DicomInputStream dis) {
+        }
+
+        @Override
+        public void endDataset(DicomInputStream dis) {
+        }
+
+        private static boolean isBulkData(VR vr, int length) {
+            switch (vr) {
+                case OB:
+                case OD:
+                case OF:
+                case OL:
+                case OW:
+                case UN:
+                    return length > 64;
+            }
+            return false;
         }
     }
 
+    private void prepareUpdateDB(StoreContext ctx) throws Exception {
+        if (ctx.getAcceptedStudyInstanceUID() != null
+                && !ctx.getAcceptedStudyInstanceUID().equals(ctx.getStudyInstanceUID())) {
+            LOG.info("{}: Received Instance[studyUID={},seriesUID={},objectUID={}]" +
+                    " does not match requested studyUID={}", ctx.getStoreSession(), ctx.getStudyInstanceUID(),
+                    ctx.getSeriesInstanceUID(), ctx.getSopInstanceUID(), ctx.getAcceptedStudyInstanceUID());
+            throw new DicomServiceException(DIFF_STUDY_INSTANCE_UID);
+        }
+        checkCharacterSet(ctx);
+        storeMetadata(ctx);
+        coerceAttributes(ctx);
+    }
+
+    private UpdateDBQueue updateDBQueue(StoreSession session) {
+        Association as = session.getAssociation();
+        UpdateDBQueue queue = as.getProperty(UpdateDBQueue.class);
+        if (queue == null) {
+            ArchiveDeviceExtension arcDev = session.getArchiveAEExtension().getArchiveDeviceExtension();
+            Duration maxBatchLatency = arcDev.getStoreUpdateDBMaxBatchLatency();
+            queue = new UpdateDBQueue(device::execute, this::updateDB,
+                    arcDev.getStoreUpdateDBQueueSize(),
+                    arcDev.getStoreUpdateDBMaxBatchSize(),
+                    maxBatchLatency != null ? maxBatchLatency.toMillis() : 0, TimeUnit.MILLISECONDS);
+            as.setProperty(UpdateDBQueue.class, queue);
+        }
+        return queue;
+    }
+
+    private static DicomServiceException storeFailed(StoreContext ctx, Exception e) {
+        DicomServiceException dse = e instanceof DicomServiceException
+                ? (DicomServiceException) e
+                : new DicomServiceException(Status.ProcessingFailure, e);
+        ctx.setException(dse);
+        return dse;
+    }
+
+    private void storeCompleted(StoreContext ctx, UpdateDBResult result, List<File> bulkDataFiles) {
+        for (File tmpFile : bulkDataFiles)
+            tmpFile.delete();
+        revokeStorage(ctx, result);
+        storeEvent.fire(ctx);
+    }
+
     private UpdateDBResult updateDB(StoreContext ctx) throws DicomServiceException {
         StoreSession session = ctx.getStoreSession();
         ArchiveAEExtension arcAE = session.getArchiveAEExtension();
         ArchiveDeviceExtension arcDev = arcAE.getArchiveDeviceExtension();
         int retries = arcDev.getStoreUpdateDBMaxRetries();
+        // query Store Permission Service outside of the transaction
+        ctx.setStorePermission(storePermissionService.query(ctx));
         for (;;)
             try {
                 UpdateDBResult result = new UpdateDBResult();
@@ -256,16 +545,10 @@ class StoreServiceImpl implements StoreService {
             }
             result = updateDB(ctx);
             postUpdateDB(ctx, result);
-        } catch (DicomServiceException e) {
-            ctx.setException(e);
-            throw e;
         } catch (Exception e) {
-            DicomServiceException dse = new DicomServiceException(Status.ProcessingFailure, e);
-            ctx.setException(dse);
-            throw dse;
+            throw storeFailed(ctx, e);
         } finally {
-            revokeStorage(ctx, result);
-            storeEvent.fire(ctx);
+            storeCompleted(ctx, result, Collections.emptyList());
         }
     }
 
@@ -279,7 +562,7 @@ class StoreServiceImpl implements StoreService {
             Sequence refSOPSeq = result.newSequence(Tag.ReferencedSOPSequence, 10);
             Sequence failedSOPSeq = result.newSequence(Tag.FailedSOPSequence, 10);
             for (InstanceLocations il : instances) {
-                Attributes attr = il.getAttributes();
+                Attributes attr = new Attributes(il.getAttributes());
                 UIDUtils.remapUIDs(attr, uidMap);
                 StoreContext ctx = newStoreContext(session);
                 for (Location location : il.getLocations()) {
@@ -420,9 +703,9 @@ class StoreServiceImpl implements StoreService {
         Attributes modified = ctx.getCoercedAttributes();
         Study study = series.getStudy();
         Patient patient = study.getPatient();
-        Attributes seriesAttrs = series.getAttributes();
-        Attributes studyAttrs = study.getAttributes();
-        Attributes patAttrs = patient.getAttributes();
+        Attributes seriesAttrs = new Attributes(series.getAttributes());
+        Attributes studyAttrs = new Attributes(study.getAttributes());
+        Attributes patAttrs = new Attributes(patient.getAttributes());
         Attributes.unifyCharacterSets(patAttrs, studyAttrs, seriesAttrs, attrs);
         attrs.update(Attributes.UpdatePolicy.OVERWRITE, patAttrs, modified);
         attrs.update(Attributes.UpdatePolicy.OVERWRITE, studyAttrs, modified);
@@ -459,6 +742,30 @@ class StoreServiceImpl implements StoreService {
 
     }
 
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
     private OutputStream openOutputStream(StoreContext storeContext, Location.ObjectType objectType)
             throws IOException {
         StoreSession session = storeContext.getStoreSession();
@@ -54,6 +54,7 @@ import org.dcm4chee.arc.store.StoreSession;
 
 import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.Socket;
 import java.util.HashMap;
 import java.util.Map;
@@ -164,12 +165,25 @@ class StoreSessionImpl implements StoreSession {
         seriesCache.put(series.getSeriesInstanceUID(), series);
     }
 
+    @Override
+    public void clearCachedSeries() {
+        cachedStudy = null;
+        seriesCache.clear();
+    }
+
     private boolean isStudyCached(String studyInstanceUID) {
         return cachedStudy != null && cachedStudy.getStudyInstanceUID().equals(studyInstanceUID);
     }
 
     @Override
     public void close() throws IOException {
+        UpdateDBQueue updateDBQueue = as != null ? as.getProperty(UpdateDBQueue.class) : null;
+        if (updateDBQueue != null)
+            try {
+                updateDBQueue.awaitCompletion();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
         for (Storage storage : storageMap.values())
             SafeClose.close(storage);
     }
@@ -0,0 +1,196 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2013
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.store.impl;
+
+import org.dcm4chee.arc.store.StoreContext;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of DB updates of objects received over one association, which are performed sequentially by one
+ * worker of the device executor, while the association thread continues to receive further objects. Consecutive
+ * DB updates of objects of the same Series are passed to the processor in batches of configurable size.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+class UpdateDBQueue implements Runnable {
+
+    private final Executor executor;
+    private final Consumer<List<Task>> processor;
+    private final Semaphore available;
+    private final int maxBatchSize;
+    private final long maxBatchLatencyNanos;
+    private final ArrayDeque<Task> queue = new ArrayDeque<>();
+    private boolean running;
+
+    UpdateDBQueue(Executor executor, Consumer<List<Task>> processor, int capacity, int maxBatchSize,
+                  long maxBatchLatency, TimeUnit unit) {
+        this.executor = executor;
+        this.processor = processor;
+        this.available = new Semaphore(capacity);
+        this.maxBatchSize = Math.max(1, Math.min(capacity, maxBatchSize));
+        this.maxBatchLatencyNanos = unit.toNanos(maxBatchLatency);
+    }
+
+    static class Task {
+        final StoreContext ctx;
+        final List<File> bulkDataFiles;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Task(StoreContext ctx, List<File> bulkDataFiles) {
+            this.ctx = ctx;
+            this.bulkDataFiles = bulkDataFiles;
+        }
+
+        boolean isSameSeries(Task other) {
+            return Objects.equals(ctx.getSeriesInstanceUID(), other.ctx.getSeriesInstanceUID())
+                    && Objects.equals(ctx.getStudyInstanceUID(), other.ctx.getStudyInstanceUID());
+        }
+    }
+
+    /**
+     * Adds DB update to the queue, blocking while the queue is full.
+     */
+    void put(Task task) throws InterruptedException {
+        available.acquire();
+        synchronized (this) {
+            queue.add(task);
+            notifyAll();
+            if (running)
+                return;
+
+            running = true;
+        }
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                queue.remove(task);
+                running = !queue.isEmpty();
+            }
+            available.release();
+            throw e;
+        }
+    }
+
+    @Override
+    public void run() {
+        boolean drained = false;
+        try {
+            List<Task> batch;
+            while (!(batch = nextBatch()).isEmpty()) {
+                try {
+                    processor.accept(batch);
+                } catch (Throwable e) {
+                    // fail DB updates not completed by the processor, but keep the worker alive for queued tasks
+                    for (Task task : batch)
+                        task.future.completeExceptionally(e);
+                } finally {
+                    available.release(batch.size());
+                }
+            }
+            drained = true;
+        } finally {
+            if (!drained)
+                terminated();
+        }
+    }
+
+    private synchronized void terminated() {
+        for (Task task; (task = queue.poll()) != null;) {
+            task.future.completeExceptionally(new IllegalStateException("Update DB worker terminated"));
+            available.release();
+        }
+        running = false;
+        notifyAll();
+    }
+
+    private synchronized List<Task> nextBatch() {
+        Task first = queue.poll();
+        if (first == null) {
+            running = false;
+            notifyAll();
+            return Collections.emptyList();
+        }
+        List<Task> batch = new ArrayList<>(maxBatchSize);
+        batch.add(first);
+        long deadline = System.nanoTime() + maxBatchLatencyNanos;
+        while (batch.size() < maxBatchSize) {
+            Task next = queue.peek();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    break;
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            } else if (first.isSameSeries(next)) {
+                batch.add(queue.poll());
+            } else {
+                break;
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * Waits until all queued DB updates are performed.
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+        while (running)
+            wait();
+    }
+}
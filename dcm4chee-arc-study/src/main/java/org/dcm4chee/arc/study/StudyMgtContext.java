@@ -61,6 +61,8 @@ public interface StudyMgtContext {
 
     FuzzyStr getFuzzyStr();
 
+    boolean isEncodeAttributesWithTagIndex();
+
     HttpServletRequest getHttpRequest();
 
     ApplicationEntity getApplicationEntity();
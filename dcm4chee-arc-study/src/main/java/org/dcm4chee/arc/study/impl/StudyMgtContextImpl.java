@@ -64,6 +64,7 @@ import java.time.LocalDate;
 public class StudyMgtContextImpl implements StudyMgtContext {
     private final AttributeFilter studyAttributeFilter;
     private final FuzzyStr fuzzyStr;
+    private final boolean encodeAttributesWithTagIndex;
     private final HttpServletRequest httpRequest;
     private final ArchiveAEExtension arcAE;
     private Study study;
@@ -80,6 +81,7 @@ public class StudyMgtContextImpl implements StudyMgtContext {
         this.arcAE = ae.getAEExtension(ArchiveAEExtension.class);
         this.studyAttributeFilter = arcDev.getAttributeFilter(Entity.Study);
         this.fuzzyStr = arcDev.getFuzzyStr();
+        this.encodeAttributesWithTagIndex = arcDev.isEncodeAttributesWithTagIndex();
         this.httpRequest = httpRequest;
     }
 
@@ -92,6 +94,11 @@ public class StudyMgtContextImpl implements StudyMgtContext {
         return fuzzyStr;
     }
 
+    @Override
+    public boolean isEncodeAttributesWithTagIndex() {
+        return encodeAttributesWithTagIndex;
+    }
+
     @Override
     public HttpServletRequest getHttpRequest() {
         return httpRequest;
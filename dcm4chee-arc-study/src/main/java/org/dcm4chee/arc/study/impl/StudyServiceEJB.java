@@ -93,7 +93,8 @@ public class StudyServiceEJB {
                 throw new PatientMismatchException("" + ctx.getPatient() + " does not match " +
                         study.getPatient() + " in existing " + study);
 
-            study.setAttributes(attrs, filter, ctx.getFuzzyStr());
+            study.setAttributes(attrs, filter, ctx.getFuzzyStr(),
+                ctx.isEncodeAttributesWithTagIndex());
             study.setIssuerOfAccessionNumber(
                     findOrCreateIssuer(attrs.getNestedDataset(Tag.IssuerOfAccessionNumberSequence)));
             setCodes(study.getProcedureCodes(), attrs.getSequence(Tag.ProcedureCodeSequence));
@@ -103,7 +104,8 @@ public class StudyServiceEJB {
             study.addStorageID(arcAE.storageID());
             study.setRejectionState(RejectionState.EMPTY);
             study.setAccessControlID(arcAE.getStoreAccessControlID());
-            study.setAttributes(attrs, filter, ctx.getFuzzyStr());
+            study.setAttributes(attrs, filter, ctx.getFuzzyStr(),
+                ctx.isEncodeAttributesWithTagIndex());
             study.setIssuerOfAccessionNumber(
                     findOrCreateIssuer(attrs.getNestedDataset(Tag.IssuerOfAccessionNumberSequence)));
             setCodes(study.getProcedureCodes(), attrs.getSequence(Tag.ProcedureCodeSequence));
@@ -52,6 +52,7 @@ import org.dcm4chee.arc.retrieve.RetrieveService;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -70,6 +71,7 @@ public class CompressedFramesOutput implements StreamingOutput, Closeable {
     private final Path spoolDirectory;
     private int frame = 1;
     private int frameListIndex;
+    private boolean frameIndexed;
 
     public CompressedFramesOutput(RetrieveContext ctx, InstanceLocations inst, int[] frameList, Path spoolDirectory) {
         this.ctx = ctx;
@@ -82,8 +84,17 @@ public class CompressedFramesOutput implements StreamingOutput, Closeable {
     @Override
     public void write(OutputStream out) throws IOException {
         try {
-            if (frameListIndex == 0)
+            if (frameListIndex == 0) {
+                frameIndexed = copyIndexedFrame(out);
+                if (frameIndexed)
+                    return;
+
                 initDicomInputStream();
+            } else if (frameIndexed) {
+                if (!copyIndexedFrame(out))
+                    throw new IOException("Failed to access indexed frame of requested object");
+                return;
+            }
 
             if (dis == null) {
                 Files.copy(spoolFiles[frameListIndex++], out);
@@ -108,6 +119,18 @@ public class CompressedFramesOutput implements StreamingOutput, Closeable {
         }
     }
 
+    private boolean copyIndexedFrame(OutputStream out) throws IOException {
+        RetrieveService service = ctx.getRetrieveService();
+        try (InputStream in = service.openCompressedFrameInputStream(ctx, inst, frameList[frameListIndex])) {
+            if (in == null)
+                return false;
+
+            StreamUtils.copy(in, out);
+        }
+        frameListIndex++;
+        return true;
+    }
+
     private void skipFrame() throws IOException {
         if (!dis.readItemHeader())
             throw new IOException(
@@ -40,6 +40,7 @@
 
 package org.dcm4chee.arc.wado;
 
+import org.dcm4chee.arc.FrameCache;
 import org.dcm4chee.arc.retrieve.InstanceLocations;
 import org.dcm4chee.arc.retrieve.RetrieveContext;
 
@@ -61,8 +62,9 @@ public class DecompressFramesOutput extends DecompressSupport implements Streami
     private int frame = 1;
     private int frameListIndex;
 
-    public DecompressFramesOutput(RetrieveContext ctx, InstanceLocations inst, int[] frameList, Path spoolDirectory) {
-        super(ctx, inst);
+    public DecompressFramesOutput(RetrieveContext ctx, InstanceLocations inst, int[] frameList, Path spoolDirectory,
+                                  FrameCache frameCache) {
+        super(ctx, inst, frameCache);
         this.frameList = frameList;
         this.spoolDirectory = spoolDirectory;
         this.spoolFiles = spoolDirectory != null ? new Path[this.frameList.length] : null;
@@ -71,22 +73,29 @@ public class DecompressFramesOutput extends DecompressSupport implements Streami
     @Override
     public void write(OutputStream out) throws IOException {
         try {
-            if (frameListIndex == 0)
-                initEncapsulatedPixelData();
-
-            if (encapsulatedPixelData == null) {
+            if (spoolFiles != null && spoolFiles[frameListIndex] != null) {
                 Files.copy(spoolFiles[frameListIndex++], out);
                 return;
             }
             int nextFrame = frameList[frameListIndex++];
-            while (frame < nextFrame) {
-                skipFrame();
+            byte[] cachedFrame = getCachedFrame(nextFrame);
+            if (cachedFrame != null) {
+                out.write(cachedFrame);
+            } else {
+                if (encapsulatedPixelData == null || frame > nextFrame) {
+                    close();
+                    initEncapsulatedPixelData();
+                    frame = 1;
+                }
+                while (frame < nextFrame) {
+                    skipFrame();
+                    frame++;
+                }
+
+                decompressFrame(frame);
+                writeFrameTo(out, frame);
                 frame++;
             }
-
-            decompressFrame(frame);
-            writeFrameTo(out);
-            frame++;
             if (allFramesRead())
                 close();
         } catch (IOException e) {
@@ -101,7 +110,7 @@ public class DecompressFramesOutput extends DecompressSupport implements Streami
                 spoolFiles[i] = Files.createTempFile(spoolDirectory, null, null);
                 try (OutputStream out = Files.newOutputStream(spoolFiles[i])) {
                     decompressFrame(frame);
-                    writeFrameTo(out);
+                    writeFrameTo(out, frame);
                 }
                 return;
             }
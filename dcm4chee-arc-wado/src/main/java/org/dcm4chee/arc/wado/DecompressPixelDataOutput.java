@@ -40,6 +40,8 @@
 
 package org.dcm4chee.arc.wado;
 
+import org.dcm4che3.data.Tag;
+import org.dcm4chee.arc.FrameCache;
 import org.dcm4chee.arc.retrieve.InstanceLocations;
 import org.dcm4chee.arc.retrieve.RetrieveContext;
 
@@ -53,18 +55,30 @@ import java.io.OutputStream;
  */
 public class DecompressPixelDataOutput extends DecompressSupport implements StreamingOutput {
 
-    public DecompressPixelDataOutput(RetrieveContext ctx, InstanceLocations inst) {
-        super(ctx, inst);
+    public DecompressPixelDataOutput(RetrieveContext ctx, InstanceLocations inst, FrameCache frameCache) {
+        super(ctx, inst, frameCache);
     }
 
     @Override
     public void write(OutputStream out) throws IOException {
         try {
-            initEncapsulatedPixelData();
-            int frame = 1;
-            while (!encapsulatedPixelData.isEndOfStream()) {
-                decompressFrame(frame++);
-                writeFrameTo(out);
+            int numFrames = inst.getAttributes().getInt(Tag.NumberOfFrames, 1);
+            int skipFrames = 0;
+            for (int frame = 1; frame <= numFrames; frame++) {
+                byte[] cachedFrame = getCachedFrame(frame);
+                if (cachedFrame != null) {
+                    out.write(cachedFrame);
+                    skipFrames++;
+                    continue;
+                }
+                if (encapsulatedPixelData == null)
+                    initEncapsulatedPixelData();
+                for (; skipFrames > 0; skipFrames--)
+                    if (!encapsulatedPixelData.seekNextFrame())
+                        throw new IOException(
+                                "Number of data fragments not sufficient for number of frames in requested object");
+                decompressFrame(frame);
+                writeFrameTo(out, frame);
             }
         } finally {
             close();
@@ -42,6 +42,7 @@ package org.dcm4chee.arc.wado;
 
 import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
+import org.dcm4che3.data.UID;
 import org.dcm4che3.imageio.codec.ImageDescriptor;
 import org.dcm4che3.imageio.codec.ImageReaderFactory;
 import org.dcm4che3.imageio.codec.TransferSyntaxType;
@@ -49,6 +50,7 @@ import org.dcm4che3.imageio.codec.jpeg.PatchJPEGLSImageInputStream;
 import org.dcm4che3.imageio.stream.EncapsulatedPixelDataImageInputStream;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.util.SafeClose;
+import org.dcm4chee.arc.FrameCache;
 import org.dcm4chee.arc.retrieve.InstanceLocations;
 import org.dcm4chee.arc.retrieve.RetrieveContext;
 import org.dcm4chee.arc.retrieve.RetrieveService;
@@ -61,6 +63,7 @@ import java.awt.*;
 import java.awt.color.ColorSpace;
 import java.awt.image.*;
 import java.io.Closeable;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -73,7 +76,8 @@ class DecompressSupport implements Closeable {
     private static final Logger LOG = LoggerFactory.getLogger(DecompressSupport.class);
 
     private final RetrieveContext ctx;
-    private final InstanceLocations inst;
+    protected final InstanceLocations inst;
+    private final FrameCache frameCache;
     private ImageReaderFactory.ImageReaderParam decompressorParam;
     private ImageReader decompressor;
     private ImageReadParam decompressParam;
@@ -81,9 +85,10 @@ class DecompressSupport implements Closeable {
     private DicomInputStream dis;
     protected EncapsulatedPixelDataImageInputStream encapsulatedPixelData;
 
-    DecompressSupport(RetrieveContext ctx, InstanceLocations inst) {
+    DecompressSupport(RetrieveContext ctx, InstanceLocations inst, FrameCache frameCache) {
         this.ctx = ctx;
         this.inst = inst;
+        this.frameCache = frameCache;
     }
 
     protected void initEncapsulatedPixelData() throws IOException {
@@ -172,6 +177,45 @@ class DecompressSupport implements Closeable {
         return bi;
     }
 
+    protected byte[] getCachedFrame(int frame) {
+        return frameCache.getFrame(inst.getSopInstanceUID(), frame, UID.ExplicitVRLittleEndian, inst.getUpdatedTime());
+    }
+
+    /**
+     * Writes the decompressed frame to {@code out}, copying it into a buffer of the size of the frame for the frame
+     * cache while it is written, if the frame cache is enabled and the frame does not exceed its maximal size.
+     */
+    protected void writeFrameTo(OutputStream out, int frame) throws IOException {
+        int frameLength = frameCache.isEnabled() ? frameLength() : -1;
+        if (frameLength <= 0 || frameLength > frameCache.getMaxWeight()) {
+            writeFrameTo(out);
+            return;
+        }
+        CopyOutputStream copy = new CopyOutputStream(out, new byte[frameLength]);
+        writeFrameTo(copy);
+        if (copy.isComplete())
+            frameCache.putFrame(inst.getSopInstanceUID(), frame, UID.ExplicitVRLittleEndian, inst.getUpdatedTime(),
+                    copy.data);
+    }
+
+    private int frameLength() {
+        WritableRaster raster = bi.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        int pixels = sm.getWidth() * sm.getHeight();
+        switch (db.getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+                return pixels * ((ComponentSampleModel) sm).getPixelStride() * db.getNumBanks();
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_SHORT:
+                return pixels * 2;
+            case DataBuffer.TYPE_INT:
+                return pixels * 3;
+            default:
+                return -1;
+        }
+    }
+
     protected void writeFrameTo(OutputStream out) throws IOException {
         WritableRaster raster = bi.getRaster();
         SampleModel sm = raster.getSampleModel();
@@ -250,4 +294,38 @@ class DecompressSupport implements Closeable {
             out.write(b);
         }
     }
+
+    private static final class CopyOutputStream extends FilterOutputStream {
+        final byte[] data;
+        private int length;
+
+        CopyOutputStream(OutputStream out, byte[] data) {
+            super(out);
+            this.data = data;
+        }
+
+        boolean isComplete() {
+            return length == data.length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (length >= 0 && length < data.length)
+                data[length++] = (byte) b;
+            else
+                length = -1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (length >= 0 && length + len <= data.length) {
+                System.arraycopy(b, off, data, length, len);
+                length += len;
+            } else {
+                length = -1;
+            }
+        }
+    }
 }
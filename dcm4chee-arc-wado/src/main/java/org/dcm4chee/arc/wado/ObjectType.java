@@ -40,8 +40,6 @@
 
 package org.dcm4chee.arc.wado;
 
-import org.dcm4che3.data.Attributes;
-import org.dcm4che3.data.Tag;
 import org.dcm4che3.data.UID;
 import org.dcm4che3.ws.rs.MediaTypes;
 import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
@@ -155,15 +153,15 @@ enum ObjectType {
     public static ObjectType objectTypeOf(InstanceLocations inst, String frameNumber) {
         String cuid = inst.getSopClassUID();
         String tsuid = inst.getLocations().get(0).getTransferSyntaxUID();
-        Attributes attrs = inst.getAttributes();
         if (cuid.equals(UID.EncapsulatedPDFStorage))
             return EncapsulatedPDF;
         if (cuid.equals(UID.EncapsulatedCDAStorage))
             return EncapsulatedCDA;
-        if (!attrs.contains(Tag.BitsAllocated) || cuid.equals(UID.RTDoseStorage))
+        int numberOfFrames = inst.getNumberOfFrames();
+        if (numberOfFrames == 0 || cuid.equals(UID.RTDoseStorage))
             return Other;
 
-        boolean multiframe = frameNumber == null && attrs.getInt(Tag.NumberOfFrames, 1) > 1;
+        boolean multiframe = frameNumber == null && numberOfFrames > 1;
         switch (tsuid) {
             case UID.MPEG2:
             case UID.MPEG2MainProfileHighLevel:
@@ -0,0 +1,289 @@
+/*
+ * *** BEGIN LICENSE BLOCK *****
+ * Version: MPL 1.1/GPL 2.0/LGPL 2.1
+ *
+ * The contents of this file are subject to the Mozilla Public License Version
+ * 1.1 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ * http://www.mozilla.org/MPL/
+ *
+ * Software distributed under the License is distributed on an "AS IS" basis,
+ * WITHOUT WARRANTY OF ANY KIND, either express or implied. See the License
+ * for the specific language governing rights and limitations under the
+ * License.
+ *
+ * The Original Code is part of dcm4che, an implementation of DICOM(TM) in
+ * Java(TM), hosted at https://github.com/gunterze/dcm4che.
+ *
+ * The Initial Developer of the Original Code is
+ * J4Care.
+ * Portions created by the Initial Developer are Copyright (C) 2015
+ * the Initial Developer. All Rights Reserved.
+ *
+ * Contributor(s):
+ * See @authors listed below
+ *
+ * Alternatively, the contents of this file may be used under the terms of
+ * either the GNU General Public License Version 2 or later (the "GPL"), or
+ * the GNU Lesser General Public License Version 2.1 or later (the "LGPL"),
+ * in which case the provisions of the GPL or the LGPL are applicable instead
+ * of those above. If you wish to allow use of your version of this file only
+ * under the terms of either the GPL or the LGPL, and not to allow others to
+ * use your version of this file under the terms of the MPL, indicate your
+ * decision by deleting the provisions above and replace them with the notice
+ * and other provisions required by the GPL or the LGPL. If you do not delete
+ * the provisions above, a recipient may use your version of this file under
+ * the terms of any one of the MPL, the GPL or the LGPL.
+ *
+ * *** END LICENSE BLOCK *****
+ */
+
+package org.dcm4chee.arc.wado;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Reads ahead parts of a multipart response in parallel into memory, while the current part is written.
+ * <p>
+ * At most {@code depth} parts following the current part are read ahead, as long as the sum of their estimated
+ * sizes does not exceed {@code maxBufferSize}. Parts which are not read ahead are written directly by the wrapped
+ * {@link StreamingOutput}. A part with an unknown estimated size ({@code <= 0}) is never read ahead, and no parts
+ * after it are read ahead until it is written. The size of a part is not estimated before the part is considered
+ * for reading ahead.
+ * <p>
+ * If a part read ahead exceeds its estimated size, the thread reading it waits until the part is written, writes the
+ * bytes read so far and then continues to write the part directly. If reading ahead a part fails, writing the part
+ * fails, because the wrapped {@link StreamingOutput} was already (partially) consumed and cannot be written again.
+ *
+ * @author agent <agent@local>
+ * @since Oct 2026
+ */
+class ReadAhead implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReadAhead.class);
+
+    private final Executor executor;
+    private final int depth;
+    private final long maxBufferSize;
+    private final ArrayList<Part> parts = new ArrayList<>();
+    private long bufferSize;
+    private int next;
+    private boolean closed;
+
+    ReadAhead(Executor executor, int depth, long maxBufferSize) {
+        this.executor = executor;
+        this.depth = depth;
+        this.maxBufferSize = maxBufferSize;
+    }
+
+    StreamingOutput part(StreamingOutput output, LongSupplier sizeEstimator) {
+        Part part = new Part(parts.size(), output, sizeEstimator);
+        parts.add(part);
+        return part;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Part part : parts)
+            if (part.task != null)
+                part.task.cancel(true);
+    }
+
+    private synchronized ReadTask startWrite(Part part) {
+        next = part.index + 1;
+        readAhead();
+        return part.task;
+    }
+
+    private synchronized void release(Part part) {
+        bufferSize -= part.estimatedSize;
+        part.task = null;
+    }
+
+    private void readAhead() {
+        if (closed)
+            return;
+
+        for (int i = next, end = Math.min(parts.size(), next + depth); i < end; i++) {
+            Part part = parts.get(i);
+            if (part.task != null)
+                continue;
+
+            long estimatedSize = part.estimateSize();
+            if (estimatedSize <= 0 || estimatedSize > Integer.MAX_VALUE
+                    || bufferSize + estimatedSize > maxBufferSize)
+                return;
+
+            ReadTask task = new ReadTask(part);
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Failed to read ahead part #{} - write it directly:\n", part.index + 1, e);
+                return;
+            }
+            bufferSize += estimatedSize;
+            part.task = task;
+        }
+    }
+
+    private static final class ReadTask extends FutureTask<byte[]> {
+        final Part part;
+
+        ReadTask(Part part) {
+            super(part::read);
+            this.part = part;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (part) {
+                part.notifyAll();
+            }
+        }
+    }
+
+    private final class Part implements StreamingOutput {
+        final int index;
+        final StreamingOutput output;
+        LongSupplier sizeEstimator;
+        long estimatedSize;
+        ReadTask task;
+        ByteArrayOutputStream exceeded;
+        OutputStream out;
+
+        Part(int index, StreamingOutput output, LongSupplier sizeEstimator) {
+            this.index = index;
+            this.output = output;
+            this.sizeEstimator = sizeEstimator;
+        }
+
+        long estimateSize() {
+            if (sizeEstimator != null) {
+                estimatedSize = sizeEstimator.getAsLong();
+                sizeEstimator = null;
+            }
+            return estimatedSize;
+        }
+
+        byte[] read() throws IOException {
+            PartBuffer buffer = new PartBuffer(this);
+            output.write(buffer);
+            return buffer.out == null ? buffer.buffer.toByteArray() : null;
+        }
+
+        /**
+         * Invoked by the thread reading ahead the part, if the part exceeds its estimated size. Waits until the part
+         * is written and returns the output stream to continue writing the part directly.
+         */
+        synchronized OutputStream awaitOutputStream(ByteArrayOutputStream buffer) throws IOException {
+            exceeded = buffer;
+            notifyAll();
+            try {
+                while (out == null)
+                    wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            return out;
+        }
+
+        private synchronized ByteArrayOutputStream awaitReadOrExceeded(ReadTask task) throws InterruptedException {
+            while (exceeded == null && !task.isDone())
+                wait();
+            return exceeded;
+        }
+
+        private synchronized void handOver(OutputStream out) {
+            this.out = out;
+            notifyAll();
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            ReadTask task = startWrite(this);
+            if (task == null) {
+                output.write(out);
+                return;
+            }
+            try {
+                ByteArrayOutputStream exceeded = awaitReadOrExceeded(task);
+                if (exceeded != null) {
+                    LOG.debug("Part #{} exceeds estimated size of {} bytes - write it directly", index + 1,
+                            estimatedSize);
+                    exceeded.writeTo(out);
+                    handOver(out);
+                }
+                byte[] buffer = task.get();
+                if (buffer != null)
+                    out.write(buffer);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (CancellationException e) {
+                throw new IOException("Read ahead of part #" + (index + 1) + " cancelled");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } finally {
+                task.cancel(true);
+                release(this);
+            }
+        }
+    }
+
+    /**
+     * Buffers the part read ahead up to its estimated size; further bytes are written directly, after the bytes
+     * already buffered.
+     */
+    private static final class PartBuffer extends OutputStream {
+        final Part part;
+        final ByteArrayOutputStream buffer;
+        long remaining;
+        OutputStream out;
+
+        PartBuffer(Part part) {
+            this.part = part;
+            this.buffer = new ByteArrayOutputStream((int) part.estimatedSize);
+            this.remaining = part.estimatedSize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target(1).write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target(len).write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (out != null)
+                out.flush();
+        }
+
+        private OutputStream target(int len) throws IOException {
+            if (out == null && (remaining -= len) < 0)
+                out = part.awaitOutputStream(buffer);
+            return out != null ? out : buffer;
+        }
+    }
+}
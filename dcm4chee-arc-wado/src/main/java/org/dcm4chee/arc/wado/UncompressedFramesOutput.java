@@ -40,11 +40,14 @@
 
 package org.dcm4chee.arc.wado;
 
+import org.dcm4che3.data.Attributes;
 import org.dcm4che3.data.Tag;
 import org.dcm4che3.imageio.codec.ImageDescriptor;
 import org.dcm4che3.io.DicomInputStream;
 import org.dcm4che3.util.SafeClose;
 import org.dcm4che3.util.StreamUtils;
+import org.dcm4chee.arc.entity.Instance;
+import org.dcm4chee.arc.entity.Location;
 import org.dcm4chee.arc.retrieve.InstanceLocations;
 import org.dcm4chee.arc.retrieve.RetrieveContext;
 import org.dcm4chee.arc.retrieve.RetrieveService;
@@ -52,9 +55,8 @@ import org.dcm4chee.arc.retrieve.RetrieveService;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -66,38 +68,29 @@ public class UncompressedFramesOutput implements StreamingOutput, Closeable {
     private final InstanceLocations inst;
     private DicomInputStream dis;
     private final int[] frameList;
-    private final Path[] spoolFiles;
-    private final Path spoolDirectory;
     private int frame = 1;
     private int frameListIndex;
     private int frameLength;
+    private boolean pixelDataOffsetRecorded;
 
-    public UncompressedFramesOutput(RetrieveContext ctx, InstanceLocations inst, int[] frameList, Path spoolDirectory) {
+    public UncompressedFramesOutput(RetrieveContext ctx, InstanceLocations inst, int[] frameList) {
         this.ctx = ctx;
         this.inst = inst;
         this.frameList = frameList;
-        this.spoolDirectory = spoolDirectory;
-        this.spoolFiles = spoolDirectory != null ? new Path[frameList.length] : null;
     }
 
     @Override
     public void write(OutputStream out) throws IOException {
         try {
             if (frameListIndex == 0)
-                initDicomInputStream();
+                init();
 
-            if (dis == null) {
-                Files.copy(spoolFiles[frameListIndex++], out);
-                return;
-            }
             int nextFrame =  frameList[frameListIndex++];
-            while (frame < nextFrame) {
-                skipFrame();
-                frame++;
-            }
-            StreamUtils.copy(dis, out, frameLength);
-            frame++;
-            if (allFramesRead())
+            if (pixelDataOffsetRecorded)
+                copyFrame(nextFrame, out);
+            else
+                readFrame(nextFrame, out);
+            if (frameListIndex == frameList.length)
                 close();
         } catch (IOException e) {
             close();
@@ -105,25 +98,48 @@ public class UncompressedFramesOutput implements StreamingOutput, Closeable {
         }
     }
 
-    private void skipFrame() throws IOException {
-        for (int i = frameListIndex; i < frameList.length; i++) {
-            if (frame == frameList[i]) {
-                spoolFiles[i] = Files.createTempFile(spoolDirectory, null, null);
-                try (OutputStream o = Files.newOutputStream(spoolFiles[i])) {
-                    StreamUtils.copy(dis, o, frameLength);
+    private void copyFrame(int nextFrame, OutputStream out) throws IOException {
+        RetrieveService service = ctx.getRetrieveService();
+        long frameOffset = (long) (nextFrame - 1) * frameLength;
+        try (InputStream in = service.openPixelDataInputStream(ctx, inst, frameOffset, frameLength)) {
+            StreamUtils.copy(in, out, frameLength);
+        }
+    }
+
+    /**
+     * Reads the frame sequentially from the DICOM object, re-opened if the frame precedes the current position,
+     * because the offset of the pixel data is only known for the location from which the object was opened.
+     */
+    private void readFrame(int nextFrame, OutputStream out) throws IOException {
+        if (dis == null || frame > nextFrame) {
+            close();
+            initDicomInputStream();
+        }
+        dis.skipFully((long) (nextFrame - frame) * frameLength);
+        StreamUtils.copy(dis, out, frameLength);
+        frame = nextFrame + 1;
+    }
+
+    private void init() throws IOException {
+        frameLength = frameLength(inst);
+        if (frameLength > 0) {
+            for (Location location : inst.getLocations()) {
+                if (location.getNativePixelDataOffset() != null) {
+                    pixelDataOffsetRecorded = true;
+                    return;
                 }
-                return;
             }
         }
-        dis.skipFully(frameLength);
+        initDicomInputStream();
     }
 
-    private boolean allFramesRead() {
-        for (int i = frameListIndex; i < frameList.length; i++) {
-            if (frame <= frameList[i])
-                return false;
-        }
-        return true;
+    /**
+     * Returns the length of an uncompressed frame of the instance calculated from its Image Pixel Description
+     * attributes stored in the database, or -1 if they are not stored.
+     */
+    static int frameLength(InstanceLocations inst) {
+        Attributes attrs = inst.getAttributes();
+        return Instance.containsImagePixelDescription(attrs) ? new ImageDescriptor(attrs).getFrameLength() : -1;
     }
 
     private void initDicomInputStream() throws IOException {
@@ -133,6 +149,7 @@ public class UncompressedFramesOutput implements StreamingOutput, Closeable {
         if (dis.tag() != Tag.PixelData) {
             throw new IOException("Missing pixel data in requested object");
         }
+        frame = 1;
     }
 
     @Override
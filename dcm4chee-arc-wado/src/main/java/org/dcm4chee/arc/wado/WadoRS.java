@@ -42,13 +42,21 @@ package org.dcm4chee.arc.wado;
 
 import org.dcm4che3.data.*;
 import org.dcm4che3.io.*;
+import org.dcm4che3.json.JSONReader;
 import org.dcm4che3.json.JSONWriter;
 import org.dcm4che3.net.ApplicationEntity;
 import org.dcm4che3.net.Device;
+import org.dcm4che3.net.Dimse;
+import org.dcm4che3.net.TransferCapability;
 import org.dcm4che3.util.SafeClose;
 import org.dcm4che3.util.StringUtils;
 import org.dcm4che3.ws.rs.MediaTypes;
+import org.dcm4chee.arc.FrameCache;
+import org.dcm4chee.arc.MetadataCache;
 import org.dcm4chee.arc.conf.ArchiveDeviceExtension;
+import org.dcm4chee.arc.conf.BinaryPrefix;
+import org.dcm4chee.arc.entity.Instance;
+import org.dcm4chee.arc.entity.Location;
 import org.dcm4chee.arc.retrieve.*;
 import org.dcm4chee.arc.validation.constraints.ValidValueOf;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartRelatedOutput;
@@ -62,6 +70,7 @@ import javax.enterprise.event.Event;
 import javax.inject.Inject;
 import javax.json.Json;
 import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonParser;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.container.AsyncResponse;
@@ -69,12 +78,16 @@ import javax.ws.rs.container.CompletionCallback;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
 import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * @author Gunter Zeilinger <gunterze@gmail.com>
@@ -86,6 +99,7 @@ public class WadoRS {
 
     private static final Logger LOG = LoggerFactory.getLogger(WadoRS.class);
     private static final String JBOSS_SERVER_TEMP = "${jboss.server.temp}";
+    private static final long DEFAULT_PREFETCH_MAX_BUFFER_SIZE = 64L * 1024 * 1024;
 
     @Inject
     private RetrieveService service;
@@ -105,6 +119,12 @@ public class WadoRS {
     @Inject
     private Device device;
 
+    @Inject
+    private FrameCache frameCache;
+
+    @Inject
+    private MetadataCache metadataCache;
+
     @Inject @RetrieveStart
     private Event<RetrieveContext> retrieveStart;
 
@@ -121,6 +141,8 @@ public class WadoRS {
     private UncompressedFramesOutput uncompressedFramesOutput;
     private CompressedFramesOutput compressedFramesOutput;
     private DecompressFramesOutput decompressFramesOutput;
+    private ReadAhead readAhead;
+    private final Map<String, MetadataBundle> metadataBundles = new HashMap<>();
     private Response.Status responseStatus;
     private java.nio.file.Path spoolDirectory;
 
@@ -345,7 +367,8 @@ public class WadoRS {
                 throw new WebApplicationException(
                         notAccepted.isEmpty() ? Response.Status.NOT_FOUND : Response.Status.NOT_ACCEPTABLE);
             Date d = service.getLastModified(ctx);
-            if (evaluatePreConditions(d)) {
+            EntityTag etag = entityTag(d, ctx.getMatches().size());
+            if (req.evaluatePreconditions(d, etag) == null) {
                 retrieveStart.fire(ctx);
                 ar.register(new CompletionCallback() {
                     @Override
@@ -354,14 +377,19 @@ public class WadoRS {
                         SafeClose.close(uncompressedFramesOutput);
                         SafeClose.close(compressedFramesOutput);
                         SafeClose.close(decompressFramesOutput);
+                        SafeClose.close(readAhead);
                         purgeSpoolDirectory();
+                        if (throwable == null)
+                            storeMetadataBundles(ctx);
                         ctx.setException(throwable);
                         retrieveEnd.fire(ctx);
                     }
                 });
                 responseStatus = notAccepted.isEmpty() ? Response.Status.OK : Response.Status.PARTIAL_CONTENT;
+                if (ctx.getMatches().size() > 1)
+                    readAhead = createReadAhead();
                 Object entity = output.entity(this, ctx, frameList, attributePath);
-                ar.resume(Response.status(responseStatus).lastModified(d).tag(String.valueOf(d.hashCode())).entity(entity).build());
+                ar.resume(Response.status(responseStatus).lastModified(d).tag(etag).entity(entity).build());
             } else {
                 ar.resume(Response.status(Response.Status.NOT_MODIFIED).build());
             }
@@ -370,8 +398,87 @@ public class WadoRS {
         }
     }
 
-    private boolean evaluatePreConditions(Date lastModified) {
-        return req.evaluatePreconditions(lastModified, new EntityTag(String.valueOf(lastModified.hashCode()))) == null;
+    private ReadAhead createReadAhead() {
+        ArchiveDeviceExtension arcDev = device.getDeviceExtension(ArchiveDeviceExtension.class);
+        int depth = arcDev.getWadoPrefetchDepth();
+        if (depth <= 0)
+            return null;
+
+        String maxBufferSize = arcDev.getWadoPrefetchMaxBufferSize();
+        return new ReadAhead(device.getExecutor(), depth,
+                maxBufferSize != null ? BinaryPrefix.parse(maxBufferSize) : DEFAULT_PREFETCH_MAX_BUFFER_SIZE);
+    }
+
+    private StreamingOutput readAhead(StreamingOutput entity, InstanceLocations inst) {
+        if (readAhead == null)
+            return entity;
+
+        return readAhead.part(entity, entity instanceof DecompressPixelDataOutput
+                ? () -> decompressedSize(inst)
+                : () -> storedSize(inst));
+    }
+
+    /**
+     * Estimates the size of the decompressed pixel data from the Image Pixel Description attributes stored in the
+     * database. Returns -1, so the pixel data is not read ahead, if they are not stored. Chrominance channels
+     * sub-sampled by the compressed encoding - e.g. YBR_FULL_422 of JPEG Baseline - are decompressed to full
+     * resolution, so - unlike for uncompressed frames - the frame length is not reduced by sub-sampling.
+     */
+    private static long decompressedSize(InstanceLocations inst) {
+        Attributes attrs = inst.getAttributes();
+        if (!Instance.containsImagePixelDescription(attrs))
+            return -1L;
+
+        return (long) attrs.getInt(Tag.Rows, 0) * attrs.getInt(Tag.Columns, 0) * attrs.getInt(Tag.SamplesPerPixel, 0)
+                * ((attrs.getInt(Tag.BitsAllocated, 8) + 7) / 8) * inst.getNumberOfFrames();
+    }
+
+    private StreamingOutput readAheadDICOM(DicomObjectOutput entity, RetrieveContext ctx, InstanceLocations inst,
+                                           Collection<String> tsuids) {
+        if (readAhead == null)
+            return entity;
+
+        return readAhead.part(entity, () -> estimatedDICOMSize(ctx, inst, tsuids));
+    }
+
+    private static long storedSize(InstanceLocations inst) {
+        Location location = dicomFile(inst);
+        return location != null ? location.getSize() : -1L;
+    }
+
+    private static Location dicomFile(InstanceLocations inst) {
+        for (Location location : inst.getLocations())
+            if (location.getObjectType() == Location.ObjectType.DICOM_FILE)
+                return location;
+        return null;
+    }
+
+    /**
+     * Estimates the size of the DICOM object as written by {@link DicomObjectOutput}: the stored size plus the
+     * encoded length of the attributes from the database, which may be merged into the dataset. Returns -1, so
+     * the object is not read ahead, if it has to be transcoded or if a configured Attribute Coercion applies,
+     * because the written size cannot be estimated from the stored size in that case.
+     */
+    private long estimatedDICOMSize(RetrieveContext ctx, InstanceLocations inst, Collection<String> tsuids) {
+        Location location = dicomFile(inst);
+        if (location == null
+                || !tsuids.isEmpty() && !tsuids.contains(location.getTransferSyntaxUID())
+                || ctx.getArchiveAEExtension().findAttributeCoercion(
+                        ctx.getRequestorHostName(), ctx.getRequestorAET(), TransferCapability.Role.SCP,
+                        Dimse.C_STORE_RQ, inst.getSopClassUID()) != null)
+            return -1L;
+
+        return location.getSize() + inst.getAttributes().calcLength(DicomEncodingOptions.DEFAULT, true);
+    }
+
+    /**
+     * Returns the entity tag of the response, derived from the last update time of the returned entities and from
+     * the number of returned instances, so the tag changes also if instances are rejected or deleted. Conditional
+     * requests - in particular for metadata, which is assembled from every instance - are answered with
+     * {@code 304 Not Modified} without accessing any storage.
+     */
+    private static EntityTag entityTag(Date lastModified, int numberOfInstances) {
+        return new EntityTag(lastModified.getTime() + "-" + numberOfInstances);
     }
 
     private void checkAET() {
@@ -531,14 +638,14 @@ public class WadoRS {
                 break;
             case CompressedMultiFrameImage:
                 if (mediaType == MediaType.APPLICATION_OCTET_STREAM_TYPE) {
-                    entity = new DecompressPixelDataOutput(ctx, inst);
+                    entity = new DecompressPixelDataOutput(ctx, inst, frameCache);
                     break;
                 }
                 writeCompressedMultiFrameImage(output, ctx, inst, mediaType, bulkdataURL);
                 return;
             case CompressedSingleFrameImage:
                 if (mediaType == MediaType.APPLICATION_OCTET_STREAM_TYPE) {
-                    entity = new DecompressPixelDataOutput(ctx, inst);
+                    entity = new DecompressPixelDataOutput(ctx, inst, frameCache);
                     break;
                 }
             case MPEG2Video:
@@ -552,7 +659,7 @@ public class WadoRS {
             default:
                 throw new AssertionError("Unexcepted object type: " + objectType);
         }
-        OutputPart outputPart = output.addPart(entity, mediaType);
+        OutputPart outputPart = output.addPart(readAhead(entity, inst), mediaType);
         outputPart.getHeaders().putSingle("Content-Location", bulkdataURL.toString());
     }
 
@@ -580,7 +687,7 @@ public class WadoRS {
                 break;
             case CompressedSingleFrameImage:
                 entity = mediaType == MediaType.APPLICATION_OCTET_STREAM_TYPE
-                        ? new DecompressPixelDataOutput(ctx, inst)
+                        ? new DecompressPixelDataOutput(ctx, inst, frameCache)
                         : new CompressedPixelDataOutput(ctx, inst);
                 break;
             default:
@@ -610,7 +717,7 @@ public class WadoRS {
                                          int[] frameList, StringBuffer bulkdataURL) throws IOException {
         bulkdataURL.append("/frames/");
         int length = bulkdataURL.length();
-        uncompressedFramesOutput = new UncompressedFramesOutput(ctx, inst, frameList, spoolDirectory(frameList));
+        uncompressedFramesOutput = new UncompressedFramesOutput(ctx, inst, frameList);
         for (int frame : frameList) {
             OutputPart outputPart = output.addPart(uncompressedFramesOutput, MediaType.APPLICATION_OCTET_STREAM_TYPE);
             bulkdataURL.setLength(length);
@@ -637,7 +744,8 @@ public class WadoRS {
                                          int[] frameList, StringBuffer bulkdataURL) throws IOException {
         bulkdataURL.append("/frames/");
         int length = bulkdataURL.length();
-        decompressFramesOutput = new DecompressFramesOutput(ctx, inst, frameList, spoolDirectory(frameList));
+        decompressFramesOutput = new DecompressFramesOutput(ctx, inst, frameList, spoolDirectory(frameList),
+                frameCache);
         for (int frame : frameList) {
             OutputPart outputPart = output.addPart(decompressFramesOutput, MediaType.APPLICATION_OCTET_STREAM_TYPE);
             bulkdataURL.setLength(length);
@@ -663,13 +771,14 @@ public class WadoRS {
     private void writeBulkdata(MultipartRelatedOutput output, RetrieveContext ctx, InstanceLocations inst,
                                int[] attributePath) {
         StreamingOutput entity = new BulkdataOutput(ctx, inst, attributePath);
-        OutputPart outputPart = output.addPart(entity, MediaType.APPLICATION_OCTET_STREAM_TYPE);
+        OutputPart outputPart = output.addPart(readAhead(entity, inst), MediaType.APPLICATION_OCTET_STREAM_TYPE);
         outputPart.getHeaders().putSingle("Content-Location", request.getRequestURL());
     }
 
     private void writeDICOM(MultipartRelatedOutput output, RetrieveContext ctx, InstanceLocations inst)  {
-        DicomObjectOutput entity = new DicomObjectOutput(ctx, inst, acceptableTransferSyntaxes());
-        output.addPart(entity, MediaTypes.APPLICATION_DICOM_TYPE);
+        Collection<String> tsuids = acceptableTransferSyntaxes();
+        DicomObjectOutput entity = new DicomObjectOutput(ctx, inst, tsuids);
+        output.addPart(readAheadDICOM(entity, ctx, inst, tsuids), MediaTypes.APPLICATION_DICOM_TYPE);
     }
 
     private Collection<String> acceptableTransferSyntaxes() {
@@ -748,22 +857,98 @@ public class WadoRS {
     }
 
     private Attributes loadAttrsWithBulkdataURI(RetrieveContext ctx, InstanceLocations inst) throws Exception {
-        Attributes attrs;
-        final List<BulkData> bulkDataList = new ArrayList<>();
         StringBuffer sb = request.getRequestURL();
         sb.setLength(sb.lastIndexOf("/metadata"));
         mkInstanceURL(sb, inst);
-        attrs = loadAttrsFromMetadata(ctx, inst, bulkDataList, sb);
+        final String instanceURL = sb.toString();
+        Attributes attrs = service.isMetadataBundleEnabled(ctx)
+                ? loadBundledAttrs(ctx, inst)
+                : metadataCache.isEnabled() ? loadCachedAttrs(ctx, inst) : loadAttrs(ctx, inst);
+        attrs.accept(new Attributes.Visitor() {
+            @Override
+            public boolean visit(Attributes attrs, int tag, VR vr, Object value) {
+                if (value instanceof BulkData) {
+                    BulkData bulkData = (BulkData) value;
+                    bulkData.setURI(instanceURL + bulkData.getURI());
+                }
+                return true;
+            }
+        }, true);
+        service.getAttributesCoercion(ctx, inst).coerce(attrs, null);
+        return attrs;
+    }
+
+    private Attributes loadBundledAttrs(RetrieveContext ctx, InstanceLocations inst) throws IOException {
+        MetadataBundle bundle = metadataBundleOf(ctx, inst.getAttributes());
+        byte[] metadata = bundle.getMetadata(inst.getSopInstanceUID(), inst.getUpdatedTime());
+        if (metadata != null) {
+            try (JsonParser parser = Json.createParser(new ByteArrayInputStream(metadata))) {
+                return new JSONReader(parser).readDataset(null);
+            }
+        }
+        Attributes attrs = loadAttrs(ctx, inst);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = Json.createGenerator(out)) {
+            new JSONWriter(gen).write(attrs);
+        }
+        bundle.putMetadata(inst.getSopInstanceUID(), inst.getUpdatedTime(), out.toByteArray());
+        return attrs;
+    }
+
+    private MetadataBundle metadataBundleOf(RetrieveContext ctx, Attributes instAttrs) {
+        String studyIUID = instAttrs.getString(Tag.StudyInstanceUID);
+        String seriesIUID = instAttrs.getString(Tag.SeriesInstanceUID);
+        MetadataBundle bundle = metadataBundles.get(seriesIUID);
+        if (bundle == null) {
+            try {
+                bundle = service.loadMetadataBundle(ctx, studyIUID, seriesIUID);
+            } catch (IOException e) {
+                LOG.warn("{}: Failed to load metadata bundle of Series[uid={}] - rebuild it:\n",
+                        this, seriesIUID, e);
+                bundle = new MetadataBundle(studyIUID, seriesIUID);
+            }
+            metadataBundles.put(seriesIUID, bundle);
+        }
+        return bundle;
+    }
+
+    private void storeMetadataBundles(RetrieveContext ctx) {
+        for (MetadataBundle bundle : metadataBundles.values()) {
+            if (bundle.isModified())
+                try {
+                    service.storeMetadataBundle(ctx, bundle);
+                } catch (Exception e) {
+                    LOG.warn("Failed to store metadata bundle of Series[uid={}]:\n",
+                            bundle.getSeriesInstanceUID(), e);
+                }
+        }
+    }
+
+    private Attributes loadCachedAttrs(RetrieveContext ctx, InstanceLocations inst) throws IOException {
+        byte[] metadata = metadataCache.getMetadata(inst.getSopInstanceUID(), inst.getUpdatedTime());
+        if (metadata != null) {
+            try (JsonParser parser = Json.createParser(new InflaterInputStream(new ByteArrayInputStream(metadata)))) {
+                return new JSONReader(parser).readDataset(null);
+            }
+        }
+        Attributes attrs = loadAttrs(ctx, inst);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator gen = Json.createGenerator(new DeflaterOutputStream(out))) {
+            new JSONWriter(gen).write(attrs);
+        }
+        metadataCache.putMetadata(inst.getSopInstanceUID(), inst.getUpdatedTime(), out.toByteArray());
+        return attrs;
+    }
+
+    private Attributes loadAttrs(RetrieveContext ctx, InstanceLocations inst) throws IOException {
+        final List<BulkData> bulkDataList = new ArrayList<>();
+        StringBuffer sb = new StringBuffer();
+        Attributes attrs = loadAttrsFromMetadata(ctx, inst, bulkDataList, sb);
         if (attrs == null)
             attrs = loadAttrsFromDicomFile(ctx, inst, bulkDataList, sb);
-        sb.append("/bulkdata");
-        int length = sb.length();
         for (BulkData bulkData : bulkDataList) {
-            sb.append(bulkData.getURI());
-            bulkData.setURI(sb.toString());
-            sb.setLength(length);
+            bulkData.setURI("/bulkdata" + bulkData.getURI());
         }
-        service.getAttributesCoercion(ctx, inst).coerce(attrs, null);
         return attrs;
     }
 